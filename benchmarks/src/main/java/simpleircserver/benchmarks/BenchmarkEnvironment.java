@@ -0,0 +1,137 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * BenchmarkEnvironment
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.net.InetAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import simpleircserver.base.DB;
+import simpleircserver.base.Globals;
+import simpleircserver.config.IrcInterfaceConfig;
+import simpleircserver.config.IrcServerConfig;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.talker.server.IrcServer;
+import simpleircserver.talker.user.User;
+
+/**
+ * Класс, который служит для подготовки окружения тестов
+ * производительности: репозитария {@link DB}, объектов данного сервера
+ * и псевдопользователя anonymous, а также клиентов. Сетевые соединения
+ * не открываются, журнал и файл-протокол не ведутся.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class BenchmarkEnvironment {
+
+    /** Доменное имя данного сервера. */
+    public static final String SERVER_HOSTNAME = "irc.bench.local";
+
+    /** Доменное имя клиентов. */
+    public static final String USER_HOSTNAME = "client.bench.local";
+
+    /** Конструктор. */
+    private BenchmarkEnvironment() {}
+
+    /**
+     * Создание репозитария и объектов данного сервера. Созданный
+     * репозитарий помещается в {@link Globals#db}.
+     * @param maxClients максимальное количество клиентов и соединений.
+     * @return репозитарий.
+     */
+    public static DB init(int maxClients) {
+        Logger logger = Logger.getLogger("Server");
+        logger.setLevel(Level.SEVERE);
+        Globals.logger.set(logger);
+        Globals.ircTranscriptConfig.set(null);
+
+        DB db = new DB();
+        db.setLimits(maxClients, maxClients);
+        Globals.db.set(db);
+
+        InetAddress inetAddress = InetAddress.getLoopbackAddress();
+        Globals.thisIrcServer.set(IrcServer.create(inetAddress,
+                SERVER_HOSTNAME, "Benchmark server."));
+        Globals.anonymousIrcServer.set(IrcServer.create(inetAddress,
+                "anonymous.anonymous", "Irc server for anonymous."));
+        User anonymousUser = User.create();
+        anonymousUser.setIrcServer(Globals.anonymousIrcServer.get());
+        anonymousUser.setNickname("anonymous");
+        anonymousUser.setUsername("anonymous");
+        anonymousUser.setRealname("anonymous");
+        anonymousUser.setHostname(
+                Globals.anonymousIrcServer.get().getHostname());
+        Globals.anonymousUser.set(anonymousUser);
+
+        db.register(Globals.thisIrcServer.get());
+        db.register(Globals.anonymousIrcServer.get());
+        db.register(anonymousUser);
+
+        db.setIrcServerConfig(new IrcServerConfig(
+                Globals.timeZone.get(),
+                Globals.fileLogLevel.get(),
+                Globals.motdFilename.get()));
+        db.setIrcInterfaceConfig(new IrcInterfaceConfig(
+                Globals.serverInetAddress.get(),
+                Globals.serverPortNumber.get(),
+                Globals.listenerCharset.get()));
+        return db;
+    }
+
+    /**
+     * Создание зарегистрированного клиента данного сервера.
+     * @param nickname никнэйм клиента.
+     * @param withConnection true - клиенту создается соединение
+     * (без сокета) в состоянии {@link ConnectionState#OPERATIONAL}.
+     * @return клиент.
+     * @throws IllegalStateException в том случае, если бюджет памяти не
+     * допускает создания клиента.
+     */
+    public static User createUser(String nickname, boolean withConnection)
+            throws IllegalStateException {
+        User user = User.create();
+        if (user == null) {
+            throw new IllegalStateException("Memory budget is exceeded.");
+        }
+        user.setNickname(nickname);
+        user.setUsername("user");
+        user.setRealname("Benchmark User");
+        user.setHostname(USER_HOSTNAME);
+        user.setNetworkId(InetAddress.getLoopbackAddress());
+        user.setIrcServer(Globals.thisIrcServer.get());
+        if (withConnection) {
+            Connection connection = Connection.create();
+            if (connection == null) {
+                throw new IllegalStateException(
+                        "Memory budget is exceeded.");
+            }
+            connection.ircTalker.set(user);
+            connection.setConnectionState(ConnectionState.OPERATIONAL);
+            user.setConnection(connection);
+            Globals.db.get().register(connection);
+        }
+        user.setRegistered(true);
+        return user;
+    }
+}
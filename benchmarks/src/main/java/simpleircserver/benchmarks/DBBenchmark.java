@@ -0,0 +1,97 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * DBBenchmark
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpleircserver.base.DB;
+import simpleircserver.parser.Reply;
+import simpleircserver.talker.user.User;
+
+/**
+ * Тест производительности регистрации клиентов {@link DB#register(User)}
+ * и поиска клиентов {@link DB#getUser} при разном количестве
+ * зарегистрированных клиентов.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DBBenchmark {
+
+    /** Количество зарегистрированных клиентов. */
+    @Param({"1000", "10000"})
+    int userNumber;
+
+    /** Репозитарий. */
+    DB db;
+
+    /** Никнэймы зарегистрированных клиентов (в разных регистрах). */
+    String[] nicknames;
+
+    /** Клиент, который регистрируется и удаляется. */
+    User newUser;
+
+    /** Индекс следующего никнэйма. */
+    int index;
+
+    @Setup
+    public void setup() {
+        db = BenchmarkEnvironment.init(userNumber + 10);
+        nicknames = new String[userNumber];
+        for (int i = 0; i < userNumber; i++) {
+            User user = BenchmarkEnvironment.createUser("User" + i, false);
+            db.register(user);
+            nicknames[i] = i % 2 == 0 ? "user" + i : "USER" + i;
+        }
+        newUser = BenchmarkEnvironment.createUser("NewUser", false);
+    }
+
+    @Benchmark
+    public User getUser() {
+        index = (index + 1) % nicknames.length;
+        return db.getUser(nicknames[index]);
+    }
+
+    @Benchmark
+    public Reply registerAndUnregister() {
+        db.register(newUser);
+        return db.unRegister(newUser);
+    }
+}
@@ -0,0 +1,85 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcAvgMeterBenchmark
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpleircserver.tools.IrcAvgMeter;
+
+/**
+ * Тест производительности обновления {@link IrcAvgMeter}, который
+ * используется для измерения средней скорости сообщений каналов.
+ * Как и в {@link simpleircserver.channel.IrcChannel}, перед измерением
+ * в измеритель помещаются два значения.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrcAvgMeterBenchmark {
+
+    /** Измеритель средней величины. */
+    IrcAvgMeter avgMeter = new IrcAvgMeter(100);
+
+    /** Значение, передаваемое измерителю. */
+    long value;
+
+    @Setup
+    public void setup() {
+        avgMeter.setValue(value++);
+        avgMeter.setValue(value++);
+    }
+
+    @Benchmark
+    public void setValue() {
+        avgMeter.setValue(value++);
+    }
+
+    @Benchmark
+    public void interval() {
+        avgMeter.intervalStart(value++);
+        avgMeter.intervalEnd(value++);
+    }
+
+    @Benchmark
+    public long getAvgIntervalAndSetValue() {
+        long avgInterval = avgMeter.getAvgInterval(value);
+        avgMeter.setValue(value++);
+        return avgInterval;
+    }
+}
@@ -0,0 +1,106 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcChannelSendBenchmark
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpleircserver.channel.IrcChannel;
+import simpleircserver.talker.user.User;
+
+/**
+ * Тест производительности передачи сообщения членам канала
+ * {@link IrcChannel#send(User, String)} при разном количестве членов
+ * канала.
+ *
+ * <P>Выходные очереди получателей очищаются через каждые
+ * {@link #DRAIN_PERIOD} сообщений, чтобы они не переполнялись, время
+ * очистки входит в результат.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrcChannelSendBenchmark {
+
+    /** Период очистки выходных очередей получателей. */
+    public static final int DRAIN_PERIOD = 256;
+
+    /** Количество членов канала. */
+    @Param({"10", "100", "1000"})
+    int memberNumber;
+
+    /** Канал. */
+    IrcChannel channel;
+
+    /** Члены канала. */
+    List<User> memberList = new ArrayList<User>();
+
+    /** Отправитель сообщений. */
+    User sender;
+
+    /** Количество переданных сообщений. */
+    long counter;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment.init(memberNumber + 10);
+        channel = IrcChannel.create("#fanout", "Fan-out benchmark");
+        channel.setMaximumMemberNumber(memberNumber);
+        for (int i = 0; i < memberNumber; i++) {
+            User user = BenchmarkEnvironment.createUser("member" + i, true);
+            channel.add(user, null);
+            memberList.add(user);
+        }
+        sender = memberList.get(0);
+    }
+
+    @Benchmark
+    public boolean send() {
+        boolean result = channel.send(sender,
+                "PRIVMSG #fanout :The quick brown fox jumps over the lazy dog");
+        if (++counter % DRAIN_PERIOD == 0) {
+            for (User user : memberList) {
+                user.dropOutputQueue();
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcCommandDispatchBenchmark
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import simpleircserver.parser.IrcCommandParser;
+import simpleircserver.parser.commands.IrcCommandBase;
+
+/**
+ * Тест производительности диспетчеризации команд: поиск команды по
+ * названию и создание объекта-исполнителя. Сравниваются таблица
+ * создателей {@link IrcCommandParser#createCommand} и прежний способ:
+ * преобразование названия в нижний регистр, поиск класса исполнителя
+ * в {@link LinkedHashMap} и создание объекта с помощью
+ * {@link Class#newInstance()}. Ассоциативный массив классов строится
+ * по той же таблице диспетчеризации. Каждый вызов обрабатывает весь
+ * набор названий {@link #COMMANDS}, в котором преобладают частые
+ * команды (PRIVMSG, PING, PONG).
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrcCommandDispatchBenchmark {
+
+    /** Набор названий команд. */
+    public static final String[] COMMANDS = {
+        "PRIVMSG", "PRIVMSG", "PING", "PONG", "privmsg", "NOTICE",
+        "PRIVMSG", "JOIN", "PING", "ISON", "PRIVMSG", "Mode"
+    };
+
+    /** Ассоциативный массив классов-исполнителей (прежний способ). */
+    LinkedHashMap<String, Class<?>> commandSet =
+            new LinkedHashMap<String, Class<?>>();
+
+    @Setup
+    public void setup() {
+        for (String command : IrcCommandParser.getCommandStats().keySet()) {
+            commandSet.put(command,
+                    IrcCommandParser.createCommand(command).getClass());
+        }
+    }
+
+    /**
+     * Поиск в таблице диспетчеризации и вызов создателя объекта.
+     * @param blackhole приемник результатов.
+     */
+    @Benchmark
+    public void factory(Blackhole blackhole) {
+        for (String command : COMMANDS) {
+            blackhole.consume(IrcCommandParser.createCommand(command));
+        }
+    }
+
+    /**
+     * Поиск класса исполнителя и создание объекта с помощью
+     * рефлексии, как до появления таблицы диспетчеризации.
+     * @param blackhole приемник результатов.
+     * @throws ReflectiveOperationException ошибка создания объекта.
+     */
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public void reflection(Blackhole blackhole)
+            throws ReflectiveOperationException {
+        for (String command : COMMANDS) {
+            String commandName = command.toLowerCase(Locale.ENGLISH);
+            if (commandSet.containsKey(commandName)) {
+                blackhole.consume((IrcCommandBase)
+                        commandSet.get(commandName).newInstance());
+            }
+        }
+    }
+}
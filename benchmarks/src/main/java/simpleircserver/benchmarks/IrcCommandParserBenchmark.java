@@ -0,0 +1,196 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcCommandParserBenchmark
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import simpleircserver.base.DB;
+import simpleircserver.parser.IrcCommandParser;
+import simpleircserver.parser.IrcLineTokenizer;
+import simpleircserver.talker.user.User;
+
+/**
+ * Тест производительности разбора и исполнения сообщений
+ * {@link IrcCommandParser#ircParse()}. Сообщения берутся по очереди из
+ * набора {@link #LINES}, в котором преобладают сообщения в канал и
+ * клиентам, как у обычного сервера.
+ *
+ * <P>Выходные очереди клиентов очищаются через каждые
+ * {@link #DRAIN_PERIOD} сообщений, время очистки входит в результат.
+ *
+ * <P>Парные тесты {@link #splitRegex} и {@link #tokenize} сравнивают
+ * только разбор сообщений набора на префикс, команду и параметры:
+ * прежний разбор с помощью регулярных выражений и разбор
+ * {@link IrcLineTokenizer}. Каждый вызов разбирает весь набор.
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Regex split and IrcLineTokenizer are compared on the same lines.
+ * @author  Nikolay Kirdin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrcCommandParserBenchmark {
+
+    /** Период очистки выходных очередей клиентов. */
+    public static final int DRAIN_PERIOD = 256;
+
+    /** Количество клиентов, кроме отправителя. */
+    public static final int USER_NUMBER = 20;
+
+    /** Набор сообщений. */
+    public static final String[] LINES = {
+        "PRIVMSG #bench :Hello, everybody!",
+        "PRIVMSG nick1 :How are you?",
+        "PRIVMSG #bench :The quick brown fox jumps over the lazy dog",
+        "NOTICE nick2 :Notice text",
+        "PRIVMSG nick3,nick4 :Message for two users",
+        "PING " + BenchmarkEnvironment.SERVER_HOSTNAME,
+        "PRIVMSG #bench :See you later",
+        "ISON nick1 nick2 nick3 unknown",
+        "TOPIC #bench",
+        "MODE #bench",
+        "USERHOST nick1 nick2",
+        "WHO #bench",
+        "AWAY :Back soon",
+        "AWAY",
+        "UNKNOWN command"
+    };
+
+    /** Интерпретатор команд IRC. */
+    IrcCommandParser icp = new IrcCommandParser();
+
+    /** Клиенты. */
+    List<User> userList = new ArrayList<User>();
+
+    /** Разборщик сообщения. */
+    IrcLineTokenizer ircLineTokenizer = new IrcLineTokenizer();
+
+    /** Список параметров, используемый разборщиком повторно. */
+    LinkedList<String> parameterList = new LinkedList<String>();
+
+    /** Индекс следующего сообщения. */
+    int index;
+
+    /** Количество исполненных сообщений. */
+    long counter;
+
+    @Setup
+    public void setup() {
+        DB db = BenchmarkEnvironment.init(USER_NUMBER + 10);
+        for (int i = 0; i <= USER_NUMBER; i++) {
+            User user = BenchmarkEnvironment.createUser("nick" + i, true);
+            db.register(user);
+            userList.add(user);
+            icp.setRequestor(user);
+            icp.setParsingString("JOIN #bench");
+            icp.ircParse();
+        }
+        icp.setRequestor(userList.get(0));
+        drain();
+    }
+
+    @Benchmark
+    public void ircParse() {
+        icp.setParsingString(LINES[index]);
+        icp.ircParse();
+        index = (index + 1) % LINES.length;
+        if (++counter % DRAIN_PERIOD == 0) {
+            drain();
+        }
+    }
+
+    /**
+     * Разбор сообщений набора так, как он выполнялся до появления
+     * {@link IrcLineTokenizer}: два вызова split() с регулярными
+     * выражениями, копирование параметров в новый список, проверка
+     * цифрового ответа регулярным выражением.
+     * @param blackhole приемник результатов.
+     */
+    @Benchmark
+    public void splitRegex(Blackhole blackhole) {
+        for (String line : LINES) {
+            int firstParameter = 0;
+            String prefix = null;
+            String[] withTrailing = line.split("\\s+:", 2);
+            String[] withoutTrailing = withTrailing[0].split("\\s+");
+            if (withoutTrailing[0].charAt(0) == ':') {
+                prefix = withoutTrailing[0].substring(1);
+                firstParameter++;
+            }
+            String command = withoutTrailing[firstParameter++];
+            LinkedList<String> list = new LinkedList<String>();
+            list.addAll(Arrays.asList(Arrays.copyOfRange(withoutTrailing,
+                    firstParameter, withoutTrailing.length)));
+            if (withTrailing.length == 2) {
+                list.offer(withTrailing[1]);
+            }
+            blackhole.consume(prefix);
+            blackhole.consume(command.matches("\\d{3}"));
+            blackhole.consume(list);
+        }
+    }
+
+    /**
+     * Разбор сообщений набора с помощью {@link IrcLineTokenizer} с
+     * повторным использованием списка параметров, как в
+     * {@link IrcCommandParser}.
+     * @param blackhole приемник результатов.
+     */
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        for (String line : LINES) {
+            parameterList.clear();
+            ircLineTokenizer.tokenize(line, parameterList);
+            blackhole.consume(ircLineTokenizer.getPrefix());
+            blackhole.consume(IrcLineTokenizer.isNumericReply(
+                    ircLineTokenizer.getCommand()));
+            blackhole.consume(parameterList);
+        }
+    }
+
+    /** Очистка выходных очередей клиентов. */
+    private void drain() {
+        for (User user : userList) {
+            user.dropOutputQueue();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcEmbeddedServer
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import simpleircserver.ParameterInitialization;
+import simpleircserver.Server;
+import simpleircserver.base.Globals;
+import simpleircserver.channel.IrcChannel;
+
+/**
+ * Класс, который служит для запуска сервера в процессе нагрузочного
+ * теста ({@link IrcLoadGenerator}, {@link IrcTranscriptReplay}) на
+ * loopback-интерфейсе. Файл конфигурации, файл MOTD, журнал и
+ * файл-протокол сервера размещаются во временном каталоге.
+ *
+ * <P>Все клиенты теста соединяются с одного IP-адреса, поэтому
+ * ограничения частоты новых соединений снимаются. Ограничения частоты
+ * ввода сообщений клиентом задаются параметрами конструктора, т.к. они
+ * не задаются файлом конфигурации.
+ *
+ * <P>Ограничения репозитария сервера равны количеству клиентов и
+ * каналов теста. К ним добавляется только то, что сервер регистрирует
+ * сам: псевдопользователь anonymous, канал &amp;MonitorIrcChannel и
+ * пробное соединение, которым проверяется готовность сервера.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcEmbeddedServer {
+
+    /** Время (ms) ожидания запуска и останова сервера. */
+    public static final long SERVER_TIMEOUT = 10000;
+
+    /** Период (ms) проверки готовности сервера. */
+    public static final long POLL_PERIOD = 100;
+
+    /** Номер порта (0 - любой свободный порт). */
+    private final int port;
+
+    /** Максимальное количество клиентов. */
+    private final int maxClients;
+
+    /** Максимальное количество каналов. */
+    private final int maxChannels;
+
+    /** Способ обслуживания соединений (атрибут "engine"). */
+    private final String engine;
+
+    /** Количество процессоров ввода/вывода (атрибут "iothreads"). */
+    private final int ioThreads;
+
+    /** Минимальный средний период (ms) ввода сообщений клиентом. */
+    private final long minAvgReadPeriod;
+
+    /** Количество сообщений, которые клиент может ввести подряд. */
+    private final int inputBurst;
+
+    /** Каталог файлов сервера. */
+    private Path directory;
+
+    /** Адрес сервера. */
+    private InetSocketAddress address;
+
+    /** Поток сервера. */
+    private Thread serverThread;
+
+    /**
+     * Конструктор.
+     * @param port номер порта (0 - любой свободный порт).
+     * @param maxClients максимальное количество клиентов.
+     * @param maxChannels максимальное количество каналов.
+     * @param engine способ обслуживания соединений (BLOCKING, NIO).
+     * @param ioThreads количество процессоров ввода/вывода.
+     * @param minAvgReadPeriod минимальный средний период (ms) ввода
+     * сообщений клиентом.
+     * @param inputBurst количество сообщений, которые клиент может
+     * ввести подряд.
+     */
+    public IrcEmbeddedServer(int port, int maxClients, int maxChannels,
+            String engine, int ioThreads, long minAvgReadPeriod,
+            int inputBurst) {
+        this.port = port;
+        this.maxClients = maxClients;
+        this.maxChannels = maxChannels;
+        this.engine = engine;
+        this.ioThreads = ioThreads;
+        this.minAvgReadPeriod = minAvgReadPeriod;
+        this.inputBurst = inputBurst;
+    }
+
+    /**
+     * Запуск сервера. Метод возвращает управление после того, как
+     * сервер начнет принимать соединения.
+     * @return адрес сервера.
+     * @throws IOException в том случае, если сервер не запущен.
+     * @throws InterruptedException в том случае, если ожидание запуска
+     * прервано.
+     */
+    public InetSocketAddress start()
+            throws IOException, InterruptedException {
+        InetAddress loopbackAddress = InetAddress.getByAddress(
+                new byte[] {127, 0, 0, 1});
+        int serverPort = port;
+        if (serverPort == 0) {
+            try (ServerSocket serverSocket = new ServerSocket(0, 1,
+                    loopbackAddress)) {
+                serverPort = serverSocket.getLocalPort();
+            }
+        }
+        directory = Files.createTempDirectory("irc-load");
+        Path configPath = directory.resolve("IrcServerConfig.xml");
+        Path motdPath = directory.resolve("IrcServerMotd.txt");
+        Files.write(motdPath, "Load test server.\n".getBytes(
+                StandardCharsets.UTF_8));
+        String config = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<CONFIG>\n" +
+                "<ADMIN name=\"Load test\" location=\"localhost\" " +
+                "location2=\"localhost\" email=\"load@localhost\" " +
+                "info=\"Load test server\"></ADMIN>\n" +
+                "<SERVER debuglevel=\"WARNING\" motd=\"" + motdPath +
+                "\" maxclients=\"" + (maxClients + 1) +
+                "\" maxchannels=\"" + (maxChannels + 1) +
+                "\"></SERVER>\n" +
+                "<INTERFACE iface=\"" + loopbackAddress.getHostAddress() +
+                "\" port=\"" + serverPort + "\" charset=\"UTF-8\" " +
+                "engine=\"" + engine + "\" iothreads=\"" + ioThreads +
+                "\"></INTERFACE>\n" +
+                "<TRANSCRIPT transcript=\"" +
+                directory.resolve("IrcServerTranscript.txt") +
+                "\" rotate=\"1\" length=\"10M\"></TRANSCRIPT>\n" +
+                "</CONFIG>\n";
+        Files.write(configPath, config.getBytes(StandardCharsets.UTF_8));
+
+        Globals.configFilename.set(configPath.toString());
+        Globals.logFileHandlerFileName.set(
+                directory.resolve("IrcServerLog.xml").toString());
+        Globals.acceptAddressBurst.set(maxClients + 1);
+        Globals.acceptAddressPeriod.set(1);
+        Globals.acceptNetworkBurst.set(maxClients + 1);
+        Globals.acceptNetworkPeriod.set(1);
+        Globals.minAvgReadPeriod.set(minAvgReadPeriod);
+        Globals.inputBurst.set(inputBurst);
+        if (!ParameterInitialization.loggerSetup()) {
+            throw new IOException("Cannot create server log file.");
+        }
+        Globals.serverDown.set(false);
+        serverThread = new Thread(new Server(), "IrcServer");
+        serverThread.start();
+
+        address = new InetSocketAddress(loopbackAddress, serverPort);
+        long deadline = System.currentTimeMillis() + SERVER_TIMEOUT;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(address, (int) POLL_PERIOD);
+                break;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline ||
+                        !serverThread.isAlive()) {
+                    stop();
+                    throw new IOException("Server is not started: " + e);
+                }
+                Thread.sleep(POLL_PERIOD);
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Задание максимального среднего количества сообщений за 10 секунд
+     * для существующих каналов сервера.
+     * @param channelRate количество сообщений.
+     */
+    public void setChannelRate(int channelRate) {
+        Iterator<IrcChannel> channelIterator =
+                Globals.db.get().getChannelSetIterator();
+        while (channelIterator.hasNext()) {
+            channelIterator.next().maxChannelRate.set(channelRate);
+        }
+    }
+
+    /**
+     * Останов сервера.
+     * @throws InterruptedException в том случае, если ожидание останова
+     * прервано.
+     */
+    public void stop() throws InterruptedException {
+        if (serverThread == null) {
+            return;
+        }
+        Globals.serverDown.set(true);
+        serverThread.join(SERVER_TIMEOUT);
+        serverThread = null;
+    }
+
+    /**
+     * Получение каталога файлов сервера.
+     * @return каталог или null, если сервер не запускался.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Получение адреса сервера.
+     * @return адрес или null, если сервер не запускался.
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+}
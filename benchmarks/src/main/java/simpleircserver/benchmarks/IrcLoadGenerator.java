@@ -0,0 +1,295 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcLoadGenerator
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import simpleircserver.tools.IrcHistogram;
+
+/**
+ * Генератор нагрузки, который воспроизводит сценарий
+ * {@link IrcLoadScenario}: открывает соединения заданного количества
+ * клиентов, регистрирует их, вводит в каналы заданного размера и
+ * обменивается сообщениями PRIVMSG и NOTICE с заданной частотой.
+ *
+ * <P>Если в сценарии не задан адрес сервера, то сервер запускается в
+ * процессе генератора ({@link IrcEmbeddedServer}), ограничения частоты
+ * ввода сообщений и частоты сообщений каналов задаются сценарием. Т.о.
+ * для сравнения версий сервера достаточно собрать генератор с каждой
+ * из них и выполнить один и тот же сценарий.
+ *
+ * <P>Тест выполняется в следующем порядке: соединение и регистрация
+ * клиентов, вход в каналы, прогрев (warmup), измерение (duration),
+ * ожидание доставки (drain). Результат выводится в формате
+ * {@link java.util.Properties}: количество клиентов, частота
+ * соединений, количество отправленных и доставленных сообщений и их
+ * частота, процентили (50, 99, 99.9) длительности доставки и
+ * количество сообщений об ошибках по кодам. Запуск:
+ * <PRE>
+ * java -cp benchmarks/target/benchmarks.jar \
+ *      simpleircserver.benchmarks.IrcLoadGenerator \
+ *      benchmarks/scenarios/default.properties [файл результата]
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcLoadGenerator {
+
+    /** Период (ms) проверки состояния клиентов. */
+    public static final long POLL_PERIOD = 100;
+
+    /** Сценарий. */
+    private final IrcLoadScenario scenario;
+
+    /** Показатели. */
+    private final IrcLoadStatistics statistics;
+
+    /** Встроенный сервер (null - сервер задан сценарием). */
+    private IrcEmbeddedServer embeddedServer;
+
+    /**
+     * Конструктор.
+     * @param scenario сценарий.
+     */
+    public IrcLoadGenerator(IrcLoadScenario scenario) {
+        this.scenario = scenario;
+        statistics = new IrcLoadStatistics(scenario.getClients(),
+                scenario.getChannels());
+    }
+
+    /**
+     * Запуск генератора.
+     * @param args имя файла сценария (если не задано, то используется
+     * сценарий по умолчанию) и имя файла результата.
+     */
+    public static void main(String[] args) {
+        if (args.length > 2) {
+            System.err.println("Usage: IrcLoadGenerator [scenario file] " +
+                    "[result file]");
+            System.exit(2);
+        }
+        IrcLoadScenario scenario = null;
+        try {
+            scenario = IrcLoadScenario.load(args.length > 0 ? args[0] :
+                    null);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Cannot load scenario: " + e);
+            System.exit(2);
+        }
+        int state = 0;
+        try {
+            Map<String, String> result = new IrcLoadGenerator(scenario)
+                    .execute();
+            result.put("scenario", args.length > 0 ? args[0] : "default");
+            print(result, System.out);
+            if (args.length > 1) {
+                try (PrintStream printStream = new PrintStream(
+                        Files.newOutputStream(Paths.get(args[1])), false,
+                        "UTF-8")) {
+                    print(result, printStream);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Load test is failed: " + e);
+            state = 1;
+        } catch (InterruptedException e) {
+            state = 1;
+        }
+        System.exit(state);
+    }
+
+    /**
+     * Вывод результата.
+     * @param result результат.
+     * @param printStream поток вывода.
+     */
+    static void print(Map<String, String> result,
+            PrintStream printStream) {
+        for (Map.Entry<String, String> entry : result.entrySet()) {
+            printStream.println(entry.getKey() + "=" + entry.getValue());
+        }
+    }
+
+    /**
+     * Выполнение сценария.
+     * @return результат.
+     * @throws IOException в том случае, если встроенный сервер не
+     * запущен.
+     * @throws InterruptedException в том случае, если выполнение
+     * прервано.
+     */
+    public Map<String, String> execute()
+            throws IOException, InterruptedException {
+        InetSocketAddress serverAddress = null;
+        if (scenario.getServerHost() == null) {
+            embeddedServer = new IrcEmbeddedServer(scenario.getServerPort(),
+                    scenario.getClients(), scenario.getChannels(),
+                    scenario.getServerEngine(),
+                    scenario.getServerIoThreads(),
+                    scenario.getMinAvgReadPeriod(),
+                    scenario.getInputBurst());
+            serverAddress = embeddedServer.start();
+        } else {
+            serverAddress = new InetSocketAddress(scenario.getServerHost(),
+                    scenario.getServerPort());
+        }
+        List<List<Integer>> planList = scenario.planChannels();
+        int plannedMemberships = 0;
+        for (List<Integer> channelList : planList) {
+            plannedMemberships += channelList.size();
+        }
+
+        List<IrcLoadWorker> workerList = new ArrayList<IrcLoadWorker>();
+        List<Thread> threadList = new ArrayList<Thread>();
+        for (int i = 0; i < scenario.getThreads(); i++) {
+            IrcLoadWorker worker = new IrcLoadWorker(scenario, statistics,
+                    serverAddress, i, planList);
+            Thread thread = new Thread(worker, "IrcLoadWorker-" + i);
+            workerList.add(worker);
+            threadList.add(thread);
+        }
+        try {
+            for (Thread thread : threadList) {
+                thread.start();
+            }
+
+            long setupDeadline = System.currentTimeMillis() +
+                    TimeUnit.SECONDS.toMillis(scenario.getConnectTimeout());
+            while ((statistics.registered.get() +
+                    statistics.disconnected.get() < scenario.getClients() ||
+                    statistics.joined.get() < plannedMemberships) &&
+                    System.currentTimeMillis() < setupDeadline) {
+                Thread.sleep(POLL_PERIOD);
+            }
+            if (embeddedServer != null && scenario.getChannelRate() > 0) {
+                embeddedServer.setChannelRate(scenario.getChannelRate());
+            }
+
+            for (IrcLoadWorker worker : workerList) {
+                worker.startTraffic();
+            }
+            long measureStart = System.nanoTime() +
+                    TimeUnit.SECONDS.toNanos(scenario.getWarmup());
+            long measureEnd = measureStart +
+                    TimeUnit.SECONDS.toNanos(scenario.getDuration());
+            statistics.setMeasureInterval(measureStart, measureEnd);
+            TimeUnit.NANOSECONDS.sleep(measureEnd - System.nanoTime());
+            for (IrcLoadWorker worker : workerList) {
+                worker.stopTraffic();
+            }
+            TimeUnit.SECONDS.sleep(scenario.getDrain());
+        } finally {
+            for (IrcLoadWorker worker : workerList) {
+                worker.stop();
+            }
+            for (Thread thread : threadList) {
+                thread.join();
+            }
+            if (embeddedServer != null) {
+                embeddedServer.stop();
+            }
+        }
+
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        if (embeddedServer != null) {
+            result.put("server.directory",
+                    embeddedServer.getDirectory().toString());
+        }
+        result.put("server.address", serverAddress.getHostString() + ":" +
+                serverAddress.getPort());
+        result.put("clients.planned", String.valueOf(scenario.getClients()));
+        result.put("clients.registered",
+                String.valueOf(statistics.registered.get()));
+        result.put("clients.disconnected",
+                String.valueOf(statistics.disconnected.get()));
+        result.put("memberships.planned",
+                String.valueOf(plannedMemberships));
+        result.put("memberships.joined",
+                String.valueOf(statistics.joined.get()));
+        long connectTime = statistics.lastRegisteredNanoTime.get() -
+                statistics.firstConnectNanoTime.get();
+        result.put("connect.rate", format(connectTime > 0 ?
+                statistics.registered.get() * 1e9 / connectTime : 0));
+        putPercentiles(result, "registration",
+                statistics.registrationHistogram);
+
+        double seconds = scenario.getDuration();
+        long sent = statistics.sent.sum();
+        long delivered = statistics.delivered.sum();
+        long expected = statistics.expected.sum();
+        result.put("messages.sent", String.valueOf(sent));
+        result.put("messages.sent.rate", format(sent / seconds));
+        result.put("messages.expected", String.valueOf(expected));
+        result.put("messages.delivered", String.valueOf(delivered));
+        result.put("messages.delivered.rate", format(delivered / seconds));
+        result.put("lines.received",
+                String.valueOf(statistics.received.sum()));
+        result.put("messages.lost",
+                String.valueOf(Math.max(0, expected - delivered)));
+        result.put("messages.lagged",
+                String.valueOf(statistics.lagged.sum()));
+        putPercentiles(result, "delivery", statistics.deliveryHistogram);
+        for (Map.Entry<String, Long> entry :
+                statistics.getErrors().entrySet()) {
+            result.put("errors." + entry.getKey(),
+                    String.valueOf(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Добавление в результат процентилей (50, 99, 99.9) и максимума
+     * длительности (us).
+     * @param result результат.
+     * @param name наименование величины.
+     * @param histogram распределение длительности (ns).
+     */
+    static void putPercentiles(Map<String, String> result,
+            String name, IrcHistogram histogram) {
+        long[] percentiles = histogram.getPercentiles(50, 99, 99.9);
+        result.put(name + ".count", String.valueOf(histogram.getCount()));
+        result.put(name + ".p50.us", format(percentiles[0] / 1000.0));
+        result.put(name + ".p99.us", format(percentiles[1] / 1000.0));
+        result.put(name + ".p999.us", format(percentiles[2] / 1000.0));
+        result.put(name + ".max.us", format(histogram.getMax() / 1000.0));
+    }
+
+    /**
+     * Форматирование числа.
+     * @param value число.
+     * @return число с одним знаком после запятой.
+     */
+    static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+}
@@ -0,0 +1,530 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcLoadScenario
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Класс, который служит для хранения сценария нагрузочного теста
+ * {@link IrcLoadGenerator}. Сценарий читается из файла в формате
+ * {@link Properties}, отсутствующие параметры получают значения по
+ * умолчанию. Параметры сценария:
+ * <UL>
+ *      <LI> server.host, server.port - адрес и порт испытываемого
+ *      сервера. Если server.host не задан, то сервер запускается в
+ *      процессе генератора на loopback-интерфейсе (server.port=0 -
+ *      любой свободный порт);</LI>
+ *      <LI> server.engine, server.ioThreads - способ обслуживания
+ *      соединений и количество процессоров ввода/вывода встроенного
+ *      сервера (атрибуты "engine" и "iothreads" файла
+ *      конфигурации);</LI>
+ *      <LI> server.minAvgReadPeriod, server.inputBurst,
+ *      server.channelRate - ограничения частоты ввода сообщений
+ *      клиентом и частоты сообщений канала для встроенного
+ *      сервера;</LI>
+ *      <LI> clients - количество клиентов;</LI>
+ *      <LI> threads - количество потоков генератора;</LI>
+ *      <LI> connect.rate - частота (соединений в секунду) открытия
+ *      соединений (0 - без ограничения);</LI>
+ *      <LI> connect.timeout - время (s) ожидания регистрации клиентов и
+ *      входа в каналы;</LI>
+ *      <LI> channels - количество каналов;</LI>
+ *      <LI> channels.perClient - максимальное количество каналов
+ *      одного клиента;</LI>
+ *      <LI> channel.sizes - распределение размеров каналов в виде
+ *      списка "размер:вес", например "2:50,10:30,100:20";</LI>
+ *      <LI> rate.channel.privmsg, rate.channel.notice,
+ *      rate.user.privmsg, rate.user.notice - суммарная частота
+ *      (сообщений в секунду) сообщений PRIVMSG и NOTICE каналам и
+ *      клиентам;</LI>
+ *      <LI> message.length - длина текста сообщения;</LI>
+ *      <LI> warmup, duration, drain - длительность (s) прогрева,
+ *      измерения и ожидания доставки сообщений после измерения;</LI>
+ *      <LI> nick.prefix - префикс никнэймов и имен каналов;</LI>
+ *      <LI> seed - начальное значение генератора случайных чисел.</LI>
+ * </UL>
+ * При одинаковом значении seed состав каналов и последовательность
+ * выбора отправителей и получателей воспроизводятся.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcLoadScenario {
+
+    /** Виды сообщений нагрузки. */
+    public enum MessageKind {
+
+        /** Сообщение PRIVMSG каналу. */
+        CHANNEL_PRIVMSG("PRIVMSG", true, "rate.channel.privmsg"),
+
+        /** Сообщение NOTICE каналу. */
+        CHANNEL_NOTICE("NOTICE", true, "rate.channel.notice"),
+
+        /** Сообщение PRIVMSG клиенту. */
+        USER_PRIVMSG("PRIVMSG", false, "rate.user.privmsg"),
+
+        /** Сообщение NOTICE клиенту. */
+        USER_NOTICE("NOTICE", false, "rate.user.notice");
+
+        /** Команда IRC. */
+        private final String command;
+
+        /** Получатель сообщения - канал. */
+        private final boolean toChannel;
+
+        /** Параметр сценария, задающий частоту сообщений. */
+        private final String key;
+
+        /**
+         * Конструктор.
+         * @param command команда IRC.
+         * @param toChannel true - получатель сообщения канал.
+         * @param key параметр сценария, задающий частоту сообщений.
+         */
+        MessageKind(String command, boolean toChannel, String key) {
+            this.command = command;
+            this.toChannel = toChannel;
+            this.key = key;
+        }
+
+        /**
+         * Получение команды IRC.
+         * @return команда IRC.
+         */
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * Проверка того, что получатель сообщения - канал.
+         * @return true, если получатель сообщения канал.
+         */
+        public boolean isToChannel() {
+            return toChannel;
+        }
+
+        /**
+         * Получение параметра сценария, задающего частоту сообщений.
+         * @return наименование параметра.
+         */
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /** Параметры сценария. */
+    private final Properties properties;
+
+    /** Размеры каналов. */
+    private final int[] sizeArray;
+
+    /** Веса размеров каналов. */
+    private final int[] weightArray;
+
+    /**
+     * Конструктор.
+     * @param properties параметры сценария.
+     * @throws IllegalArgumentException в том случае, если значение
+     * параметра недопустимо.
+     */
+    public IrcLoadScenario(Properties properties)
+            throws IllegalArgumentException {
+        this.properties = properties;
+        String[] pairs = getString("channel.sizes", "2:50,10:30,100:20")
+                .split(",");
+        sizeArray = new int[pairs.length];
+        weightArray = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            String[] pair = pairs[i].trim().split(":");
+            try {
+                sizeArray[i] = Integer.parseInt(pair[0].trim());
+                weightArray[i] = pair.length > 1 ?
+                        Integer.parseInt(pair[1].trim()) : 1;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                        "IrcLoadScenario. Illegal channel.sizes: " +
+                        pairs[i]);
+            }
+            if (sizeArray[i] < 1 || weightArray[i] < 0) {
+                throw new IllegalArgumentException(
+                        "IrcLoadScenario. Illegal channel.sizes: " +
+                        pairs[i]);
+            }
+        }
+        checkRange("clients", getClients(), 1);
+        checkRange("threads", getThreads(), 1);
+        checkRange("channels", getChannels(), 0);
+        checkRange("channels.perClient", getChannelsPerClient(), 0);
+        checkRange("message.length", getMessageLength(), 0);
+        checkRange("server.minAvgReadPeriod", getMinAvgReadPeriod(), 1);
+        checkRange("server.inputBurst", getInputBurst(), 1);
+        checkRange("server.channelRate", getChannelRate(), 0);
+        if (getConnectRate() < 0 || getConnectTimeout() <= 0 ||
+                getWarmup() < 0 || getDuration() <= 0 || getDrain() < 0) {
+            throw new IllegalArgumentException(
+                    "IrcLoadScenario. Illegal connect, warmup, duration " +
+                    "or drain parameter.");
+        }
+        for (MessageKind messageKind : MessageKind.values()) {
+            if (getRate(messageKind) < 0) {
+                throw new IllegalArgumentException(
+                        "IrcLoadScenario. Parameter out of range: " +
+                        messageKind.getKey());
+            }
+        }
+    }
+
+    /**
+     * Чтение сценария из файла.
+     * @param filename имя файла (null - сценарий по умолчанию).
+     * @return сценарий.
+     * @throws IOException в том случае, если файл не прочитан.
+     * @throws IllegalArgumentException в том случае, если значение
+     * параметра недопустимо.
+     */
+    public static IrcLoadScenario load(String filename)
+            throws IOException, IllegalArgumentException {
+        Properties properties = new Properties();
+        if (filename != null) {
+            try (Reader reader = new InputStreamReader(
+                    Files.newInputStream(Paths.get(filename)),
+                    StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        return new IrcLoadScenario(properties);
+    }
+
+    /**
+     * Проверка значения параметра.
+     * @param key наименование параметра.
+     * @param value значение.
+     * @param min минимальное допустимое значение.
+     * @throws IllegalArgumentException в том случае, если значение
+     * меньше минимального.
+     */
+    private static void checkRange(String key, long value, long min)
+            throws IllegalArgumentException {
+        if (value < min) {
+            throw new IllegalArgumentException(
+                    "IrcLoadScenario. Parameter out of range: " + key +
+                    "=" + value);
+        }
+    }
+
+    /**
+     * Получение строкового параметра.
+     * @param key наименование параметра.
+     * @param defaultValue значение по умолчанию.
+     * @return значение параметра.
+     */
+    private String getString(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue :
+                value.trim();
+    }
+
+    /**
+     * Получение целочисленного параметра.
+     * @param key наименование параметра.
+     * @param defaultValue значение по умолчанию.
+     * @return значение параметра.
+     * @throws IllegalArgumentException в том случае, если значение не
+     * является числом.
+     */
+    private long getLong(String key, long defaultValue)
+            throws IllegalArgumentException {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "IrcLoadScenario. Illegal number: " + key + "=" + value);
+        }
+    }
+
+    /**
+     * Получение вещественного параметра.
+     * @param key наименование параметра.
+     * @param defaultValue значение по умолчанию.
+     * @return значение параметра.
+     * @throws IllegalArgumentException в том случае, если значение не
+     * является числом.
+     */
+    private double getDouble(String key, double defaultValue)
+            throws IllegalArgumentException {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "IrcLoadScenario. Illegal number: " + key + "=" + value);
+        }
+    }
+
+    /**
+     * Получение адреса испытываемого сервера.
+     * @return адрес или null, если сервер запускается в процессе
+     * генератора.
+     */
+    public String getServerHost() {
+        return getString("server.host", null);
+    }
+
+    /**
+     * Получение порта испытываемого сервера.
+     * @return порт (0 - любой свободный порт встроенного сервера).
+     */
+    public int getServerPort() {
+        return (int) getLong("server.port", 0);
+    }
+
+    /**
+     * Получение способа обслуживания соединений встроенного сервера.
+     * @return значение атрибута "engine" файла конфигурации.
+     */
+    public String getServerEngine() {
+        return getString("server.engine", "NIO");
+    }
+
+    /**
+     * Получение количества процессоров ввода/вывода встроенного
+     * сервера.
+     * @return значение атрибута "iothreads" файла конфигурации.
+     */
+    public int getServerIoThreads() {
+        return (int) getLong("server.ioThreads", 0);
+    }
+
+    /**
+     * Получение минимального среднего периода (ms) ввода сообщений
+     * клиентом для встроенного сервера.
+     * @return период (ms).
+     */
+    public long getMinAvgReadPeriod() {
+        return getLong("server.minAvgReadPeriod", 1);
+    }
+
+    /**
+     * Получение количества сообщений, которые клиент может ввести
+     * подряд, для встроенного сервера.
+     * @return количество сообщений.
+     */
+    public int getInputBurst() {
+        return (int) getLong("server.inputBurst", 1000);
+    }
+
+    /**
+     * Получение максимального среднего количества сообщений канала за
+     * 10 секунд для встроенного сервера.
+     * @return количество сообщений (0 - значение сервера по
+     * умолчанию).
+     */
+    public int getChannelRate() {
+        return (int) getLong("server.channelRate", 100000);
+    }
+
+    /**
+     * Получение количества клиентов.
+     * @return количество клиентов.
+     */
+    public int getClients() {
+        return (int) getLong("clients", 100);
+    }
+
+    /**
+     * Получение количества потоков генератора.
+     * @return количество потоков.
+     */
+    public int getThreads() {
+        return (int) getLong("threads",
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Получение частоты открытия соединений.
+     * @return соединений в секунду (0 - без ограничения).
+     */
+    public double getConnectRate() {
+        return getDouble("connect.rate", 200);
+    }
+
+    /**
+     * Получение времени ожидания регистрации клиентов и входа в
+     * каналы.
+     * @return время (s).
+     */
+    public long getConnectTimeout() {
+        return getLong("connect.timeout", 60);
+    }
+
+    /**
+     * Получение количества каналов.
+     * @return количество каналов.
+     */
+    public int getChannels() {
+        return (int) getLong("channels", 10);
+    }
+
+    /**
+     * Получение максимального количества каналов одного клиента.
+     * @return количество каналов.
+     */
+    public int getChannelsPerClient() {
+        return (int) getLong("channels.perClient", 5);
+    }
+
+    /**
+     * Получение суммарной частоты сообщений вида messageKind.
+     * @param messageKind вид сообщений.
+     * @return сообщений в секунду.
+     */
+    public double getRate(MessageKind messageKind) {
+        return getDouble(messageKind.getKey(),
+                messageKind == MessageKind.CHANNEL_PRIVMSG ? 100 : 0);
+    }
+
+    /**
+     * Получение длины текста сообщения.
+     * @return длина текста.
+     */
+    public int getMessageLength() {
+        return (int) getLong("message.length", 64);
+    }
+
+    /**
+     * Получение длительности прогрева.
+     * @return время (s).
+     */
+    public long getWarmup() {
+        return getLong("warmup", 5);
+    }
+
+    /**
+     * Получение длительности измерения.
+     * @return время (s).
+     */
+    public long getDuration() {
+        return getLong("duration", 30);
+    }
+
+    /**
+     * Получение времени ожидания доставки сообщений после измерения.
+     * @return время (s).
+     */
+    public long getDrain() {
+        return getLong("drain", 2);
+    }
+
+    /**
+     * Получение префикса никнэймов и имен каналов.
+     * @return префикс.
+     */
+    public String getNickPrefix() {
+        return getString("nick.prefix", "lg");
+    }
+
+    /**
+     * Получение начального значения генератора случайных чисел.
+     * @return начальное значение.
+     */
+    public long getSeed() {
+        return getLong("seed", 1);
+    }
+
+    /**
+     * Получение никнэйма клиента.
+     * @param index номер клиента.
+     * @return никнэйм.
+     */
+    public String getNickname(int index) {
+        return getNickPrefix() + index;
+    }
+
+    /**
+     * Получение имени канала.
+     * @param index номер канала.
+     * @return имя канала.
+     */
+    public String getChannelName(int index) {
+        return "#" + getNickPrefix() + index;
+    }
+
+    /**
+     * Распределение клиентов по каналам. Размер каждого канала
+     * выбирается случайно в соответствии с весами channel.sizes, члены
+     * канала выбираются случайно из клиентов, которые состоят менее
+     * чем в channels.perClient каналах. Поэтому фактический размер
+     * канала может быть меньше выбранного.
+     * @return списки номеров каналов для каждого клиента.
+     */
+    public List<List<Integer>> planChannels() {
+        Random random = new Random(getSeed());
+        int clients = getClients();
+        int perClient = getChannelsPerClient();
+        int totalWeight = 0;
+        for (int weight : weightArray) {
+            totalWeight += weight;
+        }
+        List<List<Integer>> planList = new ArrayList<List<Integer>>();
+        List<Integer> freeList = new ArrayList<Integer>();
+        for (int i = 0; i < clients; i++) {
+            planList.add(new ArrayList<Integer>());
+            freeList.add(i);
+        }
+        for (int channel = 0; channel < getChannels(); channel++) {
+            int size = sizeArray[0];
+            int point = totalWeight > 0 ? random.nextInt(totalWeight) : 0;
+            for (int i = 0; i < sizeArray.length; i++) {
+                point -= weightArray[i];
+                if (point < 0) {
+                    size = sizeArray[i];
+                    break;
+                }
+            }
+            Collections.shuffle(freeList, random);
+            size = Math.min(size, freeList.size());
+            for (int i = 0; i < size; i++) {
+                planList.get(freeList.get(i)).add(channel);
+            }
+            freeList.removeIf(client ->
+                    planList.get(client).size() >= perClient);
+        }
+        return planList;
+    }
+}
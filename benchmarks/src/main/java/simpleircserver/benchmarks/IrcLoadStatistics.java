@@ -0,0 +1,150 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcLoadStatistics
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import simpleircserver.tools.IrcHistogram;
+
+/**
+ * Класс, который служит для накопления показателей нагрузочного теста
+ * {@link IrcLoadGenerator} и воспроизведения файлов-протоколов
+ * {@link IrcTranscriptReplay}. Показатели обновляются без блокировок.
+ *
+ * <P>Сообщения учитываются по метке времени, которая передается в
+ * тексте сообщения: в результат входят только сообщения, метка времени
+ * которых попадает в интервал измерения.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcLoadStatistics {
+
+    /** Количество зарегистрированных клиентов. */
+    public final AtomicInteger registered = new AtomicInteger();
+
+    /** Количество подтвержденных входов клиентов в каналы. */
+    public final AtomicInteger joined = new AtomicInteger();
+
+    /** Количество соединений, закрытых сервером. */
+    public final AtomicInteger disconnected = new AtomicInteger();
+
+    /** Признаки регистрации клиентов (1 - клиент зарегистрирован). */
+    public final AtomicIntegerArray clientRegistered;
+
+    /** Количество подтвержденных членов каналов. */
+    public final AtomicIntegerArray channelMembers;
+
+    /** Время (ns) открытия первого соединения. */
+    public final AtomicLong firstConnectNanoTime =
+            new AtomicLong(Long.MAX_VALUE);
+
+    /** Время (ns) регистрации последнего клиента. */
+    public final AtomicLong lastRegisteredNanoTime = new AtomicLong();
+
+    /** Длительность (ns) от открытия соединения до регистрации. */
+    public final IrcHistogram registrationHistogram = new IrcHistogram();
+
+    /** Длительность (ns) доставки сообщений. */
+    public final IrcHistogram deliveryHistogram = new IrcHistogram();
+
+    /** Количество отправленных сообщений. */
+    public final LongAdder sent = new LongAdder();
+
+    /** Ожидаемое количество доставок сообщений. */
+    public final LongAdder expected = new LongAdder();
+
+    /** Количество принятых сообщений сервера. */
+    public final LongAdder received = new LongAdder();
+
+    /** Количество доставок сообщений. */
+    public final LongAdder delivered = new LongAdder();
+
+    /** Количество сообщений, которые не удалось отправить вовремя. */
+    public final LongAdder lagged = new LongAdder();
+
+    /** Количество полученных сообщений об ошибках по кодам. */
+    private final Map<String, LongAdder> errorMap =
+            new ConcurrentHashMap<String, LongAdder>();
+
+    /** Время (ns) начала измерения. */
+    private volatile long measureStartNanoTime = Long.MAX_VALUE;
+
+    /** Время (ns) окончания измерения. */
+    private volatile long measureEndNanoTime = Long.MAX_VALUE;
+
+    /**
+     * Конструктор.
+     * @param clients количество клиентов.
+     * @param channels количество каналов.
+     */
+    public IrcLoadStatistics(int clients, int channels) {
+        clientRegistered = new AtomicIntegerArray(clients);
+        channelMembers = new AtomicIntegerArray(channels);
+    }
+
+    /**
+     * Задание интервала измерения.
+     * @param startNanoTime время (ns) начала измерения.
+     * @param endNanoTime время (ns) окончания измерения.
+     */
+    public void setMeasureInterval(long startNanoTime, long endNanoTime) {
+        measureEndNanoTime = endNanoTime;
+        measureStartNanoTime = startNanoTime;
+    }
+
+    /**
+     * Проверка того, что метка времени попадает в интервал измерения.
+     * @param nanoTime метка времени (ns).
+     * @return true, если метка времени попадает в интервал измерения.
+     */
+    public boolean isMeasured(long nanoTime) {
+        return nanoTime >= measureStartNanoTime &&
+                nanoTime < measureEndNanoTime;
+    }
+
+    /**
+     * Учет сообщения об ошибке.
+     * @param code числовой код ответа.
+     */
+    public void error(String code) {
+        errorMap.computeIfAbsent(code, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Получение количества сообщений об ошибках по кодам.
+     * @return упорядоченное по кодам отображение.
+     */
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : errorMap.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,628 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcLoadWorker
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import simpleircserver.benchmarks.IrcLoadScenario.MessageKind;
+
+/**
+ * Поток нагрузочного теста {@link IrcLoadGenerator}, который
+ * обслуживает часть клиентов с помощью одного селектора: открывает
+ * соединения с заданной частотой, регистрирует клиентов, вводит их в
+ * каналы, отвечает на IRC PING, отправляет сообщения с заданной
+ * частотой и учитывает доставленные сообщения.
+ *
+ * <P>Текст каждого сообщения начинается с маркера {@link #MARK} и
+ * времени (ns) его передачи в сокет. Получатель вычисляет длительность
+ * доставки по этой метке, поскольку отправитель и получатель находятся
+ * в одном процессе. Отправка сообщений планируется по расписанию
+ * (открытая модель нагрузки): если поток не успевает отправить
+ * сообщение в течение {@link #LAG_THRESHOLD} после запланированного
+ * времени, то сообщение учитывается как отправленное с опозданием, что
+ * указывает на перегрузку генератора или сервера.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcLoadWorker implements Runnable {
+
+    /** Маркер текста сообщений нагрузки. */
+    public static final String MARK = "load";
+
+    /** Допустимое опоздание (ns) отправки сообщения. */
+    public static final long LAG_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(
+            10);
+
+    /** Максимальное количество сообщений одного вида за один цикл. */
+    public static final int SEND_BATCH_SIZE = 1000;
+
+    /** Размер буфера чтения клиента. */
+    public static final int READ_BUFFER_SIZE = 8192;
+
+    /** Код ответа ERR_NOMOTD, который не считается ошибкой. */
+    private static final String ERR_NOMOTD = "422";
+
+    /** Клиент нагрузочного теста. */
+    private static class Client {
+
+        /** Номер клиента. */
+        private final int index;
+
+        /** Никнэйм. */
+        private final String nickname;
+
+        /** Номера каналов, в которые должен войти клиент. */
+        private final List<Integer> plannedList;
+
+        /** Номера каналов, вход в которые подтвержден. */
+        private final List<Integer> joinedList = new ArrayList<Integer>();
+
+        /** Буфер чтения. */
+        private final ByteBuffer readBuffer =
+                ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        /** Очередь записи. */
+        private final ArrayDeque<ByteBuffer> writeQueue =
+                new ArrayDeque<ByteBuffer>();
+
+        /** Сокет. */
+        private SocketChannel socketChannel;
+
+        /** Ключ селектора. */
+        private SelectionKey key;
+
+        /** Время (ns) открытия соединения. */
+        private long connectNanoTime;
+
+        /** Клиент зарегистрирован. */
+        private boolean registered;
+
+        /** Соединение закрыто. */
+        private boolean closed;
+
+        /**
+         * Конструктор.
+         * @param index номер клиента.
+         * @param nickname никнэйм.
+         * @param plannedList номера каналов клиента.
+         */
+        private Client(int index, String nickname,
+                List<Integer> plannedList) {
+            this.index = index;
+            this.nickname = nickname;
+            this.plannedList = plannedList;
+        }
+    }
+
+    /** Сценарий. */
+    private final IrcLoadScenario scenario;
+
+    /** Показатели. */
+    private final IrcLoadStatistics statistics;
+
+    /** Адрес сервера. */
+    private final InetSocketAddress serverAddress;
+
+    /** Клиенты потока. */
+    private final List<Client> clientList = new ArrayList<Client>();
+
+    /** Генератор случайных чисел. */
+    private final Random random;
+
+    /** Селектор. */
+    private final Selector selector;
+
+    /** Период (ns) открытия соединений (0 - без ограничения). */
+    private final long connectInterval;
+
+    /** Периоды (ns) отправки сообщений по видам (0 - не отправляются). */
+    private final long[] sendIntervalArray =
+            new long[MessageKind.values().length];
+
+    /** Запланированное время (ns) отправки сообщений по видам. */
+    private final long[] nextSendArray =
+            new long[MessageKind.values().length];
+
+    /** Префикс имен каналов. */
+    private final String channelPrefix;
+
+    /** Текст-заполнитель сообщений. */
+    private final String padding;
+
+    /** Количество клиентов, соединения которых открыты. */
+    private int connectedNumber;
+
+    /** Запланированное время (ns) открытия следующего соединения. */
+    private long nextConnectNanoTime;
+
+    /** Отправка сообщений разрешена. */
+    private volatile boolean trafficEnabled;
+
+    /** Поток должен завершить работу. */
+    private volatile boolean stopped;
+
+    /**
+     * Конструктор.
+     * @param scenario сценарий.
+     * @param statistics показатели.
+     * @param serverAddress адрес сервера.
+     * @param workerIndex номер потока.
+     * @param planList номера каналов всех клиентов.
+     * @throws IOException в том случае, если селектор не создан.
+     */
+    public IrcLoadWorker(IrcLoadScenario scenario,
+            IrcLoadStatistics statistics, InetSocketAddress serverAddress,
+            int workerIndex, List<List<Integer>> planList)
+            throws IOException {
+        this.scenario = scenario;
+        this.statistics = statistics;
+        this.serverAddress = serverAddress;
+        int threads = scenario.getThreads();
+        random = new Random(scenario.getSeed() + workerIndex);
+        selector = Selector.open();
+        for (int i = workerIndex; i < planList.size(); i += threads) {
+            clientList.add(new Client(i, scenario.getNickname(i),
+                    planList.get(i)));
+        }
+        double connectRate = scenario.getConnectRate();
+        connectInterval = connectRate > 0 ?
+                (long) (TimeUnit.SECONDS.toNanos(threads) / connectRate) : 0;
+        for (MessageKind messageKind : MessageKind.values()) {
+            double rate = scenario.getRate(messageKind);
+            sendIntervalArray[messageKind.ordinal()] = rate > 0 ?
+                    Math.max(1, (long) (TimeUnit.SECONDS.toNanos(threads) /
+                    rate)) : 0;
+        }
+        channelPrefix = scenario.getChannelName(0).substring(0,
+                scenario.getChannelName(0).length() - 1);
+        StringBuilder paddingBuilder = new StringBuilder();
+        while (paddingBuilder.length() < scenario.getMessageLength()) {
+            paddingBuilder.append('x');
+        }
+        padding = paddingBuilder.toString();
+    }
+
+    /**
+     * Разрешение отправки сообщений. Расписание отправки начинается с
+     * момента вызова.
+     */
+    public void startTraffic() {
+        long currentTime = System.nanoTime();
+        for (int i = 0; i < nextSendArray.length; i++) {
+            nextSendArray[i] = currentTime + (long) (random.nextDouble() *
+                    sendIntervalArray[i]);
+        }
+        trafficEnabled = true;
+    }
+
+    /** Запрет отправки сообщений. */
+    public void stopTraffic() {
+        trafficEnabled = false;
+    }
+
+    /** Завершение работы потока. */
+    public void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    /** Цикл обслуживания клиентов. */
+    @Override
+    public void run() {
+        nextConnectNanoTime = System.nanoTime();
+        try {
+            while (!stopped) {
+                long currentTime = System.nanoTime();
+                connectClients(currentTime);
+                if (trafficEnabled) {
+                    sendMessages(currentTime);
+                }
+                selector.select(1);
+                Iterator<SelectionKey> keyIterator =
+                        selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    handleKey(key);
+                }
+            }
+            for (Client client : clientList) {
+                if (client.socketChannel != null && !client.closed) {
+                    send(client, "QUIT :Load test is finished");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("IrcLoadWorker. Selector error: " + e);
+        } finally {
+            for (Client client : clientList) {
+                close(client);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Открытие соединений в соответствии с частотой connect.rate.
+     * @param currentTime текущее время (ns).
+     */
+    private void connectClients(long currentTime) {
+        while (connectedNumber < clientList.size() &&
+                nextConnectNanoTime <= currentTime) {
+            Client client = clientList.get(connectedNumber++);
+            nextConnectNanoTime += connectInterval;
+            client.connectNanoTime = System.nanoTime();
+            statistics.firstConnectNanoTime.accumulateAndGet(
+                    client.connectNanoTime, Math::min);
+            try {
+                client.socketChannel = SocketChannel.open();
+                client.socketChannel.configureBlocking(false);
+                client.socketChannel.setOption(
+                        StandardSocketOptions.TCP_NODELAY, true);
+                client.key = client.socketChannel.register(selector,
+                        SelectionKey.OP_CONNECT, client);
+                if (client.socketChannel.connect(serverAddress)) {
+                    connected(client);
+                }
+            } catch (IOException e) {
+                statistics.error("connect");
+                close(client);
+            }
+        }
+    }
+
+    /**
+     * Обработка события селектора.
+     * @param key ключ селектора.
+     */
+    private void handleKey(SelectionKey key) {
+        Client client = (Client) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                if (client.socketChannel.finishConnect()) {
+                    connected(client);
+                }
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(client);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(client);
+            }
+        } catch (IOException e) {
+            disconnected(client);
+        }
+    }
+
+    /**
+     * Регистрация клиента после открытия соединения.
+     * @param client клиент.
+     */
+    private void connected(Client client) {
+        client.key.interestOps(SelectionKey.OP_READ);
+        send(client, "NICK " + client.nickname);
+        send(client, "USER " + client.nickname + " 0 * :Load client " +
+                client.index);
+    }
+
+    /**
+     * Чтение и обработка сообщений сервера.
+     * @param client клиент.
+     * @throws IOException в том случае, если соединение закрыто.
+     */
+    private void read(Client client) throws IOException {
+        ByteBuffer buffer = client.readBuffer;
+        int count = client.socketChannel.read(buffer);
+        if (count < 0) {
+            throw new IOException("Connection is closed by server.");
+        }
+        long currentTime = System.nanoTime();
+        buffer.flip();
+        byte[] array = buffer.array();
+        int lineStart = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (array[i] == '\n') {
+                int lineEnd = i > lineStart && array[i - 1] == '\r' ?
+                        i - 1 : i;
+                handleLine(client, new String(array, lineStart,
+                        lineEnd - lineStart, StandardCharsets.UTF_8),
+                        currentTime);
+                lineStart = i + 1;
+            }
+        }
+        buffer.position(lineStart);
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Обработка сообщения сервера.
+     * @param client клиент.
+     * @param line сообщение.
+     * @param currentTime время (ns) чтения сообщения.
+     */
+    private void handleLine(Client client, String line, long currentTime) {
+        if (statistics.isMeasured(currentTime)) {
+            statistics.received.increment();
+        }
+        String prefix = "";
+        String rest = line;
+        if (rest.startsWith(":")) {
+            int space = rest.indexOf(' ');
+            if (space < 0) {
+                return;
+            }
+            prefix = rest.substring(1, space);
+            rest = rest.substring(space + 1);
+        }
+        int space = rest.indexOf(' ');
+        String command = space < 0 ? rest : rest.substring(0, space);
+        String params = space < 0 ? "" : rest.substring(space + 1);
+
+        if (command.equals("PRIVMSG") || command.equals("NOTICE")) {
+            int textStart = params.indexOf(" :");
+            if (textStart >= 0 &&
+                    params.startsWith(MARK + " ", textStart + 2)) {
+                int timeStart = textStart + 2 + MARK.length() + 1;
+                int timeEnd = params.indexOf(' ', timeStart);
+                try {
+                    long sendTime = Long.parseLong(params.substring(
+                            timeStart, timeEnd < 0 ? params.length() :
+                            timeEnd));
+                    if (statistics.isMeasured(sendTime)) {
+                        statistics.delivered.increment();
+                        statistics.deliveryHistogram.record(
+                                currentTime - sendTime);
+                    }
+                } catch (NumberFormatException e) {
+                    statistics.error("format");
+                }
+            }
+        } else if (command.equals("PING")) {
+            send(client, "PONG " + params);
+        } else if (command.equals("001")) {
+            if (!client.registered) {
+                client.registered = true;
+                statistics.clientRegistered.set(client.index, 1);
+                statistics.registered.incrementAndGet();
+                statistics.registrationHistogram.record(
+                        currentTime - client.connectNanoTime);
+                statistics.lastRegisteredNanoTime.accumulateAndGet(
+                        currentTime, Math::max);
+                joinChannels(client);
+            }
+        } else if (command.equals("JOIN")) {
+            int nickEnd = prefix.indexOf('!');
+            String nickname = nickEnd < 0 ? prefix :
+                    prefix.substring(0, nickEnd);
+            String channelName = params.startsWith(":") ?
+                    params.substring(1) : params;
+            if (nickname.equalsIgnoreCase(client.nickname) &&
+                    channelName.startsWith(channelPrefix)) {
+                try {
+                    int channel = Integer.parseInt(channelName.substring(
+                            channelPrefix.length()).trim());
+                    client.joinedList.add(channel);
+                    statistics.channelMembers.incrementAndGet(channel);
+                    statistics.joined.incrementAndGet();
+                } catch (NumberFormatException |
+                        IndexOutOfBoundsException e) {
+                    statistics.error("format");
+                }
+            }
+        } else if (command.equals("ERROR")) {
+            statistics.error(command);
+        } else if (command.length() == 3 &&
+                (command.charAt(0) == '4' || command.charAt(0) == '5') &&
+                !command.equals(ERR_NOMOTD)) {
+            statistics.error(command);
+        }
+    }
+
+    /**
+     * Вход клиента в каналы.
+     * @param client клиент.
+     */
+    private void joinChannels(Client client) {
+        if (client.plannedList.isEmpty()) {
+            return;
+        }
+        StringBuilder channelNames = new StringBuilder();
+        for (int channel : client.plannedList) {
+            if (channelNames.length() > 0) {
+                channelNames.append(',');
+            }
+            channelNames.append(scenario.getChannelName(channel));
+        }
+        send(client, "JOIN " + channelNames);
+    }
+
+    /**
+     * Отправка сообщений в соответствии с расписанием.
+     * @param currentTime текущее время (ns).
+     */
+    private void sendMessages(long currentTime) {
+        for (MessageKind messageKind : MessageKind.values()) {
+            int kind = messageKind.ordinal();
+            if (sendIntervalArray[kind] == 0) {
+                continue;
+            }
+            for (int i = 0; i < SEND_BATCH_SIZE &&
+                    nextSendArray[kind] <= currentTime; i++) {
+                long sendTime = System.nanoTime();
+                if (sendMessage(messageKind, sendTime) &&
+                        sendTime - nextSendArray[kind] > LAG_THRESHOLD &&
+                        statistics.isMeasured(sendTime)) {
+                    statistics.lagged.increment();
+                }
+                nextSendArray[kind] += sendIntervalArray[kind];
+            }
+        }
+    }
+
+    /**
+     * Отправка одного сообщения. Отправитель выбирается случайно из
+     * зарегистрированных клиентов потока, получатель - из каналов
+     * отправителя или из зарегистрированных клиентов сервера.
+     * @param messageKind вид сообщения.
+     * @param sendTime время (ns) отправки.
+     * @return true, если сообщение отправлено.
+     */
+    private boolean sendMessage(MessageKind messageKind, long sendTime) {
+        if (clientList.isEmpty()) {
+            return false;
+        }
+        int attempts = 16;
+        Client sender = null;
+        for (int i = 0; i < attempts && sender == null; i++) {
+            Client client = clientList.get(random.nextInt(
+                    clientList.size()));
+            if (client.registered && !client.closed &&
+                    (!messageKind.isToChannel() ||
+                    !client.joinedList.isEmpty())) {
+                sender = client;
+            }
+        }
+        if (sender == null) {
+            return false;
+        }
+        String target = null;
+        int recipients = 0;
+        if (messageKind.isToChannel()) {
+            int channel = sender.joinedList.get(random.nextInt(
+                    sender.joinedList.size()));
+            target = scenario.getChannelName(channel);
+            recipients = statistics.channelMembers.get(channel) - 1;
+        } else {
+            int clients = scenario.getClients();
+            for (int i = 0; i < attempts && target == null; i++) {
+                int index = random.nextInt(clients);
+                if (index != sender.index &&
+                        statistics.clientRegistered.get(index) == 1) {
+                    target = scenario.getNickname(index);
+                    recipients = 1;
+                }
+            }
+            if (target == null) {
+                return false;
+            }
+        }
+        send(sender, messageKind.getCommand() + " " + target + " :" + MARK +
+                " " + sendTime + " " + padding);
+        if (statistics.isMeasured(sendTime)) {
+            statistics.sent.increment();
+            statistics.expected.add(recipients);
+        }
+        return true;
+    }
+
+    /**
+     * Передача сообщения клиента серверу. Сообщение, которое не удалось
+     * передать сразу, помещается в очередь записи.
+     * @param client клиент.
+     * @param line сообщение.
+     */
+    private void send(Client client, String line) {
+        if (client.closed) {
+            return;
+        }
+        client.writeQueue.add(ByteBuffer.wrap((line + "\r\n").getBytes(
+                StandardCharsets.UTF_8)));
+        try {
+            flush(client);
+        } catch (IOException e) {
+            disconnected(client);
+        }
+    }
+
+    /**
+     * Запись очереди клиента в сокет.
+     * @param client клиент.
+     * @throws IOException в том случае, если соединение закрыто.
+     */
+    private void flush(Client client) throws IOException {
+        while (!client.writeQueue.isEmpty()) {
+            ByteBuffer buffer = client.writeQueue.peek();
+            client.socketChannel.write(buffer);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            client.writeQueue.poll();
+        }
+        int interestOps = client.key.interestOps();
+        if (client.writeQueue.isEmpty()) {
+            client.key.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+        } else {
+            client.key.interestOps(interestOps | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Учет соединения, закрытого сервером.
+     * @param client клиент.
+     */
+    private void disconnected(Client client) {
+        if (!client.closed && !stopped) {
+            statistics.disconnected.incrementAndGet();
+        }
+        close(client);
+    }
+
+    /**
+     * Закрытие соединения клиента.
+     * @param client клиент.
+     */
+    private void close(Client client) {
+        if (client.closed) {
+            return;
+        }
+        client.closed = true;
+        if (client.registered) {
+            statistics.clientRegistered.set(client.index, 0);
+        }
+        if (client.key != null) {
+            client.key.cancel();
+        }
+        if (client.socketChannel != null) {
+            try {
+                client.socketChannel.close();
+            } catch (IOException e) {}
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcParamRegexBenchmark
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpleircserver.parser.IrcSyntaxException;
+import simpleircserver.parser.commands.IrcCommandBase;
+import simpleircserver.parser.commands.IrcParamRegex;
+
+/**
+ * Тест производительности проверки параметров команд
+ * {@link IrcCommandBase#check} по регулярным выражениям
+ * {@link IrcParamRegex}. Проверяются как скомпилированные выражения, так
+ * и выражения, заданные строкой.
+ *
+ * <P>{@link IrcCommandBase#check} выполняет проверки
+ * {@link simpleircserver.parser.commands.IrcParamValidator}, поэтому
+ * для каждого выражения есть парный тест (regex...), в котором строка
+ * проверяется регулярным выражением: Pattern.matcher(s).matches().
+ * Выражения, заданные строкой, компилируются заранее, тест
+ * {@link #matchesHost} проверяет строку так, как это делалось до
+ * появления проверок: String.matches(regex).
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Regular expression baselines are measured next to the validator path.
+ * @author  Nikolay Kirdin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrcParamRegexBenchmark implements IrcParamRegex {
+
+    /** Никнэйм. */
+    String nickname = "nick123";
+
+    /** Имя канала. */
+    String channel = "#benchmark";
+
+    /** Список адресатов сообщения. */
+    String msgTo = "nick123";
+
+    /** Доменное имя. */
+    String host = "client123.bench.local";
+
+    /** Ключ канала. */
+    String key = "secret";
+
+    /** Маска клиента. */
+    String userMask = "nick123!user@client123.bench.local";
+
+    /** Текст сообщения. */
+    String text = "The quick brown fox jumps over the lazy dog";
+
+    /** Скомпилированное выражение {@link IrcParamRegex#hostRegex}. */
+    Pattern hostPattern = Pattern.compile(hostRegex);
+
+    /** Скомпилированное выражение {@link IrcParamRegex#userMaskRegex}. */
+    Pattern userMaskPattern = Pattern.compile(userMaskRegex);
+
+    @Benchmark
+    public String checkNickname() throws IrcSyntaxException {
+        return IrcCommandBase.check(nickname, nickNamePattern);
+    }
+
+    @Benchmark
+    public String checkChannel() throws IrcSyntaxException {
+        return IrcCommandBase.check(channel, channelPattern);
+    }
+
+    @Benchmark
+    public String checkMsgTo() throws IrcSyntaxException {
+        return IrcCommandBase.check(msgTo, msgToPattern);
+    }
+
+    @Benchmark
+    public String checkHost() throws IrcSyntaxException {
+        return IrcCommandBase.check(host, hostRegex);
+    }
+
+    @Benchmark
+    public String checkKey() throws IrcSyntaxException {
+        return IrcCommandBase.check(key, keyPattern);
+    }
+
+    @Benchmark
+    public String checkUserMask() throws IrcSyntaxException {
+        return IrcCommandBase.check(userMask, userMaskRegex);
+    }
+
+    @Benchmark
+    public String checkString() throws IrcSyntaxException {
+        return IrcCommandBase.check(text, stringPattern);
+    }
+
+    @Benchmark
+    public boolean regexNickname() {
+        return nickNamePattern.matcher(nickname).matches();
+    }
+
+    @Benchmark
+    public boolean regexChannel() {
+        return channelPattern.matcher(channel).matches();
+    }
+
+    @Benchmark
+    public boolean regexMsgTo() {
+        return msgToPattern.matcher(msgTo).matches();
+    }
+
+    @Benchmark
+    public boolean regexHost() {
+        return hostPattern.matcher(host).matches();
+    }
+
+    @Benchmark
+    public boolean regexKey() {
+        return keyPattern.matcher(key).matches();
+    }
+
+    @Benchmark
+    public boolean regexUserMask() {
+        return userMaskPattern.matcher(userMask).matches();
+    }
+
+    @Benchmark
+    public boolean regexString() {
+        return stringPattern.matcher(text).matches();
+    }
+
+    @Benchmark
+    public boolean matchesHost() {
+        return host.matches(hostRegex);
+    }
+}
@@ -0,0 +1,124 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcTranscriptRecord
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Locale;
+
+/**
+ * Класс, который служит для хранения одной записи файла-протокола
+ * клиентских сообщений. Записи формирует
+ * {@link simpleircserver.parser.IrcCommandParser} в следующем виде:
+ * <PRE>
+ * время id источник никнэйм признак сообщение
+ * </PRE>
+ * где время - время (ms) приема сообщения, id - номер сообщения,
+ * источник - адрес и порт клиента или имя соединения, признак - "---"
+ * или код RPL_TRYAGAIN, если сообщение было отклонено при высокой
+ * загруженности сервера.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcTranscriptRecord {
+
+    /** Время (ms) приема сообщения. */
+    public final long incomingTime;
+
+    /** Номер сообщения. */
+    public final long id;
+
+    /** Источник сообщения (адрес и порт клиента или имя соединения). */
+    public final String source;
+
+    /** Никнэйм отправителя. */
+    public final String nickname;
+
+    /** Сообщение было отклонено при высокой загруженности сервера. */
+    public final boolean dropped;
+
+    /** Сообщение. */
+    public final String message;
+
+    /** Команда сообщения в верхнем регистре. */
+    public final String command;
+
+    /**
+     * Конструктор.
+     * @param incomingTime время (ms) приема сообщения.
+     * @param id номер сообщения.
+     * @param source источник сообщения.
+     * @param nickname никнэйм отправителя.
+     * @param dropped сообщение было отклонено.
+     * @param message сообщение.
+     */
+    public IrcTranscriptRecord(long incomingTime, long id, String source,
+            String nickname, boolean dropped, String message) {
+        this.incomingTime = incomingTime;
+        this.id = id;
+        this.source = source;
+        this.nickname = nickname;
+        this.dropped = dropped;
+        this.message = message;
+        String rest = message;
+        if (rest.startsWith(":")) {
+            int space = rest.indexOf(' ');
+            rest = space < 0 ? "" : rest.substring(space + 1).trim();
+        }
+        int space = rest.indexOf(' ');
+        command = (space < 0 ? rest : rest.substring(0, space)).toUpperCase(
+                Locale.ENGLISH);
+    }
+
+    /**
+     * Разбор записи файла-протокола.
+     * @param line запись.
+     * @return запись или null, если строка не является записью
+     * файла-протокола.
+     */
+    public static IrcTranscriptRecord parse(String line) {
+        String[] fieldArray = new String[5];
+        int start = 0;
+        for (int i = 0; i < fieldArray.length; i++) {
+            int end = line.indexOf(' ', start);
+            if (end < 0) {
+                return null;
+            }
+            fieldArray[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        String message = line.substring(start);
+        if (fieldArray[2].isEmpty() || message.trim().isEmpty()) {
+            return null;
+        }
+        if (!fieldArray[4].equals("---") &&
+                !fieldArray[4].matches("\\d{3}")) {
+            return null;
+        }
+        try {
+            return new IrcTranscriptRecord(Long.parseLong(fieldArray[0]),
+                    Long.parseLong(fieldArray[1]), fieldArray[2],
+                    fieldArray[3], !fieldArray[4].equals("---"), message);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,724 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * IrcTranscriptReplay
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Программа воспроизведения файлов-протоколов клиентских сообщений
+ * (см. {@link IrcTranscriptRecord}) на испытываемом сервере.
+ *
+ * <P>Записи одного или нескольких файлов-протоколов (в том числе
+ * ротированных) упорядочиваются по времени приема и номеру сообщения и
+ * группируются в сеансы по источнику (адресу и порту клиента). Новый
+ * сеанс источника начинается после сообщения QUIT или при повторном
+ * сообщении USER. Для каждого сеанса открывается отдельное соединение,
+ * сообщения передаются в исходном порядке с исходными интервалами,
+ * с интервалами, уменьшенными в заданное количество раз (ключ -s), или
+ * без пауз (-s 0). В последнем случае количество переданных, но не
+ * записанных в сокеты байтов ограничено {@link #MAX_PENDING_BYTES}, т.е.
+ * скорость воспроизведения определяется сервером. Сообщения PONG не
+ * воспроизводятся (сеансы отвечают на IRC PING сервера сами),
+ * сообщения OPER не воспроизводятся, т.к. пароли в файле-протоколе
+ * скрыты.
+ *
+ * <P>Длительность доставки вычисляется для сообщений PRIVMSG и NOTICE:
+ * при получении сообщения его команда и текст сопоставляются с
+ * последним переданным сообщением с такой же командой и текстом.
+ * Результат выводится в формате {@link java.util.Properties}. Если
+ * адрес сервера не задан, то сервер запускается в процессе программы
+ * ({@link IrcEmbeddedServer}). Запуск:
+ * <PRE>
+ * java -cp benchmarks/target/benchmarks.jar \
+ *      simpleircserver.benchmarks.IrcTranscriptReplay \
+ *      -s 10 IrcServerTranscript.txt.1 IrcServerTranscript.txt
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcTranscriptReplay {
+
+    /** Максимальное количество сообщений, передаваемых за один цикл. */
+    public static final int SEND_BATCH_SIZE = 1000;
+
+    /**
+     * Максимальное количество байтов, переданных сеансам, но не
+     * записанных в сокеты.
+     */
+    public static final long MAX_PENDING_BYTES = 1024 * 1024;
+
+    /**
+     * Время (ns) хранения переданного сообщения для вычисления
+     * длительности доставки.
+     */
+    public static final long DELIVERY_TTL = TimeUnit.SECONDS.toNanos(30);
+
+    /** Период (ns) задания частоты сообщений каналов сервера. */
+    public static final long CHANNEL_RATE_PERIOD =
+            TimeUnit.SECONDS.toNanos(1);
+
+    /** Код ответа ERR_NOMOTD, который не считается ошибкой. */
+    private static final String ERR_NOMOTD = "422";
+
+    /** Сеанс клиента. */
+    private static class Session {
+
+        /** Буфер чтения. */
+        private final ByteBuffer readBuffer =
+                ByteBuffer.allocate(IrcLoadWorker.READ_BUFFER_SIZE);
+
+        /** Очередь записи. */
+        private final ArrayDeque<ByteBuffer> writeQueue =
+                new ArrayDeque<ByteBuffer>();
+
+        /** Сокет. */
+        private SocketChannel socketChannel;
+
+        /** Ключ селектора. */
+        private SelectionKey key;
+
+        /** Время (ns) открытия соединения. */
+        private long connectNanoTime;
+
+        /** Сообщение USER передано. */
+        private boolean userSent;
+
+        /** Сообщение QUIT передано. */
+        private boolean quitSent;
+
+        /** Клиент зарегистрирован. */
+        private boolean registered;
+
+        /** Соединение закрыто. */
+        private boolean closed;
+    }
+
+    /** Сообщение файла-протокола и сеанс, которому оно принадлежит. */
+    private static class Step {
+
+        /** Запись файла-протокола. */
+        private final IrcTranscriptRecord record;
+
+        /** Сеанс. */
+        private final Session session;
+
+        /**
+         * Конструктор.
+         * @param record запись файла-протокола.
+         * @param session сеанс.
+         */
+        private Step(IrcTranscriptRecord record, Session session) {
+            this.record = record;
+            this.session = session;
+        }
+    }
+
+    /** Сообщения в порядке воспроизведения. */
+    private final List<Step> stepList = new ArrayList<Step>();
+
+    /** Количество сеансов. */
+    private int sessionNumber;
+
+    /** Количество каналов, в которые входят клиенты. */
+    private int channelNumber;
+
+    /** Количество записей файлов-протоколов. */
+    private int recordNumber;
+
+    /** Количество записей, которые не воспроизводятся. */
+    private int skippedNumber;
+
+    /** Коэффициент ускорения (0 - без пауз). */
+    private double speed = 1;
+
+    /** Время (s) ожидания ответов после воспроизведения. */
+    private long drain = 2;
+
+    /** Адрес сервера (null - встроенный сервер). */
+    private InetSocketAddress serverAddress;
+
+    /** Способ обслуживания соединений встроенного сервера. */
+    private String engine = "NIO";
+
+    /** Количество процессоров ввода/вывода встроенного сервера. */
+    private int ioThreads;
+
+    /** Минимальный средний период (ms) ввода сообщений клиентом. */
+    private long minAvgReadPeriod = 1;
+
+    /** Количество сообщений, которые клиент может ввести подряд. */
+    private int inputBurst = 1000;
+
+    /** Максимальное среднее количество сообщений канала за 10 s. */
+    private int channelRate = 100000;
+
+    /** Показатели. */
+    private final IrcLoadStatistics statistics = new IrcLoadStatistics(0, 0);
+
+    /**
+     * Время (ns) передачи последнего сообщения с такой же командой и
+     * текстом в порядке передачи.
+     */
+    private final LinkedHashMap<String, Long> deliveryMap =
+            new LinkedHashMap<String, Long>();
+
+    /** Селектор. */
+    private Selector selector;
+
+    /** Количество байтов, переданных сеансам, но не записанных. */
+    private long pendingBytes;
+
+    /**
+     * Запуск программы.
+     * @param args ключи и имена файлов-протоколов.
+     */
+    public static void main(String[] args) {
+        String helpText = "Usage: IrcTranscriptReplay [-s <speed>] " +
+                "[-a <host:port>] [-e <engine>] [-t <iothreads>] " +
+                "[-r <read period>] [-b <input burst>] " +
+                "[-c <channel rate>] [-d <drain>] [-o <result file>] " +
+                "<transcript file>...\n" +
+                "-s speedup of the original timing, 0 - as fast as " +
+                "possible (default 1).\n" +
+                "-a address of the server, by default the server is " +
+                "started on 127.0.0.1.\n" +
+                "-e, -t, -r, -b, -c engine, I/O threads, minimal " +
+                "average read period (ms), input burst and channel " +
+                "rate (per 10 s) of the embedded server.\n" +
+                "-d time (s) to wait for replies after replay " +
+                "(default 2).";
+        IrcTranscriptReplay replay = new IrcTranscriptReplay();
+        List<String> filenameList = new ArrayList<String>();
+        String resultFilename = null;
+        int index = 0;
+        try {
+            while (index < args.length) {
+                switch (args[index++]) {
+                case "-s":
+                    replay.speed = Double.parseDouble(args[index++]);
+                    break;
+                case "-a":
+                    String[] address = args[index++].split(":");
+                    replay.serverAddress = new InetSocketAddress(address[0],
+                            Integer.parseInt(address[1]));
+                    break;
+                case "-e":
+                    replay.engine = args[index++];
+                    break;
+                case "-t":
+                    replay.ioThreads = Integer.parseInt(args[index++]);
+                    break;
+                case "-r":
+                    replay.minAvgReadPeriod = Long.parseLong(args[index++]);
+                    break;
+                case "-b":
+                    replay.inputBurst = Integer.parseInt(args[index++]);
+                    break;
+                case "-c":
+                    replay.channelRate = Integer.parseInt(args[index++]);
+                    break;
+                case "-d":
+                    replay.drain = Long.parseLong(args[index++]);
+                    break;
+                case "-o":
+                    resultFilename = args[index++];
+                    break;
+                case "-h":
+                    System.err.println(helpText);
+                    System.exit(0);
+                    break;
+                default:
+                    filenameList.add(args[index - 1]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error in key " + args[index - 1] + ": " + e +
+                    "\n" + helpText);
+            System.exit(2);
+        }
+        if (filenameList.isEmpty() || replay.speed < 0 ||
+                replay.drain < 0 || replay.minAvgReadPeriod < 1 ||
+                replay.inputBurst < 1 || replay.channelRate < 0) {
+            System.err.println(helpText);
+            System.exit(2);
+        }
+
+        int state = 0;
+        try {
+            replay.load(filenameList);
+            Map<String, String> result = replay.execute();
+            result.put("transcript.files", String.join(",", filenameList));
+            IrcLoadGenerator.print(result, System.out);
+            if (resultFilename != null) {
+                try (PrintStream printStream = new PrintStream(
+                        Files.newOutputStream(Paths.get(resultFilename)),
+                        false, "UTF-8")) {
+                    IrcLoadGenerator.print(result, printStream);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Replay is failed: " + e);
+            state = 1;
+        } catch (InterruptedException e) {
+            state = 1;
+        }
+        System.exit(state);
+    }
+
+    /**
+     * Чтение файлов-протоколов и построение сеансов.
+     * @param filenameList имена файлов-протоколов.
+     * @throws IOException в том случае, если файл не прочитан.
+     */
+    private void load(List<String> filenameList) throws IOException {
+        List<IrcTranscriptRecord> recordList =
+                new ArrayList<IrcTranscriptRecord>();
+        for (String filename : filenameList) {
+            try (BufferedReader reader = Files.newBufferedReader(
+                    Paths.get(filename), StandardCharsets.UTF_8)) {
+                String line = null;
+                while ((line = reader.readLine()) != null) {
+                    IrcTranscriptRecord record =
+                            IrcTranscriptRecord.parse(line);
+                    if (record == null) {
+                        skippedNumber++;
+                    } else {
+                        recordList.add(record);
+                    }
+                }
+            }
+        }
+        recordNumber = recordList.size() + skippedNumber;
+        recordList.sort(Comparator.<IrcTranscriptRecord>comparingLong(
+                record -> record.incomingTime).thenComparingLong(
+                record -> record.id));
+
+        Map<String, Session> sessionMap = new HashMap<String, Session>();
+        Set<String> channelSet = new HashSet<String>();
+        for (IrcTranscriptRecord record : recordList) {
+            if (record.command.equals("PONG") ||
+                    record.command.equals("OPER")) {
+                skippedNumber++;
+                continue;
+            }
+            Session session = sessionMap.get(record.source);
+            if (session == null || session.quitSent ||
+                    (session.userSent && record.command.equals("USER"))) {
+                session = new Session();
+                sessionMap.put(record.source, session);
+                sessionNumber++;
+            }
+            if (record.command.equals("USER")) {
+                session.userSent = true;
+            } else if (record.command.equals("QUIT")) {
+                session.quitSent = true;
+            } else if (record.command.equals("JOIN")) {
+                String[] paramArray = record.message.substring(
+                        record.message.toUpperCase(Locale.ENGLISH).indexOf(
+                        "JOIN") + 4).trim().split(" ");
+                for (String channel : paramArray[0].split(",")) {
+                    channelSet.add(channel.toLowerCase(Locale.ENGLISH));
+                }
+            }
+            stepList.add(new Step(record, session));
+        }
+        for (Step step : stepList) {
+            step.session.userSent = false;
+            step.session.quitSent = false;
+        }
+        channelNumber = channelSet.size();
+    }
+
+    /**
+     * Воспроизведение сообщений.
+     * @return результат.
+     * @throws IOException в том случае, если встроенный сервер не
+     * запущен или селектор не создан.
+     * @throws InterruptedException в том случае, если выполнение
+     * прервано.
+     */
+    private Map<String, String> execute()
+            throws IOException, InterruptedException {
+        IrcEmbeddedServer embeddedServer = null;
+        if (serverAddress == null) {
+            embeddedServer = new IrcEmbeddedServer(0, sessionNumber,
+                    channelNumber, engine, ioThreads, minAvgReadPeriod,
+                    inputBurst);
+            serverAddress = embeddedServer.start();
+        }
+        statistics.setMeasureInterval(Long.MIN_VALUE, Long.MAX_VALUE);
+        long startTime = System.nanoTime();
+        long endTime = startTime;
+        long firstTime = stepList.isEmpty() ? 0 :
+                stepList.get(0).record.incomingTime;
+        long lastTime = stepList.isEmpty() ? 0 :
+                stepList.get(stepList.size() - 1).record.incomingTime;
+        selector = Selector.open();
+        try {
+            int next = 0;
+            long drainDeadline = Long.MAX_VALUE;
+            long channelRateTime = startTime;
+            while (System.nanoTime() < drainDeadline) {
+                long currentTime = System.nanoTime();
+                for (int i = 0; i < SEND_BATCH_SIZE &&
+                        next < stepList.size() &&
+                        pendingBytes < MAX_PENDING_BYTES; i++) {
+                    Step step = stepList.get(next);
+                    long dueTime = speed > 0 ? startTime + (long) (
+                            TimeUnit.MILLISECONDS.toNanos(
+                            step.record.incomingTime - firstTime) / speed) :
+                            currentTime;
+                    if (dueTime > currentTime) {
+                        break;
+                    }
+                    if (currentTime - dueTime >
+                            IrcLoadWorker.LAG_THRESHOLD) {
+                        statistics.lagged.increment();
+                    }
+                    replay(step, currentTime);
+                    next++;
+                }
+                if (next == stepList.size() &&
+                        drainDeadline == Long.MAX_VALUE) {
+                    endTime = currentTime;
+                    drainDeadline = currentTime +
+                            TimeUnit.SECONDS.toNanos(drain);
+                }
+                if (embeddedServer != null && channelRate > 0 &&
+                        currentTime - channelRateTime >=
+                        CHANNEL_RATE_PERIOD) {
+                    embeddedServer.setChannelRate(channelRate);
+                    channelRateTime = currentTime;
+                }
+                selector.select(1);
+                Iterator<SelectionKey> keyIterator =
+                        selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    handleKey(key);
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close((Session) key.attachment());
+            }
+            selector.close();
+            if (embeddedServer != null) {
+                embeddedServer.stop();
+            }
+        }
+
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        if (embeddedServer != null) {
+            result.put("server.directory",
+                    embeddedServer.getDirectory().toString());
+        }
+        result.put("server.address", serverAddress.getHostString() + ":" +
+                serverAddress.getPort());
+        result.put("transcript.records", String.valueOf(recordNumber));
+        result.put("transcript.skipped", String.valueOf(skippedNumber));
+        result.put("transcript.seconds",
+                IrcLoadGenerator.format((lastTime - firstTime) / 1000.0));
+        result.put("speed", IrcLoadGenerator.format(speed));
+        result.put("sessions", String.valueOf(sessionNumber));
+        result.put("sessions.registered",
+                String.valueOf(statistics.registered.get()));
+        result.put("sessions.disconnected",
+                String.valueOf(statistics.disconnected.get()));
+        double seconds = Math.max(1, endTime - startTime) / 1e9;
+        result.put("replay.seconds", IrcLoadGenerator.format(seconds));
+        long sent = statistics.sent.sum();
+        long received = statistics.received.sum();
+        result.put("lines.sent", String.valueOf(sent));
+        result.put("lines.sent.rate",
+                IrcLoadGenerator.format(sent / seconds));
+        result.put("lines.received", String.valueOf(received));
+        result.put("lines.received.rate",
+                IrcLoadGenerator.format(received / seconds));
+        result.put("lines.lagged", String.valueOf(statistics.lagged.sum()));
+        IrcLoadGenerator.putPercentiles(result, "registration",
+                statistics.registrationHistogram);
+        IrcLoadGenerator.putPercentiles(result, "delivery",
+                statistics.deliveryHistogram);
+        for (Map.Entry<String, Long> entry :
+                statistics.getErrors().entrySet()) {
+            result.put("errors." + entry.getKey(),
+                    String.valueOf(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Передача сообщения файла-протокола. Соединение сеанса открывается
+     * при передаче первого сообщения сеанса.
+     * @param step сообщение и сеанс.
+     * @param currentTime текущее время (ns).
+     */
+    private void replay(Step step, long currentTime) {
+        Session session = step.session;
+        if (session.socketChannel == null && !session.closed) {
+            session.connectNanoTime = currentTime;
+            try {
+                session.socketChannel = SocketChannel.open();
+                session.socketChannel.configureBlocking(false);
+                session.socketChannel.setOption(
+                        StandardSocketOptions.TCP_NODELAY, true);
+                session.key = session.socketChannel.register(selector,
+                        SelectionKey.OP_CONNECT, session);
+                if (session.socketChannel.connect(serverAddress)) {
+                    session.key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                statistics.error("connect");
+                close(session);
+            }
+        }
+        if (session.closed) {
+            statistics.error("closed");
+            return;
+        }
+        IrcTranscriptRecord record = step.record;
+        if (record.command.equals("PRIVMSG") ||
+                record.command.equals("NOTICE")) {
+            int textStart = record.message.indexOf(" :");
+            if (textStart >= 0) {
+                String key = record.command + " " +
+                        record.message.substring(textStart + 2);
+                deliveryMap.remove(key);
+                deliveryMap.put(key, currentTime);
+                Iterator<Long> timeIterator =
+                        deliveryMap.values().iterator();
+                while (timeIterator.hasNext() &&
+                        currentTime - timeIterator.next() > DELIVERY_TTL) {
+                    timeIterator.remove();
+                }
+            }
+        } else if (record.command.equals("QUIT")) {
+            session.quitSent = true;
+        }
+        send(session, record.message);
+        statistics.sent.increment();
+    }
+
+    /**
+     * Обработка события селектора.
+     * @param key ключ селектора.
+     */
+    private void handleKey(SelectionKey key) {
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isConnectable() &&
+                    session.socketChannel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                flush(session);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(session);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(session);
+            }
+        } catch (IOException e) {
+            if (!session.closed && !session.quitSent) {
+                statistics.disconnected.incrementAndGet();
+            }
+            close(session);
+        }
+    }
+
+    /**
+     * Чтение и обработка сообщений сервера.
+     * @param session сеанс.
+     * @throws IOException в том случае, если соединение закрыто.
+     */
+    private void read(Session session) throws IOException {
+        ByteBuffer buffer = session.readBuffer;
+        if (session.socketChannel.read(buffer) < 0) {
+            throw new IOException("Connection is closed by server.");
+        }
+        long currentTime = System.nanoTime();
+        buffer.flip();
+        byte[] array = buffer.array();
+        int lineStart = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (array[i] == '\n') {
+                int lineEnd = i > lineStart && array[i - 1] == '\r' ?
+                        i - 1 : i;
+                handleLine(session, new String(array, lineStart,
+                        lineEnd - lineStart, StandardCharsets.UTF_8),
+                        currentTime);
+                lineStart = i + 1;
+            }
+        }
+        buffer.position(lineStart);
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Обработка сообщения сервера.
+     * @param session сеанс.
+     * @param line сообщение.
+     * @param currentTime время (ns) чтения сообщения.
+     */
+    private void handleLine(Session session, String line, long currentTime) {
+        statistics.received.increment();
+        String rest = line;
+        if (rest.startsWith(":")) {
+            int space = rest.indexOf(' ');
+            if (space < 0) {
+                return;
+            }
+            rest = rest.substring(space + 1);
+        }
+        int space = rest.indexOf(' ');
+        String command = space < 0 ? rest : rest.substring(0, space);
+        String params = space < 0 ? "" : rest.substring(space + 1);
+
+        if (command.equals("PRIVMSG") || command.equals("NOTICE")) {
+            int textStart = params.indexOf(" :");
+            if (textStart >= 0) {
+                Long sendTime = deliveryMap.get(command + " " +
+                        params.substring(textStart + 2));
+                if (sendTime != null) {
+                    statistics.delivered.increment();
+                    statistics.deliveryHistogram.record(
+                            currentTime - sendTime);
+                }
+            }
+        } else if (command.equals("PING")) {
+            send(session, "PONG " + params);
+        } else if (command.equals("001")) {
+            if (!session.registered) {
+                session.registered = true;
+                statistics.registered.incrementAndGet();
+                statistics.registrationHistogram.record(
+                        currentTime - session.connectNanoTime);
+            }
+        } else if (command.equals("ERROR")) {
+            statistics.error(command);
+        } else if (command.length() == 3 &&
+                (command.charAt(0) == '4' || command.charAt(0) == '5') &&
+                !command.equals(ERR_NOMOTD)) {
+            statistics.error(command);
+        }
+    }
+
+    /**
+     * Передача сообщения сеанса серверу. Сообщение помещается в очередь
+     * записи, очередь записывается в сокет, если соединение открыто.
+     * @param session сеанс.
+     * @param line сообщение.
+     */
+    private void send(Session session, String line) {
+        if (session.closed) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\r\n").getBytes(
+                StandardCharsets.UTF_8));
+        session.writeQueue.add(buffer);
+        pendingBytes += buffer.remaining();
+        if (!session.socketChannel.isConnected()) {
+            return;
+        }
+        try {
+            flush(session);
+        } catch (IOException e) {
+            if (!session.quitSent) {
+                statistics.disconnected.incrementAndGet();
+            }
+            close(session);
+        }
+    }
+
+    /**
+     * Запись очереди сеанса в сокет.
+     * @param session сеанс.
+     * @throws IOException в том случае, если соединение закрыто.
+     */
+    private void flush(Session session) throws IOException {
+        while (!session.writeQueue.isEmpty()) {
+            ByteBuffer buffer = session.writeQueue.peek();
+            pendingBytes -= session.socketChannel.write(buffer);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            session.writeQueue.poll();
+        }
+        int interestOps = session.key.interestOps();
+        if (session.writeQueue.isEmpty()) {
+            session.key.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+        } else {
+            session.key.interestOps(interestOps | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Закрытие соединения сеанса.
+     * @param session сеанс.
+     */
+    private void close(Session session) {
+        if (session.closed) {
+            return;
+        }
+        session.closed = true;
+        for (ByteBuffer buffer : session.writeQueue) {
+            pendingBytes -= buffer.remaining();
+        }
+        session.writeQueue.clear();
+        if (session.key != null) {
+            session.key.cancel();
+        }
+        if (session.socketChannel != null) {
+            try {
+                session.socketChannel.close();
+            } catch (IOException e) {}
+        }
+    }
+}
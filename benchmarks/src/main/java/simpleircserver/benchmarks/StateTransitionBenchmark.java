@@ -0,0 +1,138 @@
+package simpleircserver.benchmarks;
+/*
+ *
+ * StateTransitionBenchmark
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.talker.IrcTalkerState;
+import simpleircserver.talker.user.User;
+
+/**
+ * Тест производительности чтения и изменения состояний соединения и
+ * клиента. Группа readWhileWriting измеряет чтение состояния
+ * соединения четырьмя потоками, пока еще один поток изменяет это
+ * состояние. Остальные тесты измеряют в одном потоке переходы с
+ * проверкой по таблице разрешенных переходов:
+ * {@link Connection#compareAndSetConnectionState} и
+ * {@link simpleircserver.talker.IrcTalker#transitState}.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateTransitionBenchmark {
+
+    /** Соединение, общее для потоков группы readWhileWriting. */
+    @State(Scope.Group)
+    public static class SharedConnection {
+
+        /** Соединение. */
+        Connection connection;
+
+        @Setup
+        public void setup() {
+            connection = Connection.create();
+            connection.setConnectionState(ConnectionState.OPERATIONAL);
+        }
+    }
+
+    /** Соединение потока. */
+    Connection connection;
+
+    /** Клиент потока. */
+    User user;
+
+    @Setup
+    public void setup() {
+        connection = Connection.create();
+        connection.setConnectionState(ConnectionState.INITIALIZED);
+        user = User.create();
+        user.setState(IrcTalkerState.REGISTERING);
+    }
+
+    /**
+     * Чтение состояния соединения.
+     * @param shared общее соединение.
+     * @return состояние.
+     */
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(4)
+    public ConnectionState read(SharedConnection shared) {
+        return shared.connection.getConnectionState();
+    }
+
+    /**
+     * Изменение состояния соединения.
+     * @param shared общее соединение.
+     */
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void write(SharedConnection shared) {
+        shared.connection.setConnectionState(ConnectionState.INITIALIZED);
+        shared.connection.setConnectionState(ConnectionState.OPERATIONAL);
+    }
+
+    /**
+     * Переход соединения INITIALIZED->OPERATIONAL и возврат в исходное
+     * состояние.
+     * @return true, если переход выполнен.
+     */
+    @Benchmark
+    public boolean connectionCompareAndSet() {
+        boolean result = connection.compareAndSetConnectionState(
+                ConnectionState.INITIALIZED, ConnectionState.OPERATIONAL);
+        connection.setConnectionState(ConnectionState.INITIALIZED);
+        return result;
+    }
+
+    /**
+     * Переходы клиента REGISTERING->OPERATIONAL->REGISTERING.
+     * @return true, если оба перехода выполнены.
+     */
+    @Benchmark
+    public boolean userTransit() {
+        return user.transitState(IrcTalkerState.OPERATIONAL) &
+                user.transitState(IrcTalkerState.REGISTERING);
+    }
+}
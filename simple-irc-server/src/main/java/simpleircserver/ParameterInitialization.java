@@ -42,6 +42,8 @@ import java.net.*;
  *
  * @version 0.5 2012-02-06
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Registry limits are taken from the configuration.
+ * @version 0.5.4 2015-11-27 Default output queue limit of the interface.
  * @author  Nikolay Kirdin
  *
  */
@@ -149,6 +151,17 @@ public class ParameterInitialization {
         Globals.logger.get().log(Level.INFO, "Current logLevel:" + Globals.logger.get().getLevel());
     }
     
+    /** 
+     * Задание максимальных размеров ассоциативных массивов 
+     * репозитария в соответствии с {@link IrcServerConfig}.
+     */
+    public static void registrySetup() {
+        IrcServerConfig ircServerConfig = 
+                Globals.db.get().getIrcServerConfig();
+        Globals.db.get().setLimits(ircServerConfig.getMaxClients(), 
+                ircServerConfig.getMaxChannels());
+    }
+    
     /** Закрытие журналирующей подсистемы. */
     public static void loggerDown() {
         Globals.logger.get().log(Level.WARNING, "Ended");
@@ -177,6 +190,20 @@ public class ParameterInitialization {
                 Globals.serverInetAddress.get(),
                 Globals.serverPortNumber.get(),
                 Globals.listenerCharset.get()));        
+        Globals.db.get().getIrcInterfaceConfig().setIoEngine(
+                Globals.ioEngine.get());
+        Globals.db.get().getIrcInterfaceConfig().setIoThreads(
+                Globals.ioThreads.get());
+        Globals.db.get().getIrcInterfaceConfig().setConnectionBalancing(
+                Globals.connectionBalancing.get());
+        Globals.db.get().getIrcInterfaceConfig().setInputQueueSize(
+                Globals.inputQueueSize.get());
+        Globals.db.get().getIrcInterfaceConfig().setInputBudget(
+                Globals.inputBudget.get());
+        Globals.db.get().getIrcInterfaceConfig().setSendQueueSize(
+                Globals.sendQueueSize.get());
+        Globals.db.get().getIrcInterfaceConfig().setSendQueuePolicy(
+                Globals.sendQueuePolicy.get());
 
         Globals.ircTranscriptConfig.set(new IrcTranscriptConfig(
                 Globals.transcriptFileName.get(),
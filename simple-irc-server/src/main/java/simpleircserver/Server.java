@@ -37,7 +37,9 @@ import simpleircserver.processor.IncomingConnectionListener;
 import simpleircserver.processor.InputQueueProcessor;
 import simpleircserver.processor.InputStreamProcessor;
 import simpleircserver.processor.IrcTalkerProcessor;
+import simpleircserver.processor.MetricsProcessor;
 import simpleircserver.processor.NetworkConnectionProcessor;
+import simpleircserver.processor.NioNetworkProcessor;
 import simpleircserver.processor.OutputQueueProcessor;
 import simpleircserver.processor.TranscriptFileProcessor;
 /**
@@ -48,6 +50,7 @@ import simpleircserver.processor.TranscriptFileProcessor;
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
  * @version 0.5.3.1	2015-11-11 Corrected conditions of changing of server start time.	
  * @version 0.5.4 2015-11-13 Moved some staff to processors. Begin to use streams and lambdas. 	
+ * @version 0.5.4 2015-11-27 Metrics processor with the local HTTP endpoint is started.
  * @author  Nikolay Kirdin
  */
 
@@ -228,6 +231,7 @@ public class Server implements Runnable {
             
             if (!isError()) {
                 ParameterInitialization.loggerLevelSetup();
+                ParameterInitialization.registrySetup();
                 setError(!ParameterInitialization.networkComponentsSetup());
             }
             
@@ -266,22 +270,32 @@ public class Server implements Runnable {
         TranscriptFileProcessor transcriptFileProcessor = new TranscriptFileProcessor();
         OutputQueueProcessor outputQueueProcessor = new OutputQueueProcessor();
         IncomingConnectionListener incomingConnectionListener = new IncomingConnectionListener();
+        NioNetworkProcessor nioNetworkProcessor = new NioNetworkProcessor();
+        InputQueueProcessor inputQueueProcessor = new InputQueueProcessor();
+        InputStreamProcessor inputStreamProcessor = new InputStreamProcessor();
+        MetricsProcessor metricsProcessor = new MetricsProcessor();
 
         /** Attention
          * Order is matter!!!
          */
         startList.addAll(Arrays.<AbstractIrcServerProcessor>asList(
                 transcriptFileProcessor,
+                metricsProcessor,
                 new NetworkConnectionProcessor(),
                 outputQueueProcessor,
                 new IrcTalkerProcessor(), 
-                new InputQueueProcessor(),
-                new InputStreamProcessor(),
-                incomingConnectionListener
+                inputQueueProcessor,
+                inputStreamProcessor,
+                incomingConnectionListener,
+                nioNetworkProcessor
                 ));
 
         reconfigureList.add(transcriptFileProcessor);
+        reconfigureList.add(metricsProcessor);
         reconfigureList.add(incomingConnectionListener);
+        reconfigureList.add(nioNetworkProcessor);
+        reconfigureList.add(inputQueueProcessor);
+        reconfigureList.add(inputStreamProcessor);
         
         predstopList.add(outputQueueProcessor);
         
@@ -297,6 +311,7 @@ public class Server implements Runnable {
         if (!parseConfigFile()) {
             setServerTimezone();
             ParameterInitialization.loggerLevelSetup();
+            ParameterInitialization.registrySetup();
             reconfigureList.forEach(p -> this.setError(!p.processorReconfigure()));
         } else {
             setError(true);
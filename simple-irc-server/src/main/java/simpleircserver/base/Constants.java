@@ -30,6 +30,15 @@ import simpleircserver.talker.user.UserMode;
  *
  * @version 0.5.2 2012-03-29
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added. Changed version and date of the creation of the server.
+ * @version 0.5.4 2015-11-27 Parameters of the reverse-DNS resolver were added.
+ * @version 0.5.4 2015-11-27 Parameters of the accept rate limiting were added.
+ * @version 0.5.4 2015-11-27 Memory budget estimates replace the minimum of free memory.
+ * @version 0.5.4 2015-11-27 Output queue limit in bytes and slow consumer policy.
+ * @version 0.5.4 2015-11-27 Parameters of the connection timers were added.
+ * @version 0.5.4 2015-11-27 Parameters of the client share under high load were added.
+ * @version 0.5.4 2015-11-27 Port of the metrics endpoint was added.
+ * @version 0.5.4 2015-11-27 Sample rate of the message latency trace was added.
+ * @version 0.5.4 2015-11-27 Linger timeout of the closing non-blocking connection was added.
  * @author  Nikolay Kirdin
  */
 public interface Constants {
@@ -41,11 +50,37 @@ public interface Constants {
     int MIN_LIMIT = 10;
     
     /** 
-     * Минимальный объем свободной памяти, необходимый для разрешения
-     * создания объектов классов (и порождаемых от них) IrcTalker, 
-     * IrcChannel и Connection в байтах.  
+     * Предел оценочного объема памяти, занимаемого объектами сервера, 
+     * в процентах от максимального объема памяти виртуальной машины.
      */
-    long MIN_FREE_MEMORY = 10 * 1024 * 1024;
+    int MEMORY_BUDGET_PERCENT = 50;
+    
+    /** 
+     * Уровень использования бюджета памяти (в процентах от предела), 
+     * выше которого не создаются новые соединения, клиенты и каналы.
+     */
+    int MEMORY_HIGH_WATER_PERCENT = 90;
+    
+    /** Оценка объема памяти (байт) соединения без буферов и очередей. */
+    long CONNECTION_MEMORY_SIZE = 4096;
+    
+    /** Оценка объема памяти (байт) одной позиции очереди соединения. */
+    long QUEUE_ELEMENT_MEMORY_SIZE = 8;
+    
+    /** 
+     * Оценка объема памяти (байт) элемента выходной очереди без учета 
+     * длины сообщения. 
+     */
+    long SEND_QUEUE_ENTRY_MEMORY_SIZE = 48;
+    
+    /** Оценка объема памяти (байт) клиента, сервиса или сервера. */
+    long TALKER_MEMORY_SIZE = 2048;
+    
+    /** Оценка объема памяти (байт) канала. */
+    long CHANNEL_MEMORY_SIZE = 2048;
+    
+    /** Оценка объема памяти (байт) одной записи истории никнэймов. */
+    long HISTORY_ENTRY_MEMORY_SIZE = 256;
     
     /** 
      * Максимальное количество никнэймов в параметре команды IRC 
@@ -83,7 +118,46 @@ public interface Constants {
      * IP-адрес
      */
     int MAX_HOSTNAME_LENGTH = 63;
-        
+
+    /** Количество потоков определения доменных имен клиентов. */
+    int RESOLVER_THREADS = 4;
+
+    /** Максимальная длина очереди запросов определения доменных имен. */
+    int RESOLVER_QUEUE_SIZE = HARD_LIMIT;
+
+    /** Максимальное количество записей в кэше доменных имен. */
+    int RESOLVER_CACHE_SIZE = HARD_LIMIT;
+
+    /** Время (ms) хранения в кэше найденного доменного имени. */
+    long RESOLVER_POSITIVE_TTL = 3600000;
+
+    /** Время (ms) хранения в кэше отрицательного результата поиска. */
+    long RESOLVER_NEGATIVE_TTL = 60000;
+
+    /** 
+     * Максимальное количество соединений, принимаемых за один цикл 
+     * без паузы. 
+     */
+    int ACCEPT_BATCH_SIZE = 100;
+
+    /** Допустимая пачка новых соединений с одного IP-адреса. */
+    int ACCEPT_ADDRESS_BURST = 10;
+
+    /** 
+     * Средний период (ms) между новыми соединениями с одного 
+     * IP-адреса. 
+     */
+    long ACCEPT_ADDRESS_PERIOD = 2000;
+
+    /** Допустимая пачка новых соединений из одной сети (/24, /64). */
+    int ACCEPT_NETWORK_BURST = 50;
+
+    /** 
+     * Средний период (ms) между новыми соединениями из одной сети 
+     * (/24, /64). 
+     */
+    long ACCEPT_NETWORK_PERIOD = 200;
+
     /** Наименьший допустимый номер порта. */
     int MIN_PORT_NUMBER = 0;
     
@@ -218,6 +292,47 @@ public interface Constants {
      */
     int MIN_AVG_READ_PERIOD = 2000;
     
+    /**
+     * Максимальное количество сообщений, которые клиент может ввести 
+     * подряд, без учета ограничения {@link #MIN_AVG_READ_PERIOD}.
+     */
+    int INPUT_BURST = 10;
+    
+    /** Размер входной очереди соединения по умолчанию. */
+    int INPUT_QUEUE_SIZE = 16;
+    
+    /** 
+     * Максимальное количество сообщений одного соединения, 
+     * обрабатываемых за один цикл процессора по умолчанию. 
+     */
+    int INPUT_BUDGET = 8;
+    
+    /** 
+     * Максимальная суммарная длина (байт) сообщений выходной очереди 
+     * соединения по умолчанию. 
+     */
+    long SEND_QUEUE_SIZE = 1024 * 1024;
+    
+    /** 
+     * Действия при переполнении выходной очереди соединения по 
+     * умолчанию (одно из значений 
+     * {@link simpleircserver.config.IrcSendQueuePolicy}). 
+     */
+    String SEND_QUEUE_POLICY = "DISCONNECT";
+    
+    /** 
+     * Количество процессоров исполнения команд по умолчанию. Значение 0 
+     * означает, что количество процессоров равно количеству доступных 
+     * JVM процессоров.
+     */
+    int COMMAND_THREADS = 0;
+    
+    /** 
+     * Количество блокировок каналов и клиентов, используемых 
+     * процессорами исполнения команд.
+     */
+    int COMMAND_LOCK_STRIPES = 64;
+    
     /** 
      * Период вывода на внешний носитель элементов очереди протокола 
      * сообщений (ms).
@@ -234,6 +349,19 @@ public interface Constants {
      */
     int SERVER_PORT_NUMBER = 6667;
 
+    /**
+     * Номер порта HTTP-сервера метрик по умолчанию. Значение 0 означает,
+     * что HTTP-сервер метрик не запускается.
+     */
+    int METRICS_PORT = 0;
+
+    /** 
+     * Период выборки сообщений для журнала длительности этапов 
+     * обработки (в журнал заносится каждое N-е сообщение). Значение 0 
+     * означает, что журнал не ведется.
+     */
+    int TRACE_SAMPLE_RATE = 0;
+
     /** Краткое описание сервера. */
     String SERVER_INFO  = "It is a simple IRC server.";
     
@@ -272,9 +400,68 @@ public interface Constants {
      */
     String LISTENER_CHARSET = "UTF-8";
     
+    /** 
+     * Способ обслуживания сетевых соединений по умолчанию (одно из 
+     * значений {@link simpleircserver.config.IrcIoEngine}). 
+     */
+    String IO_ENGINE = "BLOCKING";
+    
+    /** 
+     * Размер буфера (байт) вывода для соединения, обслуживаемого с 
+     * помощью неблокирующего ввода/вывода. 
+     */
+    int NIO_OUTPUT_BUFFER_SIZE = 16384;
+    
+    /** 
+     * Количество процессоров ввода/вывода по умолчанию (0 - по 
+     * количеству процессоров вычислительной системы). 
+     */
+    int IO_THREADS = 0;
+    
+    /** 
+     * Способ распределения соединений между процессорами ввода/вывода 
+     * по умолчанию (одно из значений 
+     * {@link simpleircserver.config.IrcConnectionBalancing}). 
+     */
+    String CONNECTION_BALANCING = "ROUND_ROBIN";
+    
+    /** Максимальная длительность (ms) ожидания селектора. */
+    long NIO_SELECT_TIMEOUT = 100;
+    
+    /** 
+     * Максимальная длительность (ms) передачи клиенту данных, 
+     * оставшихся в буфере вывода закрываемого соединения, которое 
+     * обслуживается с помощью неблокирующего ввода/вывода. 
+     */
+    long NIO_CLOSE_LINGER_TIMEOUT = 2000;
+    
     /** Минимальный период передачи сообщения IRC PING (ms). */
     long PING_SENDING_PERIOD = 300000;
     
+    /** Максимальная длительность (ms) регистрации клиента. */
+    long REGISTRATION_TIMEOUT = 60000;
+    
+    /** Длительность (ms) такта колеса таймеров соединений. */
+    long TIMER_TICK_DURATION = 100;
+    
+    /** 
+     * Максимальная случайная добавка (в процентах) к начальному 
+     * периоду передачи сообщения IRC PING. 
+     */
+    int TIMER_JITTER_PERCENT = 10;
+    
+    /** 
+     * Максимальное количество ограничиваемых команд клиента, 
+     * исполняемых подряд при высокой загруженности сервера. 
+     */
+    int LOAD_SHARE_BURST = 5;
+    
+    /** 
+     * Период (ms) пополнения доли клиента на одну ограничиваемую команду 
+     * при высокой загруженности сервера. 
+     */
+    long LOAD_SHARE_PERIOD = 1000;
+    
     /** Время по умолчанию для таймаутов (ms). */
     long SLEEP_TO = 100;
     
@@ -289,7 +476,7 @@ public interface Constants {
     String SERVER_VERSION = "0.5.3";
     
     /** Коментарий для данной версии сервера. */
-    String VERSION_COMMENT = "Blocking IO";
+    String VERSION_COMMENT = "Blocking IO, NIO";
         
     /** Дата компиляции сервера. */    
     String DATE_CREATED = "2015-11-12";
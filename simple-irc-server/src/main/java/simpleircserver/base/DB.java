@@ -38,13 +38,43 @@ import simpleircserver.talker.server.IrcServer;
 import simpleircserver.talker.service.Service;
 import simpleircserver.talker.user.DriedUser;
 import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcMemoryBudget;
+import simpleircserver.tools.IrcMemoryBudget.Category;
 
 /**
  * Репозитарий в котором хранятся разделяемые данные (очереди, 
  * ассоциативные массивы и т.д.). 
+ *
+ * <P>Клиенты и каналы хранятся в ассоциативных массивах 
+ * {@link ConcurrentHashMap}, ключами которых служат имена, символы 
+ * которых приведены к нижнему регистру. Поиск, добавление и удаление 
+ * выполняются без глобальной блокировки. Итераторы клиентов и каналов 
+ * обходят ассоциативные массивы без копирования, порядок обхода не 
+ * определен. Множества клиентов и каналов, используемые для полных 
+ * перечислений, являются копиями, упорядоченными по ключам. Сервисы и 
+ * серверы хранятся в {@link LinkedHashMap} и перечисляются в порядке 
+ * регистрации. Соединения хранятся 
+ * в множестве, добавление и удаление соединения не требуют 
+ * копирования всего множества. Максимальные размеры массивов задаются 
+ * при конфигурировании сервера, ограничение снизу задается 
+ * {@link Constants#MIN_LIMIT}.
+ *
+ * <P>При помещении объектов в репозитарий и их удалении оценки объема 
+ * памяти этих объектов учитываются в бюджете памяти 
+ * {@link Globals#memoryBudget}. Если уровень допуска бюджета превышен, 
+ * то при добавлении записи истории никнэймов вытесняются старейшие 
+ * истории.
  *  
  * @version 0.5.1 2012-03-27
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Hashed registry keyed by case-folded names, set of connections, limits are not bounded by HARD_LIMIT.
+ * @version 0.5.4 2015-11-27 Registered objects and nickname histories are charged to the memory budget.
+ * @version 0.5.4 2015-11-27 Output queue of the unregistered connection is dropped.
+ * @version 0.5.4 2015-11-27 Timers of the unregistered connection are cancelled.
+ * @version 0.5.4 2015-11-27 Size of the channel registry is available.
+ * @version 0.5.4 2015-11-27 Change of nickname does not need a free place in the user registry.
+ * @version 0.5.4 2015-11-27 Users and channels are listed in order of case-folded names, servers and services in order of registration.
+ * @version 0.5.4 2015-11-27 Iterators of users and channels do not copy the registry, only full listings are sorted.
  * @author  Nikolay Kirdin
  */
 
@@ -108,8 +138,8 @@ public class DB {
      * Ассоциативный массив, хранящий данные об обычных клиентах IRC.
      * Ключем является никнэйм.
      */
-    protected ConcurrentSkipListMap <String, User> userMap =
-            new ConcurrentSkipListMap <String, User>();
+    protected ConcurrentHashMap<String, User> userMap =
+            new ConcurrentHashMap<String, User>();
 
     /** 
      * Ассоциативный массив, хранящий данные об всех клиентах IRC.
@@ -122,8 +152,8 @@ public class DB {
      * Ассоциативный массив, хранящий данные о каналах IRC. 
      * Ключем является имя канала.
      */
-    protected ConcurrentSkipListMap <String, IrcChannel> channelMap =
-            new ConcurrentSkipListMap <String, IrcChannel>();
+    protected ConcurrentHashMap<String, IrcChannel> channelMap =
+            new ConcurrentHashMap<String, IrcChannel>();
 
     /** 
      * Ассоциативный массив, хранящий данные о клиентах - сервисах IRC. 
@@ -143,23 +173,14 @@ public class DB {
      * Ассоциативный массив, хранящий истории никнэймов. 
      * Ключем является никнэйм.
      */
-    @SuppressWarnings("serial")
     protected LinkedHashMap<String, ArrayList<DriedUser>> 
-        nicknameHistoryMap =
-            new LinkedHashMap <String, ArrayList<DriedUser>> () {
-        protected boolean removeEldestEntry(Map.Entry
-                <String, ArrayList<DriedUser>> eldest) {
-            return size() > Math.min(Math.max(Constants.MIN_LIMIT,
-                    maxNickHistoryMapSize.get()),
-                    Constants.HARD_LIMIT) - 1;
-        }
-    };
+        nicknameHistoryMap = createNicknameHistoryMap();
     
     /** 
-     * Список, хранящий данные данные о соединении. 
+     * Множество, хранящее данные о соединениях. 
      */
-    protected CopyOnWriteArrayList<Connection> 
-            connectionList = new CopyOnWriteArrayList <Connection>();
+    protected Set<Connection> connectionSet = 
+            ConcurrentHashMap.<Connection>newKeySet();
 
     /** 
      * Ассоциативный массив, хранящий учетные данные операторов. 
@@ -192,6 +213,31 @@ public class DB {
                  
     protected IrcTranscriptConfig ircTranscriptConfig = null;
     */
+    /** 
+     * Задание максимальных размеров ассоциативных массивов 
+     * репозитария.
+     * @param maxClients максимальное количество клиентов и соединений.
+     * @param maxChannels максимальное количество каналов.
+     */
+    public void setLimits(int maxClients, int maxChannels) {
+        maxUserMapSize.set(maxClients);
+        maxServiceMapSize.set(maxClients);
+        maxIrcServerMapSize.set(maxClients);
+        maxConnectionListSize.set(maxClients);
+        maxNickHistoryMapSize.set(2 * maxClients);
+        maxChannelMapSize.set(maxChannels);
+    }
+
+    /** 
+     * Получение действующего ограничения размера массива.
+     * @param maxSize заданный максимальный размер массива.
+     * @return максимальный размер массива, но не меньше 
+     * {@link Constants#MIN_LIMIT}.
+     */
+    private static int getLimit(AtomicInteger maxSize) {
+        return Math.max(Constants.MIN_LIMIT, maxSize.get());
+    }
+
     /** 
      * Метод, помещающий информацию об обычном клиенте IRC в 
      * ассоциативный массив. Помещение произойдет, если размер 
@@ -209,19 +255,46 @@ public class DB {
     public Reply register(User requestor) {
         Reply responseReply = null;        
         
-        if (userMap.size() >= Math.min(Math.max(
-                Constants.MIN_LIMIT,  maxUserMapSize.get()),
-                Constants.HARD_LIMIT)) {
+        if (userMap.size() >= getLimit(maxUserMapSize)) {
             responseReply = Reply.ERR_FILEERROR;
         } else {
-            String key = 
-                    requestor.getNickname().toLowerCase(Locale.ENGLISH);
-            User value = userMap.putIfAbsent(key, requestor);
-            if (value == null) {
-                responseReply = Reply.RPL_OK;
-            } else {
-                responseReply = Reply.ERR_NICKNAMEINUSE;
-            }
+            responseReply = putUser(requestor);
+        }
+        return responseReply;
+    }
+
+    /** 
+     * Метод, помещающий информацию об обычном клиенте IRC, который 
+     * меняет никнэйм, в ассоциативный массив под новым ключом. 
+     * Ограничение {@link #maxUserMapSize} не проверяется, т.к. после 
+     * удаления прежнего ключа количество клиентов не изменится. 
+     * @param requestor информация об обычном клиенте.
+     * @return {@link Reply#RPL_OK} признак успеха выполнения 
+     * метода, {@link Reply#ERR_NICKNAMEINUSE} - клиент с таким именем 
+     * существует.
+     */            
+    public Reply registerRenamed(User requestor) {
+        return putUser(requestor);
+    }
+
+    /** 
+     * Помещение обычного клиента IRC в ассоциативный массив без 
+     * проверки ограничения на количество клиентов.
+     * @param requestor информация об обычном клиенте.
+     * @return {@link Reply#RPL_OK} признак успеха выполнения 
+     * метода, {@link Reply#ERR_NICKNAMEINUSE} - клиент с таким именем 
+     * существует.
+     */            
+    private Reply putUser(User requestor) {
+        Reply responseReply = null;        
+        User value = userMap.putIfAbsent(requestor.getNicknameKey(), 
+                requestor);
+        if (value == null) {
+            Globals.memoryBudget.get().reserve(Category.TALKER, 
+                    Constants.TALKER_MEMORY_SIZE);
+            responseReply = Reply.RPL_OK;
+        } else {
+            responseReply = Reply.ERR_NICKNAMEINUSE;
         }
         return responseReply;
     }
@@ -231,13 +304,30 @@ public class DB {
      * ассоциативный массив историй. При помещении этой информации 
      * проверятся длина истории, если она длиннее, чем  
      * {@link #maxNickHistoryMapSize}, то старейшие записи удаляются. 
-     * Ключами служат никнэймы, символы которых, приведены к нижниму 
-     * регистру.
+     * Если бюджет памяти не допускает добавления записи, то 
+     * удаляются старейшие истории, если после этого бюджет памяти 
+     * по-прежнему не допускает добавления записи, то запись не 
+     * добавляется. Ключами служат никнэймы, символы которых, приведены 
+     * к нижниму регистру.
      * @param driedUser информация об обычном клиенте.
      */            
     public void register(DriedUser driedUser) {
         String key = driedUser.nickname.toLowerCase(Locale.ENGLISH);
+        IrcMemoryBudget memoryBudget = Globals.memoryBudget.get();
         synchronized(nicknameHistoryMap) {
+            Iterator<ArrayList<DriedUser>> iterator = 
+                    nicknameHistoryMap.values().iterator();
+            boolean isReserved = memoryBudget.tryReserve(Category.HISTORY, 
+                    Constants.HISTORY_ENTRY_MEMORY_SIZE);
+            while (!isReserved && iterator.hasNext()) {
+                releaseHistory(iterator.next());
+                iterator.remove();
+                isReserved = memoryBudget.tryReserve(Category.HISTORY, 
+                        Constants.HISTORY_ENTRY_MEMORY_SIZE);
+            }
+            if (!isReserved) {
+                return;
+            }
             ArrayList<DriedUser> value = nicknameHistoryMap.get(key);
             if (value == null) {
                 value = new ArrayList<DriedUser>();
@@ -245,6 +335,8 @@ public class DB {
             synchronized (value) {
                 while (value.size() >= maxNickHistorySize.get()) {
                     value.remove(0);
+                    memoryBudget.release(Category.HISTORY, 
+                            Constants.HISTORY_ENTRY_MEMORY_SIZE);
                 }    
                 value.add(driedUser);
                 nicknameHistoryMap.put(key, value);
@@ -252,6 +344,52 @@ public class DB {
         }
     }
     
+    /**
+     * Создание ассоциативного массива историй никнэймов. При 
+     * переполнении массива из него удаляется старейшая история, объем 
+     * памяти этой истории освобождается в бюджете памяти.
+     * @return ассоциативный массив историй никнэймов.
+     */
+    @SuppressWarnings("serial")
+    private LinkedHashMap<String, ArrayList<DriedUser>> 
+            createNicknameHistoryMap() {
+        return new LinkedHashMap <String, ArrayList<DriedUser>> () {
+            protected boolean removeEldestEntry(Map.Entry
+                    <String, ArrayList<DriedUser>> eldest) {
+                boolean result = 
+                        size() > getLimit(maxNickHistoryMapSize) - 1;
+                if (result) {
+                    releaseHistory(eldest.getValue());
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Создание копии ассоциативного массива, упорядоченной по ключам
+     * (именам, приведенным к нижнему регистру). Используется только 
+     * для полных перечислений пользователей и каналов (команды LIST, 
+     * NAMES и WHO без параметров).
+     * @param map ассоциативный массив.
+     * @return упорядоченная копия массива.
+     */
+    private static <V> TreeMap<String, V> sortedMap(Map<String, V> map) {
+        return new TreeMap<String, V>(map);
+    }
+
+    /**
+     * Освобождение в бюджете памяти объема, занимаемого историей 
+     * никнэйма.
+     * @param history история никнэйма.
+     */
+    private void releaseHistory(ArrayList<DriedUser> history) {
+        synchronized (history) {
+            Globals.memoryBudget.get().release(Category.HISTORY, 
+                    history.size() * Constants.HISTORY_ENTRY_MEMORY_SIZE);
+        }
+    }
+    
     /** 
      * Метод, помещающий информацию об канале IRC в ассоциативный 
      * массив. Помещение будет успешным, если размер массива меньше 
@@ -268,15 +406,14 @@ public class DB {
     public Reply register(IrcChannel channel) {
         Reply responseReply = null;        
         
-        if (channelMap.size() >= Math.min(Math.max(
-                Constants.MIN_LIMIT,  maxChannelMapSize.get()),
-                Constants.MAX_CHANNEL_NUMBER)) {
+        if (channelMap.size() >= getLimit(maxChannelMapSize)) {
             responseReply = Reply.ERR_FILEERROR;
         } else {
-            String key = 
-                    channel.getNickname().toLowerCase(Locale.ENGLISH);
-            IrcChannel value = channelMap.putIfAbsent(key, channel);
+            IrcChannel value = channelMap.putIfAbsent(
+                    channel.getNicknameKey(), channel);
             if (value == null) {
+                Globals.memoryBudget.get().reserve(Category.CHANNEL, 
+                        Constants.CHANNEL_MEMORY_SIZE);
                 responseReply = Reply.RPL_OK;
             } else {
                 responseReply = Reply.ERR_NICKNAMEINUSE;
@@ -300,19 +437,16 @@ public class DB {
      */            
     public Reply register(Service service) {
         Reply responseReply = null;
-        String key = service.getNickname().toLowerCase(Locale.ENGLISH);
-        synchronized (service) {
-            synchronized (serviceMap) {
-                if (serviceMap.size() >= Math.min(Math.max(
-                        Constants.MIN_LIMIT, maxServiceMapSize.get()), 
-                        Constants.HARD_LIMIT)) {
-                    responseReply = Reply.ERR_FILEERROR;
-                } else if (serviceMap.containsKey(key)) {
-                    responseReply = Reply.ERR_NICKNAMEINUSE;
-                } else {
-                    serviceMap.put(key, service);
-                    responseReply = Reply.RPL_OK;
-                }
+        synchronized (serviceMap) {
+            if (serviceMap.size() >= getLimit(maxServiceMapSize)) {
+                responseReply = Reply.ERR_FILEERROR;
+            } else if (serviceMap.putIfAbsent(service.getNicknameKey(), 
+                    service) != null) {
+                responseReply = Reply.ERR_NICKNAMEINUSE;
+            } else {
+                Globals.memoryBudget.get().reserve(Category.TALKER, 
+                        Constants.TALKER_MEMORY_SIZE);
+                responseReply = Reply.RPL_OK;
             }
         }
         return responseReply;
@@ -334,18 +468,15 @@ public class DB {
     public Reply register(IrcServer ircServer) {
         Reply responseReply = null;
         String key = ircServer.getHostname().toLowerCase(Locale.ENGLISH);
-        synchronized (ircServer) {
-            synchronized (ircServerMap) {
-                if (ircServerMap.size() >= Math.min(Math.max(
-                        Constants.MIN_LIMIT, maxIrcServerMapSize.get()), 
-                        Constants.HARD_LIMIT)) {
-                    responseReply = Reply.ERR_FILEERROR;
-                } else if (ircServerMap.containsKey(key)) {
-                    responseReply = Reply.ERR_NOTOK;
-                } else {
-                ircServerMap.put(key, ircServer);
+        synchronized (ircServerMap) {
+            if (ircServerMap.size() >= getLimit(maxIrcServerMapSize)) {
+                responseReply = Reply.ERR_FILEERROR;
+            } else if (ircServerMap.putIfAbsent(key, ircServer) != null) {
+                responseReply = Reply.ERR_NOTOK;
+            } else {
+                Globals.memoryBudget.get().reserve(Category.TALKER, 
+                        Constants.TALKER_MEMORY_SIZE);
                 responseReply = Reply.RPL_OK;
-                }
             }
         }
         return responseReply;
@@ -366,12 +497,15 @@ public class DB {
     public Reply register(Connection connection) {
         Reply responseReply = null;        
         
-        if (connectionList.size() >= Math.min(Math.max(
-                Constants.MIN_LIMIT,  maxConnectionListSize.get()),
-                Constants.HARD_LIMIT)) {
+        if (connectionSet.size() >= getLimit(maxConnectionListSize)) {
             responseReply = Reply.ERR_FILEERROR;
         } else {
-            if (connectionList.addIfAbsent(connection)) {
+            if (connectionSet.add(connection)) {
+                IrcMemoryBudget memoryBudget = Globals.memoryBudget.get();
+                memoryBudget.reserve(Category.CONNECTION, 
+                        connection.getMemorySize());
+                memoryBudget.reserve(Category.QUEUE, 
+                        connection.getQueueMemorySize());
                 responseReply = Reply.RPL_OK;
             } else {
                 responseReply = Reply.ERR_NOTOK;
@@ -391,8 +525,7 @@ public class DB {
      */            
     public Reply unRegister(User user) {
         Reply responseReply = null;
-        String key = user.getNickname().toLowerCase(Locale.ENGLISH);
-        responseReply = unRegisterUser(key);
+        responseReply = unRegisterUser(user.getNicknameKey());
         return responseReply;
     }
 
@@ -415,6 +548,8 @@ public class DB {
                 if (user == Globals.anonymousUser.get()) {
                     responseReply = Reply.ERR_NOTOK;
                 } else if (userMap.remove(key) != null) {
+                    Globals.memoryBudget.get().release(Category.TALKER, 
+                            Constants.TALKER_MEMORY_SIZE);
                     responseReply = Reply.RPL_OK;
                 } else {
                     responseReply = Reply.ERR_NOTOK;
@@ -435,13 +570,17 @@ public class DB {
      */            
     public Reply unRegister(IrcChannel channel) {
         Reply responseReply = null;
-        String key = channel.getNickname().toLowerCase(Locale.ENGLISH);
+        String key = channel.getNicknameKey();
         if (channel instanceof MonitorIrcChannel) {
             responseReply = Reply.RPL_OK;
         } else if (channelMap.containsKey(key)) {
             synchronized (channel) {
                 if (channel.isUserSetEmpty()) {
-                    channelMap.remove(key);
+                    if (channelMap.remove(key) != null) {
+                        Globals.memoryBudget.get().release(
+                                Category.CHANNEL, 
+                                Constants.CHANNEL_MEMORY_SIZE);
+                    }
                     responseReply = Reply.RPL_OK;
                 } else {
                     responseReply = Reply.ERR_NOTOK;
@@ -463,14 +602,13 @@ public class DB {
      */            
     public Reply unRegister(Service service) {
         Reply responseReply = null;
-        String key = service.getNickname().toLowerCase(Locale.ENGLISH);
-        synchronized (service) {
-            synchronized (serviceMap) {
-                if (serviceMap.remove(key) != null){
-                    responseReply = Reply.RPL_OK;
-                } else {
-                    responseReply = Reply.ERR_NOTOK;
-                }
+        synchronized (serviceMap) {
+            if (serviceMap.remove(service.getNicknameKey()) != null){
+                Globals.memoryBudget.get().release(Category.TALKER, 
+                        Constants.TALKER_MEMORY_SIZE);
+                responseReply = Reply.RPL_OK;
+            } else {
+                responseReply = Reply.ERR_NOTOK;
             }
         }
         return responseReply;
@@ -491,13 +629,13 @@ public class DB {
         if (ircServer == Globals.anonymousIrcServer.get()) {
             responseReply = Reply.ERR_NOTOK;
         } else {
-            synchronized (ircServer) {
-                synchronized (ircServerMap) {
-                    if (ircServerMap.remove(key) != null){
-                        responseReply = Reply.RPL_OK;
-                    } else {
-                        responseReply = Reply.ERR_NOTOK;
-                    }
+            synchronized (ircServerMap) {
+                if (ircServerMap.remove(key) != null){
+                    Globals.memoryBudget.get().release(Category.TALKER, 
+                            Constants.TALKER_MEMORY_SIZE);
+                    responseReply = Reply.RPL_OK;
+                } else {
+                    responseReply = Reply.ERR_NOTOK;
                 }
             }
         }
@@ -506,6 +644,8 @@ public class DB {
 
     /** 
      * Метод, удаляющий информацию о соединении IRC из списка. 
+     * Непереданные сообщения выходной очереди соединения удаляются,
+     * таймеры соединения отменяются.
      * @param connection соединение IRC.
      * @return {@link Reply#RPL_OK} признак успеха выполнения 
      * метода, {@link Reply#ERR_NOTOK} такого объекта в списке
@@ -515,7 +655,14 @@ public class DB {
         Reply response = null;
         if (connection == Globals.nullConnection.get()) {
             response =  Reply.RPL_OK;
-        } else if (connectionList.remove(connection) == true) {
+        } else if (connectionSet.remove(connection) == true) {
+            IrcMemoryBudget memoryBudget = Globals.memoryBudget.get();
+            memoryBudget.release(Category.CONNECTION, 
+                    connection.getMemorySize());
+            memoryBudget.release(Category.QUEUE, 
+                    connection.getQueueMemorySize());
+            connection.dropOutputQueue();
+            connection.cancelTimers();
             response = Reply.RPL_OK;
         } else {
             response = Reply.ERR_NOTOK;
@@ -529,7 +676,8 @@ public class DB {
      * @return true если этот объект находится в массиве.
      */
     public boolean isRegistered(User user) {
-        return userMap.containsValue(user);
+        return user != null 
+                && userMap.get(user.getNicknameKey()) == user;
     }
 
     /**
@@ -538,8 +686,12 @@ public class DB {
      * @return true если этот объект находится в массиве.
      */
     public boolean isRegistered(IrcServer ircServer) {
+        if (ircServer == null) {
+            return false;
+        }
         synchronized (ircServerMap) {
-            return ircServerMap.containsValue(ircServer);
+            return ircServerMap.get(ircServer.getHostname().toLowerCase(
+                    Locale.ENGLISH)) == ircServer;
         }
     }
 
@@ -549,8 +701,11 @@ public class DB {
      * @return true если этот объект находится в массиве.
      */
     public boolean isRegistered(Service service) {
+        if (service == null) {
+            return false;
+        }
         synchronized (serviceMap) {
-            return serviceMap.containsValue(service);
+            return serviceMap.get(service.getNicknameKey()) == service;
         }
     }
 
@@ -560,7 +715,8 @@ public class DB {
      * @return true если этот объект находится в массиве.
      */
     public boolean isRegistered(IrcChannel channel) {
-        return channelMap.containsValue(channel);
+        return channel != null 
+                && channelMap.get(channel.getNicknameKey()) == channel;
     }
 
     /**
@@ -573,7 +729,7 @@ public class DB {
         if (connection == Globals.nullConnection.get()) {
             result =  true;
         } else {
-            result = connectionList.contains(connection);
+            result = connectionSet.contains(connection);
         }
         return result;
     }
@@ -600,8 +756,7 @@ public class DB {
     public LinkedHashSet<IrcServer> getIrcServerSet() {
         LinkedHashSet<IrcServer> ircServerSet = null;
         synchronized (ircServerMap) {
-            ircServerSet = 
-                    new LinkedHashSet<IrcServer>(ircServerMap.values());
+            ircServerSet = new LinkedHashSet<IrcServer>(ircServerMap.values());
         }
         ircServerSet.remove(Globals.anonymousIrcServer.get());
         return ircServerSet;
@@ -615,9 +770,9 @@ public class DB {
      * псевдосервера {@link Globals#anonymousIrcServer}. 
      */
     public LinkedHashSet<String> getIrcServernameSet() {
-        LinkedList<IrcServer> elementList = new LinkedList<IrcServer>();
+        LinkedList<IrcServer> elementList = null;
         synchronized (ircServerMap) {
-            elementList.addAll(ircServerMap.values());
+            elementList = new LinkedList<IrcServer>(ircServerMap.values());
         }
         elementList.remove(Globals.anonymousIrcServer.get());
         LinkedHashSet<String> nicknameSet = new LinkedHashSet<String>();
@@ -641,11 +796,12 @@ public class DB {
     }
 
     /**
-     * Получение множества каналов IRC из массива.
+     * Получение множества каналов IRC из массива. Каналы упорядочены
+     * по именам, приведенным к нижнему регистру.
      * @return LinkedHashSet<IrcServer> все каналы IRC. 
      */
     public LinkedHashSet<IrcChannel> getChannelSet() {
-         return new LinkedHashSet<IrcChannel>(channelMap.values());
+         return new LinkedHashSet<IrcChannel>(sortedMap(channelMap).values());
     }
 
     /**
@@ -655,15 +811,15 @@ public class DB {
      */
     public LinkedHashSet<String> getChannelNicknameSet() {
         LinkedHashSet<String> nicknameSet = new LinkedHashSet<String>();
-        for (IrcChannel element : channelMap.values()) {
+        for (IrcChannel element : sortedMap(channelMap).values()) {
             nicknameSet.add(element.getNickname());
         }
         return nicknameSet;
     }
 
     /**
-     * Получение итератора канала IRC для массива,
-     * {@link Globals#anonymousUser}.
+     * Получение итератора канала IRC для массива без копирования. 
+     * Порядок обхода не определен.
      * @return Iterator<IrcChannel> 
      */
     public Iterator<IrcChannel> getChannelSetIterator() {
@@ -689,6 +845,14 @@ public class DB {
         return channelMap.keySet().iterator();
     }
     
+    /**
+     * Получение размера массива каналов IRC.
+     * @return размер массива.
+     */
+    public int getChannelMapSize() {
+        return channelMap.size();
+    }
+    
     /**
      * Получение обычного клиента IRC из массива, за исключением 
      * служебного псевдопользователя {@link Globals#anonymousUser}.
@@ -712,7 +876,7 @@ public class DB {
      */
     public LinkedHashSet<User> getUserSet() {
         LinkedHashSet<User> userSet = 
-                new LinkedHashSet<User>(userMap.values());
+                new LinkedHashSet<User>(sortedMap(userMap).values());
         return userSet;
     }
 
@@ -723,7 +887,7 @@ public class DB {
      */
     public LinkedList<User> getUserList() {
         LinkedList<User> userList = 
-                new LinkedList<User>(userMap.values());
+                new LinkedList<User>(sortedMap(userMap).values());
         return userList;
     }
 
@@ -734,7 +898,7 @@ public class DB {
      */
     public LinkedHashSet<String> getUserNicknameSet() {
         LinkedList<User> elementList = 
-                new LinkedList<User>(userMap.values());
+                new LinkedList<User>(sortedMap(userMap).values());
         LinkedHashSet<String> nicknameSet = new LinkedHashSet<String>();
         for (User element : elementList) {
             nicknameSet.add(element.getNickname());
@@ -743,7 +907,8 @@ public class DB {
     }
     
     /**
-     * Получение итератора пользователей IRC для массива.
+     * Получение итератора пользователей IRC для массива без 
+     * копирования. Порядок обхода не определен. 
      * @return Iterator<User> 
      */
     public Iterator<User> getUserSetIterator() {
@@ -808,9 +973,9 @@ public class DB {
      * IRC, находящиеся в массиве. 
      */
     public LinkedHashSet<String> getServiceNameSet() {
-        LinkedList<Service> elementList = new LinkedList<Service>();
+        LinkedList<Service> elementList = null;
         synchronized (serviceMap) {
-            elementList.addAll(serviceMap.values());
+            elementList = new LinkedList<Service>(serviceMap.values());
         }
         LinkedHashSet<String> nicknameSet = new LinkedHashSet<String>();
         for (Service element : elementList) {
@@ -826,7 +991,7 @@ public class DB {
      * @return Iterator<List<Connection>> 
      */
     public Iterator<Connection> getConnectionListIterator() {
-        return connectionList.iterator();
+        return connectionSet.iterator();
     }
     
     /**
@@ -834,7 +999,7 @@ public class DB {
      * @return размер массива.
      */
     public int getConnectionListSize() {
-        return connectionList.size();
+        return connectionSet.size();
     }
     
     /**
@@ -843,7 +1008,7 @@ public class DB {
      * IRC.
      */
     public List<Connection> getConnectionList() {
-        return new LinkedList<Connection>(connectionList);
+        return new LinkedList<Connection>(connectionSet);
     }
 
 
@@ -882,11 +1047,12 @@ public class DB {
     }
 
     /**
-     * Очистка массива историй никнэймов.
+     * Очистка массива историй никнэймов. Объем памяти историй 
+     * освобождается в бюджете памяти.
      */
     public void dropHistory() {
-        nicknameHistoryMap = 
-                new LinkedHashMap <String, ArrayList<DriedUser>>();
+        nicknameHistoryMap = createNicknameHistoryMap();
+        Globals.memoryBudget.get().reset(Category.HISTORY);
     }
     
     /**
@@ -905,25 +1071,27 @@ public class DB {
      * о клиентах-серверах IRC;</LI>
      * <LI> {@link #nicknameHistoryMap} ассоциативный массив, хранящий  
      * истории никнэймов.</LI>
-     * <LI> {@link #connectionList} список, хранящий истории 
-     * никнэймов.</LI>
+     * <LI> {@link #connectionSet} множество, хранящее данные о 
+     * соединениях.</LI>
      * </UL>
+     * Бюджет памяти {@link Globals#memoryBudget} сбрасывается.
      */
     public void dropAll() {
         ircTalkerMap = new LinkedHashMap<String, IrcTalker>();
 
-        userMap = new ConcurrentSkipListMap<String, User>();
+        userMap = new ConcurrentHashMap<String, User>();
 
-        channelMap = new ConcurrentSkipListMap <String, IrcChannel>();
+        channelMap = new ConcurrentHashMap<String, IrcChannel>();
 
         serviceMap = new LinkedHashMap<String, Service>();
 
         ircServerMap = new LinkedHashMap<String, IrcServer>();
 
-        nicknameHistoryMap = 
-                new LinkedHashMap <String, ArrayList<DriedUser>>();
+        nicknameHistoryMap = createNicknameHistoryMap();
+        
+        connectionSet = ConcurrentHashMap.<Connection>newKeySet();
         
-        connectionList = new CopyOnWriteArrayList <Connection>();
+        Globals.memoryBudget.get().reset();
     }
 
 
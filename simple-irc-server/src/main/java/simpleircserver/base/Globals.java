@@ -26,13 +26,27 @@ import java.util.logging.*;
 
 import simpleircserver.Server;
 import simpleircserver.channel.MonitorIrcChannel;
+import simpleircserver.config.IrcConnectionBalancing;
+import simpleircserver.config.IrcIoEngine;
+import simpleircserver.config.IrcSendQueuePolicy;
 import simpleircserver.config.IrcTranscriptConfig;
 import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionTimer;
 import simpleircserver.connection.NullConnection;
+import simpleircserver.processor.InputQueueProcessor;
 import simpleircserver.processor.IrcServerProcessor;
+import simpleircserver.talker.IrcTalker;
 import simpleircserver.talker.server.IrcServer;
 import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcLatencyTracer;
+import simpleircserver.tools.IrcLoadShedder;
+import simpleircserver.tools.IrcMemoryBudget;
+import simpleircserver.tools.IrcMetrics;
+import simpleircserver.tools.IrcNameResolver;
+import simpleircserver.tools.IrcTimingWheel;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.*;
 import java.net.*;
 import java.nio.charset.*;
@@ -43,6 +57,17 @@ import java.nio.charset.*;
  *
  * @version 0.5.2 2012-03-29
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Shared reverse-DNS resolver was added.
+ * @version 0.5.4 2015-11-27 Parameters of the accept rate limiting were added.
+ * @version 0.5.4 2015-11-27 Memory budget was added.
+ * @version 0.5.4 2015-11-27 Output queue limit in bytes and slow consumer policy.
+ * @version 0.5.4 2015-11-27 Timing wheel of the connection timers and registration timeout.
+ * @version 0.5.4 2015-11-27 Graded load shedding of commands.
+ * @version 0.5.4 2015-11-27 Queues of the closing connections and clients.
+ * @version 0.5.4 2015-11-27 Metrics registry and port of the metrics endpoint.
+ * @version 0.5.4 2015-11-27 Latency breakdown of the message processing stages.
+ * @version 0.5.4 2015-11-27 Running input queue processor is available to the network processors.
+ * @version 0.5.4 2015-11-27 Set of the overloaded processors is safe for concurrent iteration.
  * @author  Nikolay Kirdin
  */
 public interface Globals {
@@ -127,6 +152,51 @@ public interface Globals {
     AtomicReference<String> motdFilename  = 
             new AtomicReference<String>(Constants.MOTD_FILE_PATH);
 
+    /** Максимальное количество клиентов сервера по умолчанию. */
+    AtomicInteger maxServerClients = 
+            new AtomicInteger(Constants.MAX_SERVER_CLIENTS);
+
+    /** Максимальное количество каналов по умолчанию. */
+    AtomicInteger maxChannelNumber = 
+            new AtomicInteger(Constants.MAX_CHANNEL_NUMBER);
+
+    /** Объект, определяющий доменные имена клиентов. */
+    AtomicReference<IrcNameResolver> nameResolver = 
+            new AtomicReference<IrcNameResolver>(new IrcNameResolver());
+
+    /** 
+     * Бюджет памяти, ограничивающий создание соединений, клиентов и 
+     * каналов. 
+     */
+    AtomicReference<IrcMemoryBudget> memoryBudget = 
+            new AtomicReference<IrcMemoryBudget>(new IrcMemoryBudget());
+
+    /** 
+     * Максимальное количество соединений, принимаемых за один цикл 
+     * без паузы. 
+     */
+    AtomicInteger acceptBatchSize = 
+            new AtomicInteger(Constants.ACCEPT_BATCH_SIZE);
+
+    /** Допустимая пачка новых соединений с одного IP-адреса. */
+    AtomicInteger acceptAddressBurst = 
+            new AtomicInteger(Constants.ACCEPT_ADDRESS_BURST);
+
+    /** 
+     * Средний период (ms) между новыми соединениями с одного 
+     * IP-адреса. 
+     */
+    AtomicLong acceptAddressPeriod = 
+            new AtomicLong(Constants.ACCEPT_ADDRESS_PERIOD);
+
+    /** Допустимая пачка новых соединений из одной сети. */
+    AtomicInteger acceptNetworkBurst = 
+            new AtomicInteger(Constants.ACCEPT_NETWORK_BURST);
+
+    /** Средний период (ms) между новыми соединениями из одной сети. */
+    AtomicLong acceptNetworkPeriod = 
+            new AtomicLong(Constants.ACCEPT_NETWORK_PERIOD);
+
     /** IP-адрес интерфеса по умолчанию. */
     AtomicReference<InetAddress> serverInetAddress = 
             new AtomicReference<InetAddress>();
@@ -135,6 +205,22 @@ public interface Globals {
     AtomicInteger serverPortNumber = 
             new AtomicInteger(Constants.SERVER_PORT_NUMBER);
     
+    /** 
+     * Номер порта HTTP-сервера метрик по умолчанию (0 - HTTP-сервер не 
+     * запускается). 
+     */
+    AtomicInteger metricsPort = 
+            new AtomicInteger(Constants.METRICS_PORT);
+    
+    /** Реестр метрик сервера. */
+    AtomicReference<IrcMetrics> metrics = 
+            new AtomicReference<IrcMetrics>(new IrcMetrics());
+    
+    /** Объект, учитывающий длительность этапов обработки сообщений. */
+    AtomicReference<IrcLatencyTracer> latencyTracer = 
+            new AtomicReference<IrcLatencyTracer>(
+            new IrcLatencyTracer(Constants.TRACE_SAMPLE_RATE));
+    
     /** Объект класса {@link ServerSocket} для данного сервера. */
     AtomicReference<ServerSocket> serverSocket = 
             new AtomicReference<ServerSocket>();
@@ -151,16 +237,85 @@ public interface Globals {
             new AtomicReference<Charset>(
                     Charset.forName(Constants.LISTENER_CHARSET));
             
+    /** Способ обслуживания сетевых соединений по умолчанию. */
+    AtomicReference<IrcIoEngine> ioEngine = 
+            new AtomicReference<IrcIoEngine>(
+                    IrcIoEngine.valueOf(Constants.IO_ENGINE));
+    
+    /** Количество процессоров ввода/вывода по умолчанию. */
+    AtomicInteger ioThreads = new AtomicInteger(Constants.IO_THREADS);
+    
+    /** 
+     * Способ распределения соединений между процессорами ввода/вывода 
+     * по умолчанию. 
+     */
+    AtomicReference<IrcConnectionBalancing> connectionBalancing = 
+            new AtomicReference<IrcConnectionBalancing>(
+                    IrcConnectionBalancing.valueOf(
+                            Constants.CONNECTION_BALANCING));
+    
     /** Минимальный средней период (ms) поступления  входящих сообщений
      * для соединения  ({@link Connection}). По умолчанию равен 
      * {@link Constants#MIN_AVG_READ_PERIOD}
      */       
     AtomicLong minAvgReadPeriod = new AtomicLong(Constants.MIN_AVG_READ_PERIOD);
     
+    /** 
+     * Максимальное количество сообщений, которые клиент может ввести 
+     * подряд. По умолчанию равно {@link Constants#INPUT_BURST}.
+     */
+    AtomicInteger inputBurst = new AtomicInteger(Constants.INPUT_BURST);
+    
+    /** Размер входной очереди соединения по умолчанию. */
+    AtomicInteger inputQueueSize = 
+            new AtomicInteger(Constants.INPUT_QUEUE_SIZE);
+    
+    /** 
+     * Максимальное количество сообщений одного соединения, 
+     * обрабатываемых за один цикл процессора по умолчанию.
+     */
+    AtomicInteger inputBudget = new AtomicInteger(Constants.INPUT_BUDGET);
+    
+    /** 
+     * Максимальная суммарная длина (байт) сообщений выходной очереди 
+     * соединения по умолчанию. 
+     */
+    AtomicLong sendQueueSize = new AtomicLong(Constants.SEND_QUEUE_SIZE);
+    
+    /** Действия при переполнении выходной очереди по умолчанию. */
+    AtomicReference<IrcSendQueuePolicy> sendQueuePolicy = 
+            new AtomicReference<IrcSendQueuePolicy>(
+                    IrcSendQueuePolicy.valueOf(
+                            Constants.SEND_QUEUE_POLICY));
+    
+    /** 
+     * Количество процессоров исполнения команд. Значение 0 означает, что 
+     * количество процессоров равно количеству доступных JVM процессоров.
+     */
+    AtomicInteger commandThreads = 
+            new AtomicInteger(Constants.COMMAND_THREADS);
+    
+    /** Количество блокировок каналов и клиентов. */
+    AtomicInteger commandLockStripes = 
+            new AtomicInteger(Constants.COMMAND_LOCK_STRIPES);
+    
     /** Минимальный период передачи сообщения IRC PING (ms). */
     AtomicLong pingSendingPeriod = 
             new AtomicLong(Constants.PING_SENDING_PERIOD);
     
+    /** Максимальная длительность (ms) регистрации клиента. */
+    AtomicLong registrationTimeout = 
+            new AtomicLong(Constants.REGISTRATION_TIMEOUT);
+    
+    /** 
+     * Колесо таймеров соединений (передача сообщений IRC PING, 
+     * ожидание ответа на них, ожидание регистрации). 
+     */
+    AtomicReference<IrcTimingWheel<ConnectionTimer>> connectionTimers = 
+            new AtomicReference<IrcTimingWheel<ConnectionTimer>>(
+            new IrcTimingWheel<ConnectionTimer>(
+            Constants.TIMER_TICK_DURATION, System.currentTimeMillis()));
+    
     /** Время по умолчанию для таймаутов (ms). */
     AtomicLong sleepTO = new AtomicLong(Constants.SLEEP_TO);
         
@@ -176,6 +331,14 @@ public interface Globals {
     /**Репозитарий ({@link DB}).*/
     AtomicReference<DB> db = new AtomicReference<DB>();
     
+    /** 
+     * Работающий процессор {@link InputQueueProcessor}, которому 
+     * сетевые процессоры передают соединения с поступившими 
+     * сообщениями. 
+     */
+    AtomicReference<InputQueueProcessor> inputQueueProcessor = 
+            new AtomicReference<InputQueueProcessor>();
+    
     /** Время старта процесса {@link Server#run}. */
     AtomicLong serverStartTime = new AtomicLong();
 
@@ -203,8 +366,46 @@ public interface Globals {
      * состояние перегруженности одного из программных процессоров. 
      */
     AtomicReference<Set<IrcServerProcessor>> ircServerProcessorSet = 
-            new AtomicReference<Set<IrcServerProcessor>>(new 
-                    HashSet<IrcServerProcessor>());
+            new AtomicReference<Set<IrcServerProcessor>>(
+                    ConcurrentHashMap.<IrcServerProcessor>newKeySet());
+    
+    /** 
+     * Ограничение исполнения команд и приема соединений в зависимости 
+     * от загруженности сервера. 
+     */
+    AtomicReference<IrcLoadShedder> loadShedder = 
+            new AtomicReference<IrcLoadShedder>(new IrcLoadShedder(
+            Constants.LOAD_SHARE_BURST, Constants.LOAD_SHARE_PERIOD));
+    
+    /** 
+     * Очередь соединений, в выходных очередях которых есть сообщения, 
+     * ожидающие передачи клиенту. Каждое соединение помещается в эту 
+     * очередь не более одного раза. 
+     */
+    AtomicReference<Queue<Connection>> outputReadyQueue = 
+            new AtomicReference<Queue<Connection>>(new 
+                    ConcurrentLinkedQueue<Connection>());
+    
+    /** 
+     * Очередь соединений, которые перешли в состояние 
+     * {@link simpleircserver.connection.ConnectionState#CLOSE} или 
+     * {@link simpleircserver.connection.ConnectionState#BROKEN} и 
+     * ожидают завершающих действий. 
+     */
+    AtomicReference<Queue<Connection>> connectionCleanupQueue = 
+            new AtomicReference<Queue<Connection>>(new 
+                    ConcurrentLinkedQueue<Connection>());
+    
+    /** 
+     * Очередь клиентов, которые перешли в состояние 
+     * {@link simpleircserver.talker.IrcTalkerState#CLOSE} или 
+     * {@link simpleircserver.talker.IrcTalkerState#BROKEN} и ожидают 
+     * завершающих действий. 
+     */
+    AtomicReference<Queue<IrcTalker>> ircTalkerCleanupQueue = 
+            new AtomicReference<Queue<IrcTalker>>(new 
+                    ConcurrentLinkedQueue<IrcTalker>());
+    
     /** 
      * Объект-хранилище параметров файла-протокола клиентских сообщений. 
      */
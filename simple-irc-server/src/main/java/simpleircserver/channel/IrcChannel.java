@@ -36,6 +36,7 @@ import simpleircserver.talker.user.User;
 import simpleircserver.talker.user.UserMode;
 import simpleircserver.tools.IrcAvgMeter;
 import simpleircserver.tools.IrcMatcher;
+import simpleircserver.tools.IrcMemoryBudget;
 
 /**
  * Класс, который хранит информацию о канале IRC.
@@ -45,12 +46,16 @@ import simpleircserver.tools.IrcMatcher;
  * {@link Constants#MAX_CHANNEL_NUMBER};
  * {@link Constants#MIN_LIMIT};
  * {@link Constants#NUMBER_RATE_POINTS};
- * {@link Constants#MIN_FREE_MEMORY};
+ * {@link Constants#CHANNEL_MEMORY_SIZE};
  * {@link Constants#MAX_CHANNEL_MEMBER};
- * {@link Globals#anonymousUser}.
+ * {@link Globals#anonymousUser};
+ * {@link Globals#memoryBudget}.
  *
  * @version 0.5.2 2012-03-29
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-26 One message object is shared by all members of the channel.
+ * @version 0.5.4 2015-11-27 Case-folded channel name is kept for use as a registry key.
+ * @version 0.5.4 2015-11-27 Creation is limited by the memory budget instead of free memory and GC.
  * @author  Nikolay Kirdin
  * 
  */
@@ -114,6 +119,12 @@ public class IrcChannel implements Comparable, Recipient {
     /** Имя канала. */
     protected String nickname;     
     
+    /** 
+     * Имя канала, символы которого приведены к нижнему регистру. 
+     * Используется в качестве ключа в репозитарии.
+     */
+    protected String nicknameKey;     
+    
     /** Ключ (пароль) канала. */
     protected String channelKey = null;
             
@@ -222,6 +233,7 @@ public class IrcChannel implements Comparable, Recipient {
      */
     protected IrcChannel(String nickname) {
         this.nickname = nickname;
+        this.nicknameKey = nickname.toLowerCase(Locale.ENGLISH);
         avgRate = new IrcAvgMeter(Constants.NUMBER_RATE_POINTS);
         avgRate.setValue(System.currentTimeMillis() - 60000);
         avgRate.setValue(System.currentTimeMillis());
@@ -237,26 +249,20 @@ public class IrcChannel implements Comparable, Recipient {
         this.topic = topic;
     }
     
-    /** Создатель канала. Проверяется объем свободной памяти, если этот
-     * объем меньше {@link Constants#MIN_FREE_MEMORY}, то будет вызван 
-     * сборщик мусора. Если после прцедуры сборки мусора, памяти будет 
-     * недостаточно, то объект создаваться не будет.
+    /** Создатель канала. Объект будет создан, если это допускает 
+     * бюджет памяти {@link Globals#memoryBudget}. Сборщик мусора не 
+     * вызывается.
      * @param nickname имя канала.
      * @param topic топик канала.
      * @return новый объект класса IrcChannel или null, если нарушено 
-     * ограничение по памяти.
+     * ограничение бюджета памяти.
      */
     public static IrcChannel create(String nickname, String topic) {
         IrcChannel result = null;
-        long freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory < Constants.MIN_FREE_MEMORY) {
-            System.gc();
-        }
-        freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory >= Constants.MIN_FREE_MEMORY) {
+        if (Globals.memoryBudget.get().isAdmissible(
+                IrcMemoryBudget.Category.CHANNEL, 
+                Constants.CHANNEL_MEMORY_SIZE)) {
             result = new IrcChannel(nickname, topic);
-        } else {
-            result = null;
         }
         return result;
     }
@@ -344,6 +350,7 @@ public class IrcChannel implements Comparable, Recipient {
      */
     public synchronized void setNickname(String nickname) {
         this.nickname = nickname;
+        this.nicknameKey = nickname.toLowerCase(Locale.ENGLISH);
     }
 
     /** 
@@ -354,6 +361,15 @@ public class IrcChannel implements Comparable, Recipient {
         return nickname;
     }
 
+    /** 
+     * Получение имени канала, символы которого приведены к нижнему 
+     * регистру.
+     * @return имя канала в нижнем регистре. 
+     */
+    public synchronized String getNicknameKey() {
+        return nicknameKey;
+    }
+
     /** 
      * Задание топика канала.
      * @param topic топик канала. 
@@ -1004,6 +1020,11 @@ public class IrcChannel implements Comparable, Recipient {
      * анонимных каналов {@link ChannelMode#a} префикс будет изменен на
      * никнэйм anonymous.
      * 
+     * <P>Для всех членов канала создается один объект 
+     * {@link IrcCommandReport}, адресатом которого является канал. 
+     * Ссылка на этот объект помещается в выходные очереди членов канала,
+     * сообщение кодируется один раз для каждой используемой кодировки.
+     * 
      * @param client отправитель сообщения.
      * @param message сообщение.
      * @return true если сообщение было успешно отправлено в 
@@ -1030,13 +1051,14 @@ public class IrcChannel implements Comparable, Recipient {
             message = message.replaceFirst(":\\S+", ":" + nick);
         }
 
+        IrcCommandReport ircCommandReport = 
+                new IrcCommandReport(message, this, client);
+
         for (Iterator<User> userIterator = getUserSetIterator();
                 userIterator.hasNext();) {
             User recipient = userIterator.next();
             if (recipient != client) {
-                recipient.offerToOutputQueue(
-                        new IrcCommandReport(message, 
-                                recipient, client));
+                recipient.offerToOutputQueue(ircCommandReport);
             }
         } 
         result = true;
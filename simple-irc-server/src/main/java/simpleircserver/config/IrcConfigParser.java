@@ -61,12 +61,20 @@ import simpleircserver.parser.commands.IrcParamRegex;
  *                   debuglevel CDATA 
  *                   timezone CDATA
  *                   motd CDATA
+ *                   maxclients CDATA
+ *                   maxchannels CDATA
+ *                   metricsport CDATA
  *               &gt;
  *               &lt;!ELEMENT INTERFACE (#PCDATA)&gt;
  *               &lt;!ATTLIST INTERFACE
  *                  iface CDATA 
  *                  port CDATA
  *                  charset CDATA
+ *                  engine CDATA
+ *                  iothreads CDATA
+ *                  balancing CDATA
+ *                  inputqueue CDATA
+ *                  inputbudget CDATA
  *               &gt;
  *               &lt;!ELEMENT TRANSCRIP (#PCDATA)&gt;
  *               &lt;!ATTLIST TRANSCRIP 
@@ -132,6 +140,26 @@ import simpleircserver.parser.commands.IrcParamRegex;
  *              <li>"motd", с помощью этого атрибута указывается 
  *              путь к файлу MOTD. По умолчанию будет использован файл 
  *              {@link Constants#MOTD_FILE_PATH} в текущем каталоге;</li>
+ *              <li>"maxclients", с помощью этого атрибута задается 
+ *              максимальное количество клиентов и соединений сервера. 
+ *              Атрибут должен быть целым положительным десятичным 
+ *              числом. По умолчанию используется значение 
+ *              {@link Globals#maxServerClients};</li>
+ *              <li>"maxchannels", с помощью этого атрибута задается 
+ *              максимальное количество каналов сервера. Атрибут должен 
+ *              быть целым положительным десятичным числом. По 
+ *              умолчанию используется значение 
+ *              {@link Globals#maxChannelNumber};</li>
+ *              <li>"metricsport", с помощью этого атрибута задается 
+ *              номер порта локального HTTP-сервера, который выдает 
+ *              метрики сервера в текстовом формате Prometheus по 
+ *              запросу "GET /metrics". HTTP-сервер принимает 
+ *              подключения только на адресе loopback-интерфейса. 
+ *              Атрибут должен быть целым десятичным числом в диапазоне 
+ *              {@link Constants#MIN_PORT_NUMBER} - 
+ *              {@link Constants#MAX_PORT_NUMBER}, значение 0 означает, 
+ *              что HTTP-сервер не запускается. По умолчанию 
+ *              используется значение {@link Globals#metricsPort}.</li>
  *          </ul>
  *      <li> Атрибуты элемента "INTERFACE":
  *          <ul> 
@@ -163,6 +191,57 @@ import simpleircserver.parser.commands.IrcParamRegex;
  *              по умолчанию в качестве кодировки интерфейса 
  *              используется кодировка {@link Globals#listenerCharset}.
  *              </li>
+ *              <li> "engine", с помощью этого атрибута задается способ 
+ *              обслуживания сетевых соединений. Допустимые значения 
+ *              определены в {@link IrcIoEngine}: 
+ *              <ul>
+ *                  <li> BLOCKING - блокирующий ввод/вывод;</li>
+ *                  <li> NIO - неблокирующий ввод/вывод с 
+ *                  использованием селектора.</li>
+ *              </ul> 
+ *              Регистр букв значения не учитывается. По умолчанию 
+ *              используется значение {@link Globals#ioEngine}.
+ *              </li>
+ *              <li> "iothreads", с помощью этого атрибута задается 
+ *              количество процессоров ввода/вывода, между которыми 
+ *              распределяются соединения при использовании 
+ *              неблокирующего ввода/вывода. Атрибут должен быть целым 
+ *              неотрицательным десятичным числом, значение 0 означает 
+ *              количество процессоров вычислительной системы. По 
+ *              умолчанию используется значение 
+ *              {@link Globals#ioThreads};</li>
+ *              <li> "balancing", с помощью этого атрибута задается 
+ *              способ распределения соединений между процессорами 
+ *              ввода/вывода. Допустимые значения определены в 
+ *              {@link IrcConnectionBalancing}: ROUND_ROBIN - 
+ *              циклический выбор, LEAST_LOADED - выбор процессора с 
+ *              наименьшим количеством соединений. По умолчанию 
+ *              используется значение {@link Globals#connectionBalancing}.
+ *              </li>
+ *              <li> "inputqueue", с помощью этого атрибута задается 
+ *              размер входной очереди соединения. Атрибут должен быть 
+ *              целым положительным десятичным числом. По умолчанию 
+ *              используется значение {@link Globals#inputQueueSize};</li>
+ *              <li> "inputbudget", с помощью этого атрибута задается 
+ *              максимальное количество сообщений одного соединения, 
+ *              которые считываются и исполняются за один цикл 
+ *              программного процессора. Атрибут должен быть целым 
+ *              положительным десятичным числом. По умолчанию 
+ *              используется значение {@link Globals#inputBudget};</li>
+ *              <li> "sendq", с помощью этого атрибута задается 
+ *              максимальная суммарная длина (байт) сообщений выходной 
+ *              очереди соединения. Атрибут должен быть целым 
+ *              положительным десятичным числом. По умолчанию 
+ *              используется значение {@link Globals#sendQueueSize};</li>
+ *              <li> "sendqpolicy", с помощью этого атрибута задаются 
+ *              действия при переполнении выходной очереди соединения. 
+ *              Допустимые значения определены в 
+ *              {@link IrcSendQueuePolicy}: DROP_OLDEST - удаление 
+ *              старейших сообщений, DROP_LOW_PRIORITY - удаление 
+ *              старейших сообщений других клиентов, DISCONNECT - 
+ *              закрытие соединения с сообщением "SendQ exceeded". По 
+ *              умолчанию используется значение 
+ *              {@link Globals#sendQueuePolicy}.</li>
  *          </ul>
  *      <li>Атрибуты элемента "TRANSCRIPT":
  *          <ul>
@@ -231,7 +310,8 @@ import simpleircserver.parser.commands.IrcParamRegex;
  *         &lt;/SERVER&gt;
  *         &lt;INTERFACE  
  *             port="6667" 
- *             charset="UTF-8"&gt;
+ *             charset="UTF-8"
+ *             engine="BLOCKING"&gt;
  *         &lt;/INTERFACE&gt;
  *         &lt;TRANSCRIPT 
  *             transcript="IrcServerTranscript.txt" 
@@ -250,6 +330,9 @@ import simpleircserver.parser.commands.IrcParamRegex;
  * 
  * @version 0.5.1 2012-03-27
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Attributes "maxclients" and "maxchannels" of the element "SERVER" were added.
+ * @version 0.5.4 2015-11-27 Attributes "sendq" and "sendqpolicy" of the element "INTERFACE" were added.
+ * @version 0.5.4 2015-11-27 Attribute "metricsport" of the element "SERVER" was added.
  * @author  Nikolay Kirdin
  *  
  */
@@ -432,14 +515,32 @@ public class IrcConfigParser {
                         + " DebugLevel: " + 
                         ircServerConfig.getDebugLevel()
                         + " MotdFile: " + 
-                        ircServerConfig.getMotdFilename());
+                        ircServerConfig.getMotdFilename() + ","
+                        + " MaxClients: " + 
+                        ircServerConfig.getMaxClients() + ","
+                        + " MaxChannels: " + 
+                        ircServerConfig.getMaxChannels() + ","
+                        + " MetricsPort: " + 
+                        ircServerConfig.getMetricsPort());
 
                 logger.log(Level.WARNING, "Configuration parameters " +
                         "for interface."
                         + " IP: " + ircInterfaceConfig.getInetAddress()
                         + ","
                         + " Port: " + ircInterfaceConfig.getPort() + ","
-                        + " Charset: " + ircInterfaceConfig.getCharset());
+                        + " Charset: " + ircInterfaceConfig.getCharset() + ","
+                        + " Engine: " + ircInterfaceConfig.getIoEngine() + ","
+                        + " IoThreads: " + ircInterfaceConfig.getIoThreads() + ","
+                        + " Balancing: " + 
+                        ircInterfaceConfig.getConnectionBalancing() + ","
+                        + " InputQueue: " + 
+                        ircInterfaceConfig.getInputQueueSize() + ","
+                        + " InputBudget: " + 
+                        ircInterfaceConfig.getInputBudget() + ","
+                        + " SendQ: " + 
+                        ircInterfaceConfig.getSendQueueSize() + ","
+                        + " SendQPolicy: " + 
+                        ircInterfaceConfig.getSendQueuePolicy());
 
                 logger.log(Level.WARNING, "Configuration parameters " +
                         "for users transcript. Filename: " + 
@@ -752,6 +853,18 @@ public class IrcConfigParser {
                 
         String motdAttribute = "motd";
         String motdAtt = null;
+        
+        String maxClientsAttribute = "maxclients";
+        String maxClientsAttString = null;
+        int maxClients = -1;
+        
+        String maxChannelsAttribute = "maxchannels";
+        String maxChannelsAttString = null;
+        int maxChannels = -1;
+        
+        String metricsPortAttribute = "metricsport";
+        String metricsPortAttString = null;
+        int metricsPort = -1;
                 
         while (!done) {
             line = xsr.getLocation().getLineNumber();
@@ -778,6 +891,12 @@ public class IrcConfigParser {
                         timezoneAttribute);
                 debugAtt = xsr.getAttributeValue(null, debugAttribute);
                 motdAtt = xsr.getAttributeValue(null, motdAttribute);
+                maxClientsAttString = xsr.getAttributeValue(null, 
+                        maxClientsAttribute);
+                maxChannelsAttString = xsr.getAttributeValue(null, 
+                        maxChannelsAttribute);
+                metricsPortAttString = xsr.getAttributeValue(null, 
+                        metricsPortAttribute);
                 
                 if (timezoneAttString != null) {
                     try {
@@ -849,6 +968,80 @@ public class IrcConfigParser {
                                 + e;
                     }
                 } 
+                
+                if (maxClientsAttString != null) {
+                    try {
+                        maxClients = Integer.parseInt(IrcCommandBase.check(
+                                maxClientsAttString, 
+                                IrcParamRegex.numberRegex));
+                        if (maxClients < 1) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                    catch (NumberFormatException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + " Column: " + 
+                                column + " Syntax error near attribute(s).";
+                    }
+                }
+                
+                if (maxChannelsAttString != null) {
+                    try {
+                        maxChannels = Integer.parseInt(IrcCommandBase.check(
+                                maxChannelsAttString, 
+                                IrcParamRegex.numberRegex));
+                        if (maxChannels < 1) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                    catch (NumberFormatException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + " Column: " + 
+                                column + " Syntax error near attribute(s).";
+                    }
+                }
+                
+                if (metricsPortAttString != null) {
+                    try {
+                        metricsPort = Integer.parseInt(IrcCommandBase.check(
+                                metricsPortAttString, 
+                                IrcParamRegex.numberRegex));
+                        if (metricsPort < Constants.MIN_PORT_NUMBER ||
+                                metricsPort > Constants.MAX_PORT_NUMBER) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                    catch (NumberFormatException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + " Column: " + 
+                                column + " Syntax error near attribute(s).";
+                    }
+                }
+                
                 if (!locError && ! error) {
                     if (timeZone == null) {
                         timeZone = TimeZone.getDefault();
@@ -859,12 +1052,24 @@ public class IrcConfigParser {
                     if (motdAtt == null) {
                     	motdAtt = Globals.motdFilename.get();
                     }
+                    if (maxClients < 0) {
+                        maxClients = Globals.maxServerClients.get();
+                    }
+                    if (maxChannels < 0) {
+                        maxChannels = Globals.maxChannelNumber.get();
+                    }
+                    if (metricsPort < 0) {
+                        metricsPort = Globals.metricsPort.get();
+                    }
                     
                     ircServerConfig = db.getIrcServerConfig();
                     synchronized (ircServerConfig) {
                         ircServerConfig.setTimeZone(timeZone);
                         ircServerConfig.setDebugLevel(debugLevel);
                         ircServerConfig.setMotdFilename(motdAtt);
+                        ircServerConfig.setMaxClients(maxClients);
+                        ircServerConfig.setMaxChannels(maxChannels);
+                        ircServerConfig.setMetricsPort(metricsPort);
                     }
                 }
 
@@ -917,6 +1122,34 @@ public class IrcConfigParser {
         String charsetAtt = null;
         Charset charset = null;
         
+        String engineAttribute = "engine";
+        String engineAttString = null;
+        IrcIoEngine ioEngine = null;
+        
+        String ioThreadsAttribute = "iothreads";
+        String ioThreadsAttString = null;
+        int ioThreads = -1;
+        
+        String balancingAttribute = "balancing";
+        String balancingAttString = null;
+        IrcConnectionBalancing connectionBalancing = null;
+        
+        String inputQueueAttribute = "inputqueue";
+        String inputQueueAttString = null;
+        int inputQueueSize = -1;
+        
+        String inputBudgetAttribute = "inputbudget";
+        String inputBudgetAttString = null;
+        int inputBudget = -1;
+        
+        String sendQueueAttribute = "sendq";
+        String sendQueueAttString = null;
+        long sendQueueSize = -1;
+        
+        String sendQueuePolicyAttribute = "sendqpolicy";
+        String sendQueuePolicyAttString = null;
+        IrcSendQueuePolicy sendQueuePolicy = null;
+        
         event = xsr.getEventType();
 
         while (!done) {
@@ -946,6 +1179,20 @@ public class IrcConfigParser {
                         portAttribute);
                 charsetAttString = xsr.getAttributeValue(null, 
                         charsetAttribute);
+                engineAttString = xsr.getAttributeValue(null, 
+                        engineAttribute);
+                ioThreadsAttString = xsr.getAttributeValue(null, 
+                        ioThreadsAttribute);
+                balancingAttString = xsr.getAttributeValue(null, 
+                        balancingAttribute);
+                inputQueueAttString = xsr.getAttributeValue(null, 
+                        inputQueueAttribute);
+                inputBudgetAttString = xsr.getAttributeValue(null, 
+                        inputBudgetAttribute);
+                sendQueueAttString = xsr.getAttributeValue(null, 
+                        sendQueueAttribute);
+                sendQueuePolicyAttString = xsr.getAttributeValue(null, 
+                        sendQueuePolicyAttribute);
                 
                 if (portAttString != null) {
                     try {
@@ -1034,6 +1281,216 @@ public class IrcConfigParser {
                     }
                 }
                 
+                if (engineAttString != null) {
+                    try {
+                        ioEngine = IrcIoEngine.valueOf(IrcCommandBase.check(
+                                engineAttString, IrcParamRegex.wordRegex
+                                ).toUpperCase(Locale.ENGLISH));
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s).";
+                    }
+                    catch (IndexOutOfBoundsException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Need more attribute(s).";
+                    }
+                    catch (IllegalArgumentException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                }
+                
+                if (ioThreadsAttString != null) {
+                    try {
+                        ioThreads = Integer.parseInt(IrcCommandBase.check(
+                                ioThreadsAttString, 
+                                IrcParamRegex.numberRegex));
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                    catch (IndexOutOfBoundsException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Need more attribute(s).";
+                    }
+                    catch (NumberFormatException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + " Column: " + 
+                                column + " Syntax error near attribute(s).";
+                    }
+                }
+                
+                if (balancingAttString != null) {
+                    try {
+                        connectionBalancing = IrcConnectionBalancing.valueOf(
+                                IrcCommandBase.check(balancingAttString, 
+                                IrcParamRegex.wordRegex
+                                ).toUpperCase(Locale.ENGLISH));
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s).";
+                    }
+                    catch (IndexOutOfBoundsException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Need more attribute(s).";
+                    }
+                    catch (IllegalArgumentException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                }
+                
+                if (inputQueueAttString != null) {
+                    try {
+                        inputQueueSize = Integer.parseInt(IrcCommandBase.check(
+                                inputQueueAttString, 
+                                IrcParamRegex.numberRegex));
+                        if (inputQueueSize < 1) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                    catch (IndexOutOfBoundsException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Need more attribute(s).";
+                    }
+                    catch (NumberFormatException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + " Column: " + 
+                                column + " Syntax error near attribute(s).";
+                    }
+                }
+                
+                if (inputBudgetAttString != null) {
+                    try {
+                        inputBudget = Integer.parseInt(IrcCommandBase.check(
+                                inputBudgetAttString, 
+                                IrcParamRegex.numberRegex));
+                        if (inputBudget < 1) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                    catch (IndexOutOfBoundsException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Need more attribute(s).";
+                    }
+                    catch (NumberFormatException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + " Column: " + 
+                                column + " Syntax error near attribute(s).";
+                    }
+                }
+                
+                if (sendQueueAttString != null) {
+                    try {
+                        sendQueueSize = Long.parseLong(IrcCommandBase.check(
+                                sendQueueAttString, 
+                                IrcParamRegex.numberRegex));
+                        if (sendQueueSize < 1) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                    catch (IndexOutOfBoundsException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Need more attribute(s).";
+                    }
+                    catch (NumberFormatException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + " Column: " + 
+                                column + " Syntax error near attribute(s).";
+                    }
+                }
+                
+                if (sendQueuePolicyAttString != null) {
+                    try {
+                        sendQueuePolicy = IrcSendQueuePolicy.valueOf(
+                                IrcCommandBase.check(sendQueuePolicyAttString, 
+                                IrcParamRegex.wordRegex
+                                ).toUpperCase(Locale.ENGLISH));
+                    } catch (IrcSyntaxException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s).";
+                    }
+                    catch (IndexOutOfBoundsException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Need more attribute(s).";
+                    }
+                    catch (IllegalArgumentException e) {
+                        locError = true;
+                        done = true;
+                        errorDescription = " Line: " + line + 
+                                " Column: " + column + 
+                                " Syntax error near attribute(s). " 
+                                + e;
+                    }
+                }
+                
                 if (ifaceAttString != null) {
                     try {
                         if (ifaceAttString.isEmpty()) {
@@ -1091,12 +1548,44 @@ public class IrcConfigParser {
                     if (charset == null) {
                         charset = Globals.listenerCharset.get();
                     }
+                    if (ioEngine == null) {
+                        ioEngine = Globals.ioEngine.get();
+                    }
+                    if (ioThreads < 0) {
+                        ioThreads = Globals.ioThreads.get();
+                    }
+                    if (connectionBalancing == null) {
+                        connectionBalancing = 
+                                Globals.connectionBalancing.get();
+                    }
+                    if (inputQueueSize < 0) {
+                        inputQueueSize = Globals.inputQueueSize.get();
+                    }
+                    if (inputBudget < 0) {
+                        inputBudget = Globals.inputBudget.get();
+                    }
+                    if (sendQueueSize < 0) {
+                        sendQueueSize = Globals.sendQueueSize.get();
+                    }
+                    if (sendQueuePolicy == null) {
+                        sendQueuePolicy = Globals.sendQueuePolicy.get();
+                    }
                     
                     ircInterfaceConfig = db.getIrcInterfaceConfig();
                     synchronized (ircInterfaceConfig) {
                         ircInterfaceConfig.setInetAddress(ifaceAddress);
                         ircInterfaceConfig.setPort(portNumber);
                         ircInterfaceConfig.setCharset(charset);
+                        ircInterfaceConfig.setIoEngine(ioEngine);
+                        ircInterfaceConfig.setIoThreads(ioThreads);
+                        ircInterfaceConfig.setConnectionBalancing(
+                                connectionBalancing);
+                        ircInterfaceConfig.setInputQueueSize(
+                                inputQueueSize);
+                        ircInterfaceConfig.setInputBudget(inputBudget);
+                        ircInterfaceConfig.setSendQueueSize(sendQueueSize);
+                        ircInterfaceConfig.setSendQueuePolicy(
+                                sendQueuePolicy);
                     }
                 }
 
@@ -0,0 +1,39 @@
+package simpleircserver.config;
+/*
+ * 
+ * IrcConnectionBalancing 
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License Version 3 along with this program.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+/**
+ * Enum, с помощью которого задается способ распределения новых 
+ * соединений между процессорами ввода/вывода.
+ * 
+ * @version 0.5.4 2015-11-22
+ * @author  Nikolay Kirdin 
+ */
+public enum IrcConnectionBalancing {
+    
+    /** Процессоры ввода/вывода выбираются циклически. */
+    ROUND_ROBIN,
+    
+    /** Выбирается процессор ввода/вывода с наименьшим количеством соединений. */
+    LEAST_LOADED
+}
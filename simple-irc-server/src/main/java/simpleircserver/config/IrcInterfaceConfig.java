@@ -27,11 +27,15 @@ import java.nio.charset.*;
 /**
  * Класс, служащий для хранения информации о параметрах сетевого 
  * интерфейса.
- * Хранится IP-адрес и номер порта интерфейса, и ожидаемая кодировка 
- * сообщений.  
+ * Хранится IP-адрес и номер порта интерфейса, ожидаемая кодировка 
+ * сообщений и способ обслуживания сетевых соединений.  
  *
  * @version 0.5 2012-02-11
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-20 Added selection of IO engine.
+ * @version 0.5.4 2015-11-22 Added number of IO loops and connection balancing.
+ * @version 0.5.4 2015-11-24 Added input queue size and input budget.
+ * @version 0.5.4 2015-11-27 Added output queue limit in bytes and slow consumer policy.
  * @author  Nikolay Kirdin
  */
 public class IrcInterfaceConfig {
@@ -44,6 +48,35 @@ public class IrcInterfaceConfig {
     
     /** Кодировка. */
     private Charset charset;
+    
+    /** Способ обслуживания сетевых соединений. */
+    private IrcIoEngine ioEngine = IrcIoEngine.BLOCKING;
+    
+    /** 
+     * Количество процессоров ввода/вывода (0 - по количеству 
+     * процессоров вычислительной системы). 
+     */
+    private int ioThreads;
+    
+    /** Способ распределения соединений между процессорами ввода/вывода. */
+    private IrcConnectionBalancing connectionBalancing = 
+            IrcConnectionBalancing.ROUND_ROBIN;
+    
+    /** Размер входной очереди соединения. */
+    private int inputQueueSize = 1;
+    
+    /** 
+     * Максимальное количество сообщений одного соединения, 
+     * обрабатываемых за один цикл процессора. 
+     */
+    private int inputBudget = 1;
+    
+    /** Максимальная суммарная длина (байт) сообщений выходной очереди. */
+    private long sendQueueSize = 1;
+    
+    /** Действия при переполнении выходной очереди соединения. */
+    private IrcSendQueuePolicy sendQueuePolicy = 
+            IrcSendQueuePolicy.DISCONNECT;
 
     /**
      * Конструктор.
@@ -106,4 +139,126 @@ public class IrcInterfaceConfig {
         this.charset = charset;
     }
     
+    /**
+     * Получение способа обслуживания сетевых соединений.
+     * @return способ обслуживания сетевых соединений.
+     */
+    public IrcIoEngine getIoEngine() {
+        return ioEngine;
+    }
+
+    /**
+     * Задание способа обслуживания сетевых соединений.
+     * @param ioEngine способ обслуживания сетевых соединений.
+     */
+    public void setIoEngine(IrcIoEngine ioEngine) {
+        this.ioEngine = ioEngine;
+    }
+    
+    /**
+     * Получение количества процессоров ввода/вывода.
+     * @return количество процессоров ввода/вывода (0 - по количеству 
+     * процессоров вычислительной системы).
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Задание количества процессоров ввода/вывода.
+     * @param ioThreads количество процессоров ввода/вывода (0 - по 
+     * количеству процессоров вычислительной системы).
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+    
+    /**
+     * Получение способа распределения соединений между процессорами 
+     * ввода/вывода.
+     * @return способ распределения соединений.
+     */
+    public IrcConnectionBalancing getConnectionBalancing() {
+        return connectionBalancing;
+    }
+
+    /**
+     * Задание способа распределения соединений между процессорами 
+     * ввода/вывода.
+     * @param connectionBalancing способ распределения соединений.
+     */
+    public void setConnectionBalancing(
+            IrcConnectionBalancing connectionBalancing) {
+        this.connectionBalancing = connectionBalancing;
+    }
+    
+    /**
+     * Получение размера входной очереди соединения.
+     * @return размер входной очереди соединения.
+     */
+    public int getInputQueueSize() {
+        return inputQueueSize;
+    }
+
+    /**
+     * Задание размера входной очереди соединения.
+     * @param inputQueueSize размер входной очереди соединения.
+     */
+    public void setInputQueueSize(int inputQueueSize) {
+        this.inputQueueSize = inputQueueSize;
+    }
+    
+    /**
+     * Получение максимального количества сообщений одного соединения, 
+     * обрабатываемых за один цикл процессора.
+     * @return максимальное количество сообщений.
+     */
+    public int getInputBudget() {
+        return inputBudget;
+    }
+
+    /**
+     * Задание максимального количества сообщений одного соединения, 
+     * обрабатываемых за один цикл процессора.
+     * @param inputBudget максимальное количество сообщений.
+     */
+    public void setInputBudget(int inputBudget) {
+        this.inputBudget = inputBudget;
+    }
+    
+    /**
+     * Получение максимальной суммарной длины сообщений выходной очереди 
+     * соединения.
+     * @return максимальная суммарная длина (байт) сообщений.
+     */
+    public long getSendQueueSize() {
+        return sendQueueSize;
+    }
+
+    /**
+     * Задание максимальной суммарной длины сообщений выходной очереди 
+     * соединения.
+     * @param sendQueueSize максимальная суммарная длина (байт) 
+     * сообщений.
+     */
+    public void setSendQueueSize(long sendQueueSize) {
+        this.sendQueueSize = sendQueueSize;
+    }
+    
+    /**
+     * Получение действий при переполнении выходной очереди соединения.
+     * @return действия при переполнении выходной очереди.
+     */
+    public IrcSendQueuePolicy getSendQueuePolicy() {
+        return sendQueuePolicy;
+    }
+
+    /**
+     * Задание действий при переполнении выходной очереди соединения.
+     * @param sendQueuePolicy действия при переполнении выходной очереди.
+     */
+    public void setSendQueuePolicy(IrcSendQueuePolicy sendQueuePolicy) {
+        this.sendQueuePolicy = sendQueuePolicy;
+    }
+    
 }
@@ -0,0 +1,46 @@
+package simpleircserver.config;
+/*
+ * 
+ * IrcIoEngine 
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License Version 3 along with this program.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+/**
+ * Enum, с помощью которого задается способ обслуживания сетевых 
+ * соединений клиентов.
+ * 
+ * @version 0.5.4 2015-11-20
+ * @author  Nikolay Kirdin 
+ */
+public enum IrcIoEngine {
+    
+    /** 
+     * Блокирующий ввод/вывод. Сетевые соединения обслуживаются 
+     * процессорами IncomingConnectionListener, InputStreamProcessor и 
+     * OutputQueueProcessor.
+     */
+    BLOCKING,
+    
+    /** 
+     * Неблокирующий ввод/вывод. Сетевые соединения обслуживаются 
+     * процессором NioNetworkProcessor с помощью селектора.
+     */
+    NIO
+}
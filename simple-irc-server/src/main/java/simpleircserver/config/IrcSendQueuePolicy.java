@@ -0,0 +1,52 @@
+package simpleircserver.config;
+/*
+ *
+ * IrcSendQueuePolicy
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+/**
+ * Enum, с помощью которого задаются действия при переполнении выходной
+ * очереди соединения (клиент не успевает принимать сообщения).
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public enum IrcSendQueuePolicy {
+
+    /**
+     * Из очереди удаляются старейшие сообщения, пока новое сообщение
+     * не поместится в очередь.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Из очереди удаляются старейшие сообщения других клиентов,
+     * сообщения сервера (ответы на команды, PING, ERROR) сохраняются.
+     * Если места не хватает, то новое сообщение не помещается в
+     * очередь.
+     */
+    DROP_LOW_PRIORITY,
+
+    /**
+     * Соединение закрывается с сообщением "SendQ exceeded".
+     */
+    DISCONNECT
+}
@@ -24,11 +24,15 @@ package simpleircserver.config;
 import java.util.*;
 import java.util.logging.*;
 
+import simpleircserver.base.Globals;
+
 /**
  * Класс, хранящий конфигурируемые параметры для сервера в целом. 
  *
  * @version 0.5.2 2012-03-30
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Maximum numbers of clients and channels were added.
+ * @version 0.5.4 2015-11-27 Port of the metrics endpoint was added.
  * @author  Nikolay Kirdin
  */
 public class IrcServerConfig {
@@ -42,6 +46,15 @@ public class IrcServerConfig {
     /** Путь к файлу MOTD*/
     private String motdFilename;
     
+    /** Максимальное количество клиентов и соединений. */
+    private int maxClients = Globals.maxServerClients.get();
+    
+    /** Максимальное количество каналов. */
+    private int maxChannels = Globals.maxChannelNumber.get();
+    
+    /** Номер порта HTTP-сервера метрик (0 - сервер не запускается). */
+    private int metricsPort = Globals.metricsPort.get();
+    
 	/**
      * Конструктор.
      * @param timeZone TimeZone сервера.
@@ -84,4 +97,34 @@ public class IrcServerConfig {
 		this.motdFilename = motdFilename;
 	}
 
+    /** Получение максимального количества клиентов и соединений. */
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    /** Задание максимального количества клиентов и соединений. */
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    /** Получение максимального количества каналов. */
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    /** Задание максимального количества каналов. */
+    public void setMaxChannels(int maxChannels) {
+        this.maxChannels = maxChannels;
+    }
+
+    /** Получение номера порта HTTP-сервера метрик. */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /** Задание номера порта HTTP-сервера метрик. */
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
 }
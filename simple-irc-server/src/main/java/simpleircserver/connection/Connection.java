@@ -25,15 +25,17 @@ import java.util.logging.*;
 
 import simpleircserver.base.Constants;
 import simpleircserver.base.Globals;
+import simpleircserver.config.IrcSendQueuePolicy;
 import simpleircserver.parser.IrcCommandReport;
 import simpleircserver.parser.IrcIncomingMessage;
 import simpleircserver.talker.IrcTalker;
 import simpleircserver.tools.IrcAvgMeter;
+import simpleircserver.tools.IrcMemoryBudget;
+import simpleircserver.tools.IrcTimingWheel;
+import simpleircserver.tools.IrcTokenBucket;
 
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.io.*;
 import java.nio.charset.*;
 
@@ -44,12 +46,32 @@ import java.nio.charset.*;
  * 
  * Используются следующие поля интерфейсов {@link Constants} и 
  * {@link Globals}:
- * {@link Constants#MIN_FREE_MEMORY};
+ * {@link Constants#CONNECTION_MEMORY_SIZE};
+ * {@link Constants#QUEUE_ELEMENT_MEMORY_SIZE};
+ * {@link Globals#memoryBudget};
  * {@link Globals#minAvgReadPeriod};
+ * {@link Globals#inputBurst};
+ * {@link Globals#inputQueueSize};
+ * {@link Globals#sendQueueSize};
+ * {@link Globals#sendQueuePolicy};
+ * {@link Globals#outputReadyQueue};
+ * {@link Globals#connectionCleanupQueue};
  * {@link Globals#logger};
  *
  * @version 0.5.1 2012-03-27
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-23 Connections with pending output are placed into the ready queue.
+ * @version 0.5.4 2015-11-24 Bounded input queue, token bucket for input rate limiting.
+ * @version 0.5.4 2015-11-25 Connection is scheduled to one command worker at a time.
+ * @version 0.5.4 2015-11-27 Conditional change of the connection state.
+ * @version 0.5.4 2015-11-27 Creation is limited by the memory budget instead of free memory and GC.
+ * @version 0.5.4 2015-11-27 Output queue is bounded in bytes, slow consumer policy, "SendQ exceeded".
+ * @version 0.5.4 2015-11-27 PING and registration timeouts are scheduled in the timing wheel.
+ * @version 0.5.4 2015-11-27 Closing connection is placed into the cleanup queue. I/O counters are updated in place.
+ * @version 0.5.4 2015-11-27 State is changed by CAS according to the table of transitions instead of the lock.
+ * @version 0.5.4 2015-11-27 Total I/O counters are LongAdder.
+ * @version 0.5.4 2015-11-27 Output queue is written under the per-connection output lock.
+ * @version 0.5.4 2015-11-27 Input queue is created once with the configured capacity.
  * @author  Nikolay Kirdin
  * 
  */
@@ -62,13 +84,13 @@ public class Connection implements Runnable, Comparable {
      * Счетчик количества операций чтения по всем объектам
      * класса.
      */
-    public static AtomicLong totalReadCount = new AtomicLong();
+    public static final LongAdder totalReadCount = new LongAdder();
     
     /** 
      * Счетчик количества операций записи по всем объектам
      * класса.
      */
-    public static AtomicLong totalWriteCount = new AtomicLong();
+    public static final LongAdder totalWriteCount = new LongAdder();
     
     /** Уникальный идентификатор объекта. */
     public final long id;
@@ -89,23 +111,20 @@ public class Connection implements Runnable, Comparable {
     public AtomicReference<Charset> charset =
             new AtomicReference<Charset>(Charset.forName("UTF-8"));
 
-    /** Состояние соединения. */
-    private ConnectionState connectionState;
+    /** 
+     * Состояние соединения. Чтение состояния выполняется без 
+     * блокировок, изменение - с помощью {@link #connectionStateUpdater}. 
+     */
+    private volatile ConnectionState connectionState;
+    
+    /** Атомарное изменение {@link #connectionState}. */
+    private static final AtomicReferenceFieldUpdater<Connection, 
+            ConnectionState> connectionStateUpdater = 
+            AtomicReferenceFieldUpdater.newUpdater(Connection.class, 
+            ConnectionState.class, "connectionState");
     
     /** Время перехода в текущее состояние. */            
     public AtomicLong connectionStateTime = new AtomicLong();
-    
-    /** ReadWrite Lock для ConnectionState*/
-    private final ReentrantReadWriteLock connectionStateRWLock = 
-            new ReentrantReadWriteLock();
-    
-    /** ReadLock для connectionState. */
-    private final Lock connectionStateRLock = 
-            connectionStateRWLock.readLock();
-    
-    /** WriteLock для connectionState. */
-    private final Lock connectionStateWLock = 
-            connectionStateRWLock.writeLock();
 
     /** 
      * Управление исполнением процессов, связанных с этим соединением.  
@@ -115,12 +134,6 @@ public class Connection implements Runnable, Comparable {
     /** Общее количество операций чтения для этого объекта. */
     public AtomicLong readCount = new AtomicLong();
     
-    /**
-     * Количество операций чтения, во время последнего обращения к 
-     * {@link #br}. 
-     */
-    public AtomicLong readCountDelta = new AtomicLong();
-    
     /** 
      * Средний период между операциями чтения. 
      */    
@@ -129,12 +142,6 @@ public class Connection implements Runnable, Comparable {
     /** Общее количество операций записи для этого объекта. */
     public AtomicLong writeCount = new AtomicLong();
     
-    /**
-     * Количество операций записи, во время последнего обращения к 
-     * {@link #bw}. 
-     */
-    public AtomicLong writeCountDelta = new AtomicLong();
-    
     /** Максимально допустимая скорость вывода сообщений. */
     public AtomicInteger maxOutputRate = new AtomicInteger(10);
     
@@ -149,6 +156,13 @@ public class Connection implements Runnable, Comparable {
     
     /** Средняя скорость ввода сообщений. */
     public IrcAvgMeter avgInputPeriodMeter = new IrcAvgMeter(300);
+    
+    /** 
+     * Ограничение частоты ввода сообщений. Один жетон добавляется 
+     * через каждые {@link #minAvgInputPeriod} миллисекунд, клиент может 
+     * ввести подряд не более {@link Globals#inputBurst} сообщений.
+     */
+    public IrcTokenBucket inputTokenBucket;
 
     /** Время отправки клиенту последнего сообщения IRC PING. */
     public AtomicLong pingTime = new AtomicLong();
@@ -156,17 +170,49 @@ public class Connection implements Runnable, Comparable {
     /** Время приема от клиента последнего сообщения IRC PONG. */
     public AtomicLong pongTime = new AtomicLong();
     
+    /** Таймер ожидания регистрации клиента. */
+    private final AtomicReference<IrcTimingWheel.Timer<ConnectionTimer>> 
+            registrationTimer = 
+            new AtomicReference<IrcTimingWheel.Timer<ConnectionTimer>>();
+    
+    /** 
+     * Таймер передачи сообщения IRC PING или ожидания ответа на это 
+     * сообщение. 
+     */
+    private final AtomicReference<IrcTimingWheel.Timer<ConnectionTimer>> 
+            pingTimer = 
+            new AtomicReference<IrcTimingWheel.Timer<ConnectionTimer>>();
+    
     /** Максимальный размер входной очереди для клиента. */
-    private int maxInputQueueSize = 1;
+    private final int maxInputQueueSize;
     
     /** Входная очередь. */
-    public AtomicReference<IrcIncomingMessage> inputQueue;
+    public final BlockingQueue<IrcIncomingMessage> inputQueue;
 
-    /** Максимальный размер выходной очереди для клиента. */
-    private int maxOutputQueueSize = 5020;
+    /** Выходная очередь, размер которой ограничен в байтах. */
+    public IrcSendQueue outputQueue;
     
-    /** Выходная очередь. */
-    public BlockingQueue<IrcCommandReport> outputQueue;
+    /** Признак закрытия соединения из-за переполнения выходной очереди. */
+    private final AtomicBoolean sendQueueExceeded = new AtomicBoolean();
+    
+    /** 
+     * Признак нахождения соединения в очереди 
+     * {@link Globals#outputReadyQueue}. 
+     */
+    private final AtomicBoolean outputRequested = new AtomicBoolean();
+    
+    /** 
+     * Блокировка вывода. Извлечение сообщений из выходной очереди и их 
+     * запись в поток вывода выполняются под этой блокировкой, чтобы 
+     * сообщения, извлеченные разными потоками, не переставлялись.
+     */
+    private final Object outputLock = new Object();
+    
+    /** 
+     * Признак передачи соединения процессору исполнения команд 
+     * {@link simpleircserver.processor.IrcCommandWorker}. 
+     */
+    private final AtomicBoolean inputScheduled = new AtomicBoolean();
      
     /** Поток метода run(). */            
     public AtomicReference<Thread> thread = new AtomicReference<Thread>();
@@ -203,44 +249,90 @@ public class Connection implements Runnable, Comparable {
      *      <LI> {@link #pongTime}, начальное значение - текущее время.
      *      </LI>
      * </UL>
+     * Размер входной очереди задается значением 
+     * {@link Globals#inputQueueSize}.
      * @param connectionState начальное состояние объекта.
      */
     protected Connection (ConnectionState connectionState) {
+        this(connectionState, Globals.inputQueueSize.get());
+    }
+
+    /**
+     * Конструктор с параметрами. Входная очередь создается один раз с 
+     * заданным размером, поэтому сообщения, поступившие сразу после 
+     * создания соединения, не теряются.
+     * @param connectionState начальное состояние объекта.
+     * @param maxInputQueueSize максимальный размер входной очереди.
+     */
+    protected Connection (ConnectionState connectionState, 
+            int maxInputQueueSize) {
         id = seqNew.getAndIncrement();
+        this.maxInputQueueSize = maxInputQueueSize;
         this.connectionState = connectionState;
         long currentTime = System.currentTimeMillis();
         connectionStateTime.set(currentTime);
         pingTime.set(currentTime);
         pongTime.set(currentTime);
         avgInputPeriodMeter.setValue(currentTime - 10000);
-        inputQueue = new AtomicReference<IrcIncomingMessage>();
-        outputQueue = new ArrayBlockingQueue<IrcCommandReport>(
-                maxOutputQueueSize);
+        inputTokenBucket = new IrcTokenBucket(Globals.inputBurst.get(), 
+                minAvgInputPeriod.get());
+        inputQueue = new ArrayBlockingQueue<IrcIncomingMessage>(
+                maxInputQueueSize);
+        outputQueue = new IrcSendQueue(Globals.sendQueueSize.get(), 
+                Globals.sendQueuePolicy.get());
     }
 
     /**
-     * Создатель объекта без параметров. Проверяется объем свободной 
-     * памяти, если этот объем меньше {@link Constants#MIN_FREE_MEMORY}, 
-     * то будет вызван сборщик мусора. Если после прцедуры сборки мусора, 
-     * памяти будет недостаточно, то объект создаваться не будет.
-     * @return новый объект класса IrcServer.
+     * Создатель объекта без параметров. Объект будет создан, если это 
+     * допускает бюджет памяти {@link Globals#memoryBudget}.
+     * @return новый объект класса Connection или null, если 
+     * достигнуто ограничение бюджета памяти.
      */
     public static Connection create() {
         Connection result = null;
-        long freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory < Constants.MIN_FREE_MEMORY) {
-            System.gc();
-        }
-        freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory >= Constants.MIN_FREE_MEMORY) {
+        if (isMemoryAvailable()) {
             result = new Connection();
-        } else {
+        }
+        return result;
+    }
+    
+    /**
+     * Проверка возможности создания соединения с помощью бюджета памяти
+     * {@link Globals#memoryBudget}. Сборщик мусора не вызывается.
+     * @return true, если соединение может быть создано.
+     */
+    protected static boolean isMemoryAvailable() {
+        IrcMemoryBudget memoryBudget = Globals.memoryBudget.get();
+        boolean result = memoryBudget.isAdmissible(
+                IrcMemoryBudget.Category.CONNECTION, 
+                Constants.CONNECTION_MEMORY_SIZE);
+        if (!result) {
             Globals.logger.get().log(Level.SEVERE, 
-                    "Insufficient free memory (b): " + freeMemory);
+                    "Insufficient memory budget:" + 
+                    memoryBudget.getMonitoringString());
         }
         return result;
     }
     
+    /**
+     * Оценка объема памяти (байт), занимаемого соединением без учета 
+     * очередей.
+     * @return оценка объема памяти.
+     */
+    public long getMemorySize() {
+        return Constants.CONNECTION_MEMORY_SIZE;
+    }
+    
+    /**
+     * Оценка объема памяти (байт), занимаемого входной очередью 
+     * соединения. Сообщения выходной очереди учитываются в бюджете 
+     * памяти самой очередью {@link IrcSendQueue}.
+     * @return оценка объема памяти.
+     */
+    public long getQueueMemorySize() {
+        return maxInputQueueSize * Constants.QUEUE_ELEMENT_MEMORY_SIZE;
+    }
+    
     /**
      * Текстовое представление объекта. Он представляется строкой 
      * следующего вида: 
@@ -281,31 +373,99 @@ public class Connection implements Runnable, Comparable {
     }
 
     /** 
-     * Установка connectionState.
+     * Установка connectionState без проверки допустимости перехода. Если 
+     * соединение переходит в состояние {@link ConnectionState#CLOSE} или 
+     * {@link ConnectionState#BROKEN}, то оно помещается в очередь 
+     * {@link Globals#connectionCleanupQueue}.
      * @param connectionState
      */
     public void setConnectionState(ConnectionState connectionState) {
-        connectionStateWLock.lock();
-        try {
-            this.connectionState = connectionState;
-        } finally {
-            connectionStateWLock.unlock();
+        ConnectionState oldConnectionState = 
+                connectionStateUpdater.getAndSet(this, connectionState);
+        if (oldConnectionState != connectionState) {
+            stateChanged(connectionState);
         }
     }
     
+    /**
+     * Действия, выполняемые после изменения состояния. Если соединение 
+     * перешло в состояние {@link ConnectionState#CLOSE} или 
+     * {@link ConnectionState#BROKEN}, то оно помещается в очередь 
+     * {@link Globals#connectionCleanupQueue}.
+     * @param connectionState новое состояние.
+     */
+    private void stateChanged(ConnectionState connectionState) {
+        if (connectionState == ConnectionState.CLOSE || 
+                connectionState == ConnectionState.BROKEN) {
+            Globals.connectionCleanupQueue.get().offer(this);
+        }
+    }
+    
+    /**
+     * Переход в заданное состояние, если этот переход разрешен из 
+     * текущего состояния (см. 
+     * {@link ConnectionState#isTransitionAllowed(ConnectionState)}).
+     * @param connectionState новое состояние.
+     * @return true - состояние изменено этим вызовом.
+     */
+    public boolean transitConnectionState(ConnectionState connectionState) {
+        ConnectionState currentState = null;
+        do {
+            currentState = this.connectionState;
+            if (!currentState.isTransitionAllowed(connectionState)) {
+                return false;
+            }
+        } while (!connectionStateUpdater.compareAndSet(this, currentState, 
+                connectionState));
+        stateChanged(connectionState);
+        return true;
+    }
+    
+    /**
+     * Учет операций чтения. Увеличиваются значения {@link #readCount} и 
+     * {@link #totalReadCount}.
+     * @param count количество операций.
+     */
+    public void addReadCount(long count) {
+        readCount.getAndAdd(count);
+        totalReadCount.add(count);
+    }
+    
+    /**
+     * Учет операций записи. Увеличиваются значения {@link #writeCount} и 
+     * {@link #totalWriteCount}.
+     * @param count количество операций.
+     */
+    public void addWriteCount(long count) {
+        writeCount.getAndAdd(count);
+        totalWriteCount.add(count);
+    }
+    
+    /** 
+     * Установка connectionState, если текущее состояние равно 
+     * expectedState и переход разрешен.
+     * @param expectedState ожидаемое текущее состояние.
+     * @param connectionState новое состояние.
+     * @return true - состояние изменено.
+     */
+    public boolean compareAndSetConnectionState(
+            ConnectionState expectedState, 
+            ConnectionState connectionState) {
+        if (!expectedState.isTransitionAllowed(connectionState) ||
+                !connectionStateUpdater.compareAndSet(this, expectedState, 
+                connectionState)) {
+            return false;
+        }
+        stateChanged(connectionState);
+        return true;
+    }
+    
     /**
      * Получение connectionState.
      * @return connectionState.
      */
     public ConnectionState getConnectionState() {
-        ConnectionState result = null;
-        connectionStateRLock.lock();
-        try {
-            result = connectionState;
-        } finally {
-            connectionStateRLock.unlock();
-        }
-        return result;
+        return connectionState;
     }
     
     /**
@@ -313,20 +473,11 @@ public class Connection implements Runnable, Comparable {
      * {@link ConnectionState#CLOSE}.  
      */
     public void close() {
-        connectionStateWLock.lock();
-        try {
-            if (getConnectionState() != ConnectionState.CLOSE &&
-                    getConnectionState() != ConnectionState.CLOSING &&
-                    getConnectionState() !=    ConnectionState.CLOSED &&
-                    getConnectionState() !=    ConnectionState.BROKEN) {
-                setConnectionState(ConnectionState.CLOSE);
-                connectionStateTime.set(System.currentTimeMillis());
-                Globals.logger.get().log(Level.FINER, "connection:" + 
-                        Connection.this + " ircTalker:" + ircTalker.get() 
-                        + " connection set CLOSE");
-            }            
-        } finally {
-            connectionStateWLock.unlock();
+        if (transitConnectionState(ConnectionState.CLOSE)) {
+            connectionStateTime.set(System.currentTimeMillis());
+            Globals.logger.get().log(Level.FINER, "connection:" + 
+                    Connection.this + " ircTalker:" + ircTalker.get() 
+                    + " connection set CLOSE");
         }
      }
 
@@ -335,20 +486,11 @@ public class Connection implements Runnable, Comparable {
      * {@link ConnectionState#BROKEN}.  
      */
     public void setBroken() {
-        connectionStateWLock.lock();
-        try {
-            if (getConnectionState() != ConnectionState.CLOSE &&
-                    getConnectionState() != ConnectionState.CLOSING &&
-                    getConnectionState() != ConnectionState.CLOSED &&
-                    getConnectionState() !=    ConnectionState.BROKEN) {
-                setConnectionState(ConnectionState.BROKEN);
-                connectionStateTime.set(System.currentTimeMillis());
-                Globals.logger.get().log(Level.FINER, "connection:" + 
-                        Connection.this + " ircTalker:" + ircTalker.get() 
-                        + " connection set BROKEN");
-            }            
-        } finally {
-            connectionStateWLock.unlock();
+        if (transitConnectionState(ConnectionState.BROKEN)) {
+            connectionStateTime.set(System.currentTimeMillis());
+            Globals.logger.get().log(Level.FINER, "connection:" + 
+                    Connection.this + " ircTalker:" + ircTalker.get() 
+                    + " connection set BROKEN");
         }
     }
 
@@ -359,14 +501,87 @@ public class Connection implements Runnable, Comparable {
     public int getMaxInputQueueSize() {
         return maxInputQueueSize;
     }
-
+    
     /**
-     * Метод возвращает максимальный размер выходной очереди для 
-     * клиента.
-     * @return максимальный размер выходной очереди для клиента.
+     * Задание ограничения выходной очереди клиента.
+     * @param sendQueueSize максимальная суммарная длина (байт) 
+     * сообщений выходной очереди.
+     * @param sendQueuePolicy действия при переполнении выходной 
+     * очереди.
      */
-    public int getMaxOutputQueueSize() {
-        return maxOutputQueueSize;
+    public void setSendQueueLimit(long sendQueueSize, 
+            IrcSendQueuePolicy sendQueuePolicy) {
+        outputQueue.setLimit(sendQueueSize, sendQueuePolicy);
+    }
+    
+    /**
+     * Задание начальных таймеров соединения: таймера ожидания 
+     * регистрации ({@link Globals#registrationTimeout}) и таймера 
+     * передачи сообщения IRC PING ({@link Globals#pingSendingPeriod}). 
+     * Чтобы сообщения IRC PING соединениям, созданным одновременно, 
+     * передавались в разное время, к периоду добавляется случайная 
+     * величина (не более {@link Constants#TIMER_JITTER_PERCENT} 
+     * процентов).
+     */
+    public void startTimers() {
+        scheduleTimer(ConnectionTimer.Type.REGISTRATION, 
+                Globals.registrationTimeout.get());
+        scheduleTimer(ConnectionTimer.Type.IDLE, 
+                IrcTimingWheel.addJitter(Globals.pingSendingPeriod.get(), 
+                Constants.TIMER_JITTER_PERCENT));
+    }
+    
+    /**
+     * Задание таймера соединения в колесе таймеров 
+     * {@link Globals#connectionTimers}. Ранее заданный таймер 
+     * регистрации (для вида {@link ConnectionTimer.Type#REGISTRATION}) 
+     * или таймер IRC PING (для остальных видов) отменяется.
+     * @param type вид события.
+     * @param delay задержка (ms) срабатывания.
+     */
+    public void scheduleTimer(ConnectionTimer.Type type, long delay) {
+        IrcTimingWheel.Timer<ConnectionTimer> timer = 
+                Globals.connectionTimers.get().schedule(
+                new ConnectionTimer(this, type), 
+                System.currentTimeMillis() + delay);
+        IrcTimingWheel.Timer<ConnectionTimer> oldTimer = 
+                (type == ConnectionTimer.Type.REGISTRATION ? 
+                registrationTimer : pingTimer).getAndSet(timer);
+        if (oldTimer != null) {
+            oldTimer.cancel();
+        }
+    }
+    
+    /**
+     * Проверка того, что таймер является текущим таймером соединения.
+     * @param timer таймер.
+     * @return true - таймер является текущим таймером соединения.
+     */
+    public boolean isCurrentTimer(IrcTimingWheel.Timer<ConnectionTimer> 
+            timer) {
+        return registrationTimer.get() == timer || pingTimer.get() == timer;
+    }
+    
+    /**
+     * Проверка того, что таймеры соединения были заданы методом 
+     * {@link #startTimers()} и не отменены.
+     * @return true - таймеры соединения заданы.
+     */
+    public boolean isTimersStarted() {
+        return pingTimer.get() != null;
+    }
+    
+    /** Отмена всех таймеров соединения. */
+    public void cancelTimers() {
+        IrcTimingWheel.Timer<ConnectionTimer> timer = 
+                registrationTimer.getAndSet(null);
+        if (timer != null) {
+            timer.cancel();
+        }
+        timer = pingTimer.getAndSet(null);
+        if (timer != null) {
+            timer.cancel();
+        }
     }
     
 
@@ -436,14 +651,31 @@ public class Connection implements Runnable, Comparable {
      */
     public boolean offerToInputQueue(
             IrcIncomingMessage ircIncomingMessage) {
-        return inputQueue.compareAndSet(null, ircIncomingMessage);
+        return inputQueue.offer(ircIncomingMessage);
+    }
+    
+    /**
+     * Метод используется для извлечения сообщения из входной очереди
+     * клиента IRC.
+     * @return сообщение или null, если очередь пустая.
+     */
+    public IrcIncomingMessage pollInputQueue() {
+        return inputQueue.poll();
+    }
+    
+    /**
+     * Метод используется для проверки заполненности входной очереди.
+     * @return true - во входной очереди нет свободного места.
+     */
+    public boolean isInputQueueFull() {
+        return inputQueue.remainingCapacity() == 0;
     }
     
     /**
      * Метод используется для очистки входной очереди клиента IRC.
      */
     public void dropInputQueue() {
-        inputQueue.set(null);
+        inputQueue.clear();
     }
 
     /**
@@ -453,20 +685,104 @@ public class Connection implements Runnable, Comparable {
      * клиента IRC.
      */
     public int getInputQueueSize() {
-        return 1;
+        return inputQueue.size();
     }
     
     /**
      * Метод используется для помещения сообщения в  выходную очередь 
-     * клиента IRC. Сообщение будет помещено в очередь в том случае, 
-     * если размер выходной очереди меньше максимальной длины очереди 
-     * {@link #maxOutputQueueSize}. 
+     * клиента IRC. Если сообщение не помещается в очередь, то 
+     * выполняются действия, заданные {@link IrcSendQueuePolicy}. При 
+     * политике {@link IrcSendQueuePolicy#DISCONNECT} очередь очищается, 
+     * в нее помещается сообщение "ERROR :Closing Link: ... (SendQ 
+     * exceeded)", соединение переводится в состояние 
+     * {@link ConnectionState#BROKEN}. После успешного помещения 
+     * сообщения в очередь соединение помещается в очередь соединений, 
+     * для которых необходимо выполнить вывод.
      * @param ircCommandReport сообщение.
      * @return true признак успеха выполнения метода, false - признак 
      * неудачи выполнения метода. 
      */
     public boolean offerToOutputQueue(IrcCommandReport ircCommandReport) {
-        return outputQueue.offer(ircCommandReport);
+        boolean result = !sendQueueExceeded.get() && 
+                outputQueue.offer(ircCommandReport);
+        if (result) {
+            requestOutput();
+        } else if (outputQueue.getPolicy() == 
+                IrcSendQueuePolicy.DISCONNECT) {
+            closeSendQueueExceeded();
+        }
+        return result;
+    }
+    
+    /**
+     * Закрытие соединения из-за переполнения выходной очереди. Действия
+     * выполняются один раз.
+     */
+    private void closeSendQueueExceeded() {
+        if (!sendQueueExceeded.compareAndSet(false, true)) {
+            return;
+        }
+        IrcTalker talker = ircTalker.get();
+        outputQueue.clear();
+        outputQueue.offerUnbounded(new IrcCommandReport(
+                "ERROR :Closing Link: " + 
+                (talker == null ? toString() : talker.getNickname()) + 
+                " (SendQ exceeded)", talker, 
+                Globals.thisIrcServer.get()));
+        requestOutput();
+        Globals.logger.get().log(Level.INFO, "Connection:" + this + 
+                " SendQ exceeded: " + outputQueue.getMaxBytes());
+        setBroken();
+    }
+    
+    /**
+     * Проверка закрытия соединения из-за переполнения выходной 
+     * очереди.
+     * @return true - соединение закрыто из-за переполнения выходной 
+     * очереди.
+     */
+    public boolean isSendQueueExceeded() {
+        return sendQueueExceeded.get();
+    }
+    
+    /**
+     * Помещение соединения в очередь {@link Globals#outputReadyQueue}.
+     * Соединение помещается в очередь не более одного раза, до вызова 
+     * метода {@link #clearOutputRequest}.
+     */
+    public void requestOutput() {
+        if (outputRequested.compareAndSet(false, true)) {
+            Globals.outputReadyQueue.get().offer(this);
+        }
+    }
+    
+    /**
+     * Сброс признака нахождения соединения в очереди 
+     * {@link Globals#outputReadyQueue}. Метод вызывается процессором 
+     * вывода перед обработкой выходной очереди соединения.
+     */
+    public void clearOutputRequest() {
+        outputRequested.set(false);
+    }
+    
+    /**
+     * Установка признака передачи соединения процессору исполнения 
+     * команд. Соединение передается процессору не более одного раза, до 
+     * вызова метода {@link #clearInputSchedule}.
+     * @return true - признак установлен этим вызовом, false - соединение 
+     * уже передано процессору.
+     */
+    public boolean scheduleInput() {
+        return inputScheduled.compareAndSet(false, true);
+    }
+    
+    /**
+     * Сброс признака передачи соединения процессору исполнения команд. 
+     * Метод вызывается процессором исполнения команд после обработки 
+     * входной очереди соединения.
+     */
+    public void clearInputSchedule() {
+        inputScheduled.set(false);
     }
     
     /**
@@ -476,13 +792,21 @@ public class Connection implements Runnable, Comparable {
         outputQueue.clear();
     }
 
+    /**
+     * Получение блокировки вывода соединения.
+     * @return объект, под блокировкой которого сообщения извлекаются 
+     * из выходной очереди и записываются в поток вывода.
+     */
+    public Object getOutputLock() {
+        return outputLock;
+    }
+
     /**
      * Метод используется для получения доступа к выходной очереди 
      * клиента IRC.
-     * @return BlockingQueue<IrcCommandReport> выходная очередь 
-     * клиента IRC.
+     * @return выходная очередь клиента IRC.
      */
-    public BlockingQueue<IrcCommandReport> getOutputQueue() {
+    public IrcSendQueue getOutputQueue() {
         return outputQueue;
     }
 
@@ -21,6 +21,8 @@ package simpleircserver.connection;
  *
  */
 
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Enum, с помощью которого моделируется жизненный цикл соединения IRC.
@@ -39,8 +41,13 @@ package simpleircserver.connection;
  * когда объект не может перейти (или быть переведенным) в целевое 
  * состояние.
  * 
+ * <P>Для каждого состояния задано множество состояний, в которые 
+ * разрешен переход из этого состояния (см. 
+ * {@link #isTransitionAllowed(ConnectionState)}).
+ * 
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Table of the allowed transitions.
  * @author  Nikolay Kirdin 
  */
 public enum ConnectionState {
@@ -67,5 +74,29 @@ public enum ConnectionState {
     CLOSED,
     
     /** Состояние ошибки. */
-    BROKEN
+    BROKEN;
+    
+    /** Состояния, в которые разрешен переход из этого состояния. */
+    private Set<ConnectionState> nextStates;
+    
+    static {
+        NEW.nextStates = EnumSet.of(INITIALIZING, OPERATIONAL, CLOSE, 
+                BROKEN);
+        INITIALIZING.nextStates = EnumSet.of(INITIALIZED, CLOSE, BROKEN);
+        INITIALIZED.nextStates = EnumSet.of(OPERATIONAL, CLOSE, BROKEN);
+        OPERATIONAL.nextStates = EnumSet.of(CLOSE, CLOSING, BROKEN);
+        CLOSE.nextStates = EnumSet.of(CLOSING, CLOSED);
+        CLOSING.nextStates = EnumSet.of(CLOSED);
+        CLOSED.nextStates = EnumSet.noneOf(ConnectionState.class);
+        BROKEN.nextStates = EnumSet.of(CLOSING, CLOSED);
+    }
+    
+    /**
+     * Проверка возможности перехода из этого состояния в заданное.
+     * @param nextState новое состояние.
+     * @return true - переход разрешен.
+     */
+    public boolean isTransitionAllowed(ConnectionState nextState) {
+        return nextStates.contains(nextState);
+    }
 }
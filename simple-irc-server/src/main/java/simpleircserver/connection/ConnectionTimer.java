@@ -0,0 +1,88 @@
+package simpleircserver.connection;
+/*
+ *
+ * ConnectionTimer
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import simpleircserver.base.Globals;
+
+/**
+ * Событие таймера соединения, которое хранится в колесе таймеров
+ * {@link Globals#connectionTimers}.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class ConnectionTimer {
+
+    /** Виды событий таймера соединения. */
+    public enum Type {
+
+        /**
+         * Истечение времени регистрации клиента
+         * ({@link Globals#registrationTimeout}).
+         */
+        REGISTRATION,
+
+        /**
+         * Отсутствие сообщений клиента в течение
+         * {@link Globals#pingSendingPeriod}, клиенту посылается
+         * сообщение IRC PING.
+         */
+        IDLE,
+
+        /**
+         * Истечение времени ожидания ответа на сообщение IRC PING.
+         */
+        PING_TIMEOUT
+    }
+
+    /** Соединение. */
+    private final Connection connection;
+
+    /** Вид события. */
+    private final Type type;
+
+    /**
+     * Конструктор.
+     * @param connection соединение.
+     * @param type вид события.
+     */
+    public ConnectionTimer(Connection connection, Type type) {
+        this.connection = connection;
+        this.type = type;
+    }
+
+    /**
+     * Получение соединения.
+     * @return соединение.
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Получение вида события.
+     * @return вид события.
+     */
+    public Type getType() {
+        return type;
+    }
+}
@@ -0,0 +1,80 @@
+package simpleircserver.connection;
+/*
+ *
+ * IrcBufferedWriter
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+/**
+ * Буферированный поток вывода, позволяющий, помимо символов, 
+ * передавать в поток байты уже закодированных сообщений (см. 
+ * {@link simpleircserver.parser.IrcCommandReport#getEncodedReport}). 
+ * Перед передачей байт содержимое буфера символов передается в поток, 
+ * поэтому порядок данных сохраняется.
+ *
+ * @version 0.5.4 2015-11-26
+ * @author  Nikolay Kirdin
+ */
+public class IrcBufferedWriter extends BufferedWriter {
+
+    /** Поток вывода. */
+    private final OutputStream outputStream;
+
+    /** Кодировка потока вывода. */
+    private final Charset charset;
+
+    /**
+     * Конструктор.
+     * @param outputStream поток вывода.
+     * @param charset кодировка.
+     */
+    public IrcBufferedWriter(OutputStream outputStream, Charset charset) {
+        super(new OutputStreamWriter(outputStream, charset));
+        this.outputStream = outputStream;
+        this.charset = charset;
+    }
+
+    /**
+     * Получение кодировки потока вывода.
+     * @return кодировка.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Передача в поток закодированных данных. Данные передаются без 
+     * буферирования, одной операцией записи.
+     * @param bytes закодированные данные.
+     * @throws IOException ошибка вывода.
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+        synchronized (this) {
+            flush();
+            outputStream.write(bytes);
+            outputStream.flush();
+        }
+    }
+}
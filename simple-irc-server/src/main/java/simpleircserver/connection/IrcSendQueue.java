@@ -0,0 +1,343 @@
+package simpleircserver.connection;
+/*
+ *
+ * IrcSendQueue
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.Globals;
+import simpleircserver.config.IrcSendQueuePolicy;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.tools.IrcMemoryBudget;
+
+/**
+ * Выходная очередь соединения (sendq), размер которой ограничен
+ * суммарной длиной (в байтах) находящихся в ней сообщений.
+ *
+ * <P>Очередь не резервирует память заранее, память выделяется по мере
+ * поступления сообщений. Длина сообщения оценивается как количество
+ * символов сообщения плюс 2 (CR LF). Оценки объема памяти сообщений
+ * учитываются в бюджете памяти {@link Globals#memoryBudget} в
+ * категории {@link IrcMemoryBudget.Category#QUEUE}.
+ *
+ * <P>Если новое сообщение не помещается в очередь, то выполняются
+ * действия, заданные {@link IrcSendQueuePolicy}. Запоминаются
+ * наибольшая длина очереди (high-water mark), количество удаленных
+ * сообщений и суммарная длина сообщений, извлеченных из очереди для
+ * передачи клиенту.
+ *
+ * <P>Помещать сообщения в очередь могут несколько потоков
+ * одновременно, извлекать сообщения должен один поток.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcSendQueue extends AbstractQueue<IrcCommandReport> {
+
+    /** Элемент очереди: сообщение и его длина в момент помещения. */
+    private static class Entry {
+
+        /** Сообщение. */
+        private final IrcCommandReport ircCommandReport;
+
+        /** Длина (байт) сообщения. */
+        private final long size;
+
+        /**
+         * Конструктор.
+         * @param ircCommandReport сообщение.
+         */
+        private Entry(IrcCommandReport ircCommandReport) {
+            this.ircCommandReport = ircCommandReport;
+            this.size = ircCommandReport.getReport().length() + 2;
+        }
+    }
+
+    /** Сообщения. */
+    private final ConcurrentLinkedQueue<Entry> entryQueue =
+            new ConcurrentLinkedQueue<Entry>();
+
+    /** Количество сообщений. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** Суммарная длина (байт) сообщений. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** Наибольшая суммарная длина (байт) сообщений. */
+    private final AtomicLong highWaterBytes = new AtomicLong();
+
+    /** Количество удаленных (непереданных) сообщений. */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /** Суммарная длина (байт) сообщений, извлеченных для передачи. */
+    private final AtomicLong sentBytes = new AtomicLong();
+
+    /** Максимальная суммарная длина (байт) сообщений. */
+    private volatile long maxBytes;
+
+    /** Действия при переполнении очереди. */
+    private volatile IrcSendQueuePolicy policy;
+
+    /**
+     * Конструктор.
+     * @param maxBytes максимальная суммарная длина (байт) сообщений.
+     * @param policy действия при переполнении очереди.
+     */
+    public IrcSendQueue(long maxBytes, IrcSendQueuePolicy policy) {
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * Помещение сообщения в очередь. Если сообщение не помещается в
+     * очередь, то в соответствии с {@link #getPolicy()} из очереди
+     * удаляются старейшие сообщения ({@link IrcSendQueuePolicy#DROP_OLDEST})
+     * или старейшие сообщения других клиентов
+     * ({@link IrcSendQueuePolicy#DROP_LOW_PRIORITY}), при политике
+     * {@link IrcSendQueuePolicy#DISCONNECT} очередь не изменяется.
+     * @param ircCommandReport сообщение.
+     * @return true - сообщение помещено в очередь, false - сообщение не
+     * помещено в очередь.
+     */
+    @Override
+    public boolean offer(IrcCommandReport ircCommandReport) {
+        if (ircCommandReport == null) {
+            throw new NullPointerException();
+        }
+        Entry entry = new Entry(ircCommandReport);
+        if (bytes.addAndGet(entry.size) > maxBytes &&
+                !makeRoom(entry)) {
+            droppedCount.getAndIncrement();
+            return false;
+        }
+        add(entry);
+        return true;
+    }
+
+    /**
+     * Помещение сообщения в очередь без проверки ограничения. Используется
+     * для последнего сообщения закрываемого соединения (ERROR).
+     * @param ircCommandReport сообщение.
+     */
+    public void offerUnbounded(IrcCommandReport ircCommandReport) {
+        Entry entry = new Entry(ircCommandReport);
+        bytes.getAndAdd(entry.size);
+        add(entry);
+    }
+
+    /**
+     * Добавление элемента, длина которого уже учтена в {@link #bytes}.
+     * @param entry элемент очереди.
+     */
+    private void add(Entry entry) {
+        entryQueue.offer(entry);
+        count.getAndIncrement();
+        highWaterBytes.accumulateAndGet(bytes.get(), Math::max);
+        Globals.memoryBudget.get().reserve(IrcMemoryBudget.Category.QUEUE,
+                entry.size + Constants.SEND_QUEUE_ENTRY_MEMORY_SIZE);
+    }
+
+    /**
+     * Освобождение места в очереди для сообщения, длина которого уже
+     * добавлена к {@link #bytes}. Если места освободить не удалось, то
+     * длина сообщения вычитается из {@link #bytes}.
+     * @param entry элемент очереди.
+     * @return true - место освобождено.
+     */
+    private synchronized boolean makeRoom(Entry entry) {
+        IrcSendQueuePolicy currentPolicy = policy;
+        if (currentPolicy == IrcSendQueuePolicy.DROP_OLDEST &&
+                entry.size <= maxBytes) {
+            Entry eldest = null;
+            while (bytes.get() > maxBytes &&
+                    (eldest = entryQueue.poll()) != null) {
+                release(eldest);
+                droppedCount.getAndIncrement();
+            }
+        } else if (currentPolicy == IrcSendQueuePolicy.DROP_LOW_PRIORITY
+                && entry.size <= maxBytes) {
+            Iterator<Entry> iterator = entryQueue.iterator();
+            while (bytes.get() > maxBytes && iterator.hasNext()) {
+                Entry candidate = iterator.next();
+                if (isLowPriority(candidate.ircCommandReport) &&
+                        entryQueue.remove(candidate)) {
+                    release(candidate);
+                    droppedCount.getAndIncrement();
+                }
+            }
+        }
+        if (bytes.get() > maxBytes) {
+            bytes.getAndAdd(-entry.size);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Проверка того, что сообщение может быть удалено при политике
+     * {@link IrcSendQueuePolicy#DROP_LOW_PRIORITY}. Такими являются
+     * сообщения, отправителем которых является не этот сервер.
+     * @param ircCommandReport сообщение.
+     * @return true - сообщение может быть удалено.
+     */
+    private static boolean isLowPriority(IrcCommandReport ircCommandReport) {
+        return ircCommandReport.getSender() != Globals.thisIrcServer.get();
+    }
+
+    /**
+     * Учет удаления элемента из очереди.
+     * @param entry удаленный элемент очереди.
+     */
+    private void release(Entry entry) {
+        count.getAndDecrement();
+        bytes.getAndAdd(-entry.size);
+        Globals.memoryBudget.get().release(IrcMemoryBudget.Category.QUEUE,
+                entry.size + Constants.SEND_QUEUE_ENTRY_MEMORY_SIZE);
+    }
+
+    /**
+     * Извлечение первого сообщения из очереди для передачи клиенту.
+     * @return сообщение или null, если очередь пуста.
+     */
+    @Override
+    public IrcCommandReport poll() {
+        Entry entry = entryQueue.poll();
+        if (entry == null) {
+            return null;
+        }
+        release(entry);
+        sentBytes.getAndAdd(entry.size);
+        return entry.ircCommandReport;
+    }
+
+    /**
+     * Получение первого сообщения очереди без извлечения.
+     * @return сообщение или null, если очередь пуста.
+     */
+    @Override
+    public IrcCommandReport peek() {
+        Entry entry = entryQueue.peek();
+        return entry == null ? null : entry.ircCommandReport;
+    }
+
+    /** Удаление всех сообщений из очереди. */
+    @Override
+    public void clear() {
+        Entry entry = null;
+        while ((entry = entryQueue.poll()) != null) {
+            release(entry);
+        }
+    }
+
+    /**
+     * Получение количества сообщений в очереди.
+     * @return количество сообщений.
+     */
+    @Override
+    public int size() {
+        return Math.max(0, count.get());
+    }
+
+    /**
+     * Получение итератора сообщений очереди. Удаление сообщений с
+     * помощью итератора не поддерживается.
+     * @return итератор сообщений.
+     */
+    @Override
+    public Iterator<IrcCommandReport> iterator() {
+        final Iterator<Entry> iterator = entryQueue.iterator();
+        return new Iterator<IrcCommandReport>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public IrcCommandReport next() {
+                return iterator.next().ircCommandReport;
+            }
+        };
+    }
+
+    /**
+     * Получение суммарной длины сообщений в очереди.
+     * @return суммарная длина (байт).
+     */
+    public long getBytes() {
+        return Math.max(0, bytes.get());
+    }
+
+    /**
+     * Получение наибольшей суммарной длины сообщений в очереди.
+     * @return наибольшая суммарная длина (байт).
+     */
+    public long getHighWaterBytes() {
+        return highWaterBytes.get();
+    }
+
+    /**
+     * Получение количества удаленных (непереданных) сообщений.
+     * @return количество удаленных сообщений.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Получение суммарной длины сообщений, извлеченных из очереди для
+     * передачи клиенту.
+     * @return суммарная длина (байт).
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    /**
+     * Получение максимальной суммарной длины сообщений.
+     * @return максимальная суммарная длина (байт).
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Получение действий при переполнении очереди.
+     * @return действия при переполнении очереди.
+     */
+    public IrcSendQueuePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Задание ограничения очереди.
+     * @param maxBytes максимальная суммарная длина (байт) сообщений.
+     * @param policy действия при переполнении очереди.
+     */
+    public void setLimit(long maxBytes, IrcSendQueuePolicy policy) {
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+}
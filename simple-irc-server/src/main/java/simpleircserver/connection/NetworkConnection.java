@@ -25,6 +25,7 @@ import java.util.logging.*;
 
 import simpleircserver.base.Constants;
 import simpleircserver.base.Globals;
+import simpleircserver.tools.IrcHistogram;
 
 import java.util.concurrent.atomic.*;
 import java.net.*;
@@ -35,6 +36,12 @@ import java.io.*;
  *
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-26 Pre-encoded messages are written directly to the socket stream.
+ * @version 0.5.4 2015-11-27 Hostnames are resolved by the shared cached resolver instead of a thread per connection.
+ * @version 0.5.4 2015-11-27 Connection setup is a staged pipeline without threads per connection. Setup time histogram.
+ * @version 0.5.4 2015-11-27 Creation is limited by the memory budget instead of free memory and GC.
+ * @version 0.5.4 2015-11-27 I/O counters are updated in place.
+ * @version 0.5.4 2015-11-27 Input queue size is passed to the constructor.
  * @author  Nikolay Kirdin
  */
 public class NetworkConnection extends Connection implements Runnable {
@@ -45,39 +52,40 @@ public class NetworkConnection extends Connection implements Runnable {
     /** Таймаут сокета. */
     public AtomicInteger soTimeout = new AtomicInteger(1);
     
-    /** true - признак успешной инициализации BufferedReader.*/
-    private AtomicBoolean isBufferedReaderOK = new AtomicBoolean();
+    /** 
+     * Распределение длительностей (мкс) инициализации сетевых 
+     * соединений (от приема соединения до перевода в состояние 
+     * {@link ConnectionState#OPERATIONAL}).
+     */
+    public static final IrcHistogram setupTimeHistogram = 
+            new IrcHistogram();
 
-    /** true - признак успешной инициализации BufferedWriter.*/
-    private AtomicBoolean isBufferedWriterOK = new AtomicBoolean();
+    /** Время (ns) приема соединения. */
+    protected final long acceptTime = System.nanoTime();
     
     /** 
      * Конструктор.
      * @param socket сокет.
+     * @param inputQueueSize максимальный размер входной очереди.
      */
-    private NetworkConnection(Socket socket) {
+    protected NetworkConnection(Socket socket, int inputQueueSize) {
+        super(ConnectionState.NEW, inputQueueSize);
         this.socket = socket;
     }
 
     /**
-     * Создатель объекта без параметров. Проверяется объем свободной 
-     * памяти, если этот объем меньше {@link Constants#MIN_FREE_MEMORY}, 
-     * то будет вызван сборщик мусора. Если после прцедуры сборки мусора, 
-     * памяти будет недостаточно, то объект создаваться не будет.
-     * @return новый объект класса IrcServer.
+     * Создатель объекта. Объект будет создан, если это допускает бюджет 
+     * памяти {@link Globals#memoryBudget}.
+     * @param socket сокет.
+     * @param inputQueueSize максимальный размер входной очереди.
+     * @return новый объект класса NetworkConnection или null, если 
+     * достигнуто ограничение бюджета памяти.
      */
-    public static NetworkConnection create(Socket socket) {
+    public static NetworkConnection create(Socket socket, 
+            int inputQueueSize) {
         NetworkConnection result = null;
-        long freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory < Constants.MIN_FREE_MEMORY) {
-            System.gc();
-        }
-        freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory >= Constants.MIN_FREE_MEMORY) {
-            result = new NetworkConnection(socket);
-        } else {
-            Globals.logger.get().log(Level.SEVERE, 
-                    "Insufficient free memory (b): " + freeMemory);
+        if (isMemoryAvailable()) {
+            result = new NetworkConnection(socket, inputQueueSize);
         }
         return result;
     }
@@ -119,104 +127,103 @@ public class NetworkConnection extends Connection implements Runnable {
     }
 
     /**
-     * Действия по инциализации сетевого соединения. Открытие 
-     * буферированных потоков ввода/вывода. Получение доменного имени 
-     * клиента.
+     * Запуск определения доменного имени клиента. Поиск выполняется
+     * асинхронно объектом {@link Globals#nameResolver}, найденное имя 
+     * присваивается клиенту. Если имя не найдено, то в качестве 
+     * идентификатора хоста клиента остается его IP-адрес.
+     */
+    protected void resolveHostname() {
+        Globals.nameResolver.get().resolve(socket.getInetAddress(),
+                hostname -> {
+                    if (hostname != null) {
+                        ircTalker.get().setHostname(hostname);
+                    }
+                    Globals.logger.get().log(Level.FINEST,
+                            "NetworkConnection:" +
+                            NetworkConnection.this +
+                            " Host:" + ircTalker.get().getHostname());
+                });
+    }
+
+    /**
+     * Завершение этапа инициализации. Соединение переводится в 
+     * состояние {@link ConnectionState#OPERATIONAL}, если оно 
+     * находится в состоянии {@link ConnectionState#INITIALIZED}, 
+     * длительность (мкс) от приема соединения до этого момента 
+     * добавляется в {@link #setupTimeHistogram}, запускается 
+     * определение доменного имени клиента.
+     * @return true - соединение переведено в состояние 
+     * {@link ConnectionState#OPERATIONAL}.
+     */
+    protected boolean setOperational() {
+        if (!compareAndSetConnectionState(ConnectionState.INITIALIZED, 
+                ConnectionState.OPERATIONAL)) {
+            return false;
+        }
+        setupTimeHistogram.record((System.nanoTime() - acceptTime) / 1000);
+        resolveHostname();
+        return true;
+    }
+
+    /**
+     * Действия по инициализации сетевого соединения. Инициализация 
+     * выполняется в вызывающем потоке без создания дополнительных 
+     * потоков и без ожидания данных от клиента и состоит из 
+     * следующих этапов:
+     * <UL>
+     *      <LI> открытие буферированных потоков ввода/вывода (состояние 
+     *      {@link ConnectionState#INITIALIZING});</LI>
+     *      <LI> передача приглашения "020" (сокет только что создан, 
+     *      его буфер передачи пуст, поэтому запись не блокируется) 
+     *      (состояние {@link ConnectionState#INITIALIZED});</LI>
+     *      <LI> перевод соединения в состояние 
+     *      {@link ConnectionState#OPERATIONAL} и запуск асинхронного 
+     *      определения доменного имени клиента.</LI>
+     * </UL>
+     * Регистрация соединения и клиента в репозитарии выполняется до 
+     * вызова этого метода.
      */ 
     public void run() {
         
         ircTalker.get().setHostname(
                 socket.getInetAddress().getHostAddress());
 
-        Thread bufferedReaderThread = new Thread(new Runnable() {
-                    public void run() {
-                        if (getConnectionState() == ConnectionState.NEW) {
-                            try {
-                                InputStream is = 
-                                        getSocket().getInputStream();
-                                br.set(new BufferedReader(
-                                        new InputStreamReader(is, 
-                                        charset.get())));
-                                isBufferedReaderOK.set(true);
-                            } catch (IOException e) {}
-                        }
-                    }
-                }
-                                                );
-
-        Thread bufferedWriterThread = new Thread(new Runnable() {
-                    public void run() {
-                        if (getConnectionState() == ConnectionState.NEW) {
-                            try {
-                                OutputStream os = 
-                                        getSocket().getOutputStream();
-                                bw.set(new BufferedWriter(
-                                        new OutputStreamWriter(os, 
-                                        charset.get())));
-                                synchronized (bw.get()) {
-                                    bw.get().write(":" +
-                                            Globals.thisIrcServer.get(
-                                                    ).getHostname() +
-                                            " " + "020" + " " + "*" + 
-                                            " " + ":Please wait while " +
-                                            "we process your connection.");
-                                    bw.get().newLine();
-                                    bw.get().flush();
-                                }
-                                isBufferedWriterOK.set(true);
-                                writeCountDelta.getAndIncrement();
-                            } catch (IOException e) {}
-                        }
-                    }
-                }
-                                                );
-
-        Thread nameResolvingThread = new Thread(new Runnable() {
-                    public void run() {
-                        
-                        String hostname = socket.getInetAddress(
-                                ).getCanonicalHostName();
-                        if (hostname != null && hostname.length() <= 
-                                Constants.MAX_HOSTNAME_LENGTH) {
-                             ircTalker.get().setHostname(hostname);
-                        }
-                        Globals.logger.get().log(Level.FINEST,
-                                "NetworkConnection:" +
-                                NetworkConnection.this +
-                                " Host:" + ircTalker.get().getHostname());
-
-                    }
-                });
-
         try {
+            if (!compareAndSetConnectionState(ConnectionState.NEW, 
+                    ConnectionState.INITIALIZING)) {
+                throw new IOException("NetworkConnection:" +
+                        NetworkConnection.this + " unexpected state " +
+                        getConnectionState());
+            }
 
-            bufferedReaderThread.start();
-            bufferedWriterThread.start();
-            nameResolvingThread.start();
-
-            try {
-                bufferedReaderThread.join();
-                bufferedWriterThread.join();
-            } catch (InterruptedException e) {
-                throw new IOException(e);
+            br.set(new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), charset.get())));
+            bw.set(new IrcBufferedWriter(socket.getOutputStream(), 
+                    charset.get()));
+
+            synchronized (bw.get()) {
+                bw.get().write(":" + 
+                        Globals.thisIrcServer.get().getHostname() +
+                        " " + "020" + " " + "*" + " " + 
+                        ":Please wait while we process your connection.");
+                bw.get().newLine();
+                bw.get().flush();
             }
+            addWriteCount(1);
 
-            if (isBufferedReaderOK.get() && isBufferedWriterOK.get() &&
-                getConnectionState() == ConnectionState.NEW) {
-                setConnectionState(ConnectionState.OPERATIONAL);
-                Globals.logger.get().log(Level.FINEST, 
-                        "NetworkConnection:" +
-                        NetworkConnection.this + " " + 
-                        getConnectionState() 
-                        + " Socket streams opened");
-            } else {
-                nameResolvingThread.interrupt();
+            if (!compareAndSetConnectionState(ConnectionState.INITIALIZING, 
+                    ConnectionState.INITIALIZED) || !setOperational()) {
                 throw new IOException("NetworkConnection:" +
                         NetworkConnection.this + " init error");
             }
+            Globals.logger.get().log(Level.FINEST, 
+                    "NetworkConnection:" +
+                    NetworkConnection.this + " " + 
+                    getConnectionState() 
+                    + " Socket streams opened");
 
         } catch (IOException e) {
-            setConnectionState(ConnectionState.BROKEN);
+            setBroken();
             Globals.logger.get().log(Level.INFO, "NetworkConnection:" +
                     NetworkConnection.this + " Socket streams opening" + 
                     " " + e);
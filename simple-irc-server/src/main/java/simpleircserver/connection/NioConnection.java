@@ -0,0 +1,490 @@
+package simpleircserver.connection;
+/*
+ *
+ * NioConnection
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Queue;
+import java.util.logging.*;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.Globals;
+
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * Класс, хранящий информацию о сетевом соединении, которое
+ * обслуживается с помощью неблокирующего ввода/вывода.
+ *
+ * <P>Для каждого соединения создаются собственные буферы ввода и
+ * вывода. Байты, прочитанные из канала, накапливаются в буфере
+ * {@link #readBuffer}, декодируются в буфер {@link #lineBuffer}, из
+ * которого извлекаются строки сообщений клиента. Сообщения,
+ * предназначенные клиенту, кодируются и помещаются в буфер
+ * {@link #writeBuffer}, содержимое которого передается в канал без
+ * блокирования.
+ *
+ * <P>Для совместимости с остальными компонентами сервера, поле
+ * {@link #bw} содержит буферированный поток вывода, данные которого
+ * помещаются в буфер {@link #writeBuffer}.
+ *
+ * <P>Если при закрытии соединения ({@link #delete}) в выходной очереди
+ * или в буфере вывода остались данные (например, сообщение ERROR о
+ * переполнении выходной очереди или о выходе клиента), то канал не
+ * закрывается сразу. Данные передаются процессором, обслуживающим
+ * селектор, канал закрывается после их передачи или по истечении
+ * {@link Constants#NIO_CLOSE_LINGER_TIMEOUT} (ms).
+ *
+ * @version 0.5.4 2015-11-20
+ * @version 0.5.4 2015-11-26 Pre-encoded messages are copied into the output buffer.
+ * @version 0.5.4 2015-11-27 Hostnames are resolved by the shared cached resolver.
+ * @version 0.5.4 2015-11-27 Connection setup goes through the same stages as the blocking connection.
+ * @version 0.5.4 2015-11-27 Creation is limited by the memory budget, buffers are included in the estimate.
+ * @version 0.5.4 2015-11-27 I/O counters are updated in place.
+ * @version 0.5.4 2015-11-27 Input queue size is passed to the constructor.
+ * @version 0.5.4 2015-11-27 Channel of the deleted connection is closed after its pending output is written.
+ * @author  Nikolay Kirdin
+ */
+public class NioConnection extends NetworkConnection {
+
+    /** Канал сокета. */
+    public final SocketChannel socketChannel;
+
+    /** Ключ регистрации канала в селекторе. */
+    private volatile SelectionKey selectionKey;
+
+    /**
+     * Очередь соединений, для которых необходимо выполнить вывод.
+     * Принадлежит процессору, обслуживающему селектор.
+     */
+    private volatile Queue<NioConnection> writeRequestQueue;
+
+    /** Признак нахождения соединения в {@link #writeRequestQueue}. */
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+
+    /** Признак получения признака конца потока ввода. */
+    private volatile boolean endOfInput;
+
+    /** 
+     * Признак закрытия канала после передачи данных, оставшихся в 
+     * выходной очереди и в буфере вывода.
+     */
+    private volatile boolean closeRequested;
+
+    /** 
+     * Время (ms), после которого канал закрывается, даже если данные 
+     * не переданы.
+     */
+    private volatile long closeDeadline;
+
+    /** Буфер ввода (байты). */
+    private final ByteBuffer readBuffer;
+
+    /** Буфер декодированных символов ввода. */
+    private final CharBuffer lineBuffer;
+
+    /** Декодер ввода. */
+    private CharsetDecoder decoder;
+
+    /** Буфер вывода (байты). */
+    private final ByteBuffer writeBuffer;
+
+    /** Количество прочитанных байт. */
+    public AtomicLong readBytes = new AtomicLong();
+
+    /** Количество переданных байт. */
+    public AtomicLong writtenBytes = new AtomicLong();
+
+    /**
+     * Конструктор.
+     * @param socketChannel канал сокета.
+     * @param inputQueueSize максимальный размер входной очереди.
+     */
+    private NioConnection(SocketChannel socketChannel, int inputQueueSize) {
+        super(socketChannel.socket(), inputQueueSize);
+        this.socketChannel = socketChannel;
+        int bufferSize = Math.max(Globals.receiveBufferSize.get(),
+                Constants.MAX_PARSING_STRING_LENGTH);
+        readBuffer = ByteBuffer.allocate(bufferSize);
+        lineBuffer = CharBuffer.allocate(bufferSize);
+        writeBuffer = ByteBuffer.allocate(Constants.NIO_OUTPUT_BUFFER_SIZE);
+    }
+
+    /**
+     * Создатель объекта. Объект будет создан, если это допускает бюджет
+     * памяти {@link Globals#memoryBudget}.
+     * @param socketChannel канал сокета.
+     * @param inputQueueSize максимальный размер входной очереди.
+     * @return новый объект класса NioConnection или null, если
+     * достигнуто ограничение бюджета памяти.
+     */
+    public static NioConnection create(SocketChannel socketChannel,
+            int inputQueueSize) {
+        NioConnection result = null;
+        if (isMemoryAvailable()) {
+            result = new NioConnection(socketChannel, inputQueueSize);
+        }
+        return result;
+    }
+
+    /**
+     * Оценка объема памяти (байт), занимаемого соединением и его
+     * буферами без учета очередей.
+     * @return оценка объема памяти.
+     */
+    @Override
+    public long getMemorySize() {
+        return super.getMemorySize() + readBuffer.capacity() +
+                2 * lineBuffer.capacity() + writeBuffer.capacity();
+    }
+
+    /**
+     * Регистрация канала соединения в селекторе. Метод должен
+     * вызываться в потоке, обслуживающем селектор.
+     * @param selector селектор.
+     * @param writeRequestQueue очередь соединений, для которых
+     * необходимо выполнить вывод.
+     * @throws IOException ошибка регистрации.
+     */
+    public void register(Selector selector,
+            Queue<NioConnection> writeRequestQueue) throws IOException {
+        this.writeRequestQueue = writeRequestQueue;
+        selectionKey = socketChannel.register(selector,
+                SelectionKey.OP_READ, this);
+        if (hasPendingOutput() || !getOutputQueue().isEmpty()) {
+            requestWrite();
+        }
+    }
+
+    /**
+     * Завершающие действия при закрытии соединения. Если канал 
+     * зарегистрирован в селекторе, сервер не останавливается, а в 
+     * выходной очереди или в буфере вывода есть данные, то закрытие 
+     * канала поручается процессору, обслуживающему селектор (см. 
+     * {@link #isCloseRequested}). В противном случае канал закрывается 
+     * сразу.
+     */
+    @Override
+    public void delete() {
+        SelectionKey key = selectionKey;
+        if (Globals.serverDown.get() || key == null || !key.isValid() ||
+                (!hasPendingOutput() && getOutputQueue().isEmpty())) {
+            super.delete();
+            return;
+        }
+        running.set(false);
+        closeDeadline = System.currentTimeMillis() + 
+                Constants.NIO_CLOSE_LINGER_TIMEOUT;
+        closeRequested = true;
+        requestWrite();
+    }
+
+    /**
+     * Проверка того, что канал должен быть закрыт после передачи 
+     * оставшихся данных.
+     * @return true - закрытие канала поручено процессору, 
+     * обслуживающему селектор.
+     */
+    public boolean isCloseRequested() {
+        return closeRequested;
+    }
+
+    /**
+     * Проверка истечения времени передачи оставшихся данных 
+     * закрываемого соединения.
+     * @param currentTime текущее время (ms).
+     * @return true - время истекло, канал должен быть закрыт.
+     */
+    public boolean isCloseExpired(long currentTime) {
+        return closeRequested && currentTime >= closeDeadline;
+    }
+
+    /**
+     * Закрытие канала соединения без ожидания. Метод вызывается 
+     * процессором, обслуживающим селектор.
+     */
+    public void closeChannel() {
+        try {
+            socketChannel.close();
+            Globals.logger.get().log(Level.FINEST, "NioConnection:" +
+                    NioConnection.this + " channel closed");
+        } catch (IOException e) {
+            Globals.logger.get().log(Level.INFO, "NioConnection:" +
+                    NioConnection.this + " channel closing error: " + e);
+        }
+    }
+
+    /**
+     * Получение ключа регистрации канала в селекторе.
+     * @return ключ регистрации канала.
+     */
+    public SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+
+    /**
+     * Действия по инициализации соединения. Создание потока вывода,
+     * передача клиенту приглашения, запуск определения доменного имени
+     * клиента. Операции ввода/вывода выполняются без блокирования.
+     */
+    public void run() {
+        ircTalker.get().setHostname(
+                socket.getInetAddress().getHostAddress());
+        try {
+            if (!compareAndSetConnectionState(ConnectionState.NEW, 
+                    ConnectionState.INITIALIZING)) {
+                throw new IOException("unexpected state " + 
+                        getConnectionState());
+            }
+            decoder = charset.get().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            bw.set(new BufferedWriter(new ChannelWriter()));
+            synchronized (bw.get()) {
+                bw.get().write(":" +
+                        Globals.thisIrcServer.get().getHostname() +
+                        " " + "020" + " " + "*" + " " +
+                        ":Please wait while we process your connection."
+                        + "\r\n");
+                bw.get().flush();
+            }
+            addWriteCount(1);
+            if (!compareAndSetConnectionState(ConnectionState.INITIALIZING, 
+                    ConnectionState.INITIALIZED) || !setOperational()) {
+                throw new IOException("init error");
+            }
+            Globals.logger.get().log(Level.FINEST, "NioConnection:" +
+                    NioConnection.this + " " + getConnectionState());
+        } catch (IOException e) {
+            setBroken();
+            Globals.logger.get().log(Level.INFO, "NioConnection:" +
+                    NioConnection.this + " init error " + e);
+        }
+    }
+
+    /**
+     * Чтение данных из канала в буфер ввода.
+     * @return количество прочитанных байт, -1 - достигнут конец потока.
+     * @throws IOException ошибка ввода.
+     */
+    public int readFromChannel() throws IOException {
+        int result = socketChannel.read(readBuffer);
+        if (result < 0) {
+            endOfInput = true;
+        } else {
+            readBytes.getAndAdd(result);
+        }
+        return result;
+    }
+
+    /**
+     * Получение очередной строки из буфера ввода. Строкой считается
+     * последовательность символов, завершенная символом LF (символ CR
+     * перед LF отбрасывается). Если буфер символов заполнен и не
+     * содержит символа LF, то все его содержимое считается строкой.
+     * @return строка или null, если полная строка еще не получена.
+     */
+    public String pollInputLine() {
+        readBuffer.flip();
+        decoder.decode(readBuffer, lineBuffer, endOfInput);
+        readBuffer.compact();
+
+        String result = null;
+        int length = lineBuffer.position();
+        int end = -1;
+        for (int i = 0; i < length; i++) {
+            if (lineBuffer.get(i) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end >= 0) {
+            int lineLength = end;
+            if (lineLength > 0 && lineBuffer.get(lineLength - 1) == '\r') {
+                lineLength--;
+            }
+            result = new String(lineBuffer.array(), 0, lineLength);
+            removeFromLineBuffer(end + 1);
+        } else if (length == lineBuffer.capacity() ||
+                (endOfInput && length > 0 && !readBuffer.hasRemaining())) {
+            result = new String(lineBuffer.array(), 0, length);
+            removeFromLineBuffer(length);
+        }
+        return result;
+    }
+
+    /**
+     * Удаление символов из начала буфера {@link #lineBuffer}.
+     * @param number количество удаляемых символов.
+     */
+    private void removeFromLineBuffer(int number) {
+        lineBuffer.flip();
+        lineBuffer.position(number);
+        lineBuffer.compact();
+    }
+
+    /**
+     * Проверка наличия в буфере ввода данных, которые еще не были
+     * переданы во входную очередь.
+     * @return true - в буфере ввода есть данные.
+     */
+    public boolean hasPendingInput() {
+        return lineBuffer.position() > 0 ||
+                readBuffer.position() > 0;
+    }
+
+    /**
+     * Проверка заполненности буфера ввода.
+     * @return true - в буфере ввода нет места для новых данных.
+     */
+    public boolean isInputBufferFull() {
+        return !readBuffer.hasRemaining();
+    }
+
+    /**
+     * Признак получения конца потока ввода.
+     * @return true - конец потока ввода получен.
+     */
+    public boolean isEndOfInput() {
+        return endOfInput;
+    }
+
+    /**
+     * Помещение закодированного сообщения в буфер вывода. 
+     * @param encoded закодированное сообщение, дополненное символами 
+     * CR LF, см. 
+     * {@link simpleircserver.parser.IrcCommandReport#getEncodedReport}.
+     * @return true - сообщение помещено в буфер, false - в буфере нет
+     * места для этого сообщения.
+     */
+    public boolean offerToWriteBuffer(ByteBuffer encoded) {
+        boolean result = false;
+        synchronized (writeBuffer) {
+            if (writeBuffer.remaining() >= encoded.remaining()) {
+                writeBuffer.put(encoded);
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Передача содержимого буфера вывода в канал без блокирования.
+     * @return количество переданных байт.
+     * @throws IOException ошибка вывода.
+     */
+    public int writeToChannel() throws IOException {
+        int result = 0;
+        synchronized (writeBuffer) {
+            writeBuffer.flip();
+            try {
+                result = socketChannel.write(writeBuffer);
+            } finally {
+                writeBuffer.compact();
+            }
+        }
+        writtenBytes.getAndAdd(result);
+        return result;
+    }
+
+    /**
+     * Проверка наличия в буфере вывода непереданных данных.
+     * @return true - в буфере вывода есть данные.
+     */
+    public boolean hasPendingOutput() {
+        synchronized (writeBuffer) {
+            return writeBuffer.position() > 0;
+        }
+    }
+
+    /**
+     * Сброс признака нахождения соединения в очереди соединений, для
+     * которых необходимо выполнить вывод.
+     */
+    public void clearWriteRequest() {
+        writeRequested.set(false);
+    }
+
+    /**
+     * Помещение соединения в очередь соединений, для которых
+     * необходимо выполнить вывод, и пробуждение селектора. Соединение
+     * помещается в очередь не более одного раза.
+     */
+    public void requestWrite() {
+        Queue<NioConnection> queue = writeRequestQueue;
+        SelectionKey key = selectionKey;
+        if (queue != null && key != null &&
+                writeRequested.compareAndSet(false, true)) {
+            queue.offer(this);
+            key.selector().wakeup();
+        }
+    }
+
+    /**
+     * Помещение соединения в очередь соединений процессора 
+     * ввода/вывода, для которых необходимо выполнить вывод. Вывод для 
+     * этого соединения выполняется процессором, обслуживающим селектор.
+     */
+    @Override
+    public void requestOutput() {
+        requestWrite();
+    }
+
+    /**
+     * Поток символов, данные которого кодируются и помещаются в буфер
+     * вывода. При выполнении операции flush() производится попытка
+     * передачи содержимого буфера в канал без блокирования, оставшиеся
+     * данные будут переданы процессором, обслуживающим селектор.
+     */
+    private class ChannelWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            ByteBuffer encoded = charset.get().encode(
+                    CharBuffer.wrap(cbuf, off, len));
+            synchronized (writeBuffer) {
+                if (writeBuffer.remaining() < encoded.remaining()) {
+                    throw new IOException("Output buffer overflow.");
+                }
+                writeBuffer.put(encoded);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!socketChannel.isOpen()) {
+                throw new IOException("Channel closed.");
+            }
+            writeToChannel();
+            if (hasPendingOutput()) {
+                requestWrite();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socketChannel.close();
+        }
+    }
+}
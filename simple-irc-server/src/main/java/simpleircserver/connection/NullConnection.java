@@ -23,6 +23,7 @@ package simpleircserver.connection;
 
 import java.util.concurrent.*;
 
+import simpleircserver.config.IrcSendQueuePolicy;
 import simpleircserver.parser.IrcCommandReport;
 import simpleircserver.parser.IrcIncomingMessage;
 
@@ -34,6 +35,7 @@ import simpleircserver.parser.IrcIncomingMessage;
  *
  * @version 0.5 2012-02-27
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Output queue is bounded in bytes.
  * @author  Nikolay Kirdin
  */
 public class NullConnection extends Connection {
@@ -90,11 +92,10 @@ public class NullConnection extends Connection {
     /**
      * Метод используется для получения доступа к выходной очереди 
      * клиента IRC.
-     * @return LinkedList< IrcCommandReport > выходная очередь 
-     * клиента IRC.
+     * @return пустая выходная очередь клиента IRC.
      */
-    public BlockingQueue<IrcCommandReport> getOutputQueue() {
-        return new ArrayBlockingQueue<IrcCommandReport>(1);
+    public IrcSendQueue getOutputQueue() {
+        return new IrcSendQueue(0, IrcSendQueuePolicy.DROP_OLDEST);
     }
 
     /**
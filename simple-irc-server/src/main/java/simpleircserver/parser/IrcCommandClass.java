@@ -0,0 +1,108 @@
+package simpleircserver.parser;
+/*
+ *
+ * IrcCommandClass
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import simpleircserver.tools.IrcLoadShedder;
+
+/**
+ * Enum, с помощью которого команды IRC разделяются на классы по
+ * стоимости исполнения и приоритету. Классы перечислены в порядке
+ * убывания приоритета.
+ *
+ * <P>Для каждого класса задан бюджет (количество команд в секунду,
+ * исполняемых для всех клиентов) на каждом уровне загруженности сервера
+ * {@link IrcLoadShedder.Level}. Значение -1 означает отсутствие
+ * ограничения, значение 0 - команды класса не исполняются. Чем ниже
+ * приоритет класса, тем при меньшей загруженности вводится ограничение
+ * и тем быстрее уменьшается бюджет.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public enum IrcCommandClass {
+
+    /**
+     * Команды, которые исполняются при любой загруженности: регистрация
+     * клиента, PING, PONG, QUIT, OPER, ADMIN, TIME.
+     */
+    ESSENTIAL("Essential", -1, -1, -1, -1),
+
+    /**
+     * Дешевые команды, адресованные одному клиенту: PRIVMSG и NOTICE
+     * клиенту, ISON, USERHOST, AWAY, PART.
+     */
+    MESSAGE("Message", -1, -1, -1, 200),
+
+    /**
+     * Команды, изменяющие каналы или рассылаемые всем членам канала:
+     * JOIN, MODE, TOPIC, KICK, INVITE, PRIVMSG и NOTICE каналу.
+     */
+    CHANNEL("Channel", -1, -1, 100, 20),
+
+    /**
+     * Запросы информации об одном объекте или о сервере: WHOIS, WHOWAS,
+     * WHO и NAMES с параметром, MOTD, LUSERS, STATS и т.п.
+     */
+    QUERY("Query", -1, 50, 10, 0),
+
+    /**
+     * Запросы, ответ на которые зависит от количества клиентов или
+     * каналов: LIST, WHO без параметров или с маской, NAMES без
+     * параметров.
+     */
+    BULK("Bulk", -1, 5, 0, 0);
+
+    /** Наименование класса в диагностических сообщениях. */
+    private final String label;
+
+    /** Бюджеты (команд в секунду) по уровням загруженности. */
+    private final int[] budget;
+
+    /**
+     * Конструктор.
+     * @param label наименование класса в диагностических сообщениях.
+     * @param budget бюджеты (команд в секунду) по уровням
+     * загруженности.
+     */
+    IrcCommandClass(String label, int... budget) {
+        this.label = label;
+        this.budget = budget;
+    }
+
+    /**
+     * Получение наименования класса.
+     * @return наименование класса.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Получение бюджета класса на уровне загруженности.
+     * @param level уровень загруженности.
+     * @return бюджет (команд в секунду), -1 - нет ограничения, 0 -
+     * команды не исполняются.
+     */
+    public int getBudget(IrcLoadShedder.Level level) {
+        return budget[level.ordinal()];
+    }
+}
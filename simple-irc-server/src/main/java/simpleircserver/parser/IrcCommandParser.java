@@ -22,6 +22,7 @@ package simpleircserver.parser;
  */
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.logging.*;
 
 import simpleircserver.base.Constants;
@@ -77,109 +78,211 @@ import simpleircserver.talker.IrcTalker;
 import simpleircserver.talker.server.IrcServer;
 import simpleircserver.talker.service.Service;
 import simpleircserver.talker.user.User;
-import simpleircserver.tools.IrcAvgMeter;
+import simpleircserver.tools.IrcHistogram;
+import simpleircserver.tools.IrcLoadShedder;
 
 /**
  * Класс с помощью, которого проводится интерпретация сообщений клиента.   
  *
  * @version 0.5 2012-02-14
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Message is split by IrcLineTokenizer without regular expressions.
+ * @version 0.5.4 2015-11-27 Commands are dispatched through the table of factories without reflection.
+ * @version 0.5.4 2015-11-27 Commands are shed by cost classes according to the load level.
+ * @version 0.5.4 2015-11-27 Execution time of commands is recorded into histograms without lock.
+ * @version 0.5.4 2015-11-27 Command objects can be created by name for the dispatch benchmark.
  * @author  Nikolay Kirdin
  * 
  */
 public class IrcCommandParser {
     
     /**
-     * Массив, в котором хранятся объекты типа class, которые являются 
-     * исполнителями каждой конкретной команды IRC. 
+     * Элемент таблицы диспетчеризации команд. Содержит название команды
+     * (в нижнем регистре), создатель объекта-исполнителя команды и
+     * класс команды, который определяет ограничение ее исполнения при
+     * высокой загруженности сервера.
      */
-    private static Class[] commandClass = {
-            //Connection Registration
-            PassIrcCommand.class, NickIrcCommand.class,
-            UserIrcCommand.class, OperIrcCommand.class, 
-            ModeIrcCommand.class, ServiceIrcCommand.class, 
-            QuitIrcCommand.class, SquitIrcCommand.class,
-            //Channel operation  
-            JoinIrcCommand.class, PartIrcCommand.class, 
-            TopicIrcCommand.class, NamesIrcCommand.class, 
-            ListIrcCommand.class, InviteIrcCommand.class, 
-            KickIrcCommand.class,
-            //Sending Messages
-            PrivmsgIrcCommand.class, NoticeIrcCommand.class,
-            //Server queries and commands
-            MotdIrcCommand.class, LusersIrcCommand.class,
-            VersionIrcCommand.class, StatsIrcCommand.class, 
-            LinksIrcCommand.class, TimeIrcCommand.class,
-            ConnectIrcCommand.class, TraceIrcCommand.class, 
-            AdminIrcCommand.class, InfoIrcCommand.class,
-            //Service Query and Commands
-            ServlistIrcCommand.class, SqueryIrcCommand.class,
-            //User based queries
-            WhoIrcCommand.class, WhoisIrcCommand.class, 
-            WhowasIrcCommand.class,
-            //Miscellaneous messages
-            KillIrcCommand.class, PingIrcCommand.class, 
-            PongIrcCommand.class, ErrorIrcCommand.class,
-            //Optional features
-            AwayIrcCommand.class, RehashIrcCommand.class, 
-            DieIrcCommand.class, RestartIrcCommand.class, 
-            SummonIrcCommand.class, UsersIrcCommand.class,
-            WallopsIrcCommand.class, UserhostIrcCommand.class, 
-            IsonIrcCommand.class
-            };
+    private static final class CommandEntry {
+
+        /** Название команды в нижнем регистре. */
+        private final String name;
+
+        /** Создатель объекта-исполнителя команды. */
+        private final Supplier<IrcCommandBase> factory;
+
+        /** Класс команды. */
+        private final IrcCommandClass commandClass;
+
+        private CommandEntry(String name, Supplier<IrcCommandBase> factory,
+                IrcCommandClass commandClass) {
+            this.name = name;
+            this.factory = factory;
+            this.commandClass = commandClass;
+        }
+    }
 
     /**
-     * Ассоциативный массив классов-исполнителей, ключем которого 
-     * является название команды. 
+     * Таблица диспетчеризации команд, ключем которой является название
+     * команды. Каждая команда хранится с двумя ключами: в верхнем и в
+     * нижнем регистре, поэтому для таких названий поиск выполняется
+     * без преобразования строки.
      */
-    private static LinkedHashMap<String, Class> commandSet =
-            new LinkedHashMap<String, Class>();
+    private static final HashMap<String, CommandEntry> commandTable =
+            new HashMap<String, CommandEntry>();
             
     /**
-     * Ассоциативный массив, который служит для хранения информации о 
-     * количестве обращений к командам. 
+     * Ассоциативный массив, который служит для хранения распределений
+     * длительности (ns) исполнения команд. Массив заполняется только при
+     * инициализации класса, поэтому доступ к нему не синхронизируется.
      */
-    private static LinkedHashMap<String, IrcAvgMeter> commandStats =
-            new LinkedHashMap<String, IrcAvgMeter>();
-            
-    /** 
-     * Признак ошибки на этапе инициализации ассосиативного массива с 
-     * исполнителями команд.
-     */
-    private static boolean initError;
-    
-    /** "Причина" порождения исключения. */
-    private static Throwable cause;
+    private static final LinkedHashMap<String, IrcHistogram> commandStats =
+            new LinkedHashMap<String, IrcHistogram>();
 
     static {
-        try {
-            for (Class classObj : commandClass) {
-                String command = (String)
-                        classObj.getDeclaredField("commandName").get(
-                            classObj.newInstance());
-                commandSet.put(command.toLowerCase(Locale.ENGLISH), 
-                        classObj);
-                commandStats.put(command.toLowerCase(Locale.ENGLISH), 
-                    new IrcAvgMeter(10000));
-            }
-        } catch (NoSuchFieldException e) {
-            initError = true;
-            cause = e;
-        }
-        catch (IllegalAccessException e) {
-            initError = true;
-            cause = e;
-        }
-        catch (InstantiationException e) {
-            initError = true;
-            cause = e;
-        }
-        if (initError) {
-            String message = "IrcParser internal error: " + cause;
-            Globals.logger.get().log(Level.SEVERE, message);
-            throw new Error(message);
+        //Connection Registration
+        register(PassIrcCommand.commandName, PassIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(NickIrcCommand.commandName, NickIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(UserIrcCommand.commandName, UserIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(OperIrcCommand.commandName, OperIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(ModeIrcCommand.commandName, ModeIrcCommand::new,
+                IrcCommandClass.CHANNEL);
+        register(ServiceIrcCommand.commandName, ServiceIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(QuitIrcCommand.commandName, QuitIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(SquitIrcCommand.commandName, SquitIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        //Channel operation
+        register(JoinIrcCommand.commandName, JoinIrcCommand::new,
+                IrcCommandClass.CHANNEL);
+        register(PartIrcCommand.commandName, PartIrcCommand::new,
+                IrcCommandClass.MESSAGE);
+        register(TopicIrcCommand.commandName, TopicIrcCommand::new,
+                IrcCommandClass.CHANNEL);
+        register(NamesIrcCommand.commandName, NamesIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(ListIrcCommand.commandName, ListIrcCommand::new,
+                IrcCommandClass.BULK);
+        register(InviteIrcCommand.commandName, InviteIrcCommand::new,
+                IrcCommandClass.CHANNEL);
+        register(KickIrcCommand.commandName, KickIrcCommand::new,
+                IrcCommandClass.CHANNEL);
+        //Sending Messages
+        register(PrivmsgIrcCommand.commandName, PrivmsgIrcCommand::new,
+                IrcCommandClass.MESSAGE);
+        register(NoticeIrcCommand.commandName, NoticeIrcCommand::new,
+                IrcCommandClass.MESSAGE);
+        //Server queries and commands
+        register(MotdIrcCommand.commandName, MotdIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(LusersIrcCommand.commandName, LusersIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(VersionIrcCommand.commandName, VersionIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(StatsIrcCommand.commandName, StatsIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(LinksIrcCommand.commandName, LinksIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(TimeIrcCommand.commandName, TimeIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(ConnectIrcCommand.commandName, ConnectIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(TraceIrcCommand.commandName, TraceIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(AdminIrcCommand.commandName, AdminIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(InfoIrcCommand.commandName, InfoIrcCommand::new,
+                IrcCommandClass.QUERY);
+        //Service Query and Commands
+        register(ServlistIrcCommand.commandName, ServlistIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(SqueryIrcCommand.commandName, SqueryIrcCommand::new,
+                IrcCommandClass.MESSAGE);
+        //User based queries
+        register(WhoIrcCommand.commandName, WhoIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(WhoisIrcCommand.commandName, WhoisIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(WhowasIrcCommand.commandName, WhowasIrcCommand::new,
+                IrcCommandClass.QUERY);
+        //Miscellaneous messages
+        register(KillIrcCommand.commandName, KillIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(PingIrcCommand.commandName, PingIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(PongIrcCommand.commandName, PongIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        register(ErrorIrcCommand.commandName, ErrorIrcCommand::new,
+                IrcCommandClass.ESSENTIAL);
+        //Optional features
+        register(AwayIrcCommand.commandName, AwayIrcCommand::new,
+                IrcCommandClass.MESSAGE);
+        register(RehashIrcCommand.commandName, RehashIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(DieIrcCommand.commandName, DieIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(RestartIrcCommand.commandName, RestartIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(SummonIrcCommand.commandName, SummonIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(UsersIrcCommand.commandName, UsersIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(WallopsIrcCommand.commandName, WallopsIrcCommand::new,
+                IrcCommandClass.QUERY);
+        register(UserhostIrcCommand.commandName, UserhostIrcCommand::new,
+                IrcCommandClass.MESSAGE);
+        register(IsonIrcCommand.commandName, IsonIrcCommand::new,
+                IrcCommandClass.MESSAGE);
+    }
+
+    /**
+     * Добавление команды в таблицу диспетчеризации.
+     * @param command название команды.
+     * @param factory создатель объекта-исполнителя команды.
+     * @param commandClass класс команды.
+     */
+    private static void register(String command,
+            Supplier<IrcCommandBase> factory, IrcCommandClass commandClass) {
+        String name = command.toLowerCase(Locale.ENGLISH);
+        CommandEntry commandEntry = new CommandEntry(name, factory,
+                commandClass);
+        commandTable.put(name, commandEntry);
+        commandTable.put(command.toUpperCase(Locale.ENGLISH), commandEntry);
+        commandStats.put(name, new IrcHistogram());
+    }
+
+    /**
+     * Поиск команды в таблице диспетчеризации. Название команды 
+     * сравнивается без учета регистра символов.
+     * @param command название команды.
+     * @return элемент таблицы диспетчеризации или null, если команда 
+     * не найдена.
+     */
+    private static CommandEntry lookup(String command) {
+        CommandEntry commandEntry = commandTable.get(command);
+        if (commandEntry == null) {
+            commandEntry = commandTable.get(
+                    command.toLowerCase(Locale.ENGLISH));
         }
+        return commandEntry;
+    }
 
+    /**
+     * Создание объекта-исполнителя команды с помощью таблицы 
+     * диспетчеризации (поиск команды и вызов ее создателя, как при 
+     * исполнении сообщения). Метод используется тестами 
+     * производительности диспетчеризации.
+     * @param command название команды.
+     * @return новый объект-исполнитель команды или null, если команда 
+     * не найдена.
+     */
+    public static IrcCommandBase createCommand(String command) {
+        CommandEntry commandEntry = lookup(command);
+        return commandEntry == null ? null : commandEntry.factory.get();
     }
 
     /** Описатель клиента, который является источником сообщения. */
@@ -204,7 +307,10 @@ public class IrcCommandParser {
     private String commandName;
     
     /** Список параметров команды. */
-    private LinkedList<String> parameterList;
+    private final LinkedList<String> parameterList = new LinkedList<String>();
+    
+    /** Разборщик сообщения. */
+    private final IrcLineTokenizer ircLineTokenizer = new IrcLineTokenizer();
     
     /** 
      * Признак присутствия в параметрах команды секции "trailing". 
@@ -215,8 +321,8 @@ public class IrcCommandParser {
     /** Указатель на объект-исполнитель команды. */
     private IrcCommandBase ircCommandCarrier;
     
-    /** Сбор статистической информации о команде.*/
-    private IrcAvgMeter ircAvgMeter;
+    /** Элемент таблицы диспетчеризации команды. */
+    private CommandEntry commandEntry;
     
     /** Время начала разбора строки. */
     private long startTime;
@@ -258,13 +364,11 @@ public class IrcCommandParser {
     
     /**
      * Получение статистики исполнения команд IRC.
-     * @return ассоциативный массив со статистикой по исполнению команд 
-     * IRC.
+     * @return ассоциативный массив с распределениями длительности (ns)
+     * исполнения команд IRC.
      */
-    public static LinkedHashMap<String, IrcAvgMeter> getCommandStats() {
-        synchronized (IrcCommandParser.commandStats) {
-            return new LinkedHashMap<String, IrcAvgMeter>(commandStats);
-        }
+    public static LinkedHashMap<String, IrcHistogram> getCommandStats() {
+        return new LinkedHashMap<String, IrcHistogram>(commandStats);
     }
 
     /**
@@ -276,9 +380,6 @@ public class IrcCommandParser {
     public void ircParse() {
         
         
-        int firstParameter = 0;
-        String [] withTrailing = null;
-        String [] withoutTrailing = null;
         String command = null;
         
         if (parsingString.isEmpty()) {
@@ -300,44 +401,42 @@ public class IrcCommandParser {
             }
 
             
-            withTrailing = parsingString.split("\\s+:", 2);
-            withoutTrailing = withTrailing[0].split("\\s+");
-            if (withoutTrailing[0].charAt(0) == ':') {
-                prefix = withoutTrailing[0].substring(1, 
-                        withoutTrailing[0].length());
+            if (!ircLineTokenizer.tokenize(parsingString, parameterList)) {
+                throw new NotEnoughParamsIrcSyntaxException();
+            }
+            if (ircLineTokenizer.getPrefix() != null) {
+                prefix = ircLineTokenizer.getPrefix();
                 checkPrefix();
-                firstParameter++;
             }
-            command = withoutTrailing[firstParameter++];
-            commandName = command.toLowerCase(Locale.ENGLISH);
-            parameterList.addAll(Arrays.asList(Arrays.copyOfRange(
-                    withoutTrailing, firstParameter, 
-                    withoutTrailing.length)));
-            if (withTrailing.length == 2) {
-                parameterList.offer(withTrailing[1]);
-                trailing = true;
+            command = ircLineTokenizer.getCommand();
+            if (command == null) {
+                throw new NotEnoughParamsIrcSyntaxException();
             }
+            trailing = ircLineTokenizer.hasTrailing();
 
-            if (commandName.matches("\\d{3}")) {
+            if (IrcLineTokenizer.isNumericReply(command)) {
                 reply();
                 commandName = "";
-            } else if (!commandSet.containsKey(commandName)) {
-                throw new IrcSyntaxException("ERR_UNKNOWNCOMMAND");
+            } else {
+                commandEntry = lookup(command);
+                if (commandEntry == null) {
+                    throw new IrcSyntaxException("ERR_UNKNOWNCOMMAND");
+                }
+                commandName = commandEntry.name;
             }        
             
             
             if (!commandName.isEmpty()) {
                 boolean isOperator = (requestor instanceof User) && 
                         ((User) requestor).isOperator(); 
-                boolean isApprovedOrdinaryClientCommand = 
-                        Arrays.asList(
-                                new String[] {"ping", "pong", "admin", 
-                                        "time", "oper"}
-                                ).contains(commandName);
-                boolean highLoad = !Globals.ircServerProcessorSet.get(
-                        ).isEmpty();
-                boolean isDroppable = highLoad && !isOperator 
-                        && !isApprovedOrdinaryClientCommand; 
+                boolean isDroppable = false;
+                if (!isOperator && !(requestor instanceof IrcServer)) {
+                    IrcLoadShedder loadShedder = Globals.loadShedder.get();
+                    isDroppable = loadShedder.tryAdmit(getCommandClass(),
+                            loadShedder.getLevel(), 
+                            requestor::getLoadShareTokenBucket,
+                            System.currentTimeMillis()) != null;
+                }
                 
                 boolean isOperCommand = commandName.equals("oper");
                 
@@ -349,7 +448,7 @@ public class IrcCommandParser {
                             " " + ircIncomingMessage.sender.getNickname();
                     if (isDroppable) {
                         firstPart = firstPart + " " + 
-                                Reply.ERR_FILEERROR.code;
+                                Reply.RPL_TRYAGAIN.code;
                     } else {
                         firstPart = firstPart + " " + "---";
                     }
@@ -370,8 +469,9 @@ public class IrcCommandParser {
                 }
                 
                 if (isDroppable) {
-                    requestor.send(IrcCommandBase.errFileError(
-                            requestor, commandName, "SERVER"));
+                    requestor.send(IrcCommandBase.rplTryAgain(
+                            requestor, commandEntry.name.toUpperCase(
+                            Locale.ENGLISH)));
                 } else {
                     checkAndExecute();
                 }
@@ -388,24 +488,21 @@ public class IrcCommandParser {
             requestor.send(new IrcCommandReport(e.getMessage(), requestor, Globals.thisIrcServer.get()));
         }
         
-        synchronized (commandStats) {
-            ircAvgMeter = commandStats.get(commandName);
-            if (ircAvgMeter != null) {
-                ircAvgMeter.setValue(System.nanoTime() - startTime);
-                commandStats.put(commandName, ircAvgMeter);
-            }
+        IrcHistogram ircHistogram = commandStats.get(commandName);
+        if (ircHistogram != null) {
+            ircHistogram.record(System.nanoTime() - startTime);
         }
     }
     
     /** "Сброс" парсера.*/
     private void reset() {
-        ircAvgMeter = null;
         prefix = "";
         ircReply = "";
         commandName = "";
-        parameterList = new LinkedList<String>();
+        parameterList.clear();
         trailing = false;
-        ircCommandCarrier = new IrcCommandBase();
+        ircCommandCarrier = null;
+        commandEntry = null;
     }
     
     /** Анализ и реакция на цифровой ответ. (Не реализовано.) */
@@ -531,18 +628,47 @@ public class IrcCommandParser {
 
     }
 
+    /**
+     * Определение класса команды с учетом ее параметров. WHO без
+     * параметров или с маской и NAMES без параметров относятся к классу
+     * {@link IrcCommandClass#BULK}, PRIVMSG и NOTICE каналу - к классу
+     * {@link IrcCommandClass#CHANNEL}.
+     * @return класс команды.
+     */
+    private IrcCommandClass getCommandClass() {
+        IrcCommandClass commandClass = commandEntry.commandClass;
+        String firstParameter = parameterList.isEmpty() ?
+                null : parameterList.getFirst();
+        switch (commandEntry.name) {
+        case "who":
+            if (firstParameter == null || firstParameter.indexOf('*') >= 0
+                    || firstParameter.indexOf('?') >= 0) {
+                commandClass = IrcCommandClass.BULK;
+            }
+            break;
+        case "names":
+            if (firstParameter == null) {
+                commandClass = IrcCommandClass.BULK;
+            }
+            break;
+        case "privmsg":
+        case "notice":
+            if (firstParameter != null && (firstParameter.startsWith("#")
+                    || firstParameter.startsWith("&"))) {
+                commandClass = IrcCommandClass.CHANNEL;
+            }
+            break;
+        default:
+            break;
+        }
+        return commandClass;
+    }
+
     /** Проверка и исполнение команды IRC. */
     private void checkAndExecute() throws IrcExecutionException, 
         IrcSyntaxException {
              
-        try {
-            ircCommandCarrier = (IrcCommandBase) commandSet.get(
-                    commandName).newInstance();
-        } catch (InstantiationException e) {
-            throw new Error("ircParse: Internal error " + e);
-        } catch (IllegalAccessException e) {
-            throw new Error("ircParse: Internal error " + e);
-        }
+        ircCommandCarrier = commandEntry.factory.get();
 
         ircCommandCarrier.checking(parameterList, trailing, requestor, 
                 Globals.db.get());
@@ -21,16 +21,34 @@ package simpleircserver.parser;
  *
  */
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.*;
 
 import simpleircserver.base.Recipient;
 import simpleircserver.talker.IrcTalker;
+import simpleircserver.tools.IrcLatencyTracer;
 
 /**
  * Класс, использующийся для хранения и транспортировки сообщений. 
  *
+ * <P>Один и тот же объект может быть помещен в выходные очереди 
+ * нескольких клиентов (например, при передаче сообщения всем членам 
+ * канала). Закодированное представление сообщения, дополненное 
+ * символами CR LF, создается один раз для каждой кодировки и 
+ * используется всеми получателями, см. {@link #getEncodedReport}.
+ *
+ * <P>При создании сообщения запоминаются время создания (ns) и, если 
+ * сообщение создано при исполнении входящего сообщения, идентификатор 
+ * и время чтения (ns) входящего сообщения. Эти данные используются 
+ * объектом {@link IrcLatencyTracer}.
+ *
  * @version 0.5 2012-02-10
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-26 Encoded message is cached per charset and shared by recipients.
+ * @version 0.5.4 2015-11-27 Creation time and id of the incoming message are stored for the latency breakdown.
  * @author  Nikolay Kirdin
  * 
  */
@@ -51,6 +69,24 @@ public class IrcCommandReport {
     /** Отправитель сообщения. */
     private IrcTalker sender;
     
+    /** 
+     * Закодированные представления сообщения. Ключ - кодировка, 
+     * значение - байты сообщения, дополненного символами CR LF.
+     */
+    private volatile ConcurrentMap<Charset, ByteBuffer> encodedReportMap;
+    
+    /** Время (ns) создания сообщения. */
+    private final long creationNanoTime = System.nanoTime();
+    
+    /** 
+     * Идентификатор входящего сообщения, при исполнении которого 
+     * создано сообщение (-1 - сообщение создано вне исполнения). 
+     */
+    private final long messageId;
+    
+    /** Время (ns) чтения входящего сообщения из сокета. */
+    private final long messageReadNanoTime;
+    
     /** 
      * Конструктор. При создании объекта генерируется уникальный 
      * идентификатор.
@@ -65,6 +101,42 @@ public class IrcCommandReport {
         this.report = report;
         this.destination = destination;
         this.sender = sender;
+        IrcIncomingMessage ircIncomingMessage = 
+                IrcLatencyTracer.getCurrentMessage();
+        if (ircIncomingMessage != null) {
+            messageId = ircIncomingMessage.id;
+            messageReadNanoTime = ircIncomingMessage.readNanoTime;
+        } else {
+            messageId = -1;
+            messageReadNanoTime = creationNanoTime;
+        }
+    }
+    
+    /** 
+     * Получение времени (ns) создания сообщения.
+     * @return время создания сообщения.
+     */
+    public long getCreationNanoTime() {
+        return creationNanoTime;
+    }
+    
+    /** 
+     * Получение идентификатора входящего сообщения, при исполнении 
+     * которого создано сообщение.
+     * @return идентификатор входящего сообщения или -1, если сообщение 
+     * создано вне исполнения входящего сообщения.
+     */
+    public long getMessageId() {
+        return messageId;
+    }
+    
+    /** 
+     * Получение времени (ns) чтения из сокета входящего сообщения, при 
+     * исполнении которого создано сообщение.
+     * @return время чтения входящего сообщения.
+     */
+    public long getMessageReadNanoTime() {
+        return messageReadNanoTime;
     }
     
     /** 
@@ -73,6 +145,7 @@ public class IrcCommandReport {
      */
     public void setReport(String report) {
         this.report = report;
+        encodedReportMap = null;
     }
     
     /** 
@@ -83,6 +156,39 @@ public class IrcCommandReport {
         return report;
     }
     
+    /** 
+     * Получение закодированного представления сообщения, дополненного 
+     * символами CR LF. Сообщение кодируется при первом обращении с 
+     * данной кодировкой, последующие обращения используют результат 
+     * кодирования. Каждый вызов возвращает новый буфер, 
+     * предназначенный только для чтения и имеющий собственную позицию, 
+     * поэтому буфер может использоваться получателем независимо от 
+     * других получателей.
+     * @param charset кодировка.
+     * @return закодированное сообщение.
+     */
+    public ByteBuffer getEncodedReport(Charset charset) {
+        ConcurrentMap<Charset, ByteBuffer> map = encodedReportMap;
+        if (map == null) {
+            synchronized (this) {
+                map = encodedReportMap;
+                if (map == null) {
+                    map = new ConcurrentHashMap<Charset, ByteBuffer>(2);
+                    encodedReportMap = map;
+                }
+            }
+        }
+        ByteBuffer encoded = map.get(charset);
+        if (encoded == null) {
+            encoded = charset.encode(report + "\r\n");
+            ByteBuffer previous = map.putIfAbsent(charset, encoded);
+            if (previous != null) {
+                encoded = previous;
+            }
+        }
+        return encoded.asReadOnlyBuffer();
+    }
+    
     /** 
      * Получение адресата.
      * @return destination адресат.
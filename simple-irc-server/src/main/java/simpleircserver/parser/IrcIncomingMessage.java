@@ -25,12 +25,17 @@ import java.util.concurrent.atomic.*;
 
 import simpleircserver.connection.NetworkConnection;
 import simpleircserver.talker.IrcTalker;
+import simpleircserver.tools.IrcLatencyTracer;
 
 /**
  * Класс, использующийся для учета и хранения поступающих сообщений. 
  *
+ * <P>Сообщение получает отметки времени (ns) этапов обработки, которые 
+ * используются объектом {@link IrcLatencyTracer}.
+ *
  * @version 0.5 2012-03-11
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Nanosecond timestamps of the processing stages were added.
  * @author  Nikolay Kirdin
  * 
  */
@@ -50,6 +55,16 @@ public class IrcIncomingMessage {
     
     /** Время поступления сообщения.*/
     public final long incomingTime;
+    
+    /** Время (ns) чтения сообщения из сокета. */
+    public final long readNanoTime;
+    
+    /** Время (ns) извлечения сообщения из входной очереди. */
+    private long pollNanoTime;
+    
+    /** Время (ns) завершения исполнения сообщения. */
+    private long executedNanoTime;
+    
     /** 
      * Конструктор. При создании объекта генерируется уникальный 
      * идентификатор.
@@ -62,6 +77,39 @@ public class IrcIncomingMessage {
         this.message = message;
         this.sender = sender;
         incomingTime = System.currentTimeMillis();
+        readNanoTime = System.nanoTime();
+    }
+    
+    /** 
+     * Получение времени (ns) извлечения сообщения из входной очереди.
+     * @return время извлечения сообщения.
+     */
+    public long getPollNanoTime() {
+        return pollNanoTime;
+    }
+    
+    /** 
+     * Задание времени (ns) извлечения сообщения из входной очереди.
+     * @param pollNanoTime время извлечения сообщения.
+     */
+    public void setPollNanoTime(long pollNanoTime) {
+        this.pollNanoTime = pollNanoTime;
+    }
+    
+    /** 
+     * Получение времени (ns) завершения исполнения сообщения.
+     * @return время завершения исполнения.
+     */
+    public long getExecutedNanoTime() {
+        return executedNanoTime;
+    }
+    
+    /** 
+     * Задание времени (ns) завершения исполнения сообщения.
+     * @param executedNanoTime время завершения исполнения.
+     */
+    public void setExecutedNanoTime(long executedNanoTime) {
+        this.executedNanoTime = executedNanoTime;
     }
     
     public String getSource() {
@@ -0,0 +1,186 @@
+package simpleircserver.parser;
+/*
+ *
+ * IrcLineTokenizer
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.List;
+
+/**
+ * Класс, с помощью которого сообщение клиента разбирается на префикс,
+ * команду и параметры. Разбор выполняется за один проход по строке без
+ * использования регулярных выражений.
+ *
+ * <P>Правила разбора совпадают с правилами, которые ранее выполнялись
+ * с помощью регулярных выражений:
+ * <UL>
+ *     <LI>секция "trailing" начинается после первого символа ":",
+ *     которому предшествует пробельный символ;</LI>
+ *     <LI>остальная часть сообщения разделяется на слова
+ *     последовательностями пробельных символов (пробел, табуляция,
+ *     CR, LF, FF, VT);</LI>
+ *     <LI>если первое слово начинается с символа ":", то оно является
+ *     префиксом, следующее слово является командой;</LI>
+ *     <LI>сообщение, начинающееся с пробельного символа, считается
+ *     ошибочным. При разборе регулярными выражениями первое слово
+ *     такого сообщения было пустым, обращение к его первому символу
+ *     вызывало {@link IndexOutOfBoundsException} и клиенту передавался
+ *     ответ ERR_NEEDMOREPARAMS, {@link IrcCommandParser} передает тот
+ *     же ответ.</LI>
+ * </UL>
+ *
+ * <P>Объект предназначен для многократного использования в одном
+ * потоке, результаты разбора сохраняются до следующего вызова метода
+ * {@link #tokenize}.
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Reply to a line with leading whitespace is documented.
+ * @author  Nikolay Kirdin
+ */
+public class IrcLineTokenizer {
+
+    /** Префикс (без символа ":") или null, если префикса нет. */
+    private String prefix;
+
+    /** Команда или null, если команды нет. */
+    private String command;
+
+    /** Признак присутствия в сообщении секции "trailing". */
+    private boolean trailing;
+
+    /** Конструктор по умолчанию. */
+    public IrcLineTokenizer() {}
+
+    /**
+     * Разбор сообщения. Параметры команды, включая секцию "trailing",
+     * добавляются в список parameterList.
+     * @param line сообщение.
+     * @param parameterList список, в который добавляются параметры.
+     * @return true - сообщение разобрано, false - сообщение пустое или
+     * начинается с пробельного символа.
+     */
+    public boolean tokenize(String line, List<String> parameterList) {
+        prefix = null;
+        command = null;
+        trailing = false;
+
+        int length = line.length();
+        if (length == 0 || isSpace(line.charAt(0))) {
+            return false;
+        }
+
+        int headEnd = length;
+        int trailingStart = -1;
+        for (int i = 1; i < length; i++) {
+            if (line.charAt(i) == ':' && isSpace(line.charAt(i - 1))) {
+                trailingStart = i + 1;
+                headEnd = i - 1;
+                while (headEnd > 0 && isSpace(line.charAt(headEnd - 1))) {
+                    headEnd--;
+                }
+                break;
+            }
+        }
+
+        int index = 0;
+        int word = 0;
+        while (index < headEnd) {
+            int end = index;
+            while (end < headEnd && !isSpace(line.charAt(end))) {
+                end++;
+            }
+            if (word == 0 && line.charAt(index) == ':') {
+                prefix = line.substring(index + 1, end);
+            } else if (command == null) {
+                command = line.substring(index, end);
+            } else {
+                parameterList.add(line.substring(index, end));
+            }
+            word++;
+            index = end;
+            while (index < headEnd && isSpace(line.charAt(index))) {
+                index++;
+            }
+        }
+
+        if (trailingStart != -1) {
+            parameterList.add(line.substring(trailingStart));
+            trailing = true;
+        }
+        return true;
+    }
+
+    /**
+     * Получение префикса.
+     * @return префикс (без символа ":") или null, если префикса нет.
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Получение команды.
+     * @return команда или null, если команды нет.
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Признак присутствия в сообщении секции "trailing".
+     * @return true, если секция присутствует.
+     */
+    public boolean hasTrailing() {
+        return trailing;
+    }
+
+    /**
+     * Проверка, является ли команда цифровым ответом (три десятичные
+     * цифры).
+     * @param command команда.
+     * @return true, если команда является цифровым ответом.
+     */
+    public static boolean isNumericReply(String command) {
+        return command.length() == 3
+                && isDigit(command.charAt(0))
+                && isDigit(command.charAt(1))
+                && isDigit(command.charAt(2));
+    }
+
+    /**
+     * Проверка, является ли символ десятичной цифрой.
+     * @param c символ.
+     * @return true, если символ является десятичной цифрой.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Проверка, является ли символ пробельным (пробел, табуляция, CR,
+     * LF, FF, VT).
+     * @param c символ.
+     * @return true, если символ является пробельным.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r'
+                || c == '\f' || c == '\u000B';
+    }
+}
@@ -29,6 +29,7 @@ package simpleircserver.parser;
  *
  * @version 0.5.2 2012-03-29
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 RPL_STATSCOMMANDS reports percentiles of the execution time.
  * @author  Nikolay Kirdin
  * 
  */
@@ -51,8 +52,8 @@ public enum Reply {
     RPL_TRACENEWTYPE ( 208, "RPL_TRACENEWTYPE", "208 %s <newtype> 0 <client name>"),
     RPL_TRACECLASS ( 209, "RPL_TRACECLASS", "209 %s Class <class> <count>"),
     RPL_TRACERECONNECT ( 210, "RPL_TRACERECONNECT", "210 %s Unused."),
-    RPL_STATSLINKINFO ( 211, "RPL_STATSLINKINFO", "211 %s %s %s %s %s %s %s %s", "<linkname> <sendq> <sent messages> <sent Kbytes> <received messages> <received Kbytes> <time open>"),
-    RPL_STATSCOMMANDS ( 212, "RPL_STATSCOMMANDS", "212 %s %s %s %s %s %s", "<command> <count> <byte count> <remote count> <avg duration(ms)>"),
+    RPL_STATSLINKINFO ( 211, "RPL_STATSLINKINFO", "211 %s %s %s %s %s %s %s %s %s %s", "<linkname> <sendq> <sent messages> <sent Kbytes> <received messages> <received Kbytes> <time open> <sendq high-water> <sendq dropped>"),
+    RPL_STATSCOMMANDS ( 212, "RPL_STATSCOMMANDS", "212 %s %s %s %s %s %s %s %s %s %s", "<command> <count> <byte count> <remote count> <mean(ns)> <p50(ns)> <p95(ns)> <p99(ns)> <max(ns)>"),
     RPL_ENDOFSTATS ( 219, "RPL_ENDOFSTATS", "219 %s %s :End of STATS report", "<stats letter>"),
     RPL_UMODEIS ( 221, "RPL_UMODEIS", "221 %s %s", "<user mode string> "),
     RPL_SERVLIST ( 234, "RPL_SERVLIST", "234 %s %s %s %s %s %s %s", "<name> <server> <mask> <type> <hopcount> <info>"),
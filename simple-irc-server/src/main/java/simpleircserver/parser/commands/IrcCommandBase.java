@@ -22,6 +22,7 @@ package simpleircserver.parser.commands;
  */
 
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.regex.*;
 
 import simpleircserver.base.Constants;
@@ -49,6 +50,8 @@ import simpleircserver.tools.IrcMatcher;
  *
  * @version 0.5.2 2012-03-29
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Parameters are checked by IrcParamValidator instead of regular expressions where it is possible.
+ * @version 0.5.4 2015-11-27 Reply RPL_TRYAGAIN was added.
  * @author  Nikolay Kirdin
  */
 public class IrcCommandBase implements IrcParamRegex {
@@ -197,7 +200,7 @@ public class IrcCommandBase implements IrcParamRegex {
         if (s == null) {
             throw new NotEnoughParamsIrcSyntaxException("ERR_NEEDMOREPARAMS");
         }
-        if (!s.matches(regex)) {
+        if (!matches(s, regex)) {
             throw new IrcSyntaxException("ERR_UNKNOWNCOMMAND");
         }
         return s;
@@ -216,7 +219,7 @@ public class IrcCommandBase implements IrcParamRegex {
         if (s == null) {
             throw new NotEnoughParamsIrcSyntaxException("ERR_NEEDMOREPARAMS");
         }
-        if (!regex.matcher(s).matches()) {
+        if (!matches(s, regex)) {
             throw new IrcSyntaxException("ERR_UNKNOWNCOMMAND");
         }
         return s;
@@ -432,7 +435,7 @@ public class IrcCommandBase implements IrcParamRegex {
      * выражению.
      */
     public static boolean isIt(String s, String regex) {
-        return s != null && s.matches(regex);
+        return s != null && matches(s, regex);
     }
 
     /** 
@@ -443,7 +446,36 @@ public class IrcCommandBase implements IrcParamRegex {
      * выражению.
      */
     public static boolean isIt(String s, Pattern regex) {
-        return s != null && regex.matcher(s).matches();
+        return s != null && matches(s, regex);
+    }
+
+    /** 
+     * Проверяет строку на соответствие регулярному выражению. Если для 
+     * регулярного выражения есть проверка {@link IrcParamValidator}, 
+     * то используется она.
+     * @param s проверяемая строка.
+     * @param regex строка с регулярным выражением.
+     * @return true если проверяемая строка соответствует регулярному 
+     * выражению.
+     */
+    private static boolean matches(String s, String regex) {
+        Predicate<String> validator = IrcParamValidator.getValidator(regex);
+        return validator != null ? validator.test(s) : s.matches(regex);
+    }
+
+    /** 
+     * Проверяет строку на соответствие регулярному выражению. Если для 
+     * регулярного выражения есть проверка {@link IrcParamValidator}, 
+     * то используется она.
+     * @param s проверяемая строка.
+     * @param regex скомпилированное регулярное выражение.
+     * @return true если проверяемая строка соответствует регулярному 
+     * выражению.
+     */
+    private static boolean matches(String s, Pattern regex) {
+        Predicate<String> validator = IrcParamValidator.getValidator(regex);
+        return validator != null ? validator.test(s) 
+                : regex.matcher(s).matches();
     }
 
     /** 
@@ -781,6 +813,24 @@ public class IrcCommandBase implements IrcParamRegex {
                 Globals.thisIrcServer.get());
     }
 
+    /**
+     * Создает сообщение соответствующее  формализованному сообщению
+     * {@link Reply#RPL_TRYAGAIN}.
+     * @param requestor источник команды.
+     * @param command название команды.
+     * @return объект с сообщением.
+     */
+    public static IrcCommandReport rplTryAgain(IrcTalker requestor,
+            String command) {
+
+        String remark = Reply.makeText(Reply.RPL_TRYAGAIN,
+                requestor.getNickname(),
+                command);
+
+        return new IrcCommandReport(remark, requestor,
+                Globals.thisIrcServer.get());
+    }
+
     /** 
      * Создает сообщение соответствующее  формализованному сообщению 
      * {@link Reply#ERR_NOPRIVILEGES}. 
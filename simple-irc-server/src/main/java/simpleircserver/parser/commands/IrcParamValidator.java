@@ -0,0 +1,777 @@
+package simpleircserver.parser.commands;
+/*
+ *
+ * IrcParamValidator
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import simpleircserver.base.Constants;
+
+/**
+ * IrcParamValidator - набор проверок параметров сообщений, которые
+ * выполняются без использования регулярных выражений. Каждая проверка
+ * выполняется за один (для масок - за несколько) проходов по строке с
+ * использованием таблицы классов символов и принимает в точности те же
+ * строки, что и соответствующее регулярное выражение из
+ * {@link IrcParamRegex}.
+ *
+ * <P>Проверки, которые заменяют регулярные выражения, можно получить
+ * с помощью метода {@link #getValidator}. Для регулярных выражений, для
+ * которых проверка не реализована, этот метод возвращает null.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public final class IrcParamValidator {
+
+    /** Класс символов: латинские буквы. */
+    private static final int LETTER = 0x001;
+
+    /** Класс символов: десятичные цифры. */
+    private static final int DIGIT = 0x002;
+
+    /** Класс символов: специальные символы никнэйма. */
+    private static final int SPECIAL = 0x004;
+
+    /** Класс символов: шестнадцатиричные цифры (только заглавные). */
+    private static final int HEX = 0x008;
+
+    /** Класс символов: символы login name ({@link IrcParamRegex#userRegex}). */
+    private static final int USER = 0x010;
+
+    /** Класс символов: {@link IrcParamRegex#nospcrlfclRegex}. */
+    private static final int WORD = 0x020;
+
+    /** Класс символов: {@link IrcParamRegex#noNulCrLf}. */
+    private static final int STRING = 0x040;
+
+    /** Класс символов: символы имени канала. */
+    private static final int CHAN = 0x080;
+
+    /** Класс символов: символы ключа канала. */
+    private static final int KEY = 0x100;
+
+    /** Класс символов: символы ASCII без NUL CR LF. */
+    private static final int ASCII = 0x200;
+
+    /** Таблица классов символов для восьмибитных символов. */
+    private static final int[] charClass = new int[256];
+
+    /** Максимальная длина login name. */
+    private static final int USERLEN = 100;
+
+    /** Максимальная длина текстового представления IP-адреса. */
+    private static final int HOSTADDRLEN = 39;
+
+    /** Проверки, соответствующие регулярным выражениям. */
+    private static final Map<Object, Predicate<String>> validatorMap =
+            new IdentityHashMap<Object, Predicate<String>>();
+
+    static {
+        for (int c = 0; c < charClass.length; c++) {
+            int flags = 0;
+            if (in(c, 'A', 'Z') || in(c, 'a', 'z')) {
+                flags |= LETTER;
+            }
+            if (in(c, '0', '9')) {
+                flags |= DIGIT | HEX;
+            }
+            if (in(c, 'A', 'F')) {
+                flags |= HEX;
+            }
+            if (in(c, 0x5B, 0x60) || in(c, 0x7B, 0x7D)) {
+                flags |= SPECIAL;
+            }
+            if (in(c, 0x01, 0x09) || in(c, 0x0B, 0x0C) || in(c, 0x0E, 0x1F)
+                    || in(c, 0x22, 0x24) || in(c, 0x26, 0x3F)
+                    || in(c, 0x41, 0xFF)) {
+                flags |= USER;
+            }
+            if (in(c, 0x01, 0x09) || in(c, 0x0B, 0x0C) || in(c, 0x0E, 0x1F)
+                    || in(c, 0x21, 0x39) || in(c, 0x3B, 0xFF)) {
+                flags |= WORD;
+            }
+            if (in(c, 0x01, 0x09) || in(c, 0x0B, 0x0C) || in(c, 0x0E, 0xFF)) {
+                flags |= STRING;
+            }
+            if (in(c, 0x01, 0x06) || in(c, 0x08, 0x09) || in(c, 0x0B, 0x0C)
+                    || in(c, 0x0E, 0x1F) || in(c, 0x21, 0x2B)
+                    || in(c, 0x2D, 0x39) || in(c, 0x3B, 0xFF)) {
+                flags |= CHAN;
+            }
+            if (in(c, 0x01, 0x06) || c == 0x08 || in(c, 0x0E, 0x1F)
+                    || in(c, 0x21, 0x7F)) {
+                flags |= KEY;
+            }
+            if (in(c, 0x01, 0x09) || in(c, 0x0B, 0x0C) || in(c, 0x0E, 0x7F)) {
+                flags |= ASCII;
+            }
+            charClass[c] = flags;
+        }
+
+        register(IrcParamValidator::isNickName,
+                IrcParamRegex.nickNameRegex, IrcParamRegex.nickNamePattern);
+        register(IrcParamValidator::isChannel,
+                IrcParamRegex.channelRegex, IrcParamRegex.channelPattern);
+        register(IrcParamValidator::isKey,
+                IrcParamRegex.keyRegex, IrcParamRegex.keyPattern);
+        register(IrcParamValidator::isMsgTo,
+                IrcParamRegex.msgToRegex, IrcParamRegex.msgToPattern);
+        register(IrcParamValidator::isUserMask, IrcParamRegex.userMaskRegex);
+        register(IrcParamValidator::isUser, IrcParamRegex.userRegex);
+        register(IrcParamValidator::isHost,
+                IrcParamRegex.hostRegex, IrcParamRegex.serverNameRegex);
+        register(IrcParamValidator::isHostName, IrcParamRegex.hostNameRegex);
+        register(IrcParamValidator::isShortName,
+                IrcParamRegex.shortNameRegex, IrcParamRegex.shortNamePattern);
+        register(IrcParamValidator::isServernameMask,
+                IrcParamRegex.servernameMaskRegex,
+                IrcParamRegex.servernameMaskPattern);
+        register(IrcParamValidator::isTargetMask,
+                IrcParamRegex.targetMaskRegex);
+        register(IrcParamValidator::isServiceName,
+                IrcParamRegex.serviceNameRegex,
+                IrcParamRegex.serviceNamePattern);
+        register(IrcParamValidator::isWord,
+                IrcParamRegex.wordRegex, IrcParamRegex.wordPattern);
+        register(IrcParamValidator::isString,
+                IrcParamRegex.stringRegex, IrcParamRegex.stringPattern);
+        register(IrcParamValidator::isStringUsAscii,
+                IrcParamRegex.stringUsAsciiRegex);
+        register(IrcParamValidator::isUserPassword,
+                IrcParamRegex.userPassword);
+        register(IrcParamValidator::isNumber, IrcParamRegex.numberRegex);
+        register(IrcParamValidator::isQueryList,
+                IrcParamRegex.queryListRegex);
+    }
+
+    /** Конструктор. */
+    private IrcParamValidator() {}
+
+    /**
+     * Регистрация проверки для регулярного выражения и его
+     * скомпилированного варианта.
+     * @param validator проверка.
+     * @param keys строка с регулярным выражением и (или)
+     * скомпилированное регулярное выражение.
+     */
+    private static void register(Predicate<String> validator,
+            Object... keys) {
+        for (Object key : keys) {
+            validatorMap.put(key, validator);
+        }
+    }
+
+    /**
+     * Получение проверки, которая заменяет регулярное выражение.
+     * Поиск выполняется по ссылке на константу из {@link IrcParamRegex}.
+     * @param regex строка с регулярным выражением или
+     * скомпилированное регулярное выражение.
+     * @return проверка или null, если для этого регулярного выражения
+     * проверка не реализована.
+     */
+    public static Predicate<String> getValidator(Object regex) {
+        return validatorMap.get(regex);
+    }
+
+    /**
+     * Проверка на принадлежность числа диапазону.
+     * @param c число.
+     * @param from нижняя граница.
+     * @param to верхняя граница.
+     * @return true, если число принадлежит диапазону.
+     */
+    private static boolean in(int c, int from, int to) {
+        return c >= from && c <= to;
+    }
+
+    /**
+     * Проверка на принадлежность символа классу символов.
+     * @param c символ.
+     * @param flags класс (классы) символов.
+     * @return true, если символ принадлежит классу символов.
+     */
+    private static boolean is(char c, int flags) {
+        return c < charClass.length && (charClass[c] & flags) != 0;
+    }
+
+    /**
+     * Проверка того, что все символы части строки принадлежат классу
+     * символов, и длина части строки находится в заданных пределах.
+     * @param s строка.
+     * @param from начало части строки.
+     * @param to конец части строки (не включается).
+     * @param flags класс символов.
+     * @param min минимальная длина.
+     * @param max максимальная длина.
+     * @return true, если часть строки удовлетворяет условиям.
+     */
+    private static boolean isRun(String s, int from, int to, int flags,
+            int min, int max) {
+        int length = to - from;
+        if (length < min || length > max) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (!is(s.charAt(i), flags)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверка никнэйма ({@link IrcParamRegex#nickNameRegex}).
+     * @param s строка.
+     * @return true, если строка является никнэймом.
+     */
+    public static boolean isNickName(String s) {
+        return isNickName(s, 0, s.length());
+    }
+
+    /**
+     * Проверка никнэйма в части строки.
+     * @param s строка.
+     * @param from начало части строки.
+     * @param to конец части строки (не включается).
+     * @return true, если часть строки является никнэймом.
+     */
+    private static boolean isNickName(String s, int from, int to) {
+        int length = to - from;
+        if (length < 1 || length > Constants.NICKLEN + 1
+                || !is(s.charAt(from), LETTER | SPECIAL)) {
+            return false;
+        }
+        for (int i = from + 1; i < to; i++) {
+            char c = s.charAt(i);
+            if (c != '-' && !is(c, LETTER | DIGIT | SPECIAL)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверка имени канала ({@link IrcParamRegex#channelRegex}).
+     * @param s строка.
+     * @return true, если строка является именем канала.
+     */
+    public static boolean isChannel(String s) {
+        int length = s.length();
+        if (length < 2 || (s.charAt(0) != '#' && s.charAt(0) != '&')) {
+            return false;
+        }
+        int segmentStart = 1;
+        for (int i = 1; i <= length; i++) {
+            if (i == length || s.charAt(i) == ':') {
+                int segmentLength = i - segmentStart;
+                if (segmentLength < 1
+                        || segmentLength > Constants.CHANNELLEN - 1) {
+                    return false;
+                }
+                segmentStart = i + 1;
+            } else if (!is(s.charAt(i), CHAN)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверка ключа канала ({@link IrcParamRegex#keyRegex}).
+     * @param s строка.
+     * @return true, если строка является ключом канала.
+     */
+    public static boolean isKey(String s) {
+        return isRun(s, 0, s.length(), KEY, 1, 23);
+    }
+
+    /**
+     * Проверка login name ({@link IrcParamRegex#userRegex}).
+     * @param s строка.
+     * @return true, если строка является login name.
+     */
+    public static boolean isUser(String s) {
+        return isRun(s, 0, s.length(), USER, 1, USERLEN);
+    }
+
+    /**
+     * Проверка параметра команды ({@link IrcParamRegex#wordRegex}).
+     * @param s строка.
+     * @return true, если строка является параметром команды.
+     */
+    public static boolean isWord(String s) {
+        return isRun(s, 0, s.length(), WORD, 1, 50);
+    }
+
+    /**
+     * Проверка секции "trailing" ({@link IrcParamRegex#stringRegex}).
+     * @param s строка.
+     * @return true, если строка является секцией "trailing".
+     */
+    public static boolean isString(String s) {
+        return isRun(s, 0, s.length(), STRING, 1, 510);
+    }
+
+    /**
+     * Проверка строки из символов ASCII
+     * ({@link IrcParamRegex#stringUsAsciiRegex}).
+     * @param s строка.
+     * @return true, если строка состоит из символов ASCII.
+     */
+    public static boolean isStringUsAscii(String s) {
+        return isRun(s, 0, s.length(), ASCII, 1, 510);
+    }
+
+    /**
+     * Проверка аргумента команды PASS
+     * ({@link IrcParamRegex#userPassword}).
+     * @param s строка.
+     * @return true, если строка является аргументом команды PASS.
+     */
+    public static boolean isUserPassword(String s) {
+        return isRun(s, 0, s.length(), WORD, 1, 16);
+    }
+
+    /**
+     * Проверка пятизначного числа ({@link IrcParamRegex#numberRegex}).
+     * @param s строка.
+     * @return true, если строка является пятизначным числом.
+     */
+    public static boolean isNumber(String s) {
+        return isRun(s, 0, s.length(), DIGIT, 1, 5);
+    }
+
+    /**
+     * Проверка списка аргументов команды STATS
+     * ({@link IrcParamRegex#queryListRegex}).
+     * @param s строка.
+     * @return true, если строка является списком аргументов.
+     */
+    public static boolean isQueryList(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if ("lmou".indexOf(s.charAt(i)) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверка компонента доменного имени
+     * ({@link IrcParamRegex#shortNameRegex}).
+     * @param s строка.
+     * @return true, если строка является компонентом доменного имени.
+     */
+    public static boolean isShortName(String s) {
+        return isShortName(s, 0, s.length());
+    }
+
+    /**
+     * Проверка компонента доменного имени в части строки.
+     * @param s строка.
+     * @param from начало части строки.
+     * @param to конец части строки (не включается).
+     * @return true, если часть строки является компонентом доменного
+     * имени.
+     */
+    private static boolean isShortName(String s, int from, int to) {
+        return to > from && is(s.charAt(from), LETTER)
+                && shortNameTail(s, from + 1, to) == to;
+    }
+
+    /**
+     * Поиск конца продолжения компонента доменного имени.
+     * @param s строка.
+     * @param from начало продолжения.
+     * @param to конец области поиска (не включается).
+     * @return индекс первого символа, который не может быть
+     * продолжением компонента доменного имени, или to.
+     */
+    private static int shortNameTail(String s, int from, int to) {
+        int i = from;
+        while (i < to && (s.charAt(i) == '-' || is(s.charAt(i), LETTER | DIGIT))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Проверка доменного имени ({@link IrcParamRegex#hostNameRegex}).
+     * @param s строка.
+     * @return true, если строка является доменным именем.
+     */
+    public static boolean isHostName(String s) {
+        return isHostName(s, 0, s.length());
+    }
+
+    /**
+     * Проверка доменного имени в части строки.
+     * @param s строка.
+     * @param from начало части строки.
+     * @param to конец части строки (не включается).
+     * @return true, если часть строки является доменным именем.
+     */
+    private static boolean isHostName(String s, int from, int to) {
+        int labelStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || s.charAt(i) == '.') {
+                if (!isShortName(s, labelStart, i)) {
+                    return false;
+                }
+                labelStart = i + 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверка сетевого идентификатора хоста или сервера
+     * ({@link IrcParamRegex#hostRegex}).
+     * @param s строка.
+     * @return true, если строка является сетевым идентификатором.
+     */
+    public static boolean isHost(String s) {
+        int length = s.length();
+        return isHostName(s, 0, length) || isHostAddr(s, 0, length);
+    }
+
+    /**
+     * Проверка IP-адреса в части строки
+     * ({@link IrcParamRegex#hostAddrRegex}).
+     * @param s строка.
+     * @param from начало части строки.
+     * @param to конец части строки (не включается).
+     * @return true, если часть строки является IP-адресом.
+     */
+    private static boolean isHostAddr(String s, int from, int to) {
+        if (to - from > HOSTADDRLEN) {
+            return false;
+        }
+        boolean[] ends = new boolean[s.length() + 1];
+        markHostAddr(s, from, ends);
+        return ends[to];
+    }
+
+    /**
+     * Отметка всех позиций, в которых может закончиться IP-адрес,
+     * начинающийся в заданной позиции.
+     * @param s строка.
+     * @param from начало IP-адреса.
+     * @param ends массив отметок.
+     */
+    private static void markHostAddr(String s, int from, boolean[] ends) {
+        markGroups(s, from, 0, 4, DIGIT, 3, '.', ends);
+        markGroups(s, from, 0, 8, HEX, 4, ':', ends);
+        if (s.startsWith("0:0:0:0:0:", from)) {
+            int index = from + 10;
+            if (s.startsWith("0:", index)) {
+                markGroups(s, index + 2, 0, 4, DIGIT, 3, '.', ends);
+            }
+            if (s.startsWith("FFFF:", index)) {
+                markGroups(s, index + 5, 0, 4, DIGIT, 3, '.', ends);
+            }
+        }
+    }
+
+    /**
+     * Отметка всех позиций, в которых может закончиться
+     * последовательность групп символов, разделенных заданным символом.
+     * @param s строка.
+     * @param from начало очередной группы.
+     * @param group номер очередной группы.
+     * @param groups количество групп.
+     * @param flags класс символов группы.
+     * @param maxLength максимальная длина группы.
+     * @param separator разделитель групп.
+     * @param ends массив отметок.
+     */
+    private static void markGroups(String s, int from, int group,
+            int groups, int flags, int maxLength, char separator,
+            boolean[] ends) {
+        int length = s.length();
+        for (int i = from; i < length && i - from < maxLength
+                && is(s.charAt(i), flags); i++) {
+            int end = i + 1;
+            if (group == groups - 1) {
+                ends[end] = true;
+            } else if (end < length && s.charAt(end) == separator) {
+                markGroups(s, end + 1, group + 1, groups, flags, maxLength,
+                        separator, ends);
+            }
+        }
+    }
+
+    /**
+     * Проверка маски доменного имени хоста
+     * ({@link IrcParamRegex#servernameMaskRegex}).
+     * @param s строка.
+     * @return true, если строка является маской доменного имени.
+     */
+    public static boolean isServernameMask(String s) {
+        return isServernameMask(s, 0, s.length());
+    }
+
+    /**
+     * Проверка маски доменного имени хоста в части строки. Последний
+     * компонент должен быть компонентом доменного имени, предыдущие
+     * компоненты могут содержать метасимволы.
+     * @param s строка.
+     * @param from начало части строки.
+     * @param to конец части строки (не включается).
+     * @return true, если часть строки является маской доменного имени.
+     */
+    private static boolean isServernameMask(String s, int from, int to) {
+        int lastDot = to > from ? s.lastIndexOf('.', to - 1) : -1;
+        if (lastDot < from) {
+            return isShortName(s, from, to);
+        }
+        if (!isShortName(s, lastDot + 1, to)) {
+            return false;
+        }
+        int labelStart = from;
+        for (int i = from; i <= lastDot; i++) {
+            if (s.charAt(i) == '.') {
+                if (i == labelStart || wildLabelTail(s, labelStart, i) != i) {
+                    return false;
+                }
+                labelStart = i + 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Поиск конца последовательности компонентов доменного имени и
+     * метасимволов "*" и "?" ("(shortName|*|?)+").
+     * @param s строка.
+     * @param from начало последовательности.
+     * @param to конец области поиска (не включается).
+     * @return индекс первого символа, который не может быть
+     * продолжением последовательности, или to.
+     */
+    private static int wildLabelTail(String s, int from, int to) {
+        boolean nameStarted = false;
+        int i = from;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?') {
+                nameStarted = false;
+            } else if (is(c, LETTER)) {
+                nameStarted = true;
+            } else if (!nameStarted || (c != '-' && !is(c, DIGIT))) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Проверка маски для адресации сообщений хостам и серверам
+     * ({@link IrcParamRegex#targetMaskRegex}).
+     * @param s строка.
+     * @return true, если строка является маской.
+     */
+    public static boolean isTargetMask(String s) {
+        return !s.isEmpty()
+                && (s.charAt(0) == '$' || s.charAt(0) == '#')
+                && isServernameMask(s, 1, s.length());
+    }
+
+    /**
+     * Проверка имени сервиса ({@link IrcParamRegex#serviceNameRegex}).
+     * @param s строка.
+     * @return true, если строка является именем сервиса.
+     */
+    public static boolean isServiceName(String s) {
+        int at = s.indexOf('@');
+        if (at == -1) {
+            return isNickName(s, 0, s.length());
+        }
+        return isNickName(s, 0, at) && isHostName(s, at + 1, s.length());
+    }
+
+    /**
+     * Проверка получателя сообщения ({@link IrcParamRegex#msgToRegex}).
+     * Проверка учитывает приоритет операции выбора в регулярном
+     * выражении: в вариантах "user(%host)?@servername", "user%host" и
+     * "nickname!user@host" на месте host и servername допускается
+     * только доменное имя, а IP-адрес допускается как самостоятельный
+     * вариант, в том числе непосредственно после login name.
+     * @param s строка.
+     * @return true, если строка является получателем сообщения.
+     */
+    public static boolean isMsgTo(String s) {
+        int length = s.length();
+        if (isChannel(s) || isNickName(s, 0, length)
+                || isHostAddr(s, 0, length) || isTargetMask(s)) {
+            return true;
+        }
+
+        int userEnd = 0;
+        while (userEnd < length && is(s.charAt(userEnd), USER)) {
+            userEnd++;
+        }
+        if (userEnd > 0 && userEnd < length) {
+            char c = s.charAt(userEnd);
+            if (c == '@') {
+                if (isUserWithHostAddr(s, 0, userEnd)
+                        && isHostName(s, userEnd + 1, length)) {
+                    return true;
+                }
+            } else if (c == '%' && userEnd <= USERLEN) {
+                int at = s.indexOf('@', userEnd + 1);
+                if (at == -1) {
+                    if (isHostName(s, userEnd + 1, length)) {
+                        return true;
+                    }
+                } else if (isHostName(s, userEnd + 1, at)
+                        && isHostName(s, at + 1, length)) {
+                    return true;
+                }
+            }
+        }
+
+        int exclamation = s.indexOf('!');
+        if (exclamation > 0 && isNickName(s, 0, exclamation)) {
+            int userStart = exclamation + 1;
+            userEnd = userStart;
+            while (userEnd < length && is(s.charAt(userEnd), USER)) {
+                userEnd++;
+            }
+            if (userEnd > userStart && userEnd - userStart <= USERLEN
+                    && userEnd < length && s.charAt(userEnd) == '@'
+                    && isHostName(s, userEnd + 1, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверка части строки, состоящей из символов login name, на
+     * соответствие "user(hostaddr)?".
+     * @param s строка.
+     * @param from начало части строки.
+     * @param to конец части строки (не включается).
+     * @return true, если часть строки соответствует "user(hostaddr)?".
+     */
+    private static boolean isUserWithHostAddr(String s, int from, int to) {
+        if (to - from <= USERLEN) {
+            return true;
+        }
+        for (int i = Math.max(from + 1, to - HOSTADDRLEN);
+                i <= from + USERLEN; i++) {
+            if (isHostAddr(s, i, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверка маски для поиска клиента
+     * ({@link IrcParamRegex#userMaskRegex}). Маска состоит из части с
+     * никнэймами и метасимволами, за которой могут следовать части
+     * "!", "%" и "@". Каждая из этих частей может быть либо маской
+     * доменного имени, перед которой стоит соответствующий символ, либо
+     * IP-адресом без этого символа. Проверка выполняется с помощью
+     * множества позиций, в которых может закончиться очередная часть.
+     * @param s строка.
+     * @return true, если строка является маской для поиска клиента.
+     */
+    public static boolean isUserMask(String s) {
+        int length = s.length();
+        boolean[] ends = new boolean[length + 1];
+        int nickEnd = nickMaskTail(s);
+        for (int i = 1; i <= nickEnd; i++) {
+            ends[i] = true;
+        }
+        for (char separator : new char[] {'!', '%', '@'}) {
+            boolean[] nextEnds = ends.clone();
+            for (int i = 1; i < length; i++) {
+                if (ends[i]) {
+                    if (s.charAt(i) == separator) {
+                        markHostMask(s, i + 1, nextEnds);
+                    }
+                    markHostAddr(s, i, nextEnds);
+                }
+            }
+            ends = nextEnds;
+        }
+        return ends[length];
+    }
+
+    /**
+     * Поиск конца последовательности никнэймов и метасимволов "*" и
+     * "?" ("(nickname|*|?)+") в начале строки.
+     * @param s строка.
+     * @return индекс первого символа, который не может быть
+     * продолжением последовательности.
+     */
+    private static int nickMaskTail(String s) {
+        int tailLength = -1;
+        int i = 0;
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?') {
+                tailLength = -1;
+            } else if (is(c, LETTER | SPECIAL)) {
+                tailLength = 0;
+            } else if ((c == '-' || is(c, DIGIT)) && tailLength != -1
+                    && tailLength < Constants.NICKLEN) {
+                tailLength++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Отметка всех позиций, в которых может закончиться маска
+     * доменного имени "(shortName|*|?)+(\.shortName)*", начинающаяся
+     * в заданной позиции.
+     * @param s строка.
+     * @param from начало маски.
+     * @param ends массив отметок.
+     */
+    private static void markHostMask(String s, int from, boolean[] ends) {
+        int length = s.length();
+        int end = wildLabelTail(s, from, length);
+        for (int i = from + 1; i <= end; i++) {
+            ends[i] = true;
+        }
+        while (end > from && end + 1 < length && s.charAt(end) == '.'
+                && is(s.charAt(end + 1), LETTER)) {
+            int labelStart = end + 1;
+            end = shortNameTail(s, labelStart + 1, length);
+            for (int i = labelStart + 1; i <= end; i++) {
+                ends[i] = true;
+            }
+        }
+    }
+}
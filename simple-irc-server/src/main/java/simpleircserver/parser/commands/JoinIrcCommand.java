@@ -44,6 +44,7 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-20
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Memory budget is logged when a channel cannot be created.
  * @author  Nikolay Kirdin
  */
 public class JoinIrcCommand extends IrcCommandBase {
@@ -227,15 +228,14 @@ public class JoinIrcCommand extends IrcCommandBase {
                     
                     if (ch == null) {
                         IrcCommandReport ircCommandReport = null;
-                        long freeMemory = 
-                            Runtime.getRuntime().freeMemory();
                         ircCommandReport = errFileError(client,
                             commandName, "MEMORY");
                         client.send(ircCommandReport);
                         
                         Globals.logger.get().log(Level.SEVERE, 
-                                "Insufficient free memory(B)" + 
-                                freeMemory);
+                                "Insufficient memory budget:" + 
+                                Globals.memoryBudget.get()
+                                .getMonitoringString());
                         continue;
                     }
                     responseReply = db.register(ch);
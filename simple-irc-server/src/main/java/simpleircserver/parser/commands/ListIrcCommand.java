@@ -41,6 +41,7 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-07
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Full listing is ordered by case-folded channel names.
  * @author  Nikolay Kirdin
  */
 public class ListIrcCommand extends IrcCommandBase {
@@ -155,7 +156,7 @@ public class ListIrcCommand extends IrcCommandBase {
         }
 
         if (channelStringSet == null || channelStringSet.isEmpty()) {
-            channelSetIterator = db.getChannelSetIterator();
+            channelSetIterator = db.getChannelSet().iterator();
         } else {
             for (String channelName : channelStringSet) {
                 IrcChannel ch = db.getChannel(channelName);
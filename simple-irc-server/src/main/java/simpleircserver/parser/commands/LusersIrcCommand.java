@@ -42,6 +42,7 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-07
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Counting does not copy the user and channel registries.
  * @author  Nikolay Kirdin
  */
 public class LusersIrcCommand extends IrcCommandBase {
@@ -147,7 +148,7 @@ public class LusersIrcCommand extends IrcCommandBase {
         
         numOfServers = db.getIrcServerSet().size();    
         numOfServices = db.getServiceSet().size();    
-        numOfChannels = db.getChannelSet().size();    
+        numOfChannels = db.getChannelMapSize();    
                     
         for (Iterator<User> userSetIterator = db.getUserSetIterator(); 
                 userSetIterator.hasNext();) {
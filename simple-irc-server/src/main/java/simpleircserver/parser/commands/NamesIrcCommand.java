@@ -39,6 +39,7 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-07
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Full listing is ordered by case-folded channel names.
  * @author  Nikolay Kirdin
  */
 public class NamesIrcCommand extends IrcCommandBase {
@@ -157,7 +158,7 @@ public class NamesIrcCommand extends IrcCommandBase {
         }
 
         if (channelStringSet == null || channelStringSet.isEmpty()) {
-            channelSetIterator = db.getChannelSetIterator();
+            channelSetIterator = db.getChannelSet().iterator();
         } else {
             for (String s : channelStringSet) {
                 IrcChannel ch = db.getChannel(s);
@@ -209,7 +210,7 @@ public class NamesIrcCommand extends IrcCommandBase {
         if (channelStringSet == null || channelStringSet.isEmpty()) {
             //for (User user : visibleUserSet) {
             userLoop:
-            for (Iterator<User> iterator = db.getUserSetIterator();
+            for (Iterator<User> iterator = db.getUserSet().iterator();
                     iterator.hasNext();) {
             
                 User user = iterator.next();
@@ -44,6 +44,8 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-20
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Full user registry is reported by ERR_FILEERROR.
+ * @version 0.5.4 2015-11-27 Nickname can be changed when the user registry is full.
  * @author  Nikolay Kirdin
  */
 public class NickIrcCommand extends IrcCommandBase {
@@ -137,12 +139,17 @@ public class NickIrcCommand extends IrcCommandBase {
         wasNamed = db.getUser(oldNickname) != null;
         rename = client.isRegistered();
         client.setNickname(nickname);
-        responseReply = db.register(client);
+        // Смена никнэйма не увеличивает количество клиентов.
+        responseReply = wasNamed ? db.registerRenamed(client) 
+                : db.register(client);
                 
         if (responseReply != Reply.RPL_OK) {
             client.setNickname(oldNickname);
             if (responseReply == Reply.ERR_NICKNAMEINUSE) {
                 client.send(errNicknameInUse(client, nickname));
+            } else if (responseReply == Reply.ERR_FILEERROR) {
+                // Достигнуто ограничение на количество клиентов.
+                client.send(errFileError(client, "register", nickname));
             } else {
                 throw new Error("Internal error. Wrong reply: " + 
                         responseReply);
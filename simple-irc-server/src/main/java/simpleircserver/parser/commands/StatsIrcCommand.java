@@ -25,13 +25,15 @@ import java.util.*;
 
 import simpleircserver.base.DB;
 import simpleircserver.base.Globals;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.IrcSendQueue;
 import simpleircserver.parser.IrcCommandParser;
 import simpleircserver.parser.IrcCommandReport;
 import simpleircserver.parser.IrcSyntaxException;
 import simpleircserver.parser.Reply;
 import simpleircserver.talker.IrcTalker;
 import simpleircserver.talker.user.User;
-import simpleircserver.tools.IrcAvgMeter;
+import simpleircserver.tools.IrcHistogram;
 
 /**
  * StatsIrcCommand - класс, который проверяет параметры команды IRC 
@@ -42,6 +44,8 @@ import simpleircserver.tools.IrcAvgMeter;
  *
  * @version 0.5 2012-02-07
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Query "l" reports the output queue of the connections.
+ * @version 0.5.4 2015-11-27 Query "m" reports percentiles of the execution time.
  * @author  Nikolay Kirdin
  */
 public class StatsIrcCommand extends IrcCommandBase {
@@ -141,23 +145,32 @@ public class StatsIrcCommand extends IrcCommandBase {
         
         if(queryList.contains("l")) {
         //211    RPL_STATSLINKINFO "<linkname> <sendq> <sent messages> 
-        // <sent Kbytes> <received messages> <received Kbytes> <time open>"
-            client.send(rplStatsLinkInfo(client));
+        // <sent Kbytes> <received messages> <received Kbytes> <time open>
+        // <sendq high-water> <sendq dropped>"
+            if (client.isOperator()) {
+                for (Connection connection : db.getConnectionList()) {
+                    IrcTalker ircTalker = connection.ircTalker.get();
+                    client.send(rplStatsLinkInfo(client, 
+                            ircTalker != null && 
+                            ircTalker.getNickname() != null ? 
+                            ircTalker.getNickname() : connection.toString(),
+                            connection));
+                }
+            } else {
+                client.send(rplStatsLinkInfo(client, client.getNickname(),
+                        client.getConnection()));
+            }
         }
                     
         if(queryList.contains("m")) {
             //212    RPL_STATSCOMMANDS "<command> <count> <byte count>
-            //<remote count>"
-            LinkedHashMap<String, IrcAvgMeter> commandStats = 
+            //<remote count> <mean> <p50> <p95> <p99> <max>"
+            LinkedHashMap<String, IrcHistogram> commandStats = 
                     IrcCommandParser.getCommandStats();
             
             for (String command : commandStats.keySet()) {
-                IrcAvgMeter ircAvgMeter = commandStats.get(command);
                 client.send(rplStatsCommands(client, command, 
-                        ircAvgMeter.counter.get(),
-                        0,
-                        0,
-                        ircAvgMeter.getAvgValue()));
+                        commandStats.get(command)));
             }
         }
                     
@@ -177,15 +190,31 @@ public class StatsIrcCommand extends IrcCommandBase {
     
     /** 
      * Создает сообщение соответствующее  формализованному сообщению 
-     * {@link Reply#RPL_STATSLINKINFO}. 
+     * {@link Reply#RPL_STATSLINKINFO}. Объем принятых данных не 
+     * учитывается, время работы соединения отсчитывается от момента 
+     * перехода в текущее состояние.
      * @param requestor источник команды.
+     * @param linkName имя соединения.
+     * @param connection соединение.
      * @return объект с сообщением.
      */        
-    private IrcCommandReport rplStatsLinkInfo(IrcTalker requestor) {
+    private IrcCommandReport rplStatsLinkInfo(IrcTalker requestor, 
+            String linkName, Connection connection) {
         
+        IrcSendQueue outputQueue = connection.getOutputQueue();
+        long timeOpen = (System.currentTimeMillis() - 
+                connection.connectionStateTime.get()) / 1000;
         String remark = Reply.makeText(Reply.RPL_STATSLINKINFO,
-                requestor.getNickname(), "0", "0", "0", "0", "0", "0", 
-                "0");
+                requestor.getNickname(), 
+                linkName,
+                String.valueOf(outputQueue.getBytes()),
+                String.valueOf(connection.writeCount.get()),
+                String.valueOf(outputQueue.getSentBytes() / 1024),
+                String.valueOf(connection.readCount.get()),
+                "0",
+                String.valueOf(timeOpen),
+                String.valueOf(outputQueue.getHighWaterBytes()),
+                String.valueOf(outputQueue.getDroppedCount()));
 
         return new IrcCommandReport(remark, requestor,
                 Globals.thisIrcServer.get());
@@ -193,27 +222,30 @@ public class StatsIrcCommand extends IrcCommandBase {
     
     /** 
      * Создает сообщение соответствующее  формализованному сообщению 
-     * {@link Reply#RPL_STATSCOMMANDS}. 
+     * {@link Reply#RPL_STATSCOMMANDS}. Объем данных не учитывается.
      * @param requestor источник команды.
      * @param commandName имя команды.
-     * @param times количество обращений к команде в сообщениях клиентов.
+     * @param histogram распределение длительности (ns) исполнения 
+     * команды.
      * @return объект с сообщением.
      */        
     private IrcCommandReport rplStatsCommands(IrcTalker requestor, 
             String commandName, 
-            long times, 
-            long bytes, 
-            long remoteBytes,
-            long avgDuration
+            IrcHistogram histogram
             ) {
         
+        long[] percentiles = histogram.getPercentiles(50, 95, 99);
         String remark = Reply.makeText(Reply.RPL_STATSCOMMANDS,
                 requestor.getNickname(),
                 commandName, 
-                 String.valueOf(times),
-                String.valueOf(bytes), 
-                String.valueOf(remoteBytes), 
-                String.valueOf(avgDuration));
+                String.valueOf(histogram.getCount()),
+                String.valueOf(0), 
+                String.valueOf(0), 
+                String.valueOf(histogram.getMean()),
+                String.valueOf(percentiles[0]),
+                String.valueOf(percentiles[1]),
+                String.valueOf(percentiles[2]),
+                String.valueOf(histogram.getMax()));
 
         return new IrcCommandReport(remark, requestor,
                 Globals.thisIrcServer.get());
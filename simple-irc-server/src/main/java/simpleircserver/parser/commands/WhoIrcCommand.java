@@ -33,6 +33,7 @@ import simpleircserver.parser.IrcSyntaxException;
 import simpleircserver.parser.Reply;
 import simpleircserver.talker.IrcTalker;
 import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcMatcher;
 
 /**
  * WhoIrcCommand - класс, который проверяет параметры команды IRC 
@@ -43,6 +44,7 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-07
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Channel name without metacharacters is looked up in the registry.
  * @author  Nikolay Kirdin
  */
 public class WhoIrcCommand extends IrcCommandBase {
@@ -176,14 +178,19 @@ public class WhoIrcCommand extends IrcCommandBase {
 
         if (isIt(mask, channelNicknameMaskPattern)) {
 
-            Iterator<Map.Entry<String, IrcChannel>> channelIterator = 
-                    db.getChannelEntrySetIterator();
+            Iterator<IrcChannel> channelIterator = null;
+            if (IrcMatcher.isPattern(mask)) {
+                channelIterator = db.getChannelSetIterator();
+            } else {
+                IrcChannel exactChannel = db.getChannel(mask);
+                channelIterator = exactChannel == null 
+                        ? Collections.<IrcChannel>emptyList().iterator()
+                        : Collections.singletonList(exactChannel).iterator();
+            }
 
             while (channelIterator.hasNext()) {
-                Map.Entry<String, IrcChannel> channelEntry = 
-                        channelIterator.next();
-                String token = channelEntry.getKey();
-                IrcChannel ch = channelEntry.getValue();
+                IrcChannel ch = channelIterator.next();
+                String token = ch.getNickname().toLowerCase(Locale.ENGLISH);
                 
                 tokenMatcher.reset(token);
                 
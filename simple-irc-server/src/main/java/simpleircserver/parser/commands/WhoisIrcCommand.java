@@ -43,6 +43,7 @@ import simpleircserver.tools.IrcMatcher;
  *
  * @version 0.5 2012-02-07
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Nickname without metacharacters is looked up in the registry.
  * @author  Nikolay Kirdin
  */
 public class WhoisIrcCommand extends IrcCommandBase {
@@ -166,6 +167,14 @@ public class WhoisIrcCommand extends IrcCommandBase {
         
         for (String nicknameMask : nicknameMaskList) {
             nicknameString = nicknameString + nicknameMask + ",";
+            if (!IrcMatcher.isPattern(nicknameMask)) {
+                User user = db.getUser(nicknameMask);
+                if (user != null && user.isVisible(client)
+                    && user.isRegistered()) {
+                    outputUserSet.add(user);
+                }
+                continue;
+            }
             for (Iterator<String> iterator = db.getUserNicknameIterator();
                 iterator.hasNext();) {
                 String userNickname = iterator.next();
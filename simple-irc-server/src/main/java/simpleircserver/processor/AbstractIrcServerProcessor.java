@@ -33,12 +33,16 @@ import java.util.logging.Logger;
 import simpleircserver.base.Globals;
 import simpleircserver.parser.commands.NoticeIrcCommand;
 import simpleircserver.tools.IrcAvgMeter;
+import simpleircserver.tools.IrcHistogram;
+import simpleircserver.tools.IrcMetrics;
 
 /**
  * Server - класс, который служит для управления запуском, остановом, и 
  * перезапуском основных компонентов сервера IRC. 
  *
  * @version 0.5.4 2015-11-13
+ * @version 0.5.4 2015-11-27 Duration of the working part of the cycle is recorded into histogram.
+ * @version 0.5.4 2015-11-27 Metrics of the processor are registered in the metrics registry.
  * @author  Nikolay Kirdin
  */
 public abstract class AbstractIrcServerProcessor implements IrcServerProcessor, Runnable {
@@ -79,6 +83,9 @@ public abstract class AbstractIrcServerProcessor implements IrcServerProcessor,
     /** Обработчик статистических данных для вычисления планируемого таймеаута.  */
     protected volatile IrcAvgMeter avgPlannedDurationOfTimeout = new IrcAvgMeter(STATISTIC_DATA_LENGTH_DEFAULT);
 
+    /** Распределение длительности (us) рабочей части цикла. */
+    protected final IrcHistogram cycleDurationHistogram = new IrcHistogram();
+
     /** 
      * Управление выполнением/остановом основного цикла.
      * true - цикл выполняется, false - цикл приостановлен. 
@@ -102,6 +109,7 @@ public abstract class AbstractIrcServerProcessor implements IrcServerProcessor,
      * false - инициализация завершена с ошибками. 
      */
     public boolean processorStart() {
+        registerMetrics(Globals.metrics.get());
         thread.set(new Thread(this));        
         running.set(true);
         thread.get().start();
@@ -132,6 +140,7 @@ public abstract class AbstractIrcServerProcessor implements IrcServerProcessor,
      * @return true - действия успешно выполнены.
      */
     public boolean processorStop() {
+        unregisterMetrics(Globals.metrics.get());
         boolean result = true;
         if (thread.get() != null) {
             down.set(true);
@@ -198,7 +207,9 @@ public abstract class AbstractIrcServerProcessor implements IrcServerProcessor,
      *         <LI>среднее время (ms) выполнения основного цикла 
      *         (без таймаута);</LI>
      *         <LI>средняя длительность (ms) таймаута;</LI>
-     *         <LI>средняя планируемая длительность (ms) таймаутов.</LI>
+     *         <LI>средняя планируемая длительность (ms) таймаутов;</LI>
+     *         <LI>количество, среднее значение, процентили и максимум 
+     *         длительности (us) рабочей части цикла.</LI>
      * </UL>
      */
     public void run() {        
@@ -224,7 +235,7 @@ public abstract class AbstractIrcServerProcessor implements IrcServerProcessor,
             avgDurationOfWorkingPartOfCycle.intervalStart(System.currentTimeMillis());
 
             
-            performProcessorOperation();
+            performMeasuredOperation();
             
             avgDurationOfWorkingPartOfCycle.intervalEnd(System.currentTimeMillis());
             
@@ -290,6 +301,46 @@ public abstract class AbstractIrcServerProcessor implements IrcServerProcessor,
             removeProcessorFromHighLoadSet();
         }
     }
+
+    /**
+     * Получение наименования процессора, которое используется в качестве
+     * значения метки "processor" метрик процессора.
+     * @return наименование процессора.
+     */
+    protected String getProcessorName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Регистрация метрик процессора. Выполняется при запуске процессора.
+     * @param metrics реестр метрик.
+     */
+    protected void registerMetrics(IrcMetrics metrics) {
+        metrics.summary("irc_processor_cycle_microseconds",
+                "Duration (us) of the working part of the processor cycle.",
+                cycleDurationHistogram, "processor", getProcessorName());
+    }
+
+    /**
+     * Удаление метрик процессора из реестра. Выполняется при останове
+     * процессора.
+     * @param metrics реестр метрик.
+     */
+    protected void unregisterMetrics(IrcMetrics metrics) {
+        metrics.remove("irc_processor_cycle_microseconds", "processor",
+                getProcessorName());
+    }
+
+    /**
+     * Выполнение рабочей части цикла с занесением ее длительности в
+     * {@link #cycleDurationHistogram}.
+     */
+    protected void performMeasuredOperation() {
+        long startTime = System.nanoTime();
+        performProcessorOperation();
+        cycleDurationHistogram.record((System.nanoTime() - startTime) / 1000);
+    }
+
     /** Индикация высокой загруженности. 
      * @parametr processor - процессор на котором наблюдается высокая нагрузка
      */
@@ -306,7 +357,8 @@ public abstract class AbstractIrcServerProcessor implements IrcServerProcessor,
             String monitoringString = this.getClass().getSimpleName() + 
                     " avgWorkingTime (ms):" + avgWorkingTime +
                     " avgActualTO (ms):" + avgActualTO +
-                    " avgWaitingTO (ms):" + awto;
+                    " avgWaitingTO (ms):" + awto +
+                    cycleDurationHistogram.getMonitoringString("cycleUs");
             
             monitoringString += getMonitoringstring();
             
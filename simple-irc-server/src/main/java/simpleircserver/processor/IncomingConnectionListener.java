@@ -22,6 +22,7 @@ package simpleircserver.processor;
  */
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
@@ -37,11 +38,15 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import simpleircserver.base.Globals;
+import simpleircserver.config.IrcIoEngine;
+import simpleircserver.config.IrcSendQueuePolicy;
 import simpleircserver.connection.ConnectionState;
 import simpleircserver.connection.NetworkConnection;
 import simpleircserver.parser.Reply;
 import simpleircserver.talker.IrcTalkerState;
 import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcAcceptThrottle;
+import simpleircserver.tools.IrcLoadShedder;
 
 
  /**
@@ -53,6 +58,12 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-24 Size of the input queue is taken from the interface configuration.
+ * @version 0.5.4 2015-11-27 Batched accept, per-address and per-network rate limiting, ERROR line on rejection.
+ * @version 0.5.4 2015-11-27 Limit of the output queue is taken from the interface configuration.
+ * @version 0.5.4 2015-11-27 Timers of the accepted connection are started.
+ * @version 0.5.4 2015-11-27 Connections are rejected from the HIGH load level.
+ * @version 0.5.4 2015-11-27 Input queue size is passed to the connection constructor.
  * @author  Nikolay Kirdin
  */
 public class IncomingConnectionListener extends AbstractIrcServerProcessor {
@@ -69,10 +80,48 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
     /** Кодировка сообщений. */
     public AtomicReference<Charset> listenerCharset = 
             new AtomicReference<Charset>(Globals.listenerCharset.get());
+    
+    /** Размер входной очереди соединения. */
+    public AtomicInteger inputQueueSize = 
+            new AtomicInteger(Globals.inputQueueSize.get());
+    
+    /** Максимальная суммарная длина (байт) выходной очереди соединения. */
+    public AtomicLong sendQueueSize = 
+            new AtomicLong(Globals.sendQueueSize.get());
+    
+    /** Действия при переполнении выходной очереди соединения. */
+    public AtomicReference<IrcSendQueuePolicy> sendQueuePolicy = 
+            new AtomicReference<IrcSendQueuePolicy>(
+            Globals.sendQueuePolicy.get());
         
+    /** 
+     * Максимальное количество соединений, принимаемых за один цикл 
+     * без паузы. 
+     */
+    public AtomicInteger acceptBatchSize = 
+            new AtomicInteger(Globals.acceptBatchSize.get());
+
+    /** Количество принятых соединений. */
+    public AtomicLong acceptCount = new AtomicLong();
+
+    /** 
+     * Количество соединений, отвергнутых из-за превышения частоты 
+     * соединений. 
+     */
+    public AtomicLong throttledCount = new AtomicLong();
+
+    /** Количество соединений, отвергнутых по другим причинам. */
+    public AtomicLong rejectedCount = new AtomicLong();
+
+    /** Объект, ограничивающий частоту приема новых соединений. */
+    private volatile IrcAcceptThrottle acceptThrottle;
+
     /** Признак ошибки при выполнении метода. */        
     public AtomicBoolean error = new AtomicBoolean(false);
     
+    /** Признак использования этого процессора. */
+    public AtomicBoolean enabled = new AtomicBoolean(true);
+    
     /** IP-адрес интерфейса. */
     private InetAddress inetAddress;
     
@@ -157,12 +206,22 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
      * этим портом, то этот факт будет занесен в журнал, выполнение 
      * метода будет продолжено. 
      * 
-     * <P>После получения локального сокета нового соединения, проверяется 
-     * степень нагруженности программы, путем проверки множества 
-     * {@link Globals#ircServerProcessorSet}, если это множество не пусто,
-     * то программа находится в высоконагруженном сосотоянии. В этом 
-     * случае сокет закрывается и после таймаута происходит переход к 
-     * началу основного цикла. 
+     * <P>Соединения принимаются пачками: пауза {@link #limitingTO} 
+     * выполняется после того, как очередь ожидающих соединений 
+     * опустеет, или после приема {@link #acceptBatchSize} соединений 
+     * подряд.
+     * 
+     * <P>После получения локального сокета нового соединения, 
+     * проверяется частота соединений с IP-адреса клиента и из его сети
+     * ({@link IrcAcceptThrottle}). Затем проверяется степень 
+     * нагруженности программы ({@link IrcLoadShedder#isAcceptAllowed()}),
+     * начиная с уровня {@link IrcLoadShedder.Level#HIGH} программа 
+     * находится в высоконагруженном сосотоянии. Если 
+     * частота превышена или программа находится в высоконагруженном 
+     * состоянии, то клиенту передается сообщение ERROR и сокет 
+     * закрывается. Количество принятых и отвергнутых соединений 
+     * хранится в {@link #acceptCount}, {@link #throttledCount} и 
+     * {@link #rejectedCount}.
      * 
      * <P>После того как удаленный клиент установит связь с сервером, 
      * будут созданы объекты классов {@link NetworkConnection} и 
@@ -196,11 +255,7 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
         Logger logger = Globals.logger.get();
         
         long waitingTO = limitingTO.get();
-        boolean isConnectionAllowed = false;
-        boolean isUserAllowed = false;
         Socket socket = null;
-        NetworkConnection connection = null;
-        User user = null;
 
         logger.log(Level.FINEST, "Running");
 
@@ -228,6 +283,14 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
             error.set(true);
         }
 
+        acceptThrottle = new IrcAcceptThrottle(
+                Globals.acceptAddressBurst.get(),
+                Globals.acceptAddressPeriod.get(),
+                Globals.acceptNetworkBurst.get(),
+                Globals.acceptNetworkPeriod.get(),
+                Globals.maxServerClients.get());
+        int batchCounter = 0;
+
         while (!down.get() && !error.get()) {
 
             if (!running.get() && !down.get()) {
@@ -245,69 +308,30 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
 
             try {
                 socket = serverSocket.accept();
-                if (!Globals.ircServerProcessorSet.get().isEmpty()) {
-                    if (socket != null) {
-                        socket.close();
-                    }
-                    try {
-                        Thread.sleep(sleepTO.get());
-                    } catch (InterruptedException e) {}
-                    continue;
-                }                
-                connection = NetworkConnection.create(socket);
-                if (connection != null) {
-                    connection.getSocket().setSoTimeout(
-                            connection.soTimeout.get());
-                    connection.getSocket().setReceiveBufferSize(
-                            Globals.receiveBufferSize.get());
-                    connection.charset.set(listenerCharset.get());
-
-                    isConnectionAllowed = 
-                            Globals.db.get().register(connection) ==
-                            Reply.RPL_OK;
-                } else {
-                    isConnectionAllowed = false;
-                }
-
-                if (isConnectionAllowed) {
-                    user = User.create();
-                    if (user != null) {
-                        user.setConnection(connection);
-                        user.setNickname(user.getIdString());
-                        user.setIrcServer(Globals.thisIrcServer.get());
-                        connection.ircTalker.set(user);
-
-                        isUserAllowed = Globals.db.get().register(user) ==
-                                Reply.RPL_OK;
-                        if (!isUserAllowed) {
-                            user.setConnection(null);
-                            connection.ircTalker.set(null);
-                        }
-                    } else {
-                        isUserAllowed = false;
-                    }
-                }
-
-                if (isConnectionAllowed && isUserAllowed) {
-                    
-                    user.setState(IrcTalkerState.REGISTERING);
-                    connection.run();
-                    /*
-                    logger.log(Level.FINEST, "Connection for " +
-                            socket + " accepted." + " ReceiveBufferSize:" 
-                            + socket.getReceiveBufferSize() +
-                            "," + " SO Timeout (ms):" + socket.getSoTimeout() +
-                            "," + " Charset:" + connection.charset.get());
-                    */
-                    
+                batchCounter++;
+                IrcAcceptThrottle.Result result = acceptThrottle.tryAccept(
+                        socket.getInetAddress(), 
+                        System.currentTimeMillis());
+                if (result != IrcAcceptThrottle.Result.ACCEPTED) {
+                    throttledCount.getAndIncrement();
+                    logger.log(Level.FINER, "Connection for " + socket + 
+                            " throttled: " + result);
+                    rejectSocket(socket, "Connection rate exceeded");
+                } else if (!Globals.loadShedder.get().isAcceptAllowed()) {
+                    rejectedCount.getAndIncrement();
+                    rejectSocket(socket, "Server is overloaded");
+                } else if (acceptConnection(socket)) {
+                    acceptCount.getAndIncrement();
                 } else {
+                    rejectedCount.getAndIncrement();
                     logger.log(Level.INFO, "Connection for " + socket + 
                             " rejected.");
-                    if (connection != null) {
-                        connection.delete();
-                    }
                     waitingTO = sleepTO.get();
                 }
+                if (batchCounter < acceptBatchSize.get() && 
+                        waitingTO == limitingTO.get()) {
+                    continue;
+                }
             } catch (SocketTimeoutException e) {
                 
             } catch (IOException e) {
@@ -316,6 +340,7 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
                 logger.log(Level.WARNING, "ServerSocked: " +
                         serverSocket + ". Accepting error." + " " + e);
             }
+            batchCounter = 0;
             try {
                 Thread.sleep(waitingTO);
             } catch (InterruptedException e) {}
@@ -334,20 +359,120 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
         logger.log(Level.FINEST, "Ended");
     }
     
+    /**
+     * Инициализация нового соединения. Создаются объекты классов 
+     * {@link NetworkConnection} и {@link User}, которые помещаются в 
+     * репозитарий, после этого выполняется инициализация соединения. 
+     * Если соединение не может быть создано или помещено в репозитарий,
+     * то клиенту передается сообщение ERROR и сокет закрывается.
+     * @param socket сокет нового соединения.
+     * @return true - соединение принято.
+     * @throws IOException ошибка при задании параметров сокета.
+     */
+    private boolean acceptConnection(Socket socket) throws IOException {
+        boolean isConnectionAllowed = false;
+        boolean isUserAllowed = false;
+        User user = null;
+        NetworkConnection connection = NetworkConnection.create(socket, 
+                inputQueueSize.get());
+        if (connection != null) {
+            connection.getSocket().setSoTimeout(
+                    connection.soTimeout.get());
+            connection.getSocket().setReceiveBufferSize(
+                    Globals.receiveBufferSize.get());
+            connection.charset.set(listenerCharset.get());
+            connection.setSendQueueLimit(sendQueueSize.get(), 
+                    sendQueuePolicy.get());
+
+            isConnectionAllowed = 
+                    Globals.db.get().register(connection) ==
+                    Reply.RPL_OK;
+        }
+
+        if (isConnectionAllowed) {
+            user = User.create();
+            if (user != null) {
+                user.setConnection(connection);
+                user.setNickname(user.getIdString());
+                user.setIrcServer(Globals.thisIrcServer.get());
+                connection.ircTalker.set(user);
+
+                isUserAllowed = Globals.db.get().register(user) ==
+                        Reply.RPL_OK;
+                if (!isUserAllowed) {
+                    user.setConnection(null);
+                    connection.ircTalker.set(null);
+                }
+            }
+        }
+
+        if (isConnectionAllowed && isUserAllowed) {
+            user.setState(IrcTalkerState.REGISTERING);
+            connection.run();
+            connection.startTimers();
+            return true;
+        }
+        rejectSocket(socket, "Server is full");
+        if (isConnectionAllowed) {
+            connection.setBroken();
+        }
+        return false;
+    }
+
+    /**
+     * Отказ в обслуживании соединения. Клиенту передается сообщение 
+     * ERROR, после чего сокет закрывается. Сокет нового соединения 
+     * имеет пустой буфер передачи, поэтому запись не блокируется.
+     * @param socket сокет соединения.
+     * @param reason причина отказа.
+     */
+    private void rejectSocket(Socket socket, String reason) {
+        try {
+            OutputStream os = socket.getOutputStream();
+            os.write(("ERROR :Closing Link: " + 
+                    socket.getInetAddress().getHostAddress() + " (" + 
+                    reason + ")\r\n").getBytes(listenerCharset.get()));
+            os.flush();
+        } catch (IOException e) {}
+        try {
+            socket.close();
+        } catch (IOException e) {}
+    }
+
+    @Override
+    public String getMonitoringstring() {
+        return " accepted:" + acceptCount.get() + 
+                " throttled:" + throttledCount.get() + 
+                " rejected:" + rejectedCount.get();
+    }
+
     /** 
      * Инициализация процесса обработки входящих сетевых соединений. 
+     * Процесс запускается только в том случае, если в конфигурации 
+     * интерфейса задан способ обслуживания соединений 
+     * {@link IrcIoEngine#BLOCKING}.
      * @return true инициализация успешно завершена, 
      * false инициализация завершена с ошибками. 
      */
     @Override
     public boolean processorStart() {
-
+        enabled.set(Globals.db.get().getIrcInterfaceConfig().getIoEngine() 
+                == IrcIoEngine.BLOCKING);
+        if (!enabled.get()) {
+            return true;
+        }
         int serverPortNumber = Globals.db.get().getIrcInterfaceConfig().getPort();
         Charset listenerCharset = Globals.db.get().getIrcInterfaceConfig().getCharset();
         InetAddress inetAddress = Globals.db.get().getIrcInterfaceConfig().getInetAddress(); 
         setInetAddress(inetAddress);
         setServerPortNumber(serverPortNumber);
         this.listenerCharset.set(listenerCharset);
+        inputQueueSize.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getInputQueueSize());
+        sendQueueSize.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getSendQueueSize());
+        sendQueuePolicy.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getSendQueuePolicy());
         return !this.error.get() && super.processorStart();
     }
     
@@ -356,6 +481,9 @@ public class IncomingConnectionListener extends AbstractIrcServerProcessor {
      * @return true - действия успешно выполнены.
      */
     public boolean processorReconfigure() {
+        if (!enabled.get()) {
+            return true;
+        }
         processorStop();
         return processorStart();
     }
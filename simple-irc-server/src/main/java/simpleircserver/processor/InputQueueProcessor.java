@@ -21,122 +21,215 @@ package simpleircserver.processor;
  *
  */
 
-import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import simpleircserver.base.Globals;
 import simpleircserver.connection.Connection;
 import simpleircserver.connection.ConnectionState;
-import simpleircserver.parser.IrcCommandParser;
-import simpleircserver.parser.IrcIncomingMessage;
-import simpleircserver.parser.commands.IrcCommandBase;
-import simpleircserver.talker.IrcTalker;
-import simpleircserver.talker.server.IrcServer;
-import simpleircserver.talker.service.Service;
-import simpleircserver.talker.user.User;
-import simpleircserver.tools.IrcAvgMeter;
+import simpleircserver.tools.IrcHistogram;
+import simpleircserver.tools.IrcMetrics;
+import simpleircserver.tools.IrcStripedLock;
 
 /**
- * InputQueueProcessor - программный процессор, который просматривает входные
- * очереди сетевого соединения. В основном цикле метода {@link #run}
- * просматриваются входные очереди и из них извлекаются сообщения клиентов.
- * Затем эти сообщения передаются на исполнение интерпретатору команд IRC.
+ * InputQueueProcessor - программный процессор, который распределяет
+ * соединения, во входных очередях которых есть сообщения клиентов, между
+ * процессорами исполнения команд {@link IrcCommandWorker}. Сетевые
+ * процессоры передают соединение сразу после помещения сообщений во
+ * входную очередь (см. {@link #dispatch}), процессор исполнения команд
+ * сам повторно ставит соединение в свою очередь, если в ней остались
+ * сообщения. Просмотр всех соединений в основном цикле метода
+ * {@link #run} выполняется раз в {@link #plannedDurationOfCycle}
+ * миллисекунд только как страховочный. Процессоры исполнения команд
+ * извлекают сообщения из входных очередей и передают их на исполнение
+ * интерпретатору команд IRC.
  *
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into
  *          packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-24 Several messages per connection are executed in one cycle.
+ * @version 0.5.4 2015-11-25 Messages are executed by the pool of command workers.
+ * @version 0.5.4 2015-11-27 Counters of the load shedding are reported.
+ * @version 0.5.4 2015-11-27 Percentiles of the message execution time are reported.
+ * @version 0.5.4 2015-11-27 Execution time and queue length are registered in the metrics registry.
+ * @version 0.5.4 2015-11-27 Percentiles of the message processing stages are reported.
+ * @version 0.5.4 2015-11-27 Connections are dispatched on input, the periodic scan is only a safety sweep.
  * @author Nikolay Kirdin
  */
 public class InputQueueProcessor extends AbstractIrcServerProcessor {
 
-    private IrcAvgMeter avgMessageExecutionDuration = new IrcAvgMeter(STATISTIC_DATA_LENGTH_DEFAULT);
-
-    private IrcCommandParser icp = new IrcCommandParser();
-
     {
         minimalDurationOfTimeout.set(20);
 
-        plannedDurationOfCycle.set(80);
+        plannedDurationOfCycle.set(1000);
     }
 
+    /**
+     * Максимальное количество сообщений одного соединения, исполняемых за
+     * одно обращение процессора исполнения команд к соединению.
+     */
+    public AtomicInteger inputBudget = new AtomicInteger(Globals.inputBudget.get());
+
+    /**
+     * Количество процессоров исполнения команд. Значение 0 означает, что
+     * количество процессоров равно количеству доступных JVM процессоров.
+     */
+    public AtomicInteger commandThreads = new AtomicInteger(Globals.commandThreads.get());
+
+    /** Список процессоров исполнения команд. */
+    private final List<IrcCommandWorker> workerList = new CopyOnWriteArrayList<IrcCommandWorker>();
+
+    /**
+     * Распределение длительности (ns) исполнения сообщений, общее для
+     * всех процессоров исполнения команд.
+     */
+    private final IrcHistogram messageExecutionHistogram = new IrcHistogram();
+
     /** Конструктор по умолчанию. */
     public InputQueueProcessor() {
     }
 
     /**
-     * Метод, просматривающий входные очереди сетевых соединений.
-     *
-     * <P>
-     * В основном цикле этого метода производится просмотр входных очередей
-     * сетевых соединений. Если во входной очереди будет находится сообщение
-     * клиента, то это сообщение будет извлечено из очереди и передано
-     * интерпретатору команд IRC.
-     *
-     * <P>
-     * Интерпретация команд производится с помощью метода
-     * {@link IrcCommandParser#ircParse}.
-     *
-     * <P>
-     * Если во время выполнения команды будет вызвано исключение, то этот факт
-     * будет занесет в журнал, выполнение будет остановлено.
-     * 
+     * Основной цикл процессора. Перед началом цикла запускаются процессоры
+     * исполнения команд, после завершения цикла они останавливаются.
+     */
+    @Override
+    public void run() {
+        startWorkers();
+        super.run();
+        stopWorkers();
+    }
+
+    /**
+     * Передача соединения работающему процессору
+     * {@link Globals#inputQueueProcessor}. Метод вызывается сетевыми
+     * процессорами после помещения сообщений во входную очередь
+     * соединения.
+     * @param connection соединение.
+     */
+    public static void dispatch(Connection connection) {
+        InputQueueProcessor inputQueueProcessor = Globals.inputQueueProcessor.get();
+        if (inputQueueProcessor != null) {
+            inputQueueProcessor.schedule(connection);
+        }
+    }
+
+    /**
+     * Передача соединения процессору исполнения команд
+     * {@link IrcCommandWorker}, если во входной очереди соединения есть
+     * сообщения. Соединение всегда передается одному и тому же
+     * процессору, номер которого определяется идентификатором соединения,
+     * и находится в очереди процессора не более одного раза, поэтому
+     * сообщения соединения исполняются в порядке их поступления.
+     * @param connection соединение.
+     */
+    public void schedule(Connection connection) {
+        int size = workerList.size();
+        if (size == 0 || connection.getConnectionState() != ConnectionState.OPERATIONAL
+                || connection.getInputQueueSize() == 0
+                || !connection.scheduleInput()) {
+            return;
+        }
+        workerList.get((int) (connection.getId() % size)).addConnection(connection);
+    }
+
+    /**
+     * Страховочный просмотр входных очередей всех сетевых соединений.
+     * Соединения с сообщениями, которые не были переданы процессорам
+     * исполнения команд, передаются с помощью {@link #schedule}.
      */
     @Override
     public void performProcessorOperation() {
 
         Iterator<Connection> connectionListIterator = Globals.db.get().getConnectionListIterator();
 
-        while (connectionListIterator.hasNext()) {
-
-            Connection connection = connectionListIterator.next();
-            if (connection.getConnectionState() != ConnectionState.OPERATIONAL) {
-                continue;
-            }
+        while (connectionListIterator.hasNext() && !down.get()) {
+            schedule(connectionListIterator.next());
+        }
 
-            IrcIncomingMessage ircIncomingMessage = connection.inputQueue.getAndSet(null);
+    }
 
-            if (ircIncomingMessage == null) {
-                continue;
+    /** Запуск процессоров исполнения команд. */
+    private void startWorkers() {
+        int number = commandThreads.get() > 0 ? commandThreads.get() :
+            Runtime.getRuntime().availableProcessors();
+        IrcStripedLock targetLock = new IrcStripedLock(Globals.commandLockStripes.get());
+        for (int i = 0; i < number; i++) {
+            IrcCommandWorker worker = new IrcCommandWorker(i, targetLock,
+                    messageExecutionHistogram);
+            worker.inputBudget.set(inputBudget.get());
+            workerList.add(worker);
+            if (!worker.processorStart()) {
+                logger.log(Level.SEVERE, "IrcCommandWorker: " + i + ". Starting error.");
             }
+        }
+    }
 
-            avgMessageExecutionDuration.intervalStart(System.nanoTime());
-
-            try {
-                icp.setIncomingMessage(ircIncomingMessage);
-                icp.ircParse();
-            } catch (Throwable e) {
-
-                IrcServer ircServer = null;
-                IrcTalker ircTalker = connection.ircTalker.get();
-                long id = ircIncomingMessage.id;
-                String message = ircIncomingMessage.message;
-
-                if (ircTalker instanceof User) {
-                    ircServer = ((User) ircTalker).getIrcServer();
-                } else if (ircTalker instanceof Service) {
-                    ircServer = ((Service) ircTalker).getIrcServer();
-                }
-
-                logger.log(Level.SEVERE,
-                        "Exception. ircCommandReport id: " + id + " Connection: " + connection + " Requestor: "
-                                + ircTalker + " " + ircTalker.getHostname() + " " + ircTalker.getNetworkId() + " "
-                                + ircServer);
-                logger.log(Level.SEVERE,
-                        "Exception. ircCommandReport id: " + id + " " + e + " Message: " + e.getMessage());
-                logger.log(Level.SEVERE,
-                        "Exception. ircCommandReport id: " + id + " StackTrace: " + Arrays.toString(e.getStackTrace()));
-                logger.log(Level.SEVERE, "Exception. ircCommandReport id: " + id + " Parsing String: " + message);
-                ircTalker.send(IrcCommandBase.errFileError(ircTalker, String.valueOf(id), message));
-
-                /** Останов сервера */
-                System.err.println("Server stopped: Internal error: " + e);
-                down.set(true);
-                Globals.serverDown.set(true);
-            }
-            avgMessageExecutionDuration.intervalEnd(System.nanoTime());
+    /** Останов процессоров исполнения команд. */
+    private void stopWorkers() {
+        for (IrcCommandWorker worker : workerList) {
+            worker.down.set(true);
+            worker.thread.get().interrupt();
+            worker.unregisterMetrics(Globals.metrics.get());
         }
+        workerList.clear();
+    }
+
+    @Override
+    protected void registerMetrics(IrcMetrics metrics) {
+        super.registerMetrics(metrics);
+        metrics.summary("irc_message_execution_nanoseconds",
+                "Duration (ns) of the message execution.",
+                messageExecutionHistogram);
+        metrics.gauge("irc_command_queue_length",
+                "Number of connections waiting for the command workers.",
+                () -> workerList.stream().mapToLong(
+                IrcCommandWorker::getQueueSize).sum());
+    }
+
+    @Override
+    protected void unregisterMetrics(IrcMetrics metrics) {
+        super.unregisterMetrics(metrics);
+        metrics.remove("irc_message_execution_nanoseconds");
+        metrics.remove("irc_command_queue_length");
+    }
+
+    /**
+     * Инициализация процесса.
+     * @return true инициализация успешно завершена,
+     * false инициализация завершена с ошибками.
+     */
+    @Override
+    public boolean processorStart() {
+        inputBudget.set(Globals.db.get().getIrcInterfaceConfig().getInputBudget());
+        Globals.inputQueueProcessor.set(this);
+        return super.processorStart();
+    }
+
+    /**
+     * Завершение работы процесса.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorStop() {
+        Globals.inputQueueProcessor.compareAndSet(this, null);
+        return super.processorStop();
+    }
 
+    /**
+     * Реконфигурирование процесса.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorReconfigure() {
+        inputBudget.set(Globals.db.get().getIrcInterfaceConfig().getInputBudget());
+        for (IrcCommandWorker worker : workerList) {
+            worker.inputBudget.set(inputBudget.get());
+        }
+        return true;
     }
 
     /** Сброс индикации высокой загруженности. */
@@ -152,7 +245,19 @@ public class InputQueueProcessor extends AbstractIrcServerProcessor {
 
     @Override
     public String getMonitoringstring() {
-        String result = " avgMessageExecutionDuration (ns): " + avgMessageExecutionDuration.getAvgValue();
+        int queueSize = 0;
+        StringBuilder utilization = new StringBuilder();
+        String separator = "";
+        for (IrcCommandWorker worker : workerList) {
+            queueSize += worker.getQueueSize();
+            utilization.append(separator).append(worker.getUtilization());
+            separator = "/";
+        }
+        String result = messageExecutionHistogram.getMonitoringString(
+                "messageNs") + " workers:" + workerList.size() + " queue:" + queueSize +
+                " utilization (%):" + utilization +
+                Globals.latencyTracer.get().getMonitoringString() +
+                Globals.loadShedder.get().getMonitoringString();
         return result;
     }
 
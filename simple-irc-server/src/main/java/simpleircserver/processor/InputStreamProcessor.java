@@ -25,9 +25,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import simpleircserver.base.Globals;
+import simpleircserver.config.IrcIoEngine;
 import simpleircserver.connection.Connection;
 import simpleircserver.connection.ConnectionState;
 import simpleircserver.connection.NetworkConnection;
@@ -45,10 +47,19 @@ import simpleircserver.talker.IrcTalkerState;
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into
  *          packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-24 Several lines per connection are read in one cycle.
+ * @version 0.5.4 2015-11-27 I/O counters are updated in place.
+ * @version 0.5.4 2015-11-27 Connection with new input is dispatched to the command worker at once.
  * @author Nikolay Kirdin
  */
 public class InputStreamProcessor extends AbstractIrcServerProcessor {
 
+    /**
+     * Максимальное количество строк, считываемых из потока одного соединения
+     * за один цикл.
+     */
+    public AtomicInteger inputBudget = new AtomicInteger(Globals.inputBudget.get());
+
     /** Конструктор по умолчанию. */
     public InputStreamProcessor() {
     }
@@ -59,10 +70,11 @@ public class InputStreamProcessor extends AbstractIrcServerProcessor {
      *
      * <P>
      * В основном цикле этого метода производится просмотр потоков ввода сетевых
-     * соединений. Если в буферированом потоке будет находится строка текста, то
-     * эта строка будет извлечена из буфера и помещена во входные очереди
-     * сетевого соединения. Время блокировки операций чтения ограничено временем
-     * блокировки соответствующего сокета.
+     * соединений. Если в буферированом потоке будут находится строки текста, то
+     * эти строки будут извлечены из буфера и помещены во входную очередь
+     * сетевого соединения. За один цикл из потока одного соединения считывается
+     * не более {@link #inputBudget} строк. Время блокировки операций чтения
+     * ограничено временем блокировки соответствующего сокета.
      *
      * <P>
      * Если во время выполнения основного цикла, будут обнаружены какие-либо
@@ -76,14 +88,15 @@ public class InputStreamProcessor extends AbstractIrcServerProcessor {
      * {@link IrcTalkerState#OPERATIONAL}.
      *
      * <P>
-     * Чтения из потока ввода производится только в том случае, если средние
-     * значения периода между входящими сообщениями больше чем в
-     * {@link Globals#minAvgReadPeriod}.
+     * Чтения из потока ввода производится только в том случае, если во
+     * входной очереди соединения есть свободное место и частота ввода
+     * сообщений не превышает ограничения {@link Connection#inputTokenBucket}
+     * (в среднем одно сообщение за период {@link Globals#minAvgReadPeriod}).
      *
      * <P>
-     * После успешной операции ввода значение переменной
-     * {@link NetworkConnection#readCountDelta} для этого объекта увеличивается
-     * на 1.
+     * После успешной операции ввода значения переменных
+     * {@link Connection#readCount} для этого объекта и
+     * {@link Connection#totalReadCount} увеличиваются на 1.
      * 
      */
     @Override
@@ -98,7 +111,7 @@ public class InputStreamProcessor extends AbstractIrcServerProcessor {
             if (connection.getConnectionState() != ConnectionState.OPERATIONAL) {
                 continue;
             }
-            if (connection.inputQueue.get() != null) {
+            if (connection.isInputQueueFull()) {
                 continue;
             }
 
@@ -108,38 +121,45 @@ public class InputStreamProcessor extends AbstractIrcServerProcessor {
                 continue;
             }
 
-            if (connection.avgInputPeriod.get() < connection.minAvgInputPeriod.get()) {
-                continue;
-            }
-
+            boolean delivered = false;
             try {
-                String inputString;
-                synchronized (br) {
-                    if (!br.ready()) {
-                        continue;
+                int budget = inputBudget.get();
+                while (budget-- > 0 && !connection.isInputQueueFull()) {
+                    long currentTime = System.currentTimeMillis();
+                    if (connection.inputTokenBucket.getTokens(currentTime) == 0) {
+                        break;
                     }
-                    inputString = br.readLine();
-                }
 
-                if (inputString == null) {
-                    connection.close();
-                    continue;
-                }
+                    String inputString;
+                    synchronized (br) {
+                        if (!br.ready()) {
+                            break;
+                        }
+                        inputString = br.readLine();
+                    }
 
-                connection.readCountDelta.getAndIncrement();
-                long currentTime = System.currentTimeMillis();
+                    if (inputString == null) {
+                        connection.close();
+                        break;
+                    }
+
+                    connection.inputTokenBucket.tryConsume(currentTime);
+                    connection.addReadCount(1);
 
-                IrcTalker ircTalker = connection.ircTalker.get();
-                ircTalker.setLastMessageTime(currentTime);
-                connection.avgInputPeriodMeter.setValue(currentTime);
+                    IrcTalker ircTalker = connection.ircTalker.get();
+                    ircTalker.setLastMessageTime(currentTime);
+                    connection.avgInputPeriodMeter.setValue(currentTime);
 
-                boolean result = connection.offerToInputQueue(new IrcIncomingMessage(inputString, ircTalker));
+                    boolean result = connection.offerToInputQueue(new IrcIncomingMessage(inputString, ircTalker));
 
-                if (!result) {
-                    String remark = Reply.makeText(Reply.ERR_FILEERROR, ircTalker.getNickname(),
-                            "offer to input queue ", connection.toString());
-                    OutputQueueProcessor.process(connection, remark);
-                    connection.setBroken();
+                    if (!result) {
+                        String remark = Reply.makeText(Reply.ERR_FILEERROR, ircTalker.getNickname(),
+                                "offer to input queue ", connection.toString());
+                        OutputQueueProcessor.process(connection, remark);
+                        connection.setBroken();
+                        break;
+                    }
+                    delivered = true;
                 }
 
             } catch (SocketTimeoutException e) {
@@ -147,8 +167,39 @@ public class InputStreamProcessor extends AbstractIrcServerProcessor {
                 connection.setBroken();
                 logger.log(Level.INFO, "Connection:" + connection + " " + e);
             }
+
+            if (delivered) {
+                InputQueueProcessor.dispatch(connection);
+            }
+        }
+
+    }
+
+    /** 
+     * Инициализация процесса. Процесс запускается только в том случае, 
+     * если в конфигурации интерфейса задан способ обслуживания 
+     * соединений {@link IrcIoEngine#BLOCKING}.
+     * @return true инициализация успешно завершена, 
+     * false инициализация завершена с ошибками. 
+     */
+    @Override
+    public boolean processorStart() {
+        if (Globals.db.get().getIrcInterfaceConfig().getIoEngine() 
+                != IrcIoEngine.BLOCKING) {
+            return true;
         }
+        inputBudget.set(Globals.db.get().getIrcInterfaceConfig().getInputBudget());
+        return super.processorStart();
+    }
 
+    /**
+     * Реконфигурирование процесса.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorReconfigure() {
+        inputBudget.set(Globals.db.get().getIrcInterfaceConfig().getInputBudget());
+        return true;
     }
 
     /** Сброс индикации высокой загруженности. */
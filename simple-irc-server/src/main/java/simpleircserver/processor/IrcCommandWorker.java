@@ -0,0 +1,525 @@
+package simpleircserver.processor;
+/*
+ *
+ * IrcCommandWorker
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import simpleircserver.base.Globals;
+import simpleircserver.channel.IrcChannel;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.parser.IrcCommandParser;
+import simpleircserver.parser.IrcIncomingMessage;
+import simpleircserver.parser.commands.IrcCommandBase;
+import simpleircserver.talker.IrcTalker;
+import simpleircserver.talker.server.IrcServer;
+import simpleircserver.talker.service.Service;
+import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcHistogram;
+import simpleircserver.tools.IrcLatencyTracer;
+import simpleircserver.tools.IrcStripedLock;
+
+/**
+ * IrcCommandWorker - программный процессор, исполняющий сообщения
+ * клиентов. Процессор получает от {@link InputQueueProcessor}
+ * соединения, во входных очередях которых есть сообщения, извлекает
+ * сообщения из входных очередей и передает их интерпретатору команд
+ * IRC.
+ *
+ * <P>Каждое соединение всегда обслуживается одним и тем же процессором,
+ * поэтому сообщения одного соединения исполняются в порядке их
+ * поступления. Сообщения разных соединений исполняются несколькими
+ * процессорами одновременно. На время исполнения сообщения
+ * захватываются блокировки {@link IrcStripedLock}, соответствующие
+ * каналам и клиентам, указанным в параметрах команды, и источнику
+ * сообщения, поэтому команды, изменяющие один и тот же канал или
+ * клиента, исполняются последовательно. Для команд, которые изменяют
+ * членство клиента во всех его каналах (QUIT, NICK, KILL, JOIN 0),
+ * дополнительно захватываются блокировки всех каналов этого клиента.
+ * Только команда SQUIT исполняется под всеми блокировками
+ * ({@link IrcStripedLock#lockAll}).
+ *
+ * @version 0.5.4 2015-11-25
+ * @version 0.5.4 2015-11-27 Execution time of messages is recorded into the shared histogram.
+ * @version 0.5.4 2015-11-27 Name of the processor includes its number.
+ * @version 0.5.4 2015-11-27 Messages are stamped for the latency breakdown.
+ * @version 0.5.4 2015-11-27 Requestor is locked, membership-wide commands are executed under all locks.
+ * @version 0.5.4 2015-11-27 Connection with remaining input is queued again by the worker.
+ * @version 0.5.4 2015-11-27 Membership-wide commands lock the channels of the client, only SQUIT takes all locks.
+ * @author  Nikolay Kirdin
+ */
+public class IrcCommandWorker extends AbstractIrcServerProcessor {
+
+    /**
+     * Максимальное количество попыток захвата блокировок каналов
+     * клиента, после которого захватываются все блокировки.
+     */
+    public static final int MEMBERSHIP_LOCK_ATTEMPTS = 8;
+
+    /** Номер процессора. */
+    public final int stripe;
+
+    /** Максимальная длительность ожидания соединения (ms). */
+    public AtomicLong pollTO =
+            new AtomicLong(TIMEOUT_DURTION_STANDARD_DEFAULT);
+
+    /**
+     * Максимальное количество сообщений одного соединения, исполняемых
+     * за одно обращение к соединению.
+     */
+    public AtomicInteger inputBudget =
+            new AtomicInteger(Globals.inputBudget.get());
+
+    /** Блокировки каналов и клиентов. */
+    private final IrcStripedLock targetLock;
+
+    /** Очередь соединений, ожидающих обслуживания. */
+    private final BlockingQueue<Connection> connectionQueue =
+            new LinkedBlockingQueue<Connection>();
+
+    /** Интерпретатор команд IRC. */
+    private final IrcCommandParser icp = new IrcCommandParser();
+
+    /** Распределение длительности (ns) исполнения сообщений. */
+    private final IrcHistogram messageExecutionHistogram;
+
+    /** Суммарная длительность (ns) исполнения сообщений. */
+    private final AtomicLong busyTime = new AtomicLong();
+
+    /** Начало интервала измерения загруженности процессора. */
+    private volatile long utilizationStartTime = System.nanoTime();
+
+    /** Количество исполненных сообщений. */
+    public AtomicLong executedCount = new AtomicLong();
+
+    /**
+     * Конструктор.
+     * @param stripe номер процессора.
+     * @param targetLock блокировки каналов и клиентов.
+     * @param messageExecutionHistogram распределение длительности (ns)
+     * исполнения сообщений.
+     */
+    public IrcCommandWorker(int stripe, IrcStripedLock targetLock,
+            IrcHistogram messageExecutionHistogram) {
+        this.stripe = stripe;
+        this.targetLock = targetLock;
+        this.messageExecutionHistogram = messageExecutionHistogram;
+    }
+
+    /**
+     * Передача соединения этому процессору.
+     * @param connection соединение.
+     */
+    public void addConnection(Connection connection) {
+        connectionQueue.offer(connection);
+    }
+
+    @Override
+    protected String getProcessorName() {
+        return super.getProcessorName() + "-" + stripe;
+    }
+
+    /**
+     * Получение количества соединений, ожидающих обслуживания.
+     * @return количество соединений.
+     */
+    public int getQueueSize() {
+        return connectionQueue.size();
+    }
+
+    /**
+     * Получение загруженности процессора с момента предыдущего вызова
+     * этого метода.
+     * @return доля (%) времени, затраченного на исполнение сообщений.
+     */
+    public int getUtilization() {
+        long currentTime = System.nanoTime();
+        long elapsedTime = currentTime - utilizationStartTime;
+        utilizationStartTime = currentTime;
+        long busy = busyTime.getAndSet(0);
+        return elapsedTime > 0 ?
+                (int) Math.min(100, busy * 100 / elapsedTime) : 0;
+    }
+
+    /**
+     * Основной цикл процессора. Процессор ожидает поступления
+     * соединений не более {@link #pollTO} миллисекунд и обслуживает их в
+     * порядке поступления.
+     */
+    @Override
+    public void run() {
+        logger.log(Level.FINEST, "Running: " + stripe);
+
+        while (!down.get()) {
+            Connection connection = null;
+            try {
+                connection = connectionQueue.poll(pollTO.get(),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {}
+
+            if (connection == null) {
+                continue;
+            }
+
+            long startTime = System.nanoTime();
+            performConnectionOperation(connection);
+            busyTime.getAndAdd(System.nanoTime() - startTime);
+        }
+
+        logger.log(Level.FINEST, "Ended: " + stripe);
+    }
+
+    /**
+     * Исполнение сообщений из входной очереди соединения. За одно
+     * обращение исполняется не более {@link #inputBudget} сообщений.
+     * Если во время выполнения команды будет вызвано исключение, то этот
+     * факт будет занесен в журнал, сервер будет остановлен.
+     * @param connection соединение.
+     */
+    private void performConnectionOperation(Connection connection) {
+        int budget = inputBudget.get();
+        IrcIncomingMessage ircIncomingMessage = null;
+
+        while (budget-- > 0 && !down.get()
+                && connection.getConnectionState() ==
+                ConnectionState.OPERATIONAL
+                && (ircIncomingMessage = connection.pollInputQueue()) != null) {
+
+            long startTime = System.nanoTime();
+            ircIncomingMessage.setPollNanoTime(startTime);
+            IrcLatencyTracer.setCurrentMessage(ircIncomingMessage);
+
+            int[] stripes = lockTargets(connection,
+                    ircIncomingMessage.message);
+            try {
+                icp.setIncomingMessage(ircIncomingMessage);
+                icp.ircParse();
+            } catch (Throwable e) {
+                processException(connection, ircIncomingMessage, e);
+            } finally {
+                targetLock.unlock(stripes);
+                IrcLatencyTracer.setCurrentMessage(null);
+            }
+
+            long endTime = System.nanoTime();
+            ircIncomingMessage.setExecutedNanoTime(endTime);
+            messageExecutionHistogram.record(endTime - startTime);
+            Globals.latencyTracer.get().messageExecuted(ircIncomingMessage);
+            executedCount.getAndIncrement();
+        }
+        connection.clearInputSchedule();
+
+        // Сообщения, поступившие после последнего извлечения, и
+        // сообщения, не исполненные из-за исчерпания бюджета.
+        if (!down.get() && connection.getConnectionState() ==
+                ConnectionState.OPERATIONAL
+                && connection.getInputQueueSize() > 0
+                && connection.scheduleInput()) {
+            addConnection(connection);
+        }
+    }
+
+    /**
+     * Обработка исключения, вызванного при выполнении команды.
+     * @param connection соединение.
+     * @param ircIncomingMessage сообщение.
+     * @param e исключение.
+     */
+    private void processException(Connection connection,
+            IrcIncomingMessage ircIncomingMessage, Throwable e) {
+        IrcServer ircServer = null;
+        IrcTalker ircTalker = connection.ircTalker.get();
+        long id = ircIncomingMessage.id;
+        String message = ircIncomingMessage.message;
+
+        if (ircTalker instanceof User) {
+            ircServer = ((User) ircTalker).getIrcServer();
+        } else if (ircTalker instanceof Service) {
+            ircServer = ((Service) ircTalker).getIrcServer();
+        }
+
+        logger.log(Level.SEVERE,
+                "Exception. ircCommandReport id: " + id + " Connection: " + connection + " Requestor: "
+                        + ircTalker + " " + ircTalker.getHostname() + " " + ircTalker.getNetworkId() + " "
+                        + ircServer);
+        logger.log(Level.SEVERE,
+                "Exception. ircCommandReport id: " + id + " " + e + " Message: " + e.getMessage());
+        logger.log(Level.SEVERE,
+                "Exception. ircCommandReport id: " + id + " StackTrace: " + Arrays.toString(e.getStackTrace()));
+        logger.log(Level.SEVERE, "Exception. ircCommandReport id: " + id + " Parsing String: " + message);
+        ircTalker.send(IrcCommandBase.errFileError(ircTalker, String.valueOf(id), message));
+
+        /** Останов сервера */
+        System.err.println("Server stopped: Internal error: " + e);
+        down.set(true);
+        Globals.serverDown.set(true);
+    }
+
+    /**
+     * Захват блокировок, необходимых для исполнения сообщения. 
+     * Захватываются блокировки каналов и клиентов, указанных в 
+     * параметрах команды, и блокировка источника сообщения. Для команд, 
+     * изменяющих членство клиента во всех его каналах (см. 
+     * {@link #isMembershipCommand}), дополнительно захватываются 
+     * блокировки каналов этого клиента (см. {@link #lockMembership}), 
+     * для команды SQUIT (см. {@link #isGlobalCommand}) захватываются 
+     * все блокировки.
+     * @param connection соединение источника сообщения.
+     * @param message сообщение.
+     * @return упорядоченный массив номеров захваченных блокировок.
+     */
+    private int[] lockTargets(Connection connection, String message) {
+        if (isGlobalCommand(message)) {
+            return targetLock.lockAll();
+        }
+        List<String> targetList = getTargetList(message);
+        IrcTalker ircTalker = connection.ircTalker.get();
+        if (ircTalker != null) {
+            targetList.add(ircTalker.getNickname());
+        }
+        if (!isMembershipCommand(message)) {
+            return targetLock.lock(targetList);
+        }
+        User user = null;
+        if (getCommandName(message).equalsIgnoreCase("KILL")) {
+            if (!targetList.isEmpty()) {
+                user = Globals.db.get().getUser(targetList.get(0));
+            }
+        } else if (ircTalker instanceof User) {
+            user = (User) ircTalker;
+        }
+        return lockMembership(user, targetList);
+    }
+
+    /**
+     * Захват блокировок набора ключей и каналов клиента. Список каналов 
+     * клиента считывается под блокировкой никнэйма клиента (членство 
+     * клиента в каналах изменяется только под этой блокировкой), затем 
+     * захватываются блокировки ключей, никнэйма и этих каналов. Если 
+     * после захвата никнэйм клиента изменился или клиент стал членом 
+     * канала, блокировка которого не захвачена, то блокировки 
+     * освобождаются и попытка повторяется. После 
+     * {@link #MEMBERSHIP_LOCK_ATTEMPTS} неудачных попыток 
+     * захватываются все блокировки.
+     * @param user клиент, членство которого изменяет команда, или 
+     * null.
+     * @param keyList список ключей.
+     * @return упорядоченный массив номеров захваченных блокировок.
+     */
+    private int[] lockMembership(User user, List<String> keyList) {
+        if (user == null) {
+            return targetLock.lock(keyList);
+        }
+        for (int attempt = 0; attempt < MEMBERSHIP_LOCK_ATTEMPTS; 
+                attempt++) {
+            String nickname = user.getNickname();
+            List<String> channelList = null;
+            int[] stripes = targetLock.lock(
+                    Collections.singletonList(nickname));
+            try {
+                channelList = getChannelNameList(user);
+            } finally {
+                targetLock.unlock(stripes);
+            }
+            List<String> lockList = new ArrayList<String>(keyList);
+            lockList.add(nickname);
+            lockList.addAll(channelList);
+            stripes = targetLock.lock(lockList);
+            if (nickname.equals(user.getNickname())
+                    && isLocked(stripes, getChannelNameList(user))) {
+                return stripes;
+            }
+            targetLock.unlock(stripes);
+        }
+        return targetLock.lockAll();
+    }
+
+    /**
+     * Получение списка имен каналов клиента.
+     * @param user клиент.
+     * @return список имен каналов.
+     */
+    private static List<String> getChannelNameList(User user) {
+        List<String> result = new ArrayList<String>();
+        for (IrcChannel ch : user.getChannelSet()) {
+            result.add(ch.getNickname());
+        }
+        return result;
+    }
+
+    /**
+     * Проверка того, что блокировки всех ключей захвачены.
+     * @param stripes упорядоченный массив номеров захваченных 
+     * блокировок.
+     * @param keyList список ключей.
+     * @return true - блокировки всех ключей захвачены.
+     */
+    private boolean isLocked(int[] stripes, List<String> keyList) {
+        for (String key : keyList) {
+            if (Arrays.binarySearch(stripes, 
+                    targetLock.getStripe(key)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверка того, что команда изменяет членство клиента во всех его
+     * каналах или затрагивает каналы, не указанные в параметрах
+     * команды. К таким командам относятся QUIT, NICK, KILL, SQUIT и
+     * JOIN с параметром "0".
+     * @param message сообщение.
+     * @return true - при исполнении команды необходимо захватить 
+     * блокировки каналов клиента.
+     */
+    public static boolean isMembershipCommand(String message) {
+        int length = message.length();
+        int index = skipSpaces(message, 0);
+        if (message.startsWith(":", index)) {
+            index = skipSpaces(message, getWordEnd(message, index));
+        }
+        int end = getWordEnd(message, index);
+        String command = message.substring(index, end);
+        if (command.equalsIgnoreCase("JOIN")) {
+            index = skipSpaces(message, end);
+            if (message.startsWith(":", index)) {
+                index++;
+            }
+            end = getWordEnd(message, index);
+            return end - index == 1 && index < length &&
+                    message.charAt(index) == '0';
+        }
+        return command.equalsIgnoreCase("QUIT") ||
+                command.equalsIgnoreCase("NICK") ||
+                command.equalsIgnoreCase("KILL") ||
+                command.equalsIgnoreCase("SQUIT");
+    }
+
+    /**
+     * Проверка того, что команда затрагивает клиентов и каналы, набор 
+     * которых заранее неизвестен. К таким командам относится SQUIT.
+     * @param message сообщение.
+     * @return true - команда должна исполняться под всеми блокировками.
+     */
+    public static boolean isGlobalCommand(String message) {
+        return getCommandName(message).equalsIgnoreCase("SQUIT");
+    }
+
+    /**
+     * Получение названия команды.
+     * @param message сообщение.
+     * @return название команды.
+     */
+    private static String getCommandName(String message) {
+        int index = skipSpaces(message, 0);
+        if (message.startsWith(":", index)) {
+            index = skipSpaces(message, getWordEnd(message, index));
+        }
+        return message.substring(index, getWordEnd(message, index));
+    }
+
+    /**
+     * Пропуск пробелов.
+     * @param message сообщение.
+     * @param index начальная позиция.
+     * @return позиция первого символа, не являющегося пробелом.
+     */
+    private static int skipSpaces(String message, int index) {
+        while (index < message.length() && message.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Поиск конца слова.
+     * @param message сообщение.
+     * @param index позиция начала слова.
+     * @return позиция пробела, следующего за словом, или длина
+     * сообщения.
+     */
+    private static int getWordEnd(String message, int index) {
+        int end = message.indexOf(' ', index);
+        return end < 0 ? message.length() : end;
+    }
+
+    /**
+     * Получение списка имен каналов и клиентов, указанных в параметрах
+     * команды. Имена извлекаются из первых двух параметров команды, не
+     * являющихся секцией "trailing", параметры могут содержать списки
+     * имен, разделенных запятыми.
+     * @param message сообщение.
+     * @return список имен.
+     */
+    public static List<String> getTargetList(String message) {
+        List<String> result = new ArrayList<String>();
+        int index = 0;
+        int length = message.length();
+        int word = 0;
+        boolean prefix = message.startsWith(":");
+
+        while (index < length && word < 3) {
+            while (index < length && message.charAt(index) == ' ') {
+                index++;
+            }
+            if (index >= length || (message.charAt(index) == ':' &&
+                    !prefix)) {
+                break;
+            }
+            int end = message.indexOf(' ', index);
+            if (end < 0) {
+                end = length;
+            }
+            if (prefix) {
+                prefix = false;
+            } else {
+                if (word != 0) {
+                    for (String name : message.substring(index,
+                            end).split(",")) {
+                        if (!name.isEmpty()) {
+                            result.add(name);
+                        }
+                    }
+                }
+                word++;
+            }
+            index = end;
+        }
+        return result;
+    }
+
+    /** Сброс индикации высокой загруженности. */
+    @Override
+    public void removeProcessorFromHighLoadSet() {
+        Globals.ircServerProcessorSet.get().remove(this);
+    }
+}
@@ -24,6 +24,7 @@ package simpleircserver.processor;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.Queue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,15 +39,14 @@ import simpleircserver.talker.service.Service;
 import simpleircserver.talker.user.User;
 
 /**
- * Программный процессор, который обследует объекты, хранящие информацию о
- * клиентах сервера. Он проверяет их состояние и состояние соответствующего
- * соединения. В случае обнаружения ошибочного состояния или этапа завершения
- * жизненного цикла этого объекта, будут выполнены завершающие действия для
- * этого объекта.
+ * Программный процессор, который выполняет завершающие действия для
+ * объектов, хранящих информацию о клиентах сервера, в случае перехода этих
+ * объектов в ошибочное состояние или на этап завершения жизненного цикла.
  *
  * @version 0.5 2012-02-12
  * @version 0.5.3 2015-11-05 Program units were moved from default package into
  *          packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Only clients from the cleanup queue are processed.
  * @author Nikolay Kirdin
  */
 public class IrcTalkerProcessor extends AbstractIrcServerProcessor {
@@ -56,49 +56,46 @@ public class IrcTalkerProcessor extends AbstractIrcServerProcessor {
     }
 
     /**
-     * Метод, который обследует объекты классов User, Service и IrcServer.
+     * Метод, который выполняет завершающие действия для объектов классов
+     * User, Service и IrcServer.
      * 
      * <P>
-     * В основном цикле этого метода проверяется состояние объекта и
-     * соответствующего соединения. В том случае, если объект должен завершить
-     * свой жизненый цикл или соединение завершает или завершило свой жизненый
-     * цикл, будут проведены завершающие действия для обследуемого объекта.
-     * Состояние объекта определяется полем {@link IrcTalker#state}. Состояние
-     * соединения определяется полем {@link Connection#connectionState}.
+     * Объекты, которые перешли в состояние {@link IrcTalkerState#CLOSE} или
+     * {@link IrcTalkerState#BROKEN}, помещаются в очередь
+     * {@link Globals#ircTalkerCleanupQueue} (см.
+     * {@link IrcTalker#setState(IrcTalkerState)}). В основном цикле этого
+     * метода объекты извлекаются из этой очереди, поэтому затраты на его
+     * выполнение зависят от количества завершающих работу клиентов, а не от
+     * общего количества клиентов. Состояние объекта определяется полем
+     * {@link IrcTalker#state}.
      *
      * <P>
-     * В том случае, если значение поля {@link IrcTalker#state} обследуемого
-     * объекта будет {@link IrcTalkerState#BROKEN}, то для этого объекта будет
-     * выполнена команда IRC QUIT с параметром
+     * В том случае, если значение поля {@link IrcTalker#state} объекта будет
+     * {@link IrcTalkerState#BROKEN}, то для этого объекта будет выполнена
+     * команда IRC QUIT с параметром
      * <code>"Broken state: " + (new Date()).toString()</code>.
      *
      * <P>
-     * В том случае, если значение поля {@link IrcTalker#state} обследуемого
-     * объекта будет {@link IrcTalkerState#CLOSE}, то этот объект будет удален
-     * из репозитария и его состояние будет изменено на состояние
-     * {@link IrcTalkerState#CLOSED}.
+     * В том случае, если значение поля {@link IrcTalker#state} объекта будет
+     * {@link IrcTalkerState#CLOSE}, то этот объект будет удален из
+     * репозитария и его состояние будет изменено на состояние
+     * {@link IrcTalkerState#CLOSED}. Соединение этого объекта переводится в
+     * состояние {@link ConnectionState#CLOSE}.
      *
      * <P>
-     * Если будет обнаружено, что у обследуемого объекта нет соединения или
-     * соответвующее ему соединение находится в одном из следующих состояний:
-     * {@link ConnectionState#CLOSED} или {@link ConnectionState#BROKEN}, то
-     * состояние этого объекта будет изменено на состояние
-     * {@link IrcTalkerState#BROKEN}.
+     * Если соединение клиента переходит в одно из состояний
+     * {@link ConnectionState#CLOSE} или {@link ConnectionState#BROKEN}, то
+     * состояние клиента изменяется на состояние
+     * {@link IrcTalkerState#BROKEN} процессором
+     * {@link NetworkConnectionProcessor}.
      * 
      */
     public void performProcessorOperation() {
 
-        Iterator<User> ircTalkerSetIterator = Globals.db.get().getUserSetIterator();
+        Queue<IrcTalker> cleanupQueue = Globals.ircTalkerCleanupQueue.get();
+        IrcTalker ircTalker = null;
 
-        while (ircTalkerSetIterator.hasNext()) {
-            IrcTalker ircTalker = ircTalkerSetIterator.next();
-
-            Connection connection = ircTalker.getConnection();
-
-            if (connection == null || connection.getConnectionState() == ConnectionState.CLOSED
-                    || connection.getConnectionState() == ConnectionState.BROKEN) {
-                ircTalker.setBroken();
-            }
+        while ((ircTalker = cleanupQueue.poll()) != null) {
 
             IrcTalkerState ircTalkerState = ircTalker.getState();
 
@@ -131,6 +128,11 @@ public class IrcTalkerProcessor extends AbstractIrcServerProcessor {
                 logger.log(Level.FINEST,
                         "ircTalker:" + ircTalker + ircTalker.getConnection() + " ircTalker set CLOSED");
 
+                Connection connection = ircTalker.getConnection();
+                if (connection != null && connection.ircTalker.get() == ircTalker) {
+                    connection.close();
+                }
+
                 break;
             case OPERATIONAL:
                 break;
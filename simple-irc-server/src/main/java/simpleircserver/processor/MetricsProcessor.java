@@ -0,0 +1,389 @@
+package simpleircserver.processor;
+/*
+ *
+ * MetricsProcessor
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import simpleircserver.base.Globals;
+import simpleircserver.config.IrcServerConfig;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.NetworkConnection;
+import simpleircserver.parser.IrcCommandClass;
+import simpleircserver.parser.IrcCommandParser;
+import simpleircserver.tools.IrcHistogram;
+import simpleircserver.tools.IrcLatencyTracer;
+import simpleircserver.tools.IrcLatencyTracer.Stage;
+import simpleircserver.tools.IrcLoadShedder.Reason;
+import simpleircserver.tools.IrcMemoryBudget.Category;
+import simpleircserver.tools.IrcMetrics;
+
+/**
+ * Программный процессор, который регистрирует общие метрики сервера в
+ * реестре {@link Globals#metrics} и обслуживает локальный HTTP-сервер
+ * метрик.
+ *
+ * <P>При запуске процессора регистрируются количество соединений,
+ * клиентов и каналов, длины очередей, счетчики сообщений, распределения
+ * длительности исполнения команд IRC, этапов обработки сообщений и
+ * установления соединений, счетчики ограничения нагрузки и
+ * использование бюджета памяти. Метрики
+ * программных процессоров регистрируются самими процессорами.
+ *
+ * <P>Если в {@link IrcServerConfig#getMetricsPort()} задан номер порта,
+ * отличный от 0, то на этом порту адреса loopback-интерфейса
+ * запускается простой HTTP-сервер, который на запрос
+ * "GET {@link #METRICS_PATH}" выдает содержимое реестра в текстовом
+ * формате Prometheus. Основной цикл процессора не используется.
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Durations of the message processing stages are registered.
+ * @version 0.5.4 2015-11-27 Counter of responses is reset on registration.
+ * @author  Nikolay Kirdin
+ */
+public class MetricsProcessor extends AbstractIrcServerProcessor {
+
+    /** Путь, по которому выдаются метрики. */
+    public static final String METRICS_PATH = "/metrics";
+
+    /** Тип содержимого ответа. */
+    public static final String CONTENT_TYPE =
+            "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Время ожидания запроса клиентом HTTP (ms). */
+    public static final int REQUEST_TIMEOUT = 2000;
+
+    /** Сокет HTTP-сервера метрик (null, если сервер не запущен). */
+    private final AtomicReference<ServerSocket> httpServerSocket =
+            new AtomicReference<ServerSocket>();
+
+    /** Заданный номер порта HTTP-сервера метрик. */
+    private volatile int metricsPort;
+
+    /** Количество выданных ответов с метриками. */
+    private final LongAdder scrapeCount = new LongAdder();
+
+    /** Конструктор по умолчанию. */
+    public MetricsProcessor() {}
+
+    /**
+     * Регистрация общих метрик сервера и запуск HTTP-сервера метрик.
+     * @return true инициализация успешно завершена,
+     * false HTTP-сервер не удалось запустить.
+     */
+    @Override
+    public boolean processorStart() {
+        registerMetrics(Globals.metrics.get());
+        return startHttpServer(
+                Globals.db.get().getIrcServerConfig().getMetricsPort());
+    }
+
+    /**
+     * Перезапуск HTTP-сервера метрик, если изменился номер порта.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorReconfigure() {
+        int port = Globals.db.get().getIrcServerConfig().getMetricsPort();
+        if (port == metricsPort) {
+            return true;
+        }
+        stopHttpServer();
+        return startHttpServer(port);
+    }
+
+    /**
+     * Останов HTTP-сервера метрик.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorStop() {
+        stopHttpServer();
+        return true;
+    }
+
+    /**
+     * Получение номера порта, на котором работает HTTP-сервер метрик.
+     * @return номер порта или 0, если HTTP-сервер не запущен.
+     */
+    public int getHttpPort() {
+        ServerSocket serverSocket = httpServerSocket.get();
+        return serverSocket == null ? 0 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * Запуск HTTP-сервера метрик. Запросы обслуживаются последовательно
+     * в отдельном потоке, так как сервер предназначен только для
+     * периодического опроса системой мониторинга.
+     * @param port номер порта (0 - сервер не запускается).
+     * @return true, если сервер запущен или не должен запускаться.
+     */
+    private boolean startHttpServer(int port) {
+        metricsPort = port;
+        if (port == 0) {
+            return true;
+        }
+        ServerSocket serverSocket = null;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Metrics endpoint. Port: " + port +
+                    " " + e);
+            closeSocket(serverSocket);
+            return false;
+        }
+        httpServerSocket.set(serverSocket);
+        final ServerSocket acceptSocket = serverSocket;
+        Thread httpThread = new Thread(() -> acceptRequests(acceptSocket),
+                "MetricsEndpoint");
+        httpThread.setDaemon(true);
+        httpThread.start();
+        logger.log(Level.INFO, "Metrics endpoint: " +
+                serverSocket.getLocalSocketAddress() + METRICS_PATH);
+        return true;
+    }
+
+    /** Останов HTTP-сервера метрик. */
+    private void stopHttpServer() {
+        closeSocket(httpServerSocket.getAndSet(null));
+    }
+
+    /**
+     * Цикл приема HTTP-запросов. Завершается после закрытия сокета
+     * сервера.
+     * @param serverSocket сокет HTTP-сервера.
+     */
+    private void acceptRequests(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(REQUEST_TIMEOUT);
+                handleRequest(socket);
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.log(Level.FINE, "Metrics endpoint. " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Обработка HTTP-запроса. На запросы GET и HEAD по пути
+     * {@link #METRICS_PATH} выдается содержимое реестра метрик, на
+     * запросы с другими методами - код 405, на запросы по другим
+     * путям - код 404.
+     * @param socket сокет соединения с клиентом HTTP.
+     * @throws IOException при ошибках чтения запроса и передачи ответа.
+     */
+    private void handleRequest(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        // Тело запроса не используется, но вычитывается, чтобы закрытие
+        // соединения не прерывало передачу ответа.
+        long contentLength = 0;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            int colonIndex = line.indexOf(':');
+            if (colonIndex > 0 && line.substring(0, colonIndex).trim(
+                    ).equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Long.parseLong(
+                            line.substring(colonIndex + 1).trim());
+                } catch (NumberFormatException e) {}
+            }
+        }
+        while (contentLength > 0 && reader.read() != -1) {
+            contentLength--;
+        }
+
+        String[] requestParts = requestLine.split(" ");
+        String method = requestParts[0];
+        String path = requestParts.length > 1 ? requestParts[1] : "";
+        int queryIndex = path.indexOf('?');
+        if (queryIndex >= 0) {
+            path = path.substring(0, queryIndex);
+        }
+
+        OutputStream outputStream = socket.getOutputStream();
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            writeResponse(outputStream, "405 Method Not Allowed",
+                    "Allow: GET, HEAD\r\n", new byte[0], true);
+            return;
+        }
+        if (!path.equals(METRICS_PATH)) {
+            writeResponse(outputStream, "404 Not Found", "",
+                    new byte[0], true);
+            return;
+        }
+        scrapeCount.increment();
+        byte[] body = Globals.metrics.get().getExposition().getBytes(
+                StandardCharsets.UTF_8);
+        writeResponse(outputStream, "200 OK", "Content-Type: " +
+                CONTENT_TYPE + "\r\n", body, method.equals("GET"));
+    }
+
+    /**
+     * Передача HTTP-ответа.
+     * @param outputStream выходной поток соединения.
+     * @param status код и описание состояния.
+     * @param headers дополнительные заголовки.
+     * @param body тело ответа.
+     * @param withBody признак передачи тела ответа.
+     * @throws IOException при ошибках передачи ответа.
+     */
+    private void writeResponse(OutputStream outputStream, String status,
+            String headers, byte[] body, boolean withBody)
+            throws IOException {
+        String head = "HTTP/1.0 " + status + "\r\n" + headers +
+                "Content-Length: " + body.length + "\r\n" +
+                "Connection: close\r\n\r\n";
+        outputStream.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        if (withBody) {
+            outputStream.write(body);
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Закрытие сокета HTTP-сервера.
+     * @param serverSocket сокет (может быть null).
+     */
+    private void closeSocket(ServerSocket serverSocket) {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Metrics endpoint. " + e);
+        }
+    }
+
+    /**
+     * Регистрация общих метрик сервера. Значения вычисляются при каждом
+     * чтении реестра, поэтому метрики остаются действительными при
+     * замене объектов в {@link Globals}. Распределение длительности
+     * цикла не регистрируется, т.к. основной цикл не используется.
+     * @param metrics реестр метрик.
+     */
+    @Override
+    protected void registerMetrics(IrcMetrics metrics) {
+        scrapeCount.reset();
+        metrics.counter("irc_metrics_scrapes_total",
+                "Number of responses of the metrics endpoint.",
+                scrapeCount::sum);
+
+        metrics.gauge("irc_connections", "Number of connections.",
+                () -> Globals.db.get().getConnectionListSize());
+        metrics.gauge("irc_users", "Number of users.",
+                () -> Globals.db.get().getUserMapSize());
+        metrics.gauge("irc_channels", "Number of channels.",
+                () -> Globals.db.get().getChannelMapSize());
+
+        metrics.gauge("irc_queue_length", "Length of the server queue.",
+                () -> Globals.outputReadyQueue.get().size(),
+                "queue", "outputReady");
+        metrics.gauge("irc_queue_length", "Length of the server queue.",
+                () -> Globals.connectionCleanupQueue.get().size(),
+                "queue", "connectionCleanup");
+        metrics.gauge("irc_queue_length", "Length of the server queue.",
+                () -> Globals.ircTalkerCleanupQueue.get().size(),
+                "queue", "talkerCleanup");
+        metrics.gauge("irc_queue_length", "Length of the server queue.",
+                () -> Globals.ircTranscriptConfig.get().getQueueSize(),
+                "queue", "transcript");
+
+        metrics.counter("irc_messages_read_total",
+                "Number of messages read from the connections.",
+                Connection.totalReadCount::sum);
+        metrics.counter("irc_messages_written_total",
+                "Number of messages written to the connections.",
+                Connection.totalWriteCount::sum);
+
+        metrics.summary("irc_connection_setup_microseconds",
+                "Duration (us) of the connection setup.",
+                NetworkConnection.setupTimeHistogram);
+        IrcLatencyTracer latencyTracer = Globals.latencyTracer.get();
+        for (Stage stage : Stage.values()) {
+            metrics.summary("irc_message_stage_nanoseconds",
+                    "Duration (ns) of the message processing stage.",
+                    latencyTracer.getHistogram(stage), "stage",
+                    stage.getLabel());
+        }
+        for (Map.Entry<String, IrcHistogram> entry :
+                IrcCommandParser.getCommandStats().entrySet()) {
+            metrics.summary("irc_command_duration_nanoseconds",
+                    "Duration (ns) of the IRC command execution.",
+                    entry.getValue(), "command", entry.getKey());
+        }
+
+        for (IrcCommandClass commandClass : IrcCommandClass.values()) {
+            String classLabel = commandClass.name().toLowerCase(
+                    Locale.ENGLISH);
+            metrics.counter("irc_commands_admitted_total",
+                    "Number of commands admitted under high load.",
+                    () -> Globals.loadShedder.get().getAdmittedCount(
+                    commandClass), "class", classLabel);
+            for (Reason reason : Reason.values()) {
+                metrics.counter("irc_commands_shed_total",
+                        "Number of commands rejected under high load.",
+                        () -> Globals.loadShedder.get().getShedCount(
+                        commandClass, reason), "class", classLabel,
+                        "reason", reason.name().toLowerCase(Locale.ENGLISH));
+            }
+        }
+
+        metrics.gauge("irc_memory_limit_bytes",
+                "Limit of the memory budget.",
+                () -> Globals.memoryBudget.get().getLimit());
+        for (Category category : Category.values()) {
+            String categoryLabel = category.name().toLowerCase(
+                    Locale.ENGLISH);
+            metrics.gauge("irc_memory_usage_bytes",
+                    "Estimated memory usage.",
+                    () -> Globals.memoryBudget.get().getUsage(category),
+                    "category", categoryLabel);
+            metrics.counter("irc_memory_refused_total",
+                    "Number of objects refused by the memory budget.",
+                    () -> Globals.memoryBudget.get().getRefusedCount(
+                    category), "category", categoryLabel);
+        }
+    }
+}
@@ -22,27 +22,37 @@ package simpleircserver.processor;
  */
 
 import java.util.Iterator;
+import java.util.Queue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import simpleircserver.base.Constants;
 import simpleircserver.base.Globals;
 import simpleircserver.connection.Connection;
 import simpleircserver.connection.ConnectionState;
+import simpleircserver.connection.ConnectionTimer;
 import simpleircserver.connection.NetworkConnection;
 import simpleircserver.parser.Reply;
 import simpleircserver.talker.IrcTalker;
 import simpleircserver.talker.IrcTalkerState;
+import simpleircserver.tools.IrcTimingWheel;
 
 /**
- * Программный процессор, который обследует объекты, хранящие информацию о
- * сетевых соединениях. Он проверяет их состояние и состояние соответствующего
- * объекта класса {@link IrcTalker}. В случае обнаружения ошибочного состояния
- * или состояния завершения жизненного цикла, будут выполнены завершающие
- * действия для обследуемого объекта.
+ * Программный процессор, который выполняет завершающие действия для
+ * объектов, хранящих информацию о сетевых соединениях, в случае перехода
+ * этих объектов в ошибочное состояние или в состояние завершения жизненного
+ * цикла. Он также обрабатывает таймеры соединений.
  *
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into
  *          packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-23 Pending output is flushed before closing.
+ * @version 0.5.4 2015-11-27 Counters of the reverse-DNS resolver are reported.
+ * @version 0.5.4 2015-11-27 Connection setup time is reported.
+ * @version 0.5.4 2015-11-27 Memory budget usage is reported.
+ * @version 0.5.4 2015-11-27 PING, ping timeout and registration timeout are driven by the timing wheel.
+ * @version 0.5.4 2015-11-27 Only connections from the cleanup queue are processed.
+ * @version 0.5.4 2015-11-27 Total I/O counters are LongAdder.
  * @author Nikolay Kirdin
  */
 public class NetworkConnectionProcessor extends AbstractIrcServerProcessor {
@@ -51,56 +61,52 @@ public class NetworkConnectionProcessor extends AbstractIrcServerProcessor {
 
     private volatile long oldTotalWriteCount;
 
+    /** Значение {@link Globals#pingSendingPeriod}, для которого заданы таймеры. */
+    private long pingSendingPeriod = Globals.pingSendingPeriod.get();
+
     /** Конструктор по умолчанию. */
     public NetworkConnectionProcessor() {}
 
     /**
-     * Метод, обследующий объекты класса {@link NetworkConnection}.
+     * Метод, выполняющий завершающие действия для объектов класса
+     * {@link NetworkConnection}.
      * 
      * <P>
-     * В основном цикле этого метода проверяется состояние объекта и
-     * соответствующего объекта класса {@link IrcTalker}. В том случае, если
-     * объект класса {@link NetworkConnection} должен завершить свой жизненый
-     * цикл или объект класса {@link IrcTalker} находится в состоянии ошибки или
-     * завершил свой жизненый цикл, то будут проведены завершающие действия для
-     * обследуемого объекта. Состояние объекта определяется переменной
-     * {@link Connection#connectionState}. Состояния объект класса
-     * {@link IrcTalker} определяется переменной {@link IrcTalker#state}.
+     * Объекты, которые перешли в состояние {@link ConnectionState#CLOSE} или
+     * {@link ConnectionState#BROKEN}, помещаются в очередь
+     * {@link Globals#connectionCleanupQueue} (см.
+     * {@link Connection#setConnectionState(ConnectionState)}). В основном
+     * цикле этого метода объекты извлекаются из этой очереди, поэтому затраты
+     * на его выполнение зависят от количества закрываемых соединений, а не от
+     * общего количества соединений. Состояние объекта определяется переменной
+     * {@link Connection#connectionState}.
      *
      * <P>
-     * Для проверки функционирования сетевого соединения, клиентам периодически
+     * Для проверки функционирования сетевого соединения, клиентам, от которых
+     * в течение {@link Globals#pingSendingPeriod} не поступало сообщений,
      * посылается сообщение IRC PING. Если ответ на это сообщение не будет
-     * получен в заданный временной интервал, то состояние обследуемого объекта
+     * получен в течение того же интервала, то состояние обследуемого объекта
      * будет признано ошибочным и будет переведено в состояние
-     * {@link ConnectionState#BROKEN}. Минимальный период посылки сообщений
-     * определяется переменной {@link Globals#pingSendingPeriod}.
+     * {@link ConnectionState#BROKEN}. Если клиент не зарегистрировался в
+     * течение {@link Globals#registrationTimeout}, то соединение также
+     * переводится в состояние {@link ConnectionState#BROKEN}. Эти проверки
+     * выполняются с помощью колеса таймеров {@link Globals#connectionTimers}
+     * (см. {@link #processTimers(long)}), поэтому затраты на них зависят от
+     * количества срабатывающих таймеров, а не от количества соединений.
      *
      * <P>
      * В том случае, если значение переменной {@link Connection#connectionState}
      * обследуемых объектов будет {@link ConnectionState#CLOSE}, то этот объект
      * будет удален из репозитария и его состояние будет изменено на состояние
-     * {@link ConnectionState#CLOSED}. Если у этого объекта есть открытый сокет,
-     * то этот сокет будет закрыт.
-     *
-     * <P>
-     * Если будет обнаружено, что у обследуемого объекта нет соответствующего
-     * объекта класса {@link IrcTalker} или у соответвующее ему объекта класса
-     * {@link IrcTalker} находится в одном из следующих состояний:
-     * {@link IrcTalkerState#CLOSED} или {@link IrcTalkerState#BROKEN}, то
-     * состояние этого объекта будет изменено на состояние
-     * {@link ConnectionState#BROKEN}.
-     *
-     * <P>
-     * В основном цикле вычисляются среднее количество операций ввода,
-     * вычисленное значение сохраняется в поле {@link Connection#avgInputPeriod}
-     * обследуемого объекта.
+     * {@link ConnectionState#CLOSED}. Перед закрытием сокета клиенту будут
+     * переданы сообщения, оставшиеся в выходной очереди. Если у этого объекта
+     * есть открытый сокет, то этот сокет будет закрыт.
      *
      * <P>
-     * В поля {@link Connection#readCount}, {@link Connection#writeCount}
-     * помещаются общее количество операций ввода и вывода для обследуемого
-     * объекта. В поля {@link Connection#totalReadCount} и
-     * {@link Connection#totalWriteCount} помещаются суммарное количество
-     * операций ввода и операций вывода по всем сетевым соединениям.
+     * Соответствующий закрытому соединению объект класса {@link IrcTalker}
+     * переводится в состояние {@link IrcTalkerState#BROKEN}. Если этот
+     * объект сам завершает свой жизненный цикл, то соединение закрывается
+     * процессором {@link IrcTalkerProcessor}.
      * 
      * <P>
      * Каждые {@link Globals#monitoringPeriod} (ms) в канал
@@ -115,57 +121,23 @@ public class NetworkConnectionProcessor extends AbstractIrcServerProcessor {
      */
     public void performProcessorOperation() {
 
-        Iterator<Connection> connectionListIterator = Globals.db.get().getConnectionListIterator();
-
-        while (connectionListIterator.hasNext()) {
-
-            Connection conn = connectionListIterator.next();
-            long currentTime = System.currentTimeMillis();
-            IrcTalker itcTalker = conn.ircTalker.get();
-
-            if (itcTalker == null || itcTalker.getState() == IrcTalkerState.BROKEN) {
-                conn.setBroken();
-            } else if (itcTalker.getState() == IrcTalkerState.CLOSED) {
-                conn.close();
-            }
+        processTimers(System.currentTimeMillis());
 
-            long avgInterval = conn.avgInputPeriodMeter.getAvgInterval(currentTime);
+        Queue<Connection> cleanupQueue = Globals.connectionCleanupQueue.get();
+        Connection conn = null;
 
-            conn.avgInputPeriod.set(avgInterval);
+        while ((conn = cleanupQueue.poll()) != null) {
 
-            if (conn.readCountDelta.get() != 0) {
-                long readCnt = conn.readCountDelta.getAndSet(0);
-                conn.readCount.getAndAdd(readCnt);
-                Connection.totalReadCount.getAndAdd(readCnt);
-            }
-
-            if (conn.writeCountDelta.get() != 0) {
-                long writeCnt = conn.writeCountDelta.getAndSet(0);
-                conn.writeCount.getAndAdd(writeCnt);
-                Connection.totalWriteCount.getAndAdd(writeCnt);
+            /* Служебное псевдосоединение не закрывается. */
+            if (conn == Globals.nullConnection.get()) {
+                continue;
             }
 
             ConnectionState connectionState = conn.getConnectionState();
 
-            if (connectionState != ConnectionState.BROKEN && connectionState != ConnectionState.CLOSE
-                    && (currentTime - conn.pingTime.get() >= Globals.pingSendingPeriod.get())) {
-                if (conn.pongTime.get() < conn.pingTime.get()) {
-                    String outString = "ERROR: " + "Ping timeout.";
-                    OutputQueueProcessor.process(conn, outString);
-                    logger.log(Level.FINER,
-                            "Ping timeout:" + Math.abs(conn.pongTime.get() - conn.pingTime.get()) + " :" + conn);
-                    conn.setBroken();
-                } else {
-                    conn.pingTime.set(currentTime);
-                    logger.log(Level.FINER, "Ping send: " + conn);
-
-                    String outString = "PING: " + Globals.thisIrcServer.get().getHostname();
-                    OutputQueueProcessor.process(conn, outString);
-                }
-            }
-
             switch (connectionState) {
             case NEW:
+            case INITIALIZING:
             case INITIALIZED:
                 break;
             case OPERATIONAL:
@@ -174,11 +146,16 @@ public class NetworkConnectionProcessor extends AbstractIrcServerProcessor {
                 logger.log(Level.FINER, "Closing broken: " + conn);
             case CLOSE:
             case CLOSING:
+                OutputQueueProcessor.flush(conn);
                 conn.delete();
                 conn.setConnectionState(ConnectionState.CLOSED);
                 conn.connectionStateTime.set(System.currentTimeMillis());
                 Reply responseReply = Globals.db.get().unRegister(conn);
                 logger.log(Level.FINER, "Unregistering and Deleting closed: " + conn + " " + responseReply);
+                IrcTalker ircTalker = conn.ircTalker.get();
+                if (ircTalker != null) {
+                    ircTalker.setBroken();
+                }
                 break;
             case CLOSED:
                 break;
@@ -195,6 +172,93 @@ public class NetworkConnectionProcessor extends AbstractIrcServerProcessor {
 
     }
 
+    /**
+     * Обработка сработавших таймеров соединений из колеса таймеров
+     * {@link Globals#connectionTimers}.
+     *
+     * <P>
+     * Таймер {@link ConnectionTimer.Type#IDLE} срабатывает, если от клиента
+     * в течение {@link Globals#pingSendingPeriod} не поступало сообщений. В
+     * этом случае клиенту посылается сообщение IRC PING и задается таймер
+     * {@link ConnectionTimer.Type#PING_TIMEOUT}. При этом же вычисляется
+     * средний период поступления сообщений, вычисленное значение сохраняется
+     * в поле {@link Connection#avgInputPeriod}. Если ответ на сообщение IRC
+     * PING не был получен до срабатывания таймера
+     * {@link ConnectionTimer.Type#PING_TIMEOUT}, то клиенту передается
+     * сообщение ERROR и соединение переводится в состояние
+     * {@link ConnectionState#BROKEN}. Таймер
+     * {@link ConnectionTimer.Type#REGISTRATION} закрывает соединения
+     * незарегистрированных клиентов.
+     *
+     * <P>
+     * Если значение {@link Globals#pingSendingPeriod} изменилось, то
+     * таймеры передачи сообщений IRC PING всех соединений задаются заново.
+     *
+     * @param currentTime текущее время (ms).
+     */
+    private void processTimers(long currentTime) {
+        long period = Globals.pingSendingPeriod.get();
+        if (period != pingSendingPeriod) {
+            pingSendingPeriod = period;
+            Iterator<Connection> connectionListIterator = Globals.db.get().getConnectionListIterator();
+            while (connectionListIterator.hasNext()) {
+                Connection conn = connectionListIterator.next();
+                if (conn.isTimersStarted()) {
+                    conn.scheduleTimer(ConnectionTimer.Type.IDLE,
+                            IrcTimingWheel.addJitter(period, Constants.TIMER_JITTER_PERCENT));
+                }
+            }
+        }
+
+        for (IrcTimingWheel.Timer<ConnectionTimer> timer : Globals.connectionTimers.get().advance(currentTime)) {
+            Connection conn = timer.getItem().getConnection();
+            ConnectionState connectionState = conn.getConnectionState();
+            if (!conn.isCurrentTimer(timer) || connectionState == ConnectionState.BROKEN
+                    || connectionState == ConnectionState.CLOSE || connectionState == ConnectionState.CLOSING
+                    || connectionState == ConnectionState.CLOSED) {
+                continue;
+            }
+            IrcTalker ircTalker = conn.ircTalker.get();
+            long lastInputTime = Math.max(conn.pongTime.get(), ircTalker == null ? 0 : ircTalker.getLastMessageTime());
+
+            switch (timer.getItem().getType()) {
+            case REGISTRATION:
+                if (ircTalker != null && !ircTalker.isRegistered()) {
+                    String outString = "ERROR :Closing Link: " + ircTalker.getHostname() + " (Registration timed out)";
+                    OutputQueueProcessor.process(conn, outString);
+                    logger.log(Level.FINER, "Registration timeout: " + conn);
+                    conn.setBroken();
+                }
+                break;
+            case IDLE:
+                conn.avgInputPeriod.set(conn.avgInputPeriodMeter.getAvgInterval(currentTime));
+                if (currentTime - lastInputTime < period) {
+                    conn.scheduleTimer(ConnectionTimer.Type.IDLE, lastInputTime + period - currentTime);
+                } else {
+                    conn.pingTime.set(currentTime);
+                    logger.log(Level.FINER, "Ping send: " + conn);
+                    String outString = "PING: " + Globals.thisIrcServer.get().getHostname();
+                    OutputQueueProcessor.process(conn, outString);
+                    conn.scheduleTimer(ConnectionTimer.Type.PING_TIMEOUT, period);
+                }
+                break;
+            case PING_TIMEOUT:
+                if (conn.pongTime.get() < conn.pingTime.get()) {
+                    String outString = "ERROR: " + "Ping timeout.";
+                    OutputQueueProcessor.process(conn, outString);
+                    logger.log(Level.FINER,
+                            "Ping timeout:" + Math.abs(conn.pongTime.get() - conn.pingTime.get()) + " :" + conn);
+                    conn.setBroken();
+                } else {
+                    conn.scheduleTimer(ConnectionTimer.Type.IDLE, Math.max(0, lastInputTime + period - currentTime));
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
     /**
      * Выполнение завершающих действий при останове сервера. Для всех объектов
      * порожденных от {@link NetworkConnection} будут выполнены следующие
@@ -258,20 +322,25 @@ public class NetworkConnectionProcessor extends AbstractIrcServerProcessor {
         long period = System.currentTimeMillis() - getTimeOfLastMonitoring();
 
         if (period > 0) {
-            totalReadCountRate = (Connection.totalReadCount.get() - oldTotalReadCount) * 1000 / period;
-            totalWriteCountRate = (Connection.totalWriteCount.get() - oldTotalWriteCount) * 1000 / period;
+            totalReadCountRate = (Connection.totalReadCount.sum() - oldTotalReadCount) * 1000 / period;
+            totalWriteCountRate = (Connection.totalWriteCount.sum() - oldTotalWriteCount) * 1000 / period;
         } else {
             totalReadCountRate = 0;
             totalWriteCountRate = 0;
         }
 
-        oldTotalReadCount = Connection.totalReadCount.get();
-        oldTotalWriteCount = Connection.totalWriteCount.get();
+        oldTotalReadCount = Connection.totalReadCount.sum();
+        oldTotalWriteCount = Connection.totalWriteCount.sum();
 
-        String result = " totalReadCount: " + Connection.totalReadCount.get() 
+        String result = " totalReadCount: " + Connection.totalReadCount.sum() 
                 + " totalReadCountRate: " + totalReadCountRate 
-                + " totalWriteCount:" + Connection.totalWriteCount.get() 
-                + " totalWriteCountRate: "    + totalWriteCountRate;        
+                + " totalWriteCount:" + Connection.totalWriteCount.sum() 
+                + " totalWriteCountRate: "    + totalWriteCountRate
+                + NetworkConnection.setupTimeHistogram.getMonitoringString(
+                "setupTimeUs")
+                + Globals.nameResolver.get().getMonitoringString()
+                + Globals.memoryBudget.get().getMonitoringString()
+                + Globals.connectionTimers.get().getMonitoringString("timers");
         return result;
     }
 
@@ -0,0 +1,650 @@
+package simpleircserver.processor;
+/*
+ *
+ * NioNetworkProcessor
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.Globals;
+import simpleircserver.config.IrcConnectionBalancing;
+import simpleircserver.config.IrcInterfaceConfig;
+import simpleircserver.config.IrcIoEngine;
+import simpleircserver.config.IrcSendQueuePolicy;
+import simpleircserver.connection.NetworkConnection;
+import simpleircserver.connection.NioConnection;
+import simpleircserver.parser.Reply;
+import simpleircserver.talker.IrcTalkerState;
+import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcAcceptThrottle;
+
+/**
+ * Программный процессор, который обслуживает сетевые соединения с
+ * помощью неблокирующего ввода/вывода. Используется в том случае, если
+ * в конфигурации интерфейса задан способ обслуживания соединений
+ * {@link IrcIoEngine#NIO}. В этом случае процессор заменяет
+ * процессоры {@link IncomingConnectionListener},
+ * {@link InputStreamProcessor} и {@link OutputQueueProcessor}.
+ *
+ * <P>Процессор принимает новые соединения и распределяет их между
+ * процессорами ввода/вывода {@link NioReactor}, каждый из которых
+ * обслуживает свою часть (шард) соединений в собственном потоке.
+ * Количество процессоров ввода/вывода и способ выбора процессора для
+ * нового соединения задаются в конфигурации интерфейса (см.
+ * {@link IrcInterfaceConfig#getIoThreads} и
+ * {@link IrcInterfaceConfig#getConnectionBalancing}).
+ *
+ * @version 0.5.4 2015-11-20
+ * @version 0.5.4 2015-11-22 Connections are distributed between several IO loops.
+ * @version 0.5.4 2015-11-24 Input queue size and input budget are taken from the interface configuration.
+ * @version 0.5.4 2015-11-27 Counters of the reverse-DNS resolver are reported.
+ * @version 0.5.4 2015-11-27 Connection setup time is reported.
+ * @version 0.5.4 2015-11-27 Per-address and per-network rate limiting, ERROR line on rejection.
+ * @version 0.5.4 2015-11-27 Memory budget usage is reported.
+ * @version 0.5.4 2015-11-27 Limit of the output queue is taken from the interface configuration.
+ * @version 0.5.4 2015-11-27 Timers of the accepted connection are started.
+ * @version 0.5.4 2015-11-27 Connections are rejected from the HIGH load level.
+ * @version 0.5.4 2015-11-27 Duration of the working part of the cycle is recorded into histogram.
+ * @version 0.5.4 2015-11-27 Metrics of the stopped IO loops are removed from the metrics registry.
+ * @version 0.5.4 2015-11-27 Input queue size is passed to the connection constructor.
+ * @author  Nikolay Kirdin
+ */
+public class NioNetworkProcessor extends AbstractIrcServerProcessor {
+
+    /** Максимальная длительность ожидания селектора (ms). */
+    public AtomicLong selectTO = new AtomicLong(Constants.NIO_SELECT_TIMEOUT);
+
+    /** Кодировка сообщений. */
+    public AtomicReference<Charset> listenerCharset =
+            new AtomicReference<Charset>(Globals.listenerCharset.get());
+
+    /** Размер входной очереди соединения. */
+    public AtomicInteger inputQueueSize =
+            new AtomicInteger(Globals.inputQueueSize.get());
+
+    /**
+     * Максимальное количество сообщений одного соединения, считываемых
+     * за один цикл процессора ввода/вывода.
+     */
+    public AtomicInteger inputBudget =
+            new AtomicInteger(Globals.inputBudget.get());
+
+    /** Максимальная суммарная длина (байт) выходной очереди соединения. */
+    public AtomicLong sendQueueSize =
+            new AtomicLong(Globals.sendQueueSize.get());
+
+    /** Действия при переполнении выходной очереди соединения. */
+    public AtomicReference<IrcSendQueuePolicy> sendQueuePolicy =
+            new AtomicReference<IrcSendQueuePolicy>(
+            Globals.sendQueuePolicy.get());
+
+    /** Признак ошибки при выполнении метода. */
+    public AtomicBoolean error = new AtomicBoolean(false);
+
+    /** Признак использования этого процессора. */
+    public AtomicBoolean enabled = new AtomicBoolean(false);
+
+    /** Признак необходимости повторного открытия серверного канала. */
+    private AtomicBoolean rebind = new AtomicBoolean(false);
+
+    /** IP-адрес интерфейса. */
+    private volatile InetAddress inetAddress;
+
+    /** Номер порта для запросов на сетевое соединение. */
+    private volatile int serverPortNumber = Globals.serverPortNumber.get();
+
+    /** Селектор. */
+    private Selector selector;
+
+    /** Серверный канал. */
+    private ServerSocketChannel serverSocketChannel;
+
+    /** Процессоры ввода/вывода. */
+    private final List<NioReactor> reactorList =
+            new CopyOnWriteArrayList<NioReactor>();
+
+    /** Количество процессоров ввода/вывода. */
+    public AtomicInteger ioThreads = new AtomicInteger(
+            Runtime.getRuntime().availableProcessors());
+
+    /** Способ выбора процессора ввода/вывода для нового соединения. */
+    public AtomicReference<IrcConnectionBalancing> connectionBalancing =
+            new AtomicReference<IrcConnectionBalancing>(
+                    Globals.connectionBalancing.get());
+
+    /** Счетчик для циклического выбора процессора ввода/вывода. */
+    private int nextReactor;
+
+    /** Количество принятых соединений. */
+    public AtomicLong acceptCount = new AtomicLong();
+
+    /**
+     * Количество соединений, отвергнутых из-за превышения частоты
+     * соединений.
+     */
+    public AtomicLong throttledCount = new AtomicLong();
+
+    /** Количество соединений, отвергнутых по другим причинам. */
+    public AtomicLong rejectedCount = new AtomicLong();
+
+    /** Объект, ограничивающий частоту приема новых соединений. */
+    private volatile IrcAcceptThrottle acceptThrottle;
+
+    /** Конструктор по умолчанию. */
+    public NioNetworkProcessor() {}
+
+    /**
+     * Получение IP-адреса интерфейса.
+     * @return IP-адреса интерфейса.
+     */
+    public InetAddress getInetAddress() {
+        return inetAddress;
+    }
+
+    /**
+     * Задание IP-адреса интерфейса.
+     * @param inetAddress номер сетевого порта.
+     */
+    public void setInetAddress(InetAddress inetAddress) {
+        this.inetAddress = inetAddress;
+    }
+
+    /**
+     * Получение номера сетевого порта.
+     * @return номер сетевого порта для запросов на сетевое соединение.
+     */
+    public int getServerPortNumber() {
+        return serverPortNumber;
+    }
+
+    /**
+     * Задание номера сетевого порта для запросов на сетевое соединение.
+     * @param serverPortNumber номер сетевого порта.
+     */
+    public void setServerPortNumber(int serverPortNumber) {
+        this.serverPortNumber = serverPortNumber;
+    }
+
+    /**
+     * Метод run() - это метод, который обслуживает серверный канал.
+     *
+     * <P>В начале выполнения метода запускаются процессоры 
+     * ввода/вывода, открывается селектор и серверный канал. Если во 
+     * время открытия будут обнаружены ошибки, то этот факт будет 
+     * занесен в журнал, переменной {@link #error} будет присвоено 
+     * значение true и метод завершится.
+     *
+     * <P>В основном цикле метода производится ожидание запросов на 
+     * соединение, время ожидания ограничено величиной {@link #selectTO}.
+     *
+     * <P>Длительность обработки готовых каналов и длительность ожидания
+     * используются для индикации высокой загруженности и для вывода
+     * диагностических сообщений так же, как это делается в
+     * {@link AbstractIrcServerProcessor#run}.
+     */
+    @Override
+    public void run() {
+
+        logger.log(Level.FINEST, "Running");
+
+        acceptThrottle = new IrcAcceptThrottle(
+                Globals.acceptAddressBurst.get(),
+                Globals.acceptAddressPeriod.get(),
+                Globals.acceptNetworkBurst.get(),
+                Globals.acceptNetworkPeriod.get(),
+                Globals.maxServerClients.get());
+
+        try {
+            selector = Selector.open();
+            openServerSocketChannel();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "ServerSocketChannel: " +
+                    serverPortNumber + ". Opening error." + " " + e);
+            error.set(true);
+        }
+
+        startReactors();
+
+        avgDurationOfTimeout.setValue(minimalDurationOfTimeout.get());
+        avgPlannedDurationOfTimeout.setValue(minimalDurationOfTimeout.get());
+
+        while (!down.get() && !error.get()) {
+
+            while (!running.get() && !down.get()) {
+                try {
+                    Thread.sleep(durationOfTimeout.get());
+                } catch (InterruptedException e) {}
+            }
+
+            if (down.get()) {
+                break;
+            }
+
+            long waitingTO = selectTO.get();
+
+            avgDurationOfTimeout.intervalStart(System.currentTimeMillis());
+            try {
+                selector.select(waitingTO);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Selector: " + e);
+            }
+            avgDurationOfTimeout.intervalEnd(System.currentTimeMillis());
+
+            avgDurationOfWorkingPartOfCycle.intervalStart(
+                    System.currentTimeMillis());
+
+            performMeasuredOperation();
+
+            avgDurationOfWorkingPartOfCycle.intervalEnd(
+                    System.currentTimeMillis());
+
+            avgPlannedDurationOfTimeout.setValue(waitingTO);
+
+            sendStatisticsToMonitoringChannel(
+                    avgDurationOfWorkingPartOfCycle.getAvgValue(),
+                    avgDurationOfTimeout.getAvgValue(),
+                    avgPlannedDurationOfTimeout.getAvgValue());
+        }
+
+        closeChannels();
+        stopReactors();
+        logger.log(Level.FINEST, "Ended");
+    }
+
+    /** Обработка запросов на соединение. */
+    @Override
+    public void performProcessorOperation() {
+
+        if (rebind.getAndSet(false)) {
+            try {
+                openServerSocketChannel();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "ServerSocketChannel: " +
+                        serverPortNumber + ". Opening error." + " " + e);
+                error.set(true);
+                return;
+            }
+        }
+
+        Iterator<SelectionKey> keyIterator =
+                selector.selectedKeys().iterator();
+        while (keyIterator.hasNext()) {
+            SelectionKey key = keyIterator.next();
+            keyIterator.remove();
+            try {
+                if (key.isValid() && key.isAcceptable()) {
+                    acceptConnections((ServerSocketChannel) key.channel());
+                }
+            } catch (CancelledKeyException e) {}
+        }
+    }
+
+    /** Запуск процессоров ввода/вывода. */
+    private void startReactors() {
+        int number = ioThreads.get() > 0 ? ioThreads.get() :
+            Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < number; i++) {
+            NioReactor reactor = new NioReactor(i);
+            reactor.selectTO.set(selectTO.get());
+            reactor.inputBudget.set(inputBudget.get());
+            reactorList.add(reactor);
+            if (!reactor.processorStart()) {
+                logger.log(Level.SEVERE, "NioReactor: " + i +
+                        ". Starting error.");
+                error.set(true);
+            }
+        }
+    }
+
+    /** Останов процессоров ввода/вывода. */
+    private void stopReactors() {
+        for (NioReactor reactor : reactorList) {
+            reactor.down.set(true);
+            reactor.wakeup();
+            reactor.unregisterMetrics(Globals.metrics.get());
+        }
+        reactorList.clear();
+    }
+
+    /**
+     * Выбор процессора ввода/вывода для нового соединения. В 
+     * зависимости от значения {@link #connectionBalancing} процессоры 
+     * выбираются либо циклически, либо выбирается процессор с 
+     * наименьшим количеством соединений.
+     * @return процессор ввода/вывода.
+     */
+    private NioReactor selectReactor() {
+        NioReactor result = null;
+        if (connectionBalancing.get() == 
+                IrcConnectionBalancing.LEAST_LOADED) {
+            for (NioReactor reactor : reactorList) {
+                if (result == null || reactor.getConnectionCount() < 
+                        result.getConnectionCount()) {
+                    result = reactor;
+                }
+            }
+        } else {
+            nextReactor = (nextReactor + 1) % reactorList.size();
+            result = reactorList.get(nextReactor);
+        }
+        return result;
+    }
+
+    /**
+     * Открытие серверного канала и регистрация его в селекторе. Ранее
+     * открытый канал закрывается.
+     * @throws IOException ошибка открытия канала.
+     */
+    private void openServerSocketChannel() throws IOException {
+        if (serverSocketChannel != null) {
+            serverSocketChannel.close();
+        }
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.configureBlocking(false);
+        serverSocketChannel.socket().setReceiveBufferSize(
+                Globals.receiveBufferSize.get());
+        serverSocketChannel.socket().bind(
+                new InetSocketAddress(inetAddress, serverPortNumber));
+        serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        Globals.serverSocket.set(serverSocketChannel.socket());
+        logger.log(Level.INFO, "ServerSocketChannel: " +
+                serverSocketChannel + " is opened." +
+                " ReceiveBufferSize:" +
+                serverSocketChannel.socket().getReceiveBufferSize() +
+                "," + " Charset:" + listenerCharset.get());
+    }
+
+    /** Закрытие серверного канала и селектора. */
+    private void closeChannels() {
+        try {
+            if (serverSocketChannel != null) {
+                serverSocketChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+            logger.log(Level.FINEST, "ServerSocketChannel:" +
+                    serverSocketChannel + " is closed.");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "ServerSocketChannel:" +
+                    serverPortNumber + ". Closing error. " + e);
+        }
+    }
+
+    /**
+     * Прием новых соединений. Для каждого нового соединения создаются
+     * объекты классов {@link NioConnection} и {@link User}, которые
+     * помещаются в репозиторий так же, как это делается в
+     * {@link IncomingConnectionListener}. Принимаются все ожидающие
+     * соединения. Если превышена частота соединений с IP-адреса клиента
+     * или из его сети ({@link IrcAcceptThrottle}), или программа
+     * находится в высоконагруженном состоянии, то клиенту передается
+     * сообщение ERROR и соединение закрывается.
+     * @param channel серверный канал.
+     */
+    private void acceptConnections(ServerSocketChannel channel) {
+        SocketChannel socketChannel = null;
+        while (true) {
+            try {
+                socketChannel = channel.accept();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "ServerSocketChannel: " +
+                        channel + ". Accepting error." + " " + e);
+                break;
+            }
+            if (socketChannel == null) {
+                break;
+            }
+            InetAddress address = socketChannel.socket().getInetAddress();
+            IrcAcceptThrottle.Result result = acceptThrottle.tryAccept(
+                    address, System.currentTimeMillis());
+            if (result != IrcAcceptThrottle.Result.ACCEPTED) {
+                throttledCount.getAndIncrement();
+                logger.log(Level.FINER, "Connection for " + socketChannel +
+                        " throttled: " + result);
+                rejectChannel(socketChannel, "Connection rate exceeded");
+            } else if (!Globals.loadShedder.get().isAcceptAllowed()) {
+                rejectedCount.getAndIncrement();
+                rejectChannel(socketChannel, "Server is overloaded");
+            } else {
+                acceptConnection(socketChannel);
+            }
+        }
+    }
+
+    /**
+     * Отказ в обслуживании соединения. Клиенту передается сообщение
+     * ERROR, после чего канал закрывается. Канал нового соединения
+     * имеет пустой буфер передачи, поэтому запись не блокируется.
+     * @param socketChannel канал соединения.
+     * @param reason причина отказа.
+     */
+    private void rejectChannel(SocketChannel socketChannel, String reason) {
+        try {
+            socketChannel.write(ByteBuffer.wrap(("ERROR :Closing Link: " +
+                    socketChannel.socket().getInetAddress().getHostAddress()
+                    + " (" + reason + ")\r\n").getBytes(
+                    listenerCharset.get())));
+        } catch (IOException e) {}
+        try {
+            socketChannel.close();
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Инициализация нового соединения.
+     * @param socketChannel канал нового соединения.
+     */
+    private void acceptConnection(SocketChannel socketChannel) {
+        boolean isConnectionAllowed = false;
+        boolean isUserAllowed = false;
+        NioConnection connection = null;
+        User user = null;
+
+        try {
+            socketChannel.configureBlocking(false);
+            socketChannel.socket().setReceiveBufferSize(
+                    Globals.receiveBufferSize.get());
+            connection = NioConnection.create(socketChannel,
+                    inputQueueSize.get());
+            if (connection != null) {
+                connection.charset.set(listenerCharset.get());
+                connection.setSendQueueLimit(sendQueueSize.get(),
+                        sendQueuePolicy.get());
+                isConnectionAllowed =
+                        Globals.db.get().register(connection) ==
+                        Reply.RPL_OK;
+            }
+
+            if (isConnectionAllowed) {
+                user = User.create();
+                if (user != null) {
+                    user.setConnection(connection);
+                    user.setNickname(user.getIdString());
+                    user.setIrcServer(Globals.thisIrcServer.get());
+                    connection.ircTalker.set(user);
+
+                    isUserAllowed = Globals.db.get().register(user) ==
+                            Reply.RPL_OK;
+                    if (!isUserAllowed) {
+                        user.setConnection(null);
+                        connection.ircTalker.set(null);
+                    }
+                }
+            }
+
+            if (isConnectionAllowed && isUserAllowed) {
+                user.setState(IrcTalkerState.REGISTERING);
+                connection.run();
+                connection.startTimers();
+                selectReactor().addConnection(connection);
+                acceptCount.getAndIncrement();
+            } else {
+                rejectedCount.getAndIncrement();
+                logger.log(Level.INFO, "Connection for " + socketChannel +
+                        " rejected.");
+                rejectChannel(socketChannel, "Server is full");
+                if (isConnectionAllowed) {
+                    connection.setBroken();
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "SocketChannel: " +
+                    socketChannel + ". Accepting error." + " " + e);
+            if (connection != null) {
+                connection.setBroken();
+            } else {
+                try {
+                    socketChannel.close();
+                } catch (IOException ee) {}
+            }
+        }
+    }
+
+    /**
+     * Инициализация процесса обработки сетевых соединений. Процесс
+     * запускается только в том случае, если в конфигурации интерфейса
+     * задан способ обслуживания соединений {@link IrcIoEngine#NIO}.
+     * @return true инициализация успешно завершена,
+     * false инициализация завершена с ошибками.
+     */
+    @Override
+    public boolean processorStart() {
+        enabled.set(Globals.db.get().getIrcInterfaceConfig().getIoEngine()
+                == IrcIoEngine.NIO);
+        if (!enabled.get()) {
+            return true;
+        }
+        readInterfaceConfig();
+        down.set(false);
+        error.set(false);
+        return super.processorStart() && !this.error.get();
+    }
+
+    /**
+     * Реконфигурирование процесса. Если изменились IP-адрес или номер
+     * порта интерфейса, то серверный канал будет открыт повторно.
+     * Изменение способа обслуживания соединений и количества 
+     * процессоров ввода/вывода вступает в силу после перезапуска 
+     * сервера.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorReconfigure() {
+        if (!enabled.get()) {
+            return true;
+        }
+        InetAddress oldInetAddress = inetAddress;
+        int oldServerPortNumber = serverPortNumber;
+        readInterfaceConfig();
+        if (oldServerPortNumber != serverPortNumber ||
+                (oldInetAddress == null ? inetAddress != null :
+                !oldInetAddress.equals(inetAddress))) {
+            rebind.set(true);
+            selector.wakeup();
+        }
+        return !error.get();
+    }
+
+    /** Получение параметров интерфейса из репозитария. */
+    private void readInterfaceConfig() {
+        setInetAddress(Globals.db.get().getIrcInterfaceConfig(
+                ).getInetAddress());
+        setServerPortNumber(Globals.db.get().getIrcInterfaceConfig(
+                ).getPort());
+        listenerCharset.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getCharset());
+        ioThreads.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getIoThreads());
+        connectionBalancing.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getConnectionBalancing());
+        inputQueueSize.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getInputQueueSize());
+        inputBudget.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getInputBudget());
+        sendQueueSize.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getSendQueueSize());
+        sendQueuePolicy.set(Globals.db.get().getIrcInterfaceConfig(
+                ).getSendQueuePolicy());
+        for (NioReactor reactor : reactorList) {
+            reactor.inputBudget.set(inputBudget.get());
+        }
+    }
+
+    /** Завершение основного цикла.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorStop() {
+        if (selector != null) {
+            down.set(true);
+            selector.wakeup();
+        }
+        return super.processorStop();
+    }
+
+    /** Сброс индикации высокой загруженности. */
+    @Override
+    public void removeProcessorFromHighLoadSet() {
+        for (IrcServerProcessor isp: Globals.ircServerProcessorSet.get()) {
+            if (isp instanceof NioNetworkProcessor) {
+                Globals.ircServerProcessorSet.get().remove(isp);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public String getMonitoringstring() {
+        StringBuilder result = new StringBuilder(
+                NetworkConnection.setupTimeHistogram.getMonitoringString(
+                "setupTimeUs") + 
+                Globals.nameResolver.get().getMonitoringString() + 
+                Globals.memoryBudget.get().getMonitoringString() + 
+                " accepted:" + acceptCount.get() + 
+                " throttled:" + throttledCount.get() + 
+                " rejected:" + rejectedCount.get() + " shards:" + reactorList.size() + 
+                " connections:");
+        String separator = "";
+        for (NioReactor reactor : reactorList) {
+            result.append(separator).append(reactor.getConnectionCount());
+            separator = "/";
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,567 @@
+package simpleircserver.processor;
+/*
+ *
+ * NioReactor
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.Globals;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.connection.NioConnection;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.parser.IrcIncomingMessage;
+import simpleircserver.parser.Reply;
+import simpleircserver.talker.IrcTalker;
+import simpleircserver.tools.IrcLatencyTracer;
+import simpleircserver.tools.IrcMetrics;
+
+/**
+ * Программный процессор, который обслуживает часть (шард) сетевых
+ * соединений с помощью неблокирующего ввода/вывода. Каждый объект
+ * этого класса имеет собственный поток и собственный селектор, в
+ * котором регистрируются каналы соединений этого шарда. Чтение и
+ * запись для соединения выполняются только тем процессором, которому
+ * это соединение передано процессором {@link NioNetworkProcessor}.
+ *
+ * <P>Вывод для соединения инициируется помещением сообщения в его
+ * выходную очередь (см. {@link NioConnection#requestWrite}). Вывод
+ * выполняется и для соединений в состояниях
+ * {@link ConnectionState#CLOSE} и {@link ConnectionState#BROKEN}, чтобы
+ * клиент получил последние сообщения (например, ERROR о переполнении
+ * выходной очереди). Канал закрытого соединения, у которого остались
+ * непереданные данные ({@link NioConnection#isCloseRequested}),
+ * закрывается этим процессором после передачи данных или по истечении
+ * {@link Constants#NIO_CLOSE_LINGER_TIMEOUT} (ms).
+ *
+ * @version 0.5.4 2015-11-22
+ * @version 0.5.4 2015-11-24 Several messages per cycle are read, input rate is limited by token bucket.
+ * @version 0.5.4 2015-11-26 Messages are encoded once per charset.
+ * @version 0.5.4 2015-11-27 I/O counters are updated in place.
+ * @version 0.5.4 2015-11-27 Duration of the working part of the cycle is recorded into histogram.
+ * @version 0.5.4 2015-11-27 Byte counters are registered in the metrics registry.
+ * @version 0.5.4 2015-11-27 Output queue latency of messages is recorded.
+ * @version 0.5.4 2015-11-27 Output queue is written under the connection output lock.
+ * @version 0.5.4 2015-11-27 Connection with new input is dispatched to the command worker at once.
+ * @version 0.5.4 2015-11-27 Pending output of the closing connections is written before the channel is closed.
+ * @author  Nikolay Kirdin
+ */
+public class NioReactor extends AbstractIrcServerProcessor {
+
+    /** Номер шарда. */
+    public final int shard;
+
+    /** Максимальная длительность ожидания селектора (ms). */
+    public AtomicLong selectTO = new AtomicLong(Constants.NIO_SELECT_TIMEOUT);
+
+    /**
+     * Максимальное количество сообщений одного соединения, считываемых
+     * за один цикл.
+     */
+    public AtomicInteger inputBudget =
+            new AtomicInteger(Globals.inputBudget.get());
+
+    /** Селектор. */
+    private volatile Selector selector;
+
+    /** Очередь новых соединений, ожидающих регистрации в селекторе. */
+    private final Queue<NioConnection> newConnectionQueue =
+            new ConcurrentLinkedQueue<NioConnection>();
+
+    /** Очередь соединений, для которых необходимо выполнить вывод. */
+    private final Queue<NioConnection> writeRequestQueue =
+            new ConcurrentLinkedQueue<NioConnection>();
+
+    /**
+     * Множество соединений, у которых в буфере ввода есть данные, не
+     * переданные во входную очередь.
+     */
+    private final Set<NioConnection> pendingInputSet =
+            new LinkedHashSet<NioConnection>();
+
+    /**
+     * Множество закрытых соединений, каналы которых будут закрыты после
+     * передачи оставшихся данных. Используется только потоком шарда.
+     */
+    private final Set<NioConnection> closingSet =
+            new LinkedHashSet<NioConnection>();
+
+    /** Количество соединений шарда. */
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    /** 
+     * Сообщения, помещенные в буфер вывода за одно обращение к 
+     * {@link #processOutput}. Используется только потоком шарда.
+     */
+    private final List<IrcCommandReport> writtenReportList =
+            new ArrayList<IrcCommandReport>();
+
+    /** Количество прочитанных байт. */
+    public AtomicLong totalReadBytes = new AtomicLong();
+
+    /** Количество переданных байт. */
+    public AtomicLong totalWrittenBytes = new AtomicLong();
+
+    /**
+     * Конструктор.
+     * @param shard номер шарда.
+     */
+    public NioReactor(int shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * Передача соединения этому процессору. Канал соединения будет
+     * зарегистрирован в селекторе в потоке этого процессора.
+     * @param connection соединение.
+     */
+    public void addConnection(NioConnection connection) {
+        connectionCount.getAndIncrement();
+        newConnectionQueue.offer(connection);
+        wakeup();
+    }
+
+    /**
+     * Получение количества соединений шарда.
+     * @return количество соединений шарда.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Метод run() - это метод, который обслуживает селектор шарда.
+     *
+     * <P>В основном цикле метода производится ожидание готовности
+     * каналов, время ожидания ограничено величиной {@link #selectTO}.
+     * Затем регистрируются новые соединения, обрабатываются готовые
+     * каналы, соединения из очереди соединений, для которых необходимо
+     * выполнить вывод, и соединения, у которых в буфере ввода остались
+     * необработанные данные.
+     *
+     * <P>Длительность обработки готовых каналов и длительность ожидания
+     * используются для вывода диагностических сообщений так же, как это
+     * делается в {@link AbstractIrcServerProcessor#run}.
+     */
+    @Override
+    public void run() {
+
+        logger.log(Level.FINEST, "Running: " + shard);
+
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Selector opening error: " + e);
+            return;
+        }
+
+        avgDurationOfTimeout.setValue(minimalDurationOfTimeout.get());
+        avgPlannedDurationOfTimeout.setValue(minimalDurationOfTimeout.get());
+
+        while (!down.get()) {
+
+            while (!running.get() && !down.get()) {
+                try {
+                    Thread.sleep(durationOfTimeout.get());
+                } catch (InterruptedException e) {}
+            }
+
+            if (down.get()) {
+                break;
+            }
+
+            long waitingTO = pendingInputSet.isEmpty() ? selectTO.get() :
+                    minimalDurationOfTimeout.get();
+
+            avgDurationOfTimeout.intervalStart(System.currentTimeMillis());
+            try {
+                if (newConnectionQueue.isEmpty()) {
+                    selector.select(waitingTO);
+                } else {
+                    selector.selectNow();
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Selector: " + e);
+            }
+            avgDurationOfTimeout.intervalEnd(System.currentTimeMillis());
+
+            avgDurationOfWorkingPartOfCycle.intervalStart(
+                    System.currentTimeMillis());
+
+            performMeasuredOperation();
+
+            avgDurationOfWorkingPartOfCycle.intervalEnd(
+                    System.currentTimeMillis());
+
+            avgPlannedDurationOfTimeout.setValue(waitingTO);
+
+            sendStatisticsToMonitoringChannel(
+                    avgDurationOfWorkingPartOfCycle.getAvgValue(),
+                    avgDurationOfTimeout.getAvgValue(),
+                    avgPlannedDurationOfTimeout.getAvgValue());
+        }
+
+        for (NioConnection closingConnection : closingSet) {
+            closingConnection.closeChannel();
+        }
+        closingSet.clear();
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Selector closing error: " + e);
+        }
+        logger.log(Level.FINEST, "Ended: " + shard);
+    }
+
+    /**
+     * Регистрация новых соединений, обработка готовых каналов, очереди
+     * соединений, для которых необходимо выполнить вывод, соединений
+     * с необработанными входными данными и закрываемых соединений.
+     */
+    @Override
+    public void performProcessorOperation() {
+
+        NioConnection connection = null;
+
+        while ((connection = newConnectionQueue.poll()) != null) {
+            try {
+                connection.register(selector, writeRequestQueue);
+            } catch (IOException e) {
+                connection.setBroken();
+                connectionCount.getAndDecrement();
+                logger.log(Level.INFO, "Connection:" + connection + " " + e);
+            }
+        }
+
+        Iterator<SelectionKey> keyIterator =
+                selector.selectedKeys().iterator();
+        while (keyIterator.hasNext()) {
+            SelectionKey key = keyIterator.next();
+            keyIterator.remove();
+            try {
+                if (!key.isValid()) {
+                    continue;
+                }
+                connection = (NioConnection) key.attachment();
+                if (key.isReadable()) {
+                    processInput(connection);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    processOutput(connection);
+                }
+            } catch (CancelledKeyException e) {}
+        }
+
+        while ((connection = writeRequestQueue.poll()) != null) {
+            connection.clearWriteRequest();
+            processOutput(connection);
+        }
+
+        if (!closingSet.isEmpty()) {
+            long currentTime = System.currentTimeMillis();
+            Iterator<NioConnection> closingIterator = closingSet.iterator();
+            while (closingIterator.hasNext()) {
+                NioConnection closingConnection = closingIterator.next();
+                if (closingConnection.isCloseExpired(currentTime)) {
+                    closingIterator.remove();
+                    closingConnection.closeChannel();
+                }
+            }
+        }
+
+        if (!pendingInputSet.isEmpty()) {
+            NioConnection[] pendingConnections = pendingInputSet.toArray(
+                    new NioConnection[pendingInputSet.size()]);
+            pendingInputSet.clear();
+            for (NioConnection pendingConnection : pendingConnections) {
+                deliverInput(pendingConnection);
+            }
+        }
+
+        connectionCount.set(selector.keys().size() +
+                newConnectionQueue.size());
+    }
+
+    /**
+     * Чтение данных из канала соединения и передача полученных строк
+     * во входную очередь соединения. Если буфер ввода соединения
+     * заполнен, то чтение из канала этого соединения приостанавливается
+     * до тех пор, пока данные из буфера не будут переданы во входную
+     * очередь.
+     * @param connection соединение.
+     */
+    private void processInput(NioConnection connection) {
+        if (connection.getConnectionState() != ConnectionState.OPERATIONAL) {
+            return;
+        }
+        try {
+            int readBytes = connection.readFromChannel();
+            if (readBytes > 0) {
+                totalReadBytes.getAndAdd(readBytes);
+            }
+        } catch (IOException e) {
+            connection.setBroken();
+            logger.log(Level.INFO, "Connection:" + connection + " " + e);
+            return;
+        }
+        deliverInput(connection);
+    }
+
+    /**
+     * Передача строк из буфера ввода соединения во входную очередь.
+     * Строки передаются при выполнении тех же условий, что и в
+     * {@link InputStreamProcessor}: во входной очереди есть свободное
+     * место и частота ввода сообщений не превышает ограничения
+     * {@link NioConnection#inputTokenBucket}. За один вызов передается
+     * не более {@link #inputBudget} строк. Если строки были переданы, то
+     * соединение сразу передается процессору исполнения команд
+     * ({@link InputQueueProcessor#dispatch}).
+     * @param connection соединение.
+     */
+    private void deliverInput(NioConnection connection) {
+        if (connection.getConnectionState() != ConnectionState.OPERATIONAL) {
+            return;
+        }
+
+        boolean waiting = false;
+        boolean delivered = false;
+        int budget = inputBudget.get();
+
+        while (true) {
+            long currentTime = System.currentTimeMillis();
+            if (budget-- <= 0 || connection.isInputQueueFull() ||
+                    connection.inputTokenBucket.getTokens(currentTime) == 0) {
+                waiting = connection.hasPendingInput();
+                break;
+            }
+            String inputString = connection.pollInputLine();
+            if (inputString == null) {
+                break;
+            }
+            connection.inputTokenBucket.tryConsume(currentTime);
+
+            connection.addReadCount(1);
+
+            IrcTalker ircTalker = connection.ircTalker.get();
+            ircTalker.setLastMessageTime(currentTime);
+            connection.avgInputPeriodMeter.setValue(currentTime);
+
+            boolean result = connection.offerToInputQueue(
+                    new IrcIncomingMessage(inputString, ircTalker));
+
+            if (!result) {
+                String remark = Reply.makeText(Reply.ERR_FILEERROR,
+                        ircTalker.getNickname(), "offer to input queue ",
+                        connection.toString());
+                OutputQueueProcessor.process(connection, remark);
+                connection.setBroken();
+                return;
+            }
+            delivered = true;
+        }
+
+        if (delivered) {
+            InputQueueProcessor.dispatch(connection);
+        }
+
+        if (waiting) {
+            pendingInputSet.add(connection);
+        } else if (connection.isEndOfInput()) {
+            connection.close();
+            return;
+        }
+
+        setInterest(connection, SelectionKey.OP_READ,
+                !connection.isInputBufferFull() && !connection.isEndOfInput());
+    }
+
+    /**
+     * Передача сообщений из выходной очереди соединения в буфер вывода
+     * и передача буфера вывода в канал. Если данные не были переданы
+     * полностью, то соединение ожидает готовности канала к записи. 
+     * Сообщения извлекаются под блокировкой вывода соединения 
+     * ({@link NioConnection#getOutputLock}). Канал закрытого 
+     * соединения закрывается, когда все данные переданы или произошла 
+     * ошибка вывода, до этого соединение находится в {@link #closingSet}.
+     * @param connection соединение.
+     */
+    private void processOutput(NioConnection connection) {
+        ConnectionState connectionState = connection.getConnectionState();
+        boolean closing = connection.isCloseRequested();
+        if (connectionState != ConnectionState.OPERATIONAL &&
+                connectionState != ConnectionState.CLOSE &&
+                connectionState != ConnectionState.BROKEN && !closing) {
+            return;
+        }
+        try {
+            int writtenBytes = 0;
+            synchronized (connection.getOutputLock()) {
+                IrcCommandReport ircCommandReport = null;
+                while ((ircCommandReport =
+                        connection.getOutputQueue().peek()) != null) {
+                    if (!connection.offerToWriteBuffer(
+                            ircCommandReport.getEncodedReport(
+                            connection.charset.get()))) {
+                        break;
+                    }
+                    connection.getOutputQueue().poll();
+                    connection.addWriteCount(1);
+                    writtenReportList.add(ircCommandReport);
+                }
+                writtenBytes = connection.writeToChannel();
+            }
+            totalWrittenBytes.getAndAdd(writtenBytes);
+            recordWrittenReports();
+            boolean pending = connection.hasPendingOutput() ||
+                    !connection.getOutputQueue().isEmpty();
+            if (closing && !pending) {
+                closingSet.remove(connection);
+                connection.closeChannel();
+                return;
+            } else if (closing) {
+                closingSet.add(connection);
+                setInterest(connection, SelectionKey.OP_READ, false);
+            }
+            setInterest(connection, SelectionKey.OP_WRITE, pending);
+        } catch (IOException e) {
+            connection.setBroken();
+            logger.log(Level.INFO, "Connection:" + connection + " " + e);
+            if (closing) {
+                closingSet.remove(connection);
+                connection.closeChannel();
+            }
+        }
+    }
+
+    /**
+     * Учет длительности ожидания сообщений, помещенных в буфер вывода, 
+     * в {@link Globals#latencyTracer}. Временем передачи сообщений в 
+     * сокет считается время первой попытки записи буфера в канал.
+     */
+    private void recordWrittenReports() {
+        if (writtenReportList.isEmpty()) {
+            return;
+        }
+        long writtenNanoTime = System.nanoTime();
+        IrcLatencyTracer latencyTracer = Globals.latencyTracer.get();
+        for (IrcCommandReport ircCommandReport : writtenReportList) {
+            latencyTracer.reportWritten(ircCommandReport, writtenNanoTime);
+        }
+        writtenReportList.clear();
+    }
+
+    /**
+     * Изменение множества ожидаемых операций для канала соединения.
+     * @param connection соединение.
+     * @param operation операция.
+     * @param on true - операция добавляется, false - операция удаляется.
+     */
+    private void setInterest(NioConnection connection, int operation,
+            boolean on) {
+        SelectionKey key = connection.getSelectionKey();
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            int interestOps = key.interestOps();
+            int newInterestOps = on ? interestOps | operation :
+                interestOps & ~operation;
+            if (newInterestOps != interestOps) {
+                key.interestOps(newInterestOps);
+            }
+        } catch (CancelledKeyException e) {}
+    }
+
+    /** Прерывание ожидания селектора. */
+    public void wakeup() {
+        Selector currentSelector = selector;
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+
+    /** Завершение основного цикла.
+     * @return true - действия успешно выполнены.
+     */
+    @Override
+    public boolean processorStop() {
+        down.set(true);
+        wakeup();
+        return super.processorStop();
+    }
+
+    @Override
+    protected String getProcessorName() {
+        return super.getProcessorName() + "-" + shard;
+    }
+
+    @Override
+    protected void registerMetrics(IrcMetrics metrics) {
+        super.registerMetrics(metrics);
+        String shardLabel = String.valueOf(shard);
+        metrics.counter("irc_bytes_read_total",
+                "Number of bytes read by the IO loop.",
+                totalReadBytes::get, "shard", shardLabel);
+        metrics.counter("irc_bytes_written_total",
+                "Number of bytes written by the IO loop.",
+                totalWrittenBytes::get, "shard", shardLabel);
+        metrics.gauge("irc_io_loop_connections",
+                "Number of connections served by the IO loop.",
+                connectionCount::get, "shard", shardLabel);
+    }
+
+    @Override
+    protected void unregisterMetrics(IrcMetrics metrics) {
+        super.unregisterMetrics(metrics);
+        String shardLabel = String.valueOf(shard);
+        metrics.remove("irc_bytes_read_total", "shard", shardLabel);
+        metrics.remove("irc_bytes_written_total", "shard", shardLabel);
+        metrics.remove("irc_io_loop_connections", "shard", shardLabel);
+    }
+
+    /** Сброс индикации высокой загруженности. */
+    @Override
+    public void removeProcessorFromHighLoadSet() {
+        Globals.ircServerProcessorSet.get().remove(this);
+    }
+
+    @Override
+    public String getMonitoringstring() {
+        return " shard:" + shard +
+                " connections:" + connectionCount.get() +
+                " bytesRead:" + totalReadBytes.get() +
+                " bytesWritten:" + totalWrittenBytes.get();
+    }
+}
@@ -22,20 +22,38 @@ package simpleircserver.processor;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 
 import simpleircserver.base.Globals;
+import simpleircserver.config.IrcIoEngine;
 import simpleircserver.connection.Connection;
 import simpleircserver.connection.ConnectionState;
+import simpleircserver.connection.IrcBufferedWriter;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.tools.IrcLatencyTracer;
 
 /**
- * Программный процессор, просматривающий выходные очереди сетевого 
- * соединения. В основном цикле просматриваются выходные очереди и из них 
- * извлекаются результаты исполнения интерпретатора команд IRC. Эти 
- * результаты передаются клиенту с помощью буферированных потоков вывода. 
+ * Программный процессор, обслуживающий выходные очереди сетевых 
+ * соединений. В основном цикле из очереди 
+ * {@link Globals#outputReadyQueue} извлекаются соединения, в выходных 
+ * очередях которых есть результаты исполнения интерпретатора команд 
+ * IRC. Все сообщения из выходной очереди соединения передаются клиенту 
+ * одной операцией записи в буферированный поток вывода, после чего 
+ * выполняется одна операция flush(). Соединения, в выходных очередях 
+ * которых нет сообщений, не просматриваются. 
  *
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-23 Only connections from the ready queue are served, output is coalesced.
+ * @version 0.5.4 2015-11-26 Pre-encoded messages are written to the output stream.
+ * @version 0.5.4 2015-11-27 Batch is bounded by the number of queued messages instead of the queue capacity.
+ * @version 0.5.4 2015-11-27 I/O counters are updated in place.
+ * @version 0.5.4 2015-11-27 Output queue latency of messages is recorded.
+ * @version 0.5.4 2015-11-27 Output queue is written under the connection output lock, the final flush does not race with the processor.
  * @author  Nikolay Kirdin
  */
 public class OutputQueueProcessor extends AbstractIrcServerProcessor {
@@ -44,45 +62,68 @@ public class OutputQueueProcessor extends AbstractIrcServerProcessor {
     public OutputQueueProcessor() {} 
     
     /**
-     * Выполнение основной функции процессора.
-     * @return connectionListSize - количество обработанных элементов очереди
+     * Выполнение основной функции процессора. За один цикл 
+     * обслуживаются соединения, находившиеся в очереди 
+     * {@link Globals#outputReadyQueue} к началу цикла. Соединения, 
+     * которые еще не перешли в состояние 
+     * {@link ConnectionState#OPERATIONAL}, а также соединения, выходные 
+     * очереди которых не были полностью переданы, будут обслужены в 
+     * следующем цикле.
      */
     @Override
     public void performProcessorOperation() {
 
-        Iterator<Connection> connectionListIterator = Globals.db.get().getConnectionListIterator();
+        Queue<Connection> readyQueue = Globals.outputReadyQueue.get();
+        List<Connection> postponedList = new ArrayList<Connection>();
+        int readyQueueSize = readyQueue.size();
         
-        while (connectionListIterator.hasNext()) {
-
-            Connection connection = connectionListIterator.next();
-            
-            if (connection.getConnectionState() != ConnectionState.OPERATIONAL) {
-                continue;
+        for (int i = 0; i < readyQueueSize; i++) {
+            Connection connection = readyQueue.poll();
+            if (connection == null) {
+                break;
             }
+            connection.clearOutputRequest();
             
-            try {
-                int counter = 0;
-                BufferedWriter bw = connection.bw.get();                            
-                if (bw == null) { 
-                    throw new IOException("Output stream broken."); 
-                }
-                while (!connection.getOutputQueue().isEmpty() 
-                        && counter++ < connection.getMaxOutputQueueSize()) {  
-                    String outputString = connection.getOutputQueue().poll().getReport();
-                    synchronized (bw) {
-                        bw.write(outputString + "\r\n");
+            switch (connection.getConnectionState()) {
+            case NEW:
+            case INITIALIZING:
+            case INITIALIZED:
+                postponedList.add(connection);
+                break;
+            case OPERATIONAL:
+                try {
+                    writeOutputQueue(connection);
+                    if (!connection.getOutputQueue().isEmpty()) {
+                        postponedList.add(connection);
                     }
-                    connection.writeCountDelta.getAndIncrement();
-                }
-                synchronized (bw) {
-                    bw.flush();
+                } catch (IOException e) {
+                    connection.setBroken();
                 }
-            } catch (IOException e) {
-               connection.setBroken();
-               break;
+                break;
+            default:
+                break;
             }
         }
         
+        for (Connection connection : postponedList) {
+            connection.requestOutput();
+        }
+    }
+
+    /** 
+     * Инициализация процесса. Процесс запускается только в том случае, 
+     * если в конфигурации интерфейса задан способ обслуживания 
+     * соединений {@link IrcIoEngine#BLOCKING}.
+     * @return true инициализация успешно завершена, 
+     * false инициализация завершена с ошибками. 
+     */
+    @Override
+    public boolean processorStart() {
+        if (Globals.db.get().getIrcInterfaceConfig().getIoEngine() 
+                != IrcIoEngine.BLOCKING) {
+            return true;
+        }
+        return super.processorStart();
     }
 
     /** Сброс индикации высокой загруженности. */
@@ -98,29 +139,133 @@ public class OutputQueueProcessor extends AbstractIrcServerProcessor {
 
     
     /**
-     * Метод используется для записи в буферированный выходной поток
-     * {@link Connection#bw} сообщения, предназначенного для клиента. В
-     * случае возникновения ошибки вывода, состояние объекта будет
-     * переведено в состояние {@link ConnectionState#BROKEN}.
+     * Метод используется для передачи клиенту сообщения, которое не 
+     * является результатом исполнения команды IRC (например, сообщения 
+     * об ошибке перед закрытием соединения). Сообщение помещается в 
+     * выходную очередь соединения и будет передано процессором вывода.
+     * Если у соединения нет потока вывода или поместить сообщение в 
+     * очередь не удалось, соединение будет переведено в состояние 
+     * {@link ConnectionState#BROKEN}.
      * @param connection соединение.
      * @param outputString сообщение.
     */
     public static void process(Connection connection,
         String outputString) {
-        BufferedWriter bw = null;
+        if (connection.bw.get() == null) {
+            connection.setBroken();
+            return;
+        }
+        IrcCommandReport ircCommandReport = new IrcCommandReport(
+                outputString, connection.ircTalker.get(), 
+                Globals.thisIrcServer.get());
+        if (!connection.offerToOutputQueue(ircCommandReport)) {
+            connection.setBroken();
+        }
+    }
+    
+    /**
+     * Передача клиенту сообщений, оставшихся в выходной очереди 
+     * соединения. Метод используется перед закрытием соединения. В 
+     * случае возникновения ошибки вывода, соединение будет переведено в 
+     * состояние {@link ConnectionState#BROKEN}.
+     * @param connection соединение.
+     */
+    public static void flush(Connection connection) {
         try {
-            bw = connection.bw.get();
-            if (bw == null) {
-                throw new IOException("Output stream broken");
+            writeOutputQueue(connection);
+        } catch (IOException e) {
+            connection.setBroken();
+        }
+    }
+    
+    /**
+     * Передача сообщений из выходной очереди соединения клиенту под 
+     * блокировкой вывода соединения ({@link Connection#getOutputLock}). 
+     * Блокировка исключает одновременное извлечение сообщений из 
+     * очереди процессором вывода и методом {@link #flush}, т.е. 
+     * сообщения передаются клиенту в порядке их помещения в очередь.
+     * @param connection соединение.
+     * @return количество переданных сообщений.
+     * @throws IOException ошибка вывода.
+     */
+    private static int writeOutputQueue(Connection connection) 
+            throws IOException {
+        synchronized (connection.getOutputLock()) {
+            return writeLockedOutputQueue(connection);
+        }
+    }
+    
+    /**
+     * Передача сообщений из выходной очереди соединения клиенту. Метод 
+     * вызывается под блокировкой вывода соединения. Если 
+     * поток вывода соединения {@link Connection#bw} является объектом 
+     * класса {@link IrcBufferedWriter}, то закодированные представления 
+     * сообщений ({@link IrcCommandReport#getEncodedReport}) объединяются 
+     * в один массив и передаются в поток одной операцией. В противном 
+     * случае сообщения объединяются и записываются одной операцией в 
+     * буферированный поток вывода, после чего выполняется одна операция 
+     * flush(). За одну операцию передаются только сообщения, 
+     * находившиеся в очереди в начале операции. Длительность ожидания 
+     * переданных сообщений учитывается в {@link Globals#latencyTracer}.
+     * @param connection соединение.
+     * @return количество переданных сообщений.
+     * @throws IOException ошибка вывода.
+     */
+    private static int writeLockedOutputQueue(Connection connection) 
+            throws IOException {
+        int counter = 0;
+        if (connection.getOutputQueue().isEmpty()) {
+            return counter;
+        }
+        BufferedWriter bw = connection.bw.get();
+        if (bw == null) { 
+            throw new IOException("Output stream broken."); 
+        }
+        IrcCommandReport ircCommandReport = null;
+        int available = connection.getOutputQueueSize();
+        List<IrcCommandReport> writtenReportList = 
+                new ArrayList<IrcCommandReport>();
+        if (bw instanceof IrcBufferedWriter) {
+            Charset charset = ((IrcBufferedWriter) bw).getCharset();
+            List<ByteBuffer> encodedList = new ArrayList<ByteBuffer>();
+            int length = 0;
+            while (counter < available && 
+                    (ircCommandReport = 
+                    connection.getOutputQueue().poll()) != null) {
+                ByteBuffer encoded = 
+                        ircCommandReport.getEncodedReport(charset);
+                encodedList.add(encoded);
+                writtenReportList.add(ircCommandReport);
+                length += encoded.remaining();
+                counter++;
+            }
+            ByteBuffer outputBuffer = ByteBuffer.allocate(length);
+            for (ByteBuffer encoded : encodedList) {
+                outputBuffer.put(encoded);
+            }
+            ((IrcBufferedWriter) bw).writeBytes(outputBuffer.array());
+        } else {
+            StringBuilder outputString = new StringBuilder();
+            while (counter < available && 
+                    (ircCommandReport = 
+                    connection.getOutputQueue().poll()) != null) {
+                outputString.append(ircCommandReport.getReport());
+                outputString.append("\r\n");
+                writtenReportList.add(ircCommandReport);
+                counter++;
             }
             synchronized (bw) {
-                connection.bw.get().write(outputString + "\r\n");
-                connection.bw.get().flush();
+                bw.write(outputString.toString());
+                bw.flush();
             }
-            connection.writeCountDelta.getAndIncrement();
-        } catch (IOException e) {
-            connection.setBroken();
         }
+        connection.addWriteCount(counter);
+        long writtenNanoTime = System.nanoTime();
+        IrcLatencyTracer latencyTracer = Globals.latencyTracer.get();
+        for (IrcCommandReport writtenReport : writtenReportList) {
+            latencyTracer.reportWritten(writtenReport, writtenNanoTime);
+        }
+        return counter;
     }
     
     /**
@@ -21,19 +21,22 @@ package simpleircserver.talker;
  *
  */
 
+import java.util.Locale;
 import java.util.logging.*;
 
+import simpleircserver.base.Constants;
 import simpleircserver.base.Globals;
 import simpleircserver.base.Recipient;
 import simpleircserver.connection.Connection;
+import simpleircserver.connection.IrcSendQueue;
 import simpleircserver.parser.IrcCommandReport;
 import simpleircserver.parser.IrcIncomingMessage;
 import simpleircserver.tools.IrcAvgMeter;
+import simpleircserver.tools.IrcMemoryBudget;
+import simpleircserver.tools.IrcTokenBucket;
 
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.net.*;
 
 /**
@@ -45,6 +48,13 @@ import java.net.*;
  *
  * @version 0.5 2012-02-12
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Case-folded nickname is kept for use as a registry key.
+ * @version 0.5.4 2015-11-27 Memory budget check for the creators of subclasses.
+ * @version 0.5.4 2015-11-27 Output queue is bounded in bytes.
+ * @version 0.5.4 2015-11-27 Time of the last message is available to the connection timers.
+ * @version 0.5.4 2015-11-27 Share of the client in the command budgets under high load.
+ * @version 0.5.4 2015-11-27 Closing client is placed into the cleanup queue.
+ * @version 0.5.4 2015-11-27 State is changed by CAS according to the table of transitions instead of the lock.
  * @author  Nikolay Kirdin
  */
     
@@ -53,22 +63,21 @@ public abstract class IrcTalker implements Recipient {
     /** Счетчик генератора уникальных идентификаторов. */
     private static AtomicLong seq = new AtomicLong(0);
     
-    /** Состояние соединения. */
-    private IrcTalkerState state;
+    /** 
+     * Состояние клиента. Чтение состояния выполняется без блокировок, 
+     * изменение - с помощью {@link #stateUpdater}. 
+     */
+    private volatile IrcTalkerState state = IrcTalkerState.NEW;
+    
+    /** Атомарное изменение {@link #state}. */
+    private static final AtomicReferenceFieldUpdater<IrcTalker, 
+            IrcTalkerState> stateUpdater = 
+            AtomicReferenceFieldUpdater.newUpdater(IrcTalker.class, 
+            IrcTalkerState.class, "state");
     
     /** Время перехода в текущее состояние {@link #state}. */
     public AtomicLong stateTime = new AtomicLong();    
     
-    /** ReadWrite Lock для IrcTalkerState. */
-    private final ReentrantReadWriteLock stateRWLock = 
-            new ReentrantReadWriteLock();
-    
-    /** ReadLock для state. */
-    private final Lock stateRLock = stateRWLock.readLock();
-    
-    /** WriteLock для state. */
-    private final Lock stateWLock = stateRWLock.writeLock();
-    
     /** Уникальный идентификатор. */
     private final long id;  
     
@@ -81,6 +90,12 @@ public abstract class IrcTalker implements Recipient {
     /** Никнэйм. */
     private String nickname = "";
     
+    /** 
+     * Никнэйм, символы которого приведены к нижнему регистру. 
+     * Используется в качестве ключа в репозитарии.
+     */
+    private String nicknameKey = "";
+    
     /** Сетевой идентификатор. */
     private InetAddress networkId;
     
@@ -105,6 +120,9 @@ public abstract class IrcTalker implements Recipient {
     /** Время чтения последнего сообщения.*/
     private long lastMessageTime;
     
+    /** Доля клиента в бюджетах команд при высокой загруженности. */
+    private IrcTokenBucket loadShareTokenBucket;
+    
     /** 
      * Максимально допустимая сокорость вывода сообщений (сообщение/секунда). 
      */
@@ -141,6 +159,24 @@ public abstract class IrcTalker implements Recipient {
         avgOutputRate.setValue(stateTime.get());
     } 
     
+    /**
+     * Проверка возможности создания клиента с помощью бюджета памяти
+     * {@link Globals#memoryBudget}. Сборщик мусора не вызывается.
+     * @return true, если клиент может быть создан.
+     */
+    protected static boolean isMemoryAvailable() {
+        IrcMemoryBudget memoryBudget = Globals.memoryBudget.get();
+        boolean result = memoryBudget.isAdmissible(
+                IrcMemoryBudget.Category.TALKER, 
+                Constants.TALKER_MEMORY_SIZE);
+        if (!result) {
+            Globals.logger.get().log(Level.SEVERE, 
+                    "Insufficient memory budget:" + 
+                    memoryBudget.getMonitoringString());
+        }
+        return result;
+    }
+    
     /**
      * Получение 36-ричного представления уникального идентификатора.
      * @return 36-ричное представление уникального идентификатора.
@@ -171,6 +207,16 @@ public abstract class IrcTalker implements Recipient {
      */
     public synchronized void setNickname(String name) {
         nickname = name;
+        nicknameKey = name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Получение никнэйма, символы которого приведены к нижнему 
+     * регистру.
+     * @return никнэйм в нижнем регистре. 
+     */
+    public synchronized String getNicknameKey() {
+        return nicknameKey;
     }
 
     /**
@@ -302,6 +348,27 @@ public abstract class IrcTalker implements Recipient {
     public synchronized void setLastMessageTime(long time) {
         lastMessageTime = time;
     }
+    
+    /**
+     * Получение доли клиента в бюджетах команд при высокой загруженности 
+     * сервера. Доля создается при первом обращении.
+     * @return ведро жетонов доли клиента.
+     */
+    public synchronized IrcTokenBucket getLoadShareTokenBucket() {
+        if (loadShareTokenBucket == null) {
+            loadShareTokenBucket = 
+                    Globals.loadShedder.get().createShareTokenBucket();
+        }
+        return loadShareTokenBucket;
+    }
+    
+    /**
+     * Получение времени получения последнего сообщения клиента.
+     * @return время (ms) получения последнего сообщения клиента.
+     */
+    public synchronized long getLastMessageTime() {
+        return lastMessageTime;
+    }
      
     /**
      * Действия выполняемые при разрыве связи с клиентом.
@@ -434,9 +501,9 @@ public abstract class IrcTalker implements Recipient {
     
     /**
      * Метод используется для помещения сообщения в  выходную очередь 
-     * клиента IRC. Сообщение будет помещено в очередь в том случае, 
-     * если размер выходной очереди меньше максимальной длины очереди 
-     * {@link Connection#maxOutputQueueSize}. 
+     * клиента IRC. Если сообщение не помещается в очередь, то 
+     * выполняются действия, заданные для выходной очереди соединения 
+     * ({@link Connection#offerToOutputQueue}). 
      * @param ircCommandReport сообщение.
      * @return true признак успеха выполнения метода,
      * false поместить сообщение в очередь не удалось. 
@@ -455,10 +522,9 @@ public abstract class IrcTalker implements Recipient {
     /**
      * Метод используется для получения доступа к выходной очереди 
      * клиента IRC.
-     * @return BlockingQueue<IrcCommandReport> выходная очередь 
-     * клиента IRC.
+     * @return выходная очередь клиента IRC.
      */
-    public BlockingQueue<IrcCommandReport> getOutputQueue() {
+    public IrcSendQueue getOutputQueue() {
         return getConnection().getOutputQueue();
     }
 
@@ -521,67 +587,76 @@ public abstract class IrcTalker implements Recipient {
     */
     
     /** 
-     * Установка state.
+     * Установка state без проверки допустимости перехода. Если клиент 
+     * переходит в состояние {@link IrcTalkerState#CLOSE} или 
+     * {@link IrcTalkerState#BROKEN}, то он помещается в очередь 
+     * {@link Globals#ircTalkerCleanupQueue}.
      * @param state
      */
     public void setState(IrcTalkerState state) {
-        stateWLock.lock();
-        try {
-            this.state = state;
-        } finally {
-            stateWLock.unlock();
+        IrcTalkerState oldState = stateUpdater.getAndSet(this, state);
+        if (oldState != state) {
+            stateChanged(state);
         }
     }
+    
+    /**
+     * Действия, выполняемые после изменения состояния. Если клиент 
+     * перешел в состояние {@link IrcTalkerState#CLOSE} или 
+     * {@link IrcTalkerState#BROKEN}, то он помещается в очередь 
+     * {@link Globals#ircTalkerCleanupQueue}.
+     * @param state новое состояние.
+     */
+    private void stateChanged(IrcTalkerState state) {
+        if (state == IrcTalkerState.CLOSE || 
+                state == IrcTalkerState.BROKEN) {
+            Globals.ircTalkerCleanupQueue.get().offer(this);
+        }
+    }
+    
+    /**
+     * Переход в заданное состояние, если этот переход разрешен из 
+     * текущего состояния (см. 
+     * {@link IrcTalkerState#isTransitionAllowed(IrcTalkerState)}).
+     * @param state новое состояние.
+     * @return true - состояние изменено этим вызовом.
+     */
+    public boolean transitState(IrcTalkerState state) {
+        IrcTalkerState currentState = null;
+        do {
+            currentState = this.state;
+            if (!currentState.isTransitionAllowed(state)) {
+                return false;
+            }
+        } while (!stateUpdater.compareAndSet(this, currentState, state));
+        stateChanged(state);
+        return true;
+    }
 
     /** Получение state. 
      * @return state
      */
     public IrcTalkerState getState() {
-        IrcTalkerState result = null;
-        stateRLock.lock();
-        try {
-            result = state;
-        } finally {
-            stateRLock.unlock();
-        }
-        return result;
+        return state;
     }
     
     /** Перевод клиента в состояние {@link IrcTalkerState#CLOSE}. */
     public void close() {
-        stateWLock.lock();
-        try {
-            if (getState() != IrcTalkerState.CLOSE &&
-                getState() != IrcTalkerState.CLOSING &&
-                getState() != IrcTalkerState.CLOSED &&
-                getState() != IrcTalkerState.BROKEN) {
-                setState(IrcTalkerState.CLOSE);
-                stateTime.set(System.currentTimeMillis());
-                Globals.logger.get().log(Level.FINER, "ircTalker:" + 
-                        IrcTalker.this + " connection:" + getConnection() 
-                        + " ircTalker set CLOSE");
-            }
-        } finally {
-            stateWLock.unlock();
+        if (transitState(IrcTalkerState.CLOSE)) {
+            stateTime.set(System.currentTimeMillis());
+            Globals.logger.get().log(Level.FINER, "ircTalker:" + 
+                    IrcTalker.this + " connection:" + getConnection() 
+                    + " ircTalker set CLOSE");
         }
     }
 
     /** Перевод клиента в состояние {@link IrcTalkerState#BROKEN}. */
     public void setBroken() {
-        stateWLock.lock();
-        try {
-            if (getState() != IrcTalkerState.CLOSE &&
-                getState() != IrcTalkerState.CLOSING &&
-                getState() != IrcTalkerState.CLOSED &&
-                getState() != IrcTalkerState.BROKEN) {
-                setState(IrcTalkerState.BROKEN);
-                stateTime.set(System.currentTimeMillis());
-                Globals.logger.get().log(Level.FINER, "ircTalker:" + 
-                        IrcTalker.this + " connection:" + getConnection() 
-                        + " ircTalker set BROKEN");
-            }
-        } finally {
-            stateWLock.unlock();
+        if (transitState(IrcTalkerState.BROKEN)) {
+            stateTime.set(System.currentTimeMillis());
+            Globals.logger.get().log(Level.FINER, "ircTalker:" + 
+                    IrcTalker.this + " connection:" + getConnection() 
+                    + " ircTalker set BROKEN");
         }
     }
 }
@@ -21,6 +21,8 @@ package simpleircserver.talker;
  *
  */
 
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Enum, с помощью которого моделируется жизненный цикл клиента IRC.
@@ -39,8 +41,13 @@ package simpleircserver.talker;
  * этапа и состояние ошибки, когда объект не может перейти (или быть 
  * переведенным) в целевое состояние.
  * 
+ * <P>Для каждого состояния задано множество состояний, в которые 
+ * разрешен переход из этого состояния (см. 
+ * {@link #isTransitionAllowed(IrcTalkerState)}).
+ * 
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Table of the allowed transitions.
  * @author  Nikolay Kirdin 
  */
 public enum IrcTalkerState {
@@ -73,5 +80,33 @@ public enum IrcTalkerState {
     CLOSED, 
     
     /** Состояние ошибки. */
-    BROKEN
+    BROKEN;
+    
+    /** Состояния, в которые разрешен переход из этого состояния. */
+    private Set<IrcTalkerState> nextStates;
+    
+    static {
+        NEW.nextStates = EnumSet.of(INITIALIZING, REGISTERING, OPERATIONAL,
+                CLOSE, BROKEN);
+        INITIALIZING.nextStates = EnumSet.of(INITIALIZED, CLOSE, BROKEN);
+        INITIALIZED.nextStates = EnumSet.of(REGISTERING, CLOSE, BROKEN);
+        REGISTERING.nextStates = EnumSet.of(REGISTERED, OPERATIONAL, CLOSE,
+                BROKEN);
+        REGISTERED.nextStates = EnumSet.of(OPERATIONAL, CLOSE, BROKEN);
+        OPERATIONAL.nextStates = EnumSet.of(REGISTERING, CLOSE, CLOSING, 
+                BROKEN);
+        CLOSE.nextStates = EnumSet.of(CLOSING, CLOSED);
+        CLOSING.nextStates = EnumSet.of(CLOSED);
+        CLOSED.nextStates = EnumSet.noneOf(IrcTalkerState.class);
+        BROKEN.nextStates = EnumSet.of(CLOSING, CLOSED);
+    }
+    
+    /**
+     * Проверка возможности перехода из этого состояния в заданное.
+     * @param nextState новое состояние.
+     * @return true - переход разрешен.
+     */
+    public boolean isTransitionAllowed(IrcTalkerState nextState) {
+        return nextStates.contains(nextState);
+    }
 }
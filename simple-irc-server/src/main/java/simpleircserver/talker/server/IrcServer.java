@@ -33,6 +33,7 @@ import simpleircserver.talker.IrcTalker;
  *
  * @version 0.5 2012-02-11
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Creation is limited by the memory budget instead of free memory and GC.
  * @author  Nikolay Kirdin
  */
 public class IrcServer extends IrcTalker {
@@ -56,25 +57,15 @@ public class IrcServer extends IrcTalker {
     } 
     
     /**
-     * Создатель объекта без параметров. Проверяется объем свободной 
-     * памяти, если этот объем меньше {@link Constants#MIN_FREE_MEMORY}, 
-     * то будет вызван сборщик мусора. Если после прцедуры сборки мусора, 
-     * памяти будет недостаточно, то объект создаваться не будет.
+     * Создатель объекта без параметров. Объект будет создан, если это 
+     * допускает бюджет памяти {@link Globals#memoryBudget}.
      * @return новый объект класса IrcServer или null, если достигнуто
-     * ограничение по доступной памяти.
+     * ограничение бюджета памяти.
      */
     public static IrcServer create() {
         IrcServer result = null;
-        long freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory < Constants.MIN_FREE_MEMORY) {
-            System.gc();
-        }
-        freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory >= Constants.MIN_FREE_MEMORY) {
+        if (isMemoryAvailable()) {
             result = new IrcServer();
-        } else {
-            Globals.logger.get().log(Level.SEVERE, 
-                    "Insufficient free memory (b): " + freeMemory);
         }
         return result;
     }
@@ -34,6 +34,7 @@ import simpleircserver.talker.user.User;
  *
  * @version 0.5 2012-02-13
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Creation is limited by the memory budget instead of free memory and GC.
  * @author  Nikolay Kirdin
  */
 public class Service extends IrcTalker {
@@ -61,25 +62,15 @@ public class Service extends IrcTalker {
     private Service() {}
     
     /**
-     * Создатель объекта без параметров. Проверяется объем свободной 
-     * памяти, если этот объем меньше {@link Constants#MIN_FREE_MEMORY}, 
-     * то будет вызван сборщик мусора. Если после прцедуры сборки мусора, 
-     * памяти будет недостаточно, то объект создаваться не будет.
+     * Создатель объекта без параметров. Объект будет создан, если это 
+     * допускает бюджет памяти {@link Globals#memoryBudget}.
      * @return новый объект класса Service, или null, если достигнуто 
-     * ограничение по доступной памяти.
+     * ограничение бюджета памяти.
      */
     public static Service create() {
         Service result = null;
-        long freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory < Constants.MIN_FREE_MEMORY) {
-            System.gc();
-        }
-        freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory >= Constants.MIN_FREE_MEMORY) {
+        if (isMemoryAvailable()) {
             result = new Service();
-        } else {
-            Globals.logger.get().log(Level.SEVERE, 
-                    "Insufficient free memory (b): " + freeMemory);
         }
         return result;
     }
@@ -38,6 +38,7 @@ import simpleircserver.talker.server.IrcServer;
  *
  * @version 0.5 2012-02-20
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Creation is limited by the memory budget instead of free memory and GC.
  * @author  Nikolay Kirdin
  */
 public class User extends IrcTalker implements Comparable {
@@ -76,25 +77,15 @@ public class User extends IrcTalker implements Comparable {
     private User() {}
     
     /**
-     * Создатель объекта без параметров. Проверяется объем свободной 
-     * памяти, если этот объем меньше {@link Constants#MIN_FREE_MEMORY}, 
-     * то будет вызван сборщик мусора. Если после прцедуры сборки мусора, 
-     * памяти будет недостаточно, то объект создаваться не будет.
+     * Создатель объекта без параметров. Объект будет создан, если это 
+     * допускает бюджет памяти {@link Globals#memoryBudget}.
      * @return новый объект класса {@link User} или null, если 
-     * достигнуто ограничение по объему доступной памяти.
+     * достигнуто ограничение бюджета памяти.
      */
     public static User create() {
         User result = null;
-        long freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory < Constants.MIN_FREE_MEMORY) {
-            System.gc();
-        }
-        freeMemory = Runtime.getRuntime().freeMemory();
-        if (freeMemory >= Constants.MIN_FREE_MEMORY) {
+        if (isMemoryAvailable()) {
             result = new User();
-        } else {
-            Globals.logger.get().log(Level.SEVERE, 
-                    "Insufficient free memory (B): " + freeMemory);
         }
         return result;
     }
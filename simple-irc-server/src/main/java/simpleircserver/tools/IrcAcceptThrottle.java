@@ -0,0 +1,236 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcAcceptThrottle
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс, ограничивающий частоту приема новых соединений.
+ *
+ * <P>Частота ограничивается отдельно для каждого IP-адреса клиента и
+ * для каждой сети, которой принадлежит этот адрес (для IPv4 - сеть /24,
+ * для IPv6 - сеть /64), с помощью объектов класса
+ * {@link IrcTokenBucket}. Соединение разрешается, если в ведрах адреса и
+ * сети есть жетоны, при этом из обоих ведер извлекается по одному
+ * жетону.
+ *
+ * <P>Ведра хранятся в таблицах ограниченного размера, ключом таблицы
+ * сетей является префикс сети, упакованный в число типа long. При
+ * переполнении таблицы из нее удаляется ведро, которое дольше всего
+ * не использовалось. Например:
+ * <PRE>
+ * IrcAcceptThrottle throttle = new IrcAcceptThrottle(10, 2000, 50, 200,
+ *         4000);
+ * ...
+ * if (throttle.tryAccept(socket.getInetAddress(),
+ *         System.currentTimeMillis()) == IrcAcceptThrottle.Result.ACCEPTED) {
+ *      действия
+ * }
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcAcceptThrottle {
+
+    /** Результат проверки соединения. */
+    public enum Result {
+
+        /** Соединение разрешено. */
+        ACCEPTED,
+
+        /** Превышена частота соединений с IP-адреса. */
+        ADDRESS_THROTTLED,
+
+        /** Превышена частота соединений из сети. */
+        NETWORK_THROTTLED
+    }
+
+    /** Признак ключа сети IPv4 (в пространстве ключей сетей IPv6 /64). */
+    private static final long IPV4_NETWORK_TAG = 0x0000FFFF00000000L;
+
+    /** Количество жетонов в ведре IP-адреса. */
+    private final int addressBurst;
+
+    /** Период (ms) добавления жетона в ведро IP-адреса. */
+    private final long addressPeriod;
+
+    /** Количество жетонов в ведре сети. */
+    private final int networkBurst;
+
+    /** Период (ms) добавления жетона в ведро сети. */
+    private final long networkPeriod;
+
+    /** Ведра IP-адресов. */
+    private final Map<InetAddress, IrcTokenBucket> addressMap;
+
+    /** Ведра сетей. */
+    private final Map<Long, IrcTokenBucket> networkMap;
+
+    /** Количество разрешенных соединений. */
+    private final AtomicLong acceptedCount = new AtomicLong();
+
+    /** Количество соединений, отвергнутых по IP-адресу. */
+    private final AtomicLong addressThrottledCount = new AtomicLong();
+
+    /** Количество соединений, отвергнутых по сети. */
+    private final AtomicLong networkThrottledCount = new AtomicLong();
+
+    /**
+     * Конструктор. Параметры конструктора должны быть положительными
+     * числами, в противном случае будет сгенерировано исключение
+     * {@link IllegalArgumentException}.
+     * @param addressBurst количество жетонов в ведре IP-адреса.
+     * @param addressPeriod период (ms) добавления жетона в ведро
+     * IP-адреса.
+     * @param networkBurst количество жетонов в ведре сети.
+     * @param networkPeriod период (ms) добавления жетона в ведро сети.
+     * @param tableSize максимальное количество ведер в каждой таблице.
+     * @throws IllegalArgumentException в том случае, если какой-либо из
+     * параметров меньше 1.
+     */
+    public IrcAcceptThrottle(int addressBurst, long addressPeriod,
+            int networkBurst, long networkPeriod, final int tableSize)
+            throws IllegalArgumentException {
+        if (addressBurst < 1 || addressPeriod < 1 || networkBurst < 1 ||
+                networkPeriod < 1 || tableSize < 1) {
+            throw new IllegalArgumentException(
+                    "IrcAcceptThrottle. Parameter out of range: " +
+                    addressBurst + " " + addressPeriod + " " +
+                    networkBurst + " " + networkPeriod + " " + tableSize);
+        }
+        this.addressBurst = addressBurst;
+        this.addressPeriod = addressPeriod;
+        this.networkBurst = networkBurst;
+        this.networkPeriod = networkPeriod;
+        this.addressMap = new LinkedHashMap<InetAddress, IrcTokenBucket>(
+                16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<InetAddress, IrcTokenBucket> eldest) {
+                return size() > tableSize;
+            }
+        };
+        this.networkMap = new LinkedHashMap<Long, IrcTokenBucket>(
+                16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, IrcTokenBucket> eldest) {
+                return size() > tableSize;
+            }
+        };
+    }
+
+    /**
+     * Получение ключа сети, которой принадлежит IP-адрес. Для IPv4 -
+     * префикс /24, для IPv6 - префикс /64.
+     * @param address IP-адрес.
+     * @return ключ сети.
+     */
+    public static long getNetworkKey(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        long result = 0;
+        if (address instanceof Inet4Address) {
+            for (int i = 0; i < 3; i++) {
+                result = (result << 8) | (bytes[i] & 0xFF);
+            }
+            result = IPV4_NETWORK_TAG | (result << 8);
+        } else {
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (bytes[i] & 0xFF);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Проверка возможности приема соединения с IP-адреса.
+     * @param address IP-адрес клиента.
+     * @param currentTime текущее время (ms).
+     * @return результат проверки.
+     */
+    public synchronized Result tryAccept(InetAddress address,
+            long currentTime) {
+        long networkKey = getNetworkKey(address);
+        IrcTokenBucket networkBucket = networkMap.get(networkKey);
+        if (networkBucket == null) {
+            networkBucket = new IrcTokenBucket(networkBurst, networkPeriod);
+            networkMap.put(networkKey, networkBucket);
+        }
+        IrcTokenBucket addressBucket = addressMap.get(address);
+        if (addressBucket == null) {
+            addressBucket = new IrcTokenBucket(addressBurst, addressPeriod);
+            addressMap.put(address, addressBucket);
+        }
+        if (networkBucket.getTokens(currentTime) == 0) {
+            networkThrottledCount.getAndIncrement();
+            return Result.NETWORK_THROTTLED;
+        }
+        if (!addressBucket.tryConsume(currentTime)) {
+            addressThrottledCount.getAndIncrement();
+            return Result.ADDRESS_THROTTLED;
+        }
+        networkBucket.tryConsume(currentTime);
+        acceptedCount.getAndIncrement();
+        return Result.ACCEPTED;
+    }
+
+    /**
+     * Получение количества разрешенных соединений.
+     * @return количество разрешенных соединений.
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * Получение количества соединений, отвергнутых по IP-адресу.
+     * @return количество соединений, отвергнутых по IP-адресу.
+     */
+    public long getAddressThrottledCount() {
+        return addressThrottledCount.get();
+    }
+
+    /**
+     * Получение количества соединений, отвергнутых по сети.
+     * @return количество соединений, отвергнутых по сети.
+     */
+    public long getNetworkThrottledCount() {
+        return networkThrottledCount.get();
+    }
+
+    /**
+     * Получение количества ведер в таблицах IP-адресов и сетей.
+     * @return количество ведер.
+     */
+    public synchronized int getTableSize() {
+        return addressMap.size() + networkMap.size();
+    }
+}
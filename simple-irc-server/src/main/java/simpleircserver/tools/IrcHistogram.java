@@ -0,0 +1,355 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcHistogram
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Класс, который служит для накопления распределения неотрицательных
+ * целых величин (например, длительностей).
+ *
+ * <P>Значения распределяются по интервалам с логарифмически-линейными
+ * границами: значения от 0 до {@link #SUB_BUCKET_NUMBER}-1 попадают в
+ * отдельные интервалы, а каждый диапазон от 2<SUP>k</SUP> до
+ * 2<SUP>k+1</SUP>-1 (k &gt;= {@link #SUB_BUCKET_BITS}) делится на
+ * {@link #SUB_BUCKET_NUMBER} равных интервалов. Т.о. относительная
+ * погрешность оценки процентиля не превышает
+ * 1/{@link #SUB_BUCKET_NUMBER}. Кроме того, запоминаются количество,
+ * сумма и максимальное значение.
+ *
+ * <P>Каждый поток, добавляющий значения, получает собственный
+ * накопитель, в который пишет только он, поэтому добавление значения
+ * выполняется за постоянное время без блокировок и без конкуренции за
+ * общие счетчики. При чтении показателей накопители всех потоков
+ * суммируются. Накопители завершившихся потоков при регистрации нового
+ * накопителя переносятся в общий накопитель. Например:
+ * <PRE>
+ * IrcHistogram histogram = new IrcHistogram();
+ * ...
+ * long startTime = System.nanoTime();
+ * действия
+ * histogram.record((System.nanoTime() - startTime) / 1000);
+ * ...
+ * long p99 = histogram.getPercentile(99);
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Log-linear buckets, per-thread recorders are merged on read.
+ * @version 0.5.4 2015-11-27 Sum of values is available for the metrics registry.
+ * @author  Nikolay Kirdin
+ */
+public class IrcHistogram {
+
+    /** Количество разрядов номера интервала внутри степени двойки. */
+    public static final int SUB_BUCKET_BITS = 4;
+
+    /** Количество интервалов внутри степени двойки. */
+    public static final int SUB_BUCKET_NUMBER = 1 << SUB_BUCKET_BITS;
+
+    /** Количество интервалов. */
+    public static final int BUCKET_NUMBER =
+            (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_NUMBER;
+
+    /**
+     * Накопитель значений. Значения добавляет только поток-владелец,
+     * поэтому для записи достаточно {@link AtomicLong#lazySet}.
+     */
+    private static class Recorder {
+
+        /** Поток-владелец (null для общего накопителя). */
+        private final Thread owner;
+
+        /** Количество значений в интервалах. */
+        private final AtomicLongArray bucketArray =
+                new AtomicLongArray(BUCKET_NUMBER);
+
+        /** Количество значений. */
+        private final AtomicLong count = new AtomicLong();
+
+        /** Сумма значений. */
+        private final AtomicLong sum = new AtomicLong();
+
+        /** Максимальное значение. */
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Конструктор.
+         * @param owner поток-владелец.
+         */
+        private Recorder(Thread owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Добавление значения потоком-владельцем.
+         * @param value неотрицательное значение.
+         */
+        private void record(long value) {
+            int index = getBucketIndex(value);
+            bucketArray.lazySet(index, bucketArray.get(index) + 1);
+            sum.lazySet(sum.get() + value);
+            if (value > max.get()) {
+                max.lazySet(value);
+            }
+            count.lazySet(count.get() + 1);
+        }
+
+        /**
+         * Перенос значений другого накопителя в этот накопитель.
+         * @param recorder накопитель.
+         */
+        private void add(Recorder recorder) {
+            for (int i = 0; i < BUCKET_NUMBER; i++) {
+                bucketArray.getAndAdd(i, recorder.bucketArray.get(i));
+            }
+            sum.getAndAdd(recorder.sum.get());
+            max.accumulateAndGet(recorder.max.get(), Math::max);
+            count.getAndAdd(recorder.count.get());
+        }
+
+        /** Сброс накопленных значений. */
+        private void reset() {
+            count.set(0);
+            for (int i = 0; i < BUCKET_NUMBER; i++) {
+                bucketArray.set(i, 0);
+            }
+            sum.set(0);
+            max.set(0);
+        }
+    }
+
+    /** Накопитель значений завершившихся потоков. */
+    private final Recorder retiredRecorder = new Recorder(null);
+
+    /** Накопители потоков. */
+    private final List<Recorder> recorderList =
+            new CopyOnWriteArrayList<Recorder>();
+
+    /** Накопитель текущего потока. */
+    private final ThreadLocal<Recorder> threadRecorder =
+            ThreadLocal.withInitial(this::registerRecorder);
+
+    /**
+     * Добавление значения. Отрицательные значения считаются равными 0.
+     * @param value значение.
+     */
+    public void record(long value) {
+        threadRecorder.get().record(Math.max(0, value));
+    }
+
+    /**
+     * Создание накопителя для текущего потока. Одновременно накопители
+     * завершившихся потоков переносятся в общий накопитель.
+     * @return накопитель.
+     */
+    private synchronized Recorder registerRecorder() {
+        for (Recorder recorder : recorderList) {
+            if (!recorder.owner.isAlive()) {
+                recorderList.remove(recorder);
+                retiredRecorder.add(recorder);
+            }
+        }
+        Recorder recorder = new Recorder(Thread.currentThread());
+        recorderList.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Получение номера интервала для значения.
+     * @param value неотрицательное значение.
+     * @return номер интервала.
+     */
+    private static int getBucketIndex(long value) {
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        if (magnitude < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift)
+                - SUB_BUCKET_NUMBER;
+    }
+
+    /**
+     * Получение верхней границы интервала.
+     * @param index номер интервала.
+     * @return наибольшее значение, попадающее в интервал.
+     */
+    private static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKET_NUMBER) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long top = SUB_BUCKET_NUMBER + (index & (SUB_BUCKET_NUMBER - 1));
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Получение количества значений.
+     * @return количество значений.
+     */
+    public long getCount() {
+        long number = retiredRecorder.count.get();
+        for (Recorder recorder : recorderList) {
+            number += recorder.count.get();
+        }
+        return number;
+    }
+
+    /**
+     * Получение суммы значений.
+     * @return сумма значений.
+     */
+    public long getSum() {
+        long total = retiredRecorder.sum.get();
+        for (Recorder recorder : recorderList) {
+            total += recorder.sum.get();
+        }
+        return total;
+    }
+
+    /**
+     * Получение среднего значения.
+     * @return среднее значение (0, если значений нет).
+     */
+    public long getMean() {
+        long number = retiredRecorder.count.get();
+        long total = retiredRecorder.sum.get();
+        for (Recorder recorder : recorderList) {
+            number += recorder.count.get();
+            total += recorder.sum.get();
+        }
+        return number == 0 ? 0 : total / number;
+    }
+
+    /**
+     * Получение максимального значения.
+     * @return максимальное значение.
+     */
+    public long getMax() {
+        long result = retiredRecorder.max.get();
+        for (Recorder recorder : recorderList) {
+            result = Math.max(result, recorder.max.get());
+        }
+        return result;
+    }
+
+    /**
+     * Получение суммы распределений всех накопителей.
+     * @return количество значений в интервалах.
+     */
+    private long[] getSnapshot() {
+        long[] snapshot = new long[BUCKET_NUMBER];
+        for (int i = 0; i < BUCKET_NUMBER; i++) {
+            snapshot[i] = retiredRecorder.bucketArray.get(i);
+        }
+        for (Recorder recorder : recorderList) {
+            for (int i = 0; i < BUCKET_NUMBER; i++) {
+                snapshot[i] += recorder.bucketArray.get(i);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Получение оценки процентиля распределения. Результатом является
+     * верхняя граница интервала, в котором находится процентиль, но не
+     * более максимального значения.
+     * @param percent процентиль (0 - 100).
+     * @return оценка процентиля (0, если значений нет).
+     */
+    public long getPercentile(double percent) {
+        return getPercentile(getSnapshot(), percent, getMax());
+    }
+
+    /**
+     * Получение оценки процентиля по распределению.
+     * @param snapshot количество значений в интервалах.
+     * @param percent процентиль (0 - 100).
+     * @param max максимальное значение.
+     * @return оценка процентиля (0, если значений нет).
+     */
+    private static long getPercentile(long[] snapshot, double percent,
+            long max) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_NUMBER; i++) {
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+        long accumulated = 0;
+        int index = 0;
+        for (; index < BUCKET_NUMBER - 1; index++) {
+            accumulated += snapshot[index];
+            if (accumulated >= rank) {
+                break;
+            }
+        }
+        return Math.min(getBucketUpperBound(index), max);
+    }
+
+    /**
+     * Получение оценок нескольких процентилей по одному распределению.
+     * @param percents процентили (0 - 100).
+     * @return оценки процентилей в том же порядке.
+     */
+    public long[] getPercentiles(double... percents) {
+        long[] snapshot = getSnapshot();
+        long max = getMax();
+        long[] result = new long[percents.length];
+        for (int i = 0; i < percents.length; i++) {
+            result[i] = getPercentile(snapshot, percents[i], max);
+        }
+        return result;
+    }
+
+    /**
+     * Сброс накопленных значений. Значения, добавляемые одновременно со
+     * сбросом, могут быть потеряны.
+     */
+    public void reset() {
+        retiredRecorder.reset();
+        for (Recorder recorder : recorderList) {
+            recorder.reset();
+        }
+    }
+
+    /**
+     * Получение строки с показателями распределения для диагностических
+     * сообщений.
+     * @param name наименование величины.
+     * @return строка с показателями распределения.
+     */
+    public String getMonitoringString(String name) {
+        long[] percentiles = getPercentiles(50, 95, 99);
+        return " " + name + "Count:" + getCount() +
+                " " + name + "Mean:" + getMean() +
+                " " + name + "P50:" + percentiles[0] +
+                " " + name + "P95:" + percentiles[1] +
+                " " + name + "P99:" + percentiles[2] +
+                " " + name + "Max:" + getMax();
+    }
+}
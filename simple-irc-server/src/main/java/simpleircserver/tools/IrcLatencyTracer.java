@@ -0,0 +1,261 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcLatencyTracer
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import simpleircserver.base.Globals;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.parser.IrcIncomingMessage;
+
+/**
+ * Класс, который служит для учета длительности этапов обработки
+ * сообщений от чтения из сокета до записи ответов в сокет.
+ *
+ * <P>Входящее сообщение {@link IrcIncomingMessage} получает отметки
+ * времени (ns) при чтении из сокета, при извлечении из входной очереди
+ * соединения и по завершении исполнения. Ответ {@link IrcCommandReport}
+ * получает отметку времени при создании и идентификатор входящего
+ * сообщения, при исполнении которого он был создан. По этим отметкам
+ * накапливаются распределения длительности этапов {@link Stage}.
+ *
+ * <P>Если задан период выборки N ({@link #setSampleRate}), то для
+ * каждого N-го входящего сообщения (по значению
+ * {@link IrcIncomingMessage#id}) длительности этапов заносятся в
+ * журнал, записи начинаются с "Trace id:", что позволяет собрать
+ * этапы обработки сообщения и его ответов.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcLatencyTracer {
+
+    /** Этапы обработки сообщения. */
+    public enum Stage {
+
+        /** Ожидание во входной очереди соединения. */
+        INPUT_QUEUE("inputQueue"),
+
+        /** Исполнение команды. */
+        EXECUTION("execution"),
+
+        /** Ожидание ответа в выходной очереди соединения. */
+        OUTPUT_QUEUE("outputQueue"),
+
+        /** От чтения сообщения до записи ответа в сокет. */
+        TOTAL("total");
+
+        /** Наименование этапа в диагностических сообщениях. */
+        private final String label;
+
+        /**
+         * Конструктор.
+         * @param label наименование этапа в диагностических
+         * сообщениях.
+         */
+        Stage(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Получение наименования этапа.
+         * @return наименование этапа.
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Входящее сообщение, исполняемое текущим потоком. Используется
+     * для связи ответов с сообщением.
+     */
+    private static final ThreadLocal<IrcIncomingMessage> currentMessage =
+            new ThreadLocal<IrcIncomingMessage>();
+
+    /** Распределения длительности (ns) этапов. */
+    private final Map<Stage, IrcHistogram> histogramMap =
+            new EnumMap<Stage, IrcHistogram>(Stage.class);
+
+    /** Период выборки сообщений для журнала (0 - журнал не ведется). */
+    private final AtomicInteger sampleRate = new AtomicInteger();
+
+    /**
+     * Конструктор.
+     * @param sampleRate период выборки сообщений для журнала
+     * (0 - журнал не ведется).
+     * @throws IllegalArgumentException в том случае, если период
+     * выборки меньше 0.
+     */
+    public IrcLatencyTracer(int sampleRate) throws IllegalArgumentException {
+        for (Stage stage : Stage.values()) {
+            histogramMap.put(stage, new IrcHistogram());
+        }
+        setSampleRate(sampleRate);
+    }
+
+    /**
+     * Задание периода выборки сообщений для журнала.
+     * @param sampleRate период выборки (0 - журнал не ведется).
+     * @throws IllegalArgumentException в том случае, если период
+     * выборки меньше 0.
+     */
+    public void setSampleRate(int sampleRate)
+            throws IllegalArgumentException {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException(
+                    "IrcLatencyTracer. Parameter out of range: " +
+                    sampleRate);
+        }
+        this.sampleRate.set(sampleRate);
+    }
+
+    /**
+     * Получение периода выборки сообщений для журнала.
+     * @return период выборки (0 - журнал не ведется).
+     */
+    public int getSampleRate() {
+        return sampleRate.get();
+    }
+
+    /**
+     * Проверка попадания сообщения в выборку для журнала.
+     * @param messageId идентификатор входящего сообщения.
+     * @return true, если сообщение попадает в выборку.
+     */
+    public boolean isSampled(long messageId) {
+        int rate = sampleRate.get();
+        return rate > 0 && messageId >= 0 && messageId % rate == 0;
+    }
+
+    /**
+     * Задание входящего сообщения, исполняемого текущим потоком.
+     * @param ircIncomingMessage сообщение (null - исполнение
+     * завершено).
+     */
+    public static void setCurrentMessage(
+            IrcIncomingMessage ircIncomingMessage) {
+        if (ircIncomingMessage == null) {
+            currentMessage.remove();
+        } else {
+            currentMessage.set(ircIncomingMessage);
+        }
+    }
+
+    /**
+     * Получение входящего сообщения, исполняемого текущим потоком.
+     * @return сообщение или null, если поток не исполняет сообщение.
+     */
+    public static IrcIncomingMessage getCurrentMessage() {
+        return currentMessage.get();
+    }
+
+    /**
+     * Учет исполненного сообщения. Используются отметки времени
+     * {@link IrcIncomingMessage#readNanoTime},
+     * {@link IrcIncomingMessage#getPollNanoTime()} и
+     * {@link IrcIncomingMessage#getExecutedNanoTime()}.
+     * @param ircIncomingMessage сообщение.
+     */
+    public void messageExecuted(IrcIncomingMessage ircIncomingMessage) {
+        long inputQueueTime = ircIncomingMessage.getPollNanoTime() -
+                ircIncomingMessage.readNanoTime;
+        long executionTime = ircIncomingMessage.getExecutedNanoTime() -
+                ircIncomingMessage.getPollNanoTime();
+        histogramMap.get(Stage.INPUT_QUEUE).record(
+                Math.max(0, inputQueueTime));
+        histogramMap.get(Stage.EXECUTION).record(Math.max(0, executionTime));
+        if (isSampled(ircIncomingMessage.id)) {
+            Globals.logger.get().log(Level.INFO, "Trace id:" +
+                    ircIncomingMessage.id +
+                    " " + Stage.INPUT_QUEUE.getLabel() + "Ns:" +
+                    inputQueueTime +
+                    " " + Stage.EXECUTION.getLabel() + "Ns:" +
+                    executionTime);
+        }
+    }
+
+    /**
+     * Учет ответа, переданного в сокет. Ответ, созданный не при
+     * исполнении входящего сообщения, учитывается только на этапе
+     * {@link Stage#OUTPUT_QUEUE}.
+     * @param ircCommandReport ответ.
+     * @param writtenNanoTime время (ns) передачи ответа в сокет.
+     */
+    public void reportWritten(IrcCommandReport ircCommandReport,
+            long writtenNanoTime) {
+        long outputQueueTime = writtenNanoTime -
+                ircCommandReport.getCreationNanoTime();
+        histogramMap.get(Stage.OUTPUT_QUEUE).record(
+                Math.max(0, outputQueueTime));
+        long messageId = ircCommandReport.getMessageId();
+        if (messageId < 0) {
+            return;
+        }
+        long totalTime = writtenNanoTime -
+                ircCommandReport.getMessageReadNanoTime();
+        histogramMap.get(Stage.TOTAL).record(Math.max(0, totalTime));
+        if (isSampled(messageId)) {
+            Globals.logger.get().log(Level.INFO, "Trace id:" + messageId +
+                    " report:" + ircCommandReport.id.get() +
+                    " " + Stage.OUTPUT_QUEUE.getLabel() + "Ns:" +
+                    outputQueueTime +
+                    " " + Stage.TOTAL.getLabel() + "Ns:" + totalTime);
+        }
+    }
+
+    /**
+     * Получение распределения длительности (ns) этапа.
+     * @param stage этап.
+     * @return распределение длительности этапа.
+     */
+    public IrcHistogram getHistogram(Stage stage) {
+        return histogramMap.get(stage);
+    }
+
+    /** Сброс распределений. */
+    public void reset() {
+        for (IrcHistogram ircHistogram : histogramMap.values()) {
+            ircHistogram.reset();
+        }
+    }
+
+    /**
+     * Получение строки с медианой и 99-м процентилем длительности (ns)
+     * этапов для диагностических сообщений.
+     * @return строка с показателями этапов.
+     */
+    public String getMonitoringString() {
+        StringBuilder result = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            long[] percentiles = histogramMap.get(stage).getPercentiles(
+                    50, 99);
+            result.append(" ").append(stage.getLabel()).append("Ns:")
+                    .append(percentiles[0]).append("/")
+                    .append(percentiles[1]);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,317 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcLoadShedder
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import simpleircserver.base.Globals;
+import simpleircserver.parser.IrcCommandClass;
+import simpleircserver.processor.IrcServerProcessor;
+
+/**
+ * Класс, который служит для постепенного ограничения исполнения команд
+ * при высокой загруженности сервера (load shedding).
+ *
+ * <P>Уровень загруженности {@link Level} определяется количеством
+ * типов программных процессоров, находящихся в высоконагруженном 
+ * состоянии ({@link Globals#ircServerProcessorSet}), и превышением уровня
+ * {@link IrcMemoryBudget#getHighWater()} бюджета памяти. Каждому уровню
+ * соответствуют бюджеты классов команд {@link IrcCommandClass}. Бюджет
+ * класса общий для всех клиентов, он реализован с помощью
+ * {@link IrcTokenBucket}. Чтобы один клиент не мог израсходовать
+ * бюджет класса, при ограничении каждому клиенту выделяется своя доля
+ * (отдельное ведро жетонов), команды сверх доли не исполняются.
+ *
+ * <P>Новые соединения принимаются, пока уровень загруженности ниже
+ * {@link Level#HIGH}.
+ *
+ * <P>Ведется учет исполненных при ограничении и отвергнутых команд по
+ * классам и причинам {@link Reason}.
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Share of the client is spent only on admitted commands, overloaded processors are counted by type.
+ * @author  Nikolay Kirdin
+ */
+public class IrcLoadShedder {
+
+    /** Уровни загруженности сервера. */
+    public enum Level {
+
+        /** Нормальная загруженность, ограничений нет. */
+        NORMAL,
+
+        /** Перегружены процессоры одного типа. */
+        ELEVATED,
+
+        /** Перегружены процессоры двух типов. */
+        HIGH,
+
+        /** Перегружены процессоры трех и более типов. */
+        CRITICAL
+    }
+
+    /** Причины отказа в исполнении команды. */
+    public enum Reason {
+
+        /** Исчерпан бюджет класса команды. */
+        BUDGET("Budget"),
+
+        /** Клиент исчерпал свою долю. */
+        FAIRNESS("Fairness");
+
+        /** Наименование причины в диагностических сообщениях. */
+        private final String label;
+
+        /**
+         * Конструктор.
+         * @param label наименование причины в диагностических
+         * сообщениях.
+         */
+        Reason(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Получение наименования причины.
+         * @return наименование причины.
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Ведра жетонов классов команд по уровням загруженности. */
+    private final IrcTokenBucket[][] budgetBucketArray =
+            new IrcTokenBucket[IrcCommandClass.values().length]
+            [Level.values().length];
+
+    /** Количество команд, исполненных при ограничении, по классам. */
+    private final AtomicLongArray admittedArray =
+            new AtomicLongArray(IrcCommandClass.values().length);
+
+    /** Количество отвергнутых команд по классам и причинам. */
+    private final AtomicLongArray shedArray = new AtomicLongArray(
+            IrcCommandClass.values().length * Reason.values().length);
+
+    /** Последний определенный уровень загруженности. */
+    private final AtomicReference<Level> lastLevel =
+            new AtomicReference<Level>(Level.NORMAL);
+
+    /** Максимальное количество команд доли клиента. */
+    private final int shareBurst;
+
+    /** Период (ms) пополнения доли клиента на одну команду. */
+    private final long sharePeriod;
+
+    /**
+     * Конструктор.
+     * @param shareBurst максимальное количество команд доли клиента.
+     * @param sharePeriod период (ms) пополнения доли клиента на одну
+     * команду.
+     * @throws IllegalArgumentException в том случае, если параметры
+     * меньше 1.
+     */
+    public IrcLoadShedder(int shareBurst, long sharePeriod)
+            throws IllegalArgumentException {
+        if (shareBurst < 1 || sharePeriod < 1) {
+            throw new IllegalArgumentException(
+                    "IrcLoadShedder. Parameter out of range: " +
+                    shareBurst + " " + sharePeriod);
+        }
+        this.shareBurst = shareBurst;
+        this.sharePeriod = sharePeriod;
+        for (IrcCommandClass commandClass : IrcCommandClass.values()) {
+            for (Level level : Level.values()) {
+                int budget = commandClass.getBudget(level);
+                if (budget > 0) {
+                    budgetBucketArray[commandClass.ordinal()]
+                            [level.ordinal()] = new IrcTokenBucket(budget,
+                            Math.max(1, 1000 / budget));
+                }
+            }
+        }
+    }
+
+    /**
+     * Определение уровня загруженности.
+     * @param highLoadCount количество типов перегруженных процессоров.
+     * @param isMemoryAboveHighWater признак превышения уровня
+     * {@link IrcMemoryBudget#getHighWater()} бюджета памяти.
+     * @return уровень загруженности.
+     */
+    public static Level getLevel(int highLoadCount,
+            boolean isMemoryAboveHighWater) {
+        int index = highLoadCount + (isMemoryAboveHighWater ? 1 : 0);
+        Level[] levels = Level.values();
+        return levels[Math.min(index, levels.length - 1)];
+    }
+
+    /**
+     * Определение количества типов процессоров. Процессоры одного 
+     * типа (например, все исполнители команд {@link 
+     * simpleircserver.processor.IrcCommandWorker}) выполняют один и тот 
+     * же этап обработки, поэтому их перегрузка считается один раз 
+     * независимо от количества процессоров этого типа.
+     * @param processorCollection набор процессоров.
+     * @return количество типов процессоров.
+     */
+    public static int getProcessorTypeCount(
+            Collection<? extends IrcServerProcessor> processorCollection) {
+        Set<Class<?>> typeSet = new HashSet<Class<?>>();
+        for (IrcServerProcessor processor : processorCollection) {
+            typeSet.add(processor.getClass());
+        }
+        return typeSet.size();
+    }
+
+    /**
+     * Определение текущего уровня загруженности сервера. Изменение
+     * уровня регистрируется в журнале.
+     * @return уровень загруженности.
+     */
+    public Level getLevel() {
+        Level level = getLevel(getProcessorTypeCount(
+                Globals.ircServerProcessorSet.get()),
+                Globals.memoryBudget.get().isAboveHighWater());
+        Level oldLevel = lastLevel.getAndSet(level);
+        if (oldLevel != level) {
+            Logger logger = Globals.logger.get();
+            if (logger != null) {
+                logger.log(Level.NORMAL == level ?
+                        java.util.logging.Level.INFO :
+                        java.util.logging.Level.WARNING,
+                        "Load level: " + oldLevel + " -> " + level +
+                        getMonitoringString());
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Проверка возможности приема новых соединений.
+     * @return true - новые соединения принимаются.
+     */
+    public boolean isAcceptAllowed() {
+        return getLevel().compareTo(Level.HIGH) < 0;
+    }
+
+    /**
+     * Создание ведра жетонов для доли клиента.
+     * @return ведро жетонов.
+     */
+    public IrcTokenBucket createShareTokenBucket() {
+        return new IrcTokenBucket(shareBurst, sharePeriod);
+    }
+
+    /**
+     * Проверка возможности исполнения команды. Если класс команды на
+     * этом уровне загруженности не ограничен, то команда исполняется.
+     * В противном случае команда исполняется, если у клиента есть доля
+     * и у класса команды есть бюджет. Жетон доли извлекается только 
+     * после извлечения жетона бюджета класса, поэтому команда, 
+     * отвергнутая из-за бюджета, не расходует долю клиента. Ведро доли 
+     * используется только процессором, исполняющим команды этого 
+     * клиента, поэтому проверка наличия жетона и его извлечение не 
+     * разделяются командами других процессоров.
+     * @param commandClass класс команды.
+     * @param level уровень загруженности.
+     * @param shareSupplier источник ведра жетонов доли клиента (ведро
+     * запрашивается только при ограничении); если источник возвращает
+     * null, то доля клиента не проверяется.
+     * @param currentTime текущее время (ms).
+     * @return null - команда может быть исполнена, иначе причина отказа.
+     */
+    public Reason tryAdmit(IrcCommandClass commandClass, Level level,
+            Supplier<IrcTokenBucket> shareSupplier, long currentTime) {
+        int budget = commandClass.getBudget(level);
+        if (budget < 0) {
+            return null;
+        }
+        Reason reason = null;
+        IrcTokenBucket shareBucket = shareSupplier.get();
+        if (shareBucket != null && shareBucket.getTokens(currentTime) == 0) {
+            reason = Reason.FAIRNESS;
+        } else if (budget == 0 || !budgetBucketArray[commandClass.ordinal()]
+                [level.ordinal()].tryConsume(currentTime)) {
+            reason = Reason.BUDGET;
+        } else if (shareBucket != null) {
+            shareBucket.tryConsume(currentTime);
+        }
+        if (reason == null) {
+            admittedArray.getAndIncrement(commandClass.ordinal());
+        } else {
+            shedArray.getAndIncrement(commandClass.ordinal() *
+                    Reason.values().length + reason.ordinal());
+        }
+        return reason;
+    }
+
+    /**
+     * Получение количества команд класса, исполненных при ограничении.
+     * @param commandClass класс команды.
+     * @return количество команд.
+     */
+    public long getAdmittedCount(IrcCommandClass commandClass) {
+        return admittedArray.get(commandClass.ordinal());
+    }
+
+    /**
+     * Получение количества отвергнутых команд класса.
+     * @param commandClass класс команды.
+     * @param reason причина отказа.
+     * @return количество команд.
+     */
+    public long getShedCount(IrcCommandClass commandClass, Reason reason) {
+        return shedArray.get(commandClass.ordinal() *
+                Reason.values().length + reason.ordinal());
+    }
+
+    /**
+     * Получение строки с показателями ограничения для диагностических
+     * сообщений.
+     * @return строка с показателями ограничения.
+     */
+    public String getMonitoringString() {
+        StringBuilder result = new StringBuilder(" loadLevel:" +
+                lastLevel.get());
+        for (IrcCommandClass commandClass : IrcCommandClass.values()) {
+            if (commandClass.getBudget(Level.CRITICAL) < 0) {
+                continue;
+            }
+            result.append(" shed").append(commandClass.getLabel())
+                    .append(":");
+            String separator = "";
+            for (Reason reason : Reason.values()) {
+                result.append(separator).append(
+                        getShedCount(commandClass, reason));
+                separator = "/";
+            }
+        }
+        return result.toString();
+    }
+}
@@ -27,6 +27,7 @@ package simpleircserver.tools;
  *
  * @version 0.5 2012-02-14
  * @version 0.5.3 2015-11-05 Program units were moved from default package into packages with names. Unit tests were added.
+ * @version 0.5.4 2015-11-27 Expression without metacharacters is recognized.
  * @author  Nikolay Kirdin
  */
 public final class IrcMatcher {
@@ -120,4 +121,18 @@ public final class IrcMatcher {
             }
         return match;
     }
+
+    /**
+     * Метод, проверяющий наличие в регулярном выражении метасимволов 
+     * '*', '?' или символа экранирования '\'. Выражение без этих 
+     * символов соответствует только самому себе, поэтому вместо 
+     * перебора можно выполнить поиск по имени.
+     * @param pattern регулярное выражение.
+     * @return true если выражение содержит метасимволы или символ 
+     * экранирования.
+     */
+    public static boolean isPattern(final String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0
+                || pattern.indexOf((char) 0X5C) >= 0;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,291 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcMemoryBudget
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import simpleircserver.base.Constants;
+
+/**
+ * Класс, который служит для учета оценочного объема памяти, занимаемого
+ * объектами сервера, и для ограничения создания новых объектов.
+ *
+ * <P>Объем памяти учитывается раздельно по категориям
+ * {@link Category}. Объекты не измеряются, вместо этого используются
+ * оценки их размера, заданные в {@link Constants}. Бюджет имеет два
+ * порога: предел {@link #getLimit()} и уровень
+ * {@link #getHighWater()}, составляющий заданный процент от предела.
+ * Новые соединения, клиенты и каналы допускаются, только если после их
+ * создания использованный объем не превысит уровень
+ * {@link #getHighWater()}. Если этот уровень превышен, то
+ * необязательные данные (например, истории никнэймов) не сохраняются
+ * или вытесняются. Сборщик мусора не вызывается. Например:
+ * <PRE>
+ * IrcMemoryBudget memoryBudget = Globals.memoryBudget.get();
+ * if (memoryBudget.isAdmissible(Category.CHANNEL,
+ *         Constants.CHANNEL_MEMORY_SIZE)) {
+ *     создание канала
+ * }
+ * ...
+ * memoryBudget.reserve(Category.CHANNEL, Constants.CHANNEL_MEMORY_SIZE);
+ * ...
+ * memoryBudget.release(Category.CHANNEL, Constants.CHANNEL_MEMORY_SIZE);
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcMemoryBudget {
+
+    /** Категории учитываемых объектов. */
+    public enum Category {
+
+        /** Соединения и их буферы. */
+        CONNECTION("Connection"),
+
+        /** Входные и выходные очереди соединений. */
+        QUEUE("Queue"),
+
+        /** Клиенты, сервисы и серверы. */
+        TALKER("Talker"),
+
+        /** Каналы. */
+        CHANNEL("Channel"),
+
+        /** Истории никнэймов. */
+        HISTORY("History");
+
+        /** Наименование категории в диагностических сообщениях. */
+        private final String label;
+
+        /**
+         * Конструктор.
+         * @param label наименование категории в диагностических
+         * сообщениях.
+         */
+        Category(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Получение наименования категории.
+         * @return наименование категории.
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Предел (байт) использованного объема. */
+    private final long limit;
+
+    /** Уровень (байт), выше которого новые объекты не допускаются. */
+    private final long highWater;
+
+    /** Использованный объем (байт) по категориям. */
+    private final AtomicLongArray usageArray =
+            new AtomicLongArray(Category.values().length);
+
+    /** Количество отказов по категориям. */
+    private final AtomicLongArray refusedArray =
+            new AtomicLongArray(Category.values().length);
+
+    /** Общий использованный объем (байт). */
+    private final AtomicLong totalUsage = new AtomicLong();
+
+    /**
+     * Конструктор. Предел определяется как
+     * {@link Constants#MEMORY_BUDGET_PERCENT} процентов от максимального
+     * объема памяти виртуальной машины, уровень допуска новых объектов -
+     * {@link Constants#MEMORY_HIGH_WATER_PERCENT} процентов от предела.
+     */
+    public IrcMemoryBudget() {
+        this(Runtime.getRuntime().maxMemory() / 100 *
+                Constants.MEMORY_BUDGET_PERCENT,
+                Constants.MEMORY_HIGH_WATER_PERCENT);
+    }
+
+    /**
+     * Конструктор.
+     * @param limit предел (байт) использованного объема.
+     * @param highWaterPercent уровень допуска новых объектов в процентах
+     * от предела.
+     * @throws IllegalArgumentException в том случае, если предел меньше
+     * 1 или уровень находится вне диапазона 1 - 100.
+     */
+    public IrcMemoryBudget(long limit, int highWaterPercent)
+            throws IllegalArgumentException {
+        if (limit < 1 || highWaterPercent < 1 || highWaterPercent > 100) {
+            throw new IllegalArgumentException(
+                    "IrcMemoryBudget. Parameter out of range: " + limit +
+                    " " + highWaterPercent);
+        }
+        this.limit = limit;
+        this.highWater = limit / 100 * highWaterPercent +
+                limit % 100 * highWaterPercent / 100;
+    }
+
+    /**
+     * Получение предела использованного объема.
+     * @return предел (байт).
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Получение уровня, выше которого новые объекты не допускаются.
+     * @return уровень (байт).
+     */
+    public long getHighWater() {
+        return highWater;
+    }
+
+    /**
+     * Проверка возможности создания нового объекта. Объем не
+     * резервируется.
+     * @param category категория объекта.
+     * @param size оценка объема (байт) объекта.
+     * @return true, если после создания объекта использованный объем не
+     * превысит уровень {@link #getHighWater()}.
+     */
+    public boolean isAdmissible(Category category, long size) {
+        boolean result = totalUsage.get() + size <= highWater;
+        if (!result) {
+            refusedArray.getAndIncrement(category.ordinal());
+        }
+        return result;
+    }
+
+    /**
+     * Резервирование объема для объекта, если после резервирования
+     * использованный объем не превысит уровень {@link #getHighWater()}.
+     * @param category категория объекта.
+     * @param size оценка объема (байт) объекта.
+     * @return true, если объем зарезервирован.
+     */
+    public boolean tryReserve(Category category, long size) {
+        long usage;
+        do {
+            usage = totalUsage.get();
+            if (usage + size > highWater) {
+                refusedArray.getAndIncrement(category.ordinal());
+                return false;
+            }
+        } while (!totalUsage.compareAndSet(usage, usage + size));
+        usageArray.getAndAdd(category.ordinal(), size);
+        return true;
+    }
+
+    /**
+     * Резервирование объема для уже созданного объекта без проверки
+     * уровня.
+     * @param category категория объекта.
+     * @param size оценка объема (байт) объекта.
+     */
+    public void reserve(Category category, long size) {
+        usageArray.getAndAdd(category.ordinal(), size);
+        totalUsage.getAndAdd(size);
+    }
+
+    /**
+     * Освобождение объема. Использованный объем категории не может стать
+     * меньше 0.
+     * @param category категория объекта.
+     * @param size оценка объема (байт) объекта.
+     */
+    public void release(Category category, long size) {
+        long usage = usageArray.getAndUpdate(category.ordinal(),
+                value -> Math.max(0, value - size));
+        totalUsage.getAndAdd(Math.max(0, usage - size) - usage);
+    }
+
+    /**
+     * Освобождение всего объема категории.
+     * @param category категория.
+     */
+    public void reset(Category category) {
+        totalUsage.getAndAdd(-usageArray.getAndSet(category.ordinal(), 0));
+    }
+
+    /** Освобождение всего объема и сброс счетчиков отказов. */
+    public void reset() {
+        for (Category category : Category.values()) {
+            reset(category);
+            refusedArray.set(category.ordinal(), 0);
+        }
+    }
+
+    /**
+     * Получение использованного объема категории.
+     * @param category категория.
+     * @return использованный объем (байт).
+     */
+    public long getUsage(Category category) {
+        return usageArray.get(category.ordinal());
+    }
+
+    /**
+     * Получение общего использованного объема.
+     * @return использованный объем (байт).
+     */
+    public long getTotalUsage() {
+        return totalUsage.get();
+    }
+
+    /**
+     * Получение количества отказов категории.
+     * @param category категория.
+     * @return количество отказов.
+     */
+    public long getRefusedCount(Category category) {
+        return refusedArray.get(category.ordinal());
+    }
+
+    /**
+     * Проверка превышения уровня {@link #getHighWater()}.
+     * @return true, если уровень превышен.
+     */
+    public boolean isAboveHighWater() {
+        return totalUsage.get() > highWater;
+    }
+
+    /**
+     * Получение строки с показателями использования памяти для
+     * диагностических сообщений.
+     * @return строка с показателями использования памяти (KiB).
+     */
+    public String getMonitoringString() {
+        StringBuilder result = new StringBuilder(" memoryKiB:" +
+                getTotalUsage() / 1024 + "/" + highWater / 1024 + "/" +
+                limit / 1024);
+        long refusedCount = 0;
+        for (Category category : Category.values()) {
+            result.append(" memory").append(category.getLabel())
+                    .append("KiB:").append(getUsage(category) / 1024);
+            refusedCount += getRefusedCount(category);
+        }
+        result.append(" memoryRefused:").append(refusedCount);
+        return result.toString();
+    }
+}
@@ -0,0 +1,395 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcMetrics
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import simpleircserver.base.Globals;
+
+/**
+ * Класс, который служит реестром метрик сервера.
+ *
+ * <P>Метрики объединяются в семейства с общим наименованием, типом и
+ * описанием. Метрики одного семейства различаются метками (парами
+ * "имя метки" - "значение метки"), например, наименованием процессора
+ * или команды. Поддерживаются следующие типы метрик:
+ * <UL>
+ *      <LI>{@link Type#COUNTER} - монотонно возрастающий счетчик. Это
+ *      либо счетчик {@link LongAdder}, созданный реестром, либо
+ *      функция, возвращающая значение существующего счетчика;</LI>
+ *      <LI>{@link Type#GAUGE} - текущее значение величины, которое
+ *      вычисляется функцией при каждом чтении;</LI>
+ *      <LI>{@link Type#SUMMARY} - распределение величины
+ *      {@link IrcHistogram}, для которого выводятся процентили,
+ *      сумма и количество значений.</LI>
+ * </UL>
+ *
+ * <P>Метод {@link #getExposition()} формирует текст в формате
+ * Prometheus (text exposition format 0.0.4). Регистрация и чтение
+ * метрик выполняются без блокировок, повторная регистрация метрики с
+ * теми же наименованием и метками заменяет прежнюю метрику. Например:
+ * <PRE>
+ * IrcMetrics metrics = Globals.metrics.get();
+ * LongAdder scrapeCounter = metrics.counter("irc_metrics_scrapes_total",
+ *         "Number of scrapes.");
+ * metrics.gauge("irc_connections", "Number of connections.",
+ *         () -&gt; Globals.db.get().getConnectionListSize());
+ * metrics.summary("irc_processor_cycle_microseconds",
+ *         "Duration of the processor cycle.", histogram,
+ *         "processor", "InputQueueProcessor");
+ * ...
+ * String text = metrics.getExposition();
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Failed metric is logged.
+ * @author  Nikolay Kirdin
+ */
+public class IrcMetrics {
+
+    /** Типы метрик. */
+    public enum Type {
+
+        /** Счетчик. */
+        COUNTER("counter"),
+
+        /** Текущее значение. */
+        GAUGE("gauge"),
+
+        /** Распределение. */
+        SUMMARY("summary");
+
+        /** Наименование типа в формате Prometheus. */
+        private final String text;
+
+        /**
+         * Конструктор.
+         * @param text наименование типа в формате Prometheus.
+         */
+        private Type(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Получение наименования типа в формате Prometheus.
+         * @return наименование типа.
+         */
+        public String getText() {
+            return text;
+        }
+    }
+
+    /** Процентили, которые выводятся для распределений. */
+    public static final double[] QUANTILES = {50, 95, 99};
+
+    /** Образец наименования метрики. */
+    private static final Pattern NAME_PATTERN =
+            Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    /** Образец наименования метки. */
+    private static final Pattern LABEL_PATTERN =
+            Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    /** Семейство метрик с общим наименованием. */
+    private static class Family {
+
+        /** Тип метрик. */
+        private final Type type;
+
+        /** Описание метрик. */
+        private final String help;
+
+        /**
+         * Метрики, ключом является строка меток. Значением является
+         * {@link LongAdder}, {@link LongSupplier} или
+         * {@link IrcHistogram}.
+         */
+        private final ConcurrentMap<String, Object> metricMap =
+                new ConcurrentSkipListMap<String, Object>();
+
+        /**
+         * Конструктор.
+         * @param type тип метрик.
+         * @param help описание метрик.
+         */
+        private Family(Type type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    /** Семейства метрик, ключом является наименование. */
+    private final ConcurrentMap<String, Family> familyMap =
+            new ConcurrentSkipListMap<String, Family>();
+
+    /**
+     * Получение счетчика, созданного реестром. Если счетчика с такими
+     * наименованием и метками нет, то он создается.
+     * @param name наименование метрики.
+     * @param help описание метрики.
+     * @param labels имена и значения меток, чередующиеся друг с другом.
+     * @return счетчик.
+     * @throws IllegalArgumentException если наименование или метки
+     * заданы неверно, или метрика с таким наименованием имеет другой
+     * тип или не является счетчиком {@link LongAdder}.
+     */
+    public LongAdder counter(String name, String help, String... labels)
+            throws IllegalArgumentException {
+        Object metric = getFamily(name, help, Type.COUNTER).metricMap
+                .computeIfAbsent(getLabelString(labels),
+                k -> new LongAdder());
+        if (!(metric instanceof LongAdder)) {
+            throw new IllegalArgumentException(
+                    "IrcMetrics. Metric is not LongAdder: " + name);
+        }
+        return (LongAdder) metric;
+    }
+
+    /**
+     * Регистрация счетчика, значение которого возвращается функцией.
+     * @param name наименование метрики.
+     * @param help описание метрики.
+     * @param value функция, возвращающая значение счетчика.
+     * @param labels имена и значения меток, чередующиеся друг с другом.
+     * @throws IllegalArgumentException если наименование или метки
+     * заданы неверно, или метрика с таким наименованием имеет другой
+     * тип.
+     */
+    public void counter(String name, String help, LongSupplier value,
+            String... labels) throws IllegalArgumentException {
+        getFamily(name, help, Type.COUNTER).metricMap.put(
+                getLabelString(labels), value);
+    }
+
+    /**
+     * Регистрация текущего значения величины.
+     * @param name наименование метрики.
+     * @param help описание метрики.
+     * @param value функция, возвращающая значение величины.
+     * @param labels имена и значения меток, чередующиеся друг с другом.
+     * @throws IllegalArgumentException если наименование или метки
+     * заданы неверно, или метрика с таким наименованием имеет другой
+     * тип.
+     */
+    public void gauge(String name, String help, LongSupplier value,
+            String... labels) throws IllegalArgumentException {
+        getFamily(name, help, Type.GAUGE).metricMap.put(
+                getLabelString(labels), value);
+    }
+
+    /**
+     * Регистрация распределения величины.
+     * @param name наименование метрики.
+     * @param help описание метрики.
+     * @param histogram распределение.
+     * @param labels имена и значения меток, чередующиеся друг с другом.
+     * @throws IllegalArgumentException если наименование или метки
+     * заданы неверно, или метрика с таким наименованием имеет другой
+     * тип.
+     */
+    public void summary(String name, String help, IrcHistogram histogram,
+            String... labels) throws IllegalArgumentException {
+        getFamily(name, help, Type.SUMMARY).metricMap.put(
+                getLabelString(labels), histogram);
+    }
+
+    /**
+     * Удаление метрики. Семейство метрик остается в реестре.
+     * @param name наименование метрики.
+     * @param labels имена и значения меток, чередующиеся друг с другом.
+     */
+    public void remove(String name, String... labels) {
+        Family family = familyMap.get(name);
+        if (family != null) {
+            family.metricMap.remove(getLabelString(labels));
+        }
+    }
+
+    /**
+     * Получение количества зарегистрированных метрик.
+     * @return количество метрик.
+     */
+    public int size() {
+        int result = 0;
+        for (Family family : familyMap.values()) {
+            result += family.metricMap.size();
+        }
+        return result;
+    }
+
+    /**
+     * Получение семейства метрик. Если семейства нет, то оно создается.
+     * @param name наименование метрики.
+     * @param help описание метрики.
+     * @param type тип метрики.
+     * @return семейство метрик.
+     * @throws IllegalArgumentException если наименование задано неверно
+     * или семейство имеет другой тип.
+     */
+    private Family getFamily(String name, String help, Type type)
+            throws IllegalArgumentException {
+        if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException(
+                    "IrcMetrics. Wrong name: " + name);
+        }
+        Family family = familyMap.computeIfAbsent(name,
+                k -> new Family(type, help));
+        if (family.type != type) {
+            throw new IllegalArgumentException(
+                    "IrcMetrics. Type mismatch: " + name + " " +
+                    family.type + " " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Формирование строки меток.
+     * @param labels имена и значения меток, чередующиеся друг с другом.
+     * @return строка меток в формате Prometheus без фигурных скобок.
+     * @throws IllegalArgumentException если количество элементов
+     * нечетно или имя метки задано неверно.
+     */
+    private static String getLabelString(String... labels)
+            throws IllegalArgumentException {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "IrcMetrics. Label without value.");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (labels[i] == null ||
+                    !LABEL_PATTERN.matcher(labels[i]).matches() ||
+                    labels[i].startsWith("__") ||
+                    labels[i].equals("quantile")) {
+                throw new IllegalArgumentException(
+                        "IrcMetrics. Wrong label: " + labels[i]);
+            }
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(labels[i]).append("=\"");
+            String value = String.valueOf(labels[i + 1]);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    result.append('\\').append(c);
+                } else if (c == '\n') {
+                    result.append("\\n");
+                } else {
+                    result.append(c);
+                }
+            }
+            result.append('"');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Формирование текста с метриками в формате Prometheus. Метрики,
+     * значение которых не удалось получить, пропускаются, ошибка 
+     * регистрируется в журнале.
+     * @return текст с метриками.
+     */
+    public String getExposition() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Family> familyEntry : familyMap.entrySet()) {
+            String name = familyEntry.getKey();
+            Family family = familyEntry.getValue();
+            if (family.metricMap.isEmpty()) {
+                continue;
+            }
+            result.append("# HELP ").append(name).append(' ')
+                    .append(family.help.replace("\\", "\\\\")
+                    .replace("\n", "\\n")).append('\n');
+            result.append("# TYPE ").append(name).append(' ')
+                    .append(family.type.getText()).append('\n');
+            for (Map.Entry<String, Object> entry :
+                    family.metricMap.entrySet()) {
+                String labelString = entry.getKey();
+                Object metric = entry.getValue();
+                try {
+                    if (metric instanceof IrcHistogram) {
+                        appendSummary(result, name, labelString,
+                                (IrcHistogram) metric);
+                    } else {
+                        long value = metric instanceof LongAdder ?
+                                ((LongAdder) metric).sum() :
+                                ((LongSupplier) metric).getAsLong();
+                        appendSample(result, name, labelString, value);
+                    }
+                } catch (RuntimeException e) {
+                    Logger logger = Globals.logger.get();
+                    if (logger != null) {
+                        logger.log(Level.WARNING, "Metric: " + name + 
+                                labelString + " " + e);
+                    }
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Добавление строк распределения.
+     * @param result формируемый текст.
+     * @param name наименование метрики.
+     * @param labelString строка меток.
+     * @param histogram распределение.
+     */
+    private static void appendSummary(StringBuilder result, String name,
+            String labelString, IrcHistogram histogram) {
+        long[] percentiles = histogram.getPercentiles(QUANTILES);
+        String separator = labelString.isEmpty() ? "" : ",";
+        for (int i = 0; i < QUANTILES.length; i++) {
+            appendSample(result, name, labelString + separator +
+                    "quantile=\"" + QUANTILES[i] / 100 + "\"",
+                    percentiles[i]);
+        }
+        appendSample(result, name + "_sum", labelString,
+                histogram.getSum());
+        appendSample(result, name + "_count", labelString,
+                histogram.getCount());
+    }
+
+    /**
+     * Добавление строки значения.
+     * @param result формируемый текст.
+     * @param name наименование метрики.
+     * @param labelString строка меток.
+     * @param value значение.
+     */
+    private static void appendSample(StringBuilder result, String name,
+            String labelString, long value) {
+        result.append(name);
+        if (!labelString.isEmpty()) {
+            result.append('{').append(labelString).append('}');
+        }
+        result.append(' ').append(value).append('\n');
+    }
+}
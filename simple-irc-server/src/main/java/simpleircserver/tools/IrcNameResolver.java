@@ -0,0 +1,398 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcNameResolver
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import simpleircserver.base.Constants;
+
+/**
+ * Класс, выполняющий асинхронное определение доменных имен клиентов
+ * по их IP-адресам.
+ *
+ * <P>Запросы выполняются пулом из ограниченного количества потоков,
+ * очередь запросов также ограничена. Если очередь заполнена, то
+ * запрос не выполняется, а клиенту оставляется IP-адрес.
+ *
+ * <P>Результаты хранятся в кэше, из которого удаляются записи, которые
+ * дольше всего не использовались (LRU). Найденные доменные имена
+ * хранятся в течение {@link #positiveTtl} миллисекунд, отрицательные
+ * результаты (имя не найдено, имя слишком длинное) - в течение
+ * {@link #negativeTtl} миллисекунд. Одновременные запросы для одного и
+ * того же адреса объединяются в один запрос.
+ *
+ * <P>Функция поиска задается в конструкторе, что позволяет подменять
+ * ее при тестировании. Например:
+ * <PRE>
+ * IrcNameResolver resolver = new IrcNameResolver(
+ *         address -> "host.example.com", 1, 10, 10, 1000, 100);
+ * resolver.resolve(address, hostname -> {
+ *      действия
+ * });
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Cache record is named CacheEntry, so it is not confused with Map.Entry.
+ * @author  Nikolay Kirdin
+ */
+public class IrcNameResolver {
+
+    /** Запись кэша. */
+    private static class CacheEntry {
+
+        /** Доменное имя (null - отрицательный результат). */
+        final String hostname;
+
+        /** Время (ms) окончания срока хранения записи. */
+        final long expiration;
+
+        CacheEntry(String hostname, long expiration) {
+            this.hostname = hostname;
+            this.expiration = expiration;
+        }
+    }
+
+    /** Функция поиска доменного имени по IP-адресу. */
+    private final Function<InetAddress, String> lookup;
+
+    /** Пул потоков, выполняющих поиск. */
+    private final ThreadPoolExecutor executor;
+
+    /** Максимальное количество записей в кэше. */
+    private final int cacheSize;
+
+    /** Время (ms) хранения в кэше найденного доменного имени. */
+    private final long positiveTtl;
+
+    /** Время (ms) хранения в кэше отрицательного результата. */
+    private final long negativeTtl;
+
+    /** Источник текущего времени (ms). */
+    private volatile LongSupplier clock = System::currentTimeMillis;
+
+    /** Кэш результатов. Доступ синхронизируется по самому кэшу. */
+    private final LinkedHashMap<InetAddress, CacheEntry> cache;
+
+    /** Выполняющиеся запросы. */
+    private final ConcurrentHashMap<InetAddress, CompletableFuture<String>>
+            inFlightMap = new ConcurrentHashMap<InetAddress,
+            CompletableFuture<String>>();
+
+    /** Количество ответов, полученных из кэша. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** Количество запросов, не найденных в кэше. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** Количество запросов, объединенных с выполняющимися запросами. */
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /** Количество запросов, отвергнутых из-за переполнения очереди. */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /** Количество выполненных поисков. */
+    private final AtomicLong lookupCount = new AtomicLong();
+
+    /** Количество отрицательных результатов поиска. */
+    private final AtomicLong negativeCount = new AtomicLong();
+
+    /** Суммарная длительность (ns) поисков. */
+    private final AtomicLong lookupTime = new AtomicLong();
+
+    /** Наибольшая длительность (ns) поиска. */
+    private final AtomicLong maxLookupTime = new AtomicLong();
+
+    /**
+     * Конструктор.
+     * @param lookup функция поиска доменного имени по IP-адресу.
+     * @param threads количество потоков поиска.
+     * @param queueSize максимальная длина очереди запросов.
+     * @param cacheSize максимальное количество записей в кэше.
+     * @param positiveTtl время (ms) хранения найденного имени.
+     * @param negativeTtl время (ms) хранения отрицательного результата.
+     * @throws IllegalArgumentException в том случае, если какой-либо из
+     * числовых параметров меньше 1.
+     */
+    public IrcNameResolver(Function<InetAddress, String> lookup,
+            int threads, int queueSize, int cacheSize, long positiveTtl,
+            long negativeTtl) throws IllegalArgumentException {
+        if (threads < 1 || queueSize < 1 || cacheSize < 1 ||
+                positiveTtl < 1 || negativeTtl < 1) {
+            throw new IllegalArgumentException(
+                    "IrcNameResolver. Parameter out of range: " +
+                    threads + " " + queueSize + " " + cacheSize + " " +
+                    positiveTtl + " " + negativeTtl);
+        }
+        this.lookup = lookup;
+        this.cacheSize = cacheSize;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        this.cache = new LinkedHashMap<InetAddress, CacheEntry>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<InetAddress, CacheEntry> eldest) {
+                return size() > IrcNameResolver.this.cacheSize;
+            }
+        };
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "IrcNameResolver-" +
+                            threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Конструктор. Поиск выполняется с помощью
+     * {@link InetAddress#getCanonicalHostName()}, параметры пула и кэша
+     * задаются константами {@link Constants#RESOLVER_THREADS},
+     * {@link Constants#RESOLVER_QUEUE_SIZE},
+     * {@link Constants#RESOLVER_CACHE_SIZE},
+     * {@link Constants#RESOLVER_POSITIVE_TTL},
+     * {@link Constants#RESOLVER_NEGATIVE_TTL}.
+     */
+    public IrcNameResolver() {
+        this(InetAddress::getCanonicalHostName, Constants.RESOLVER_THREADS,
+                Constants.RESOLVER_QUEUE_SIZE,
+                Constants.RESOLVER_CACHE_SIZE,
+                Constants.RESOLVER_POSITIVE_TTL,
+                Constants.RESOLVER_NEGATIVE_TTL);
+    }
+
+    /**
+     * Задание источника текущего времени (используется при
+     * тестировании).
+     * @param clock источник текущего времени (ms).
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Определение доменного имени. Если результат есть в кэше, то
+     * обработчик вызывается в текущем потоке, в противном случае - в
+     * потоке пула после окончания поиска. Если доменное имя не найдено,
+     * или запрос был отвергнут, то обработчику передается null.
+     * @param address IP-адрес.
+     * @param handler обработчик результата.
+     */
+    public void resolve(InetAddress address, Consumer<String> handler) {
+        CacheEntry entry;
+        long now = clock.getAsLong();
+        synchronized (cache) {
+            entry = cache.get(address);
+            if (entry != null && entry.expiration <= now) {
+                cache.remove(address);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hitCount.getAndIncrement();
+            handler.accept(entry.hostname);
+            return;
+        }
+        missCount.getAndIncrement();
+
+        CompletableFuture<String> future = new CompletableFuture<String>();
+        CompletableFuture<String> inFlight =
+                inFlightMap.putIfAbsent(address, future);
+        if (inFlight != null) {
+            coalescedCount.getAndIncrement();
+            inFlight.thenAccept(handler);
+            return;
+        }
+        future.thenAccept(handler);
+        try {
+            executor.execute(() -> complete(address, future,
+                    lookup(address)));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.getAndIncrement();
+            inFlightMap.remove(address, future);
+            future.complete(null);
+        }
+    }
+
+    /**
+     * Поиск доменного имени. Отрицательным результатом считается
+     * отсутствие имени, имя, совпадающее с текстовым представлением
+     * IP-адреса, и имя, длина которого больше
+     * {@link Constants#MAX_HOSTNAME_LENGTH}.
+     * @param address IP-адрес.
+     * @return доменное имя или null.
+     */
+    private String lookup(InetAddress address) {
+        long startTime = System.nanoTime();
+        String hostname = null;
+        try {
+            hostname = lookup.apply(address);
+        } catch (RuntimeException e) {
+            hostname = null;
+        }
+        long duration = System.nanoTime() - startTime;
+        lookupCount.getAndIncrement();
+        lookupTime.getAndAdd(duration);
+        maxLookupTime.accumulateAndGet(duration, Math::max);
+        if (hostname == null || hostname.isEmpty() ||
+                hostname.equals(address.getHostAddress()) ||
+                hostname.length() > Constants.MAX_HOSTNAME_LENGTH) {
+            negativeCount.getAndIncrement();
+            hostname = null;
+        }
+        return hostname;
+    }
+
+    /**
+     * Сохранение результата в кэше и передача его ожидающим
+     * обработчикам.
+     */
+    private void complete(InetAddress address,
+            CompletableFuture<String> future, String hostname) {
+        long ttl = hostname != null ? positiveTtl : negativeTtl;
+        synchronized (cache) {
+            cache.put(address, new CacheEntry(hostname,
+                    clock.getAsLong() + ttl));
+        }
+        inFlightMap.remove(address, future);
+        future.complete(hostname);
+    }
+
+    /** Очистка кэша. */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Получение количества записей в кэше.
+     * @return количество записей в кэше.
+     */
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Получение количества ответов, полученных из кэша.
+     * @return количество ответов, полученных из кэша.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Получение количества запросов, не найденных в кэше.
+     * @return количество запросов, не найденных в кэше.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Получение количества запросов, объединенных с выполняющимися.
+     * @return количество объединенных запросов.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Получение количества запросов, отвергнутых из-за переполнения
+     * очереди.
+     * @return количество отвергнутых запросов.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Получение количества выполненных поисков.
+     * @return количество выполненных поисков.
+     */
+    public long getLookupCount() {
+        return lookupCount.get();
+    }
+
+    /**
+     * Получение количества отрицательных результатов поиска.
+     * @return количество отрицательных результатов поиска.
+     */
+    public long getNegativeCount() {
+        return negativeCount.get();
+    }
+
+    /**
+     * Получение средней длительности (ms) поиска.
+     * @return средняя длительность (ms) поиска.
+     */
+    public long getAvgLookupTime() {
+        long count = lookupCount.get();
+        return count == 0 ? 0 : lookupTime.get() / count / 1000000;
+    }
+
+    /**
+     * Получение наибольшей длительности (ms) поиска.
+     * @return наибольшая длительность (ms) поиска.
+     */
+    public long getMaxLookupTime() {
+        return maxLookupTime.get() / 1000000;
+    }
+
+    /**
+     * Получение строки с показателями работы для диагностических
+     * сообщений.
+     * @return строка с показателями работы.
+     */
+    public String getMonitoringString() {
+        return " resolverHits:" + getHitCount() +
+                " resolverMisses:" + getMissCount() +
+                " resolverCoalesced:" + getCoalescedCount() +
+                " resolverRejected:" + getRejectedCount() +
+                " resolverNegative:" + getNegativeCount() +
+                " resolverAvgLookup (ms):" + getAvgLookupTime() +
+                " resolverMaxLookup (ms):" + getMaxLookupTime() +
+                " resolverCacheSize:" + getCacheSize();
+    }
+}
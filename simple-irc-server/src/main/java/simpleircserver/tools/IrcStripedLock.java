@@ -0,0 +1,153 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcStripedLock
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Класс, реализующий набор блокировок, распределенных по ключам
+ * (lock striping). Каждому ключу (имени канала или клиента)
+ * соответствует одна из {@link #size} блокировок, ключи сравниваются
+ * без учета регистра символов. Разные ключи могут соответствовать одной
+ * и той же блокировке.
+ *
+ * <P>Для исключения взаимных блокировок, блокировки, соответствующие
+ * набору ключей, захватываются в порядке возрастания их номеров.
+ * Например:
+ * <PRE>
+ * int[] stripes = stripedLock.lock(keyList);
+ * try {
+ *      действия
+ * } finally {
+ *      stripedLock.unlock(stripes);
+ * }
+ * </PRE>
+ *
+ * @version 0.5.4 2015-11-25
+ * @version 0.5.4 2015-11-27 All locks can be taken at once for commands changing several channels.
+ * @author  Nikolay Kirdin
+ */
+public class IrcStripedLock {
+
+    /** Количество блокировок. */
+    private final int size;
+
+    /** Массив блокировок. */
+    private final ReentrantLock[] lockArray;
+
+    /** Упорядоченный массив номеров всех блокировок. */
+    private final int[] allStripes;
+
+    /**
+     * Конструктор. Параметр конструктора должен быть положительным
+     * числом, в противном случае будет сгенерировано исключение
+     * {@link IllegalArgumentException}.
+     * @param size количество блокировок.
+     * @throws IllegalArgumentException в том случае, если size меньше 1.
+     */
+    public IrcStripedLock(int size) throws IllegalArgumentException {
+        if (size < 1) {
+            throw new IllegalArgumentException(
+                    "IrcStripedLock. size out of range: " + size);
+        }
+        this.size = size;
+        lockArray = new ReentrantLock[size];
+        allStripes = new int[size];
+        for (int i = 0; i < size; i++) {
+            lockArray[i] = new ReentrantLock();
+            allStripes[i] = i;
+        }
+    }
+
+    /**
+     * Получение номера блокировки, соответствующей ключу.
+     * @param key ключ.
+     * @return номер блокировки.
+     */
+    public int getStripe(String key) {
+        int hash = key.toLowerCase(Locale.ENGLISH).hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % size;
+    }
+
+    /**
+     * Захват блокировок, соответствующих набору ключей. Блокировки
+     * захватываются в порядке возрастания их номеров, каждая блокировка
+     * захватывается один раз.
+     * @param keyCollection набор ключей.
+     * @return упорядоченный массив номеров захваченных блокировок.
+     */
+    public int[] lock(Collection<String> keyCollection) {
+        int[] stripes = new int[keyCollection.size()];
+        int number = 0;
+        for (String key : keyCollection) {
+            stripes[number++] = getStripe(key);
+        }
+        Arrays.sort(stripes);
+        int distinct = 0;
+        for (int i = 0; i < number; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+        int[] result = Arrays.copyOf(stripes, distinct);
+        for (int stripe : result) {
+            lockArray[stripe].lock();
+        }
+        return result;
+    }
+
+    /**
+     * Захват всех блокировок в порядке возрастания их номеров. Метод 
+     * используется для действий, набор ключей которых заранее 
+     * неизвестен (например, отключение сервера командой SQUIT).
+     * @return упорядоченный массив номеров захваченных блокировок.
+     */
+    public int[] lockAll() {
+        for (int stripe : allStripes) {
+            lockArray[stripe].lock();
+        }
+        return allStripes;
+    }
+
+    /**
+     * Освобождение блокировок, захваченных методом {@link #lock} или 
+     * {@link #lockAll}.
+     * @param stripes массив номеров захваченных блокировок.
+     */
+    public void unlock(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            lockArray[stripes[i]].unlock();
+        }
+    }
+
+    /**
+     * Получение количества блокировок.
+     * @return количество блокировок.
+     */
+    public int getSize() {
+        return size;
+    }
+}
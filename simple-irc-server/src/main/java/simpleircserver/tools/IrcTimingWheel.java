@@ -0,0 +1,335 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcTimingWheel
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Иерархическое колесо таймеров (hierarchical timing wheel).
+ *
+ * <P>Время разделено на такты длительностью {@link #getTickDuration()}.
+ * Колесо состоит из {@link #LEVELS} уровней по {@link #SLOTS} ячеек.
+ * Ячейка уровня 0 соответствует одному такту, ячейка уровня n -
+ * {@link #SLOTS} в степени n тактов. Таймер помещается в ячейку того
+ * уровня, который соответствует времени, оставшемуся до его
+ * срабатывания. Когда счетчик тактов уровня проходит полный круг,
+ * таймеры очередной ячейки следующего уровня перераспределяются по
+ * ячейкам нижних уровней. Поэтому затраты на обработку каждого такта
+ * пропорциональны количеству срабатывающих (и перераспределяемых)
+ * таймеров, а не общему количеству таймеров. Таймеры, срок которых
+ * превышает емкость колеса, хранятся в последнем уровне и
+ * перераспределяются повторно.
+ *
+ * <P>Таймеры срабатывают не раньше заданного времени и не позже, чем
+ * через один такт после него. Отмененные таймеры удаляются из колеса
+ * при очередном обращении к их ячейке.
+ *
+ * <P>Задавать и отменять таймеры могут несколько потоков одновременно,
+ * метод {@link #advance(long)} должен вызываться одним потоком.
+ *
+ * @param <T> тип объектов, связанных с таймерами.
+ *
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcTimingWheel<T> {
+
+    /**
+     * Таймер.
+     * @param <T> тип объекта, связанного с таймером.
+     */
+    public static class Timer<T> {
+
+        /** Объект, связанный с таймером. */
+        private final T item;
+
+        /** Время (ms) срабатывания. */
+        private final long deadline;
+
+        /** Признак отмены таймера. */
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        /**
+         * Конструктор.
+         * @param item объект, связанный с таймером.
+         * @param deadline время (ms) срабатывания.
+         */
+        private Timer(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Получение объекта, связанного с таймером.
+         * @return объект, связанный с таймером.
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Получение времени срабатывания.
+         * @return время (ms) срабатывания.
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Отмена таймера.
+         * @return true - таймер отменен этим вызовом.
+         */
+        public boolean cancel() {
+            return cancelled.compareAndSet(false, true);
+        }
+
+        /**
+         * Проверка отмены таймера.
+         * @return true - таймер отменен.
+         */
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    /** Количество двоичных разрядов номера ячейки. */
+    private static final int SLOT_BITS = 6;
+
+    /** Количество ячеек уровня. */
+    public static final int SLOTS = 1 << SLOT_BITS;
+
+    /** Количество уровней. */
+    public static final int LEVELS = 4;
+
+    /** Маска номера ячейки. */
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /** Емкость колеса (тактов). */
+    private static final long CAPACITY = 1L << (SLOT_BITS * LEVELS);
+
+    /** Длительность (ms) такта. */
+    private final long tickDuration;
+
+    /** Время (ms) начала отсчета тактов. */
+    private final long startTime;
+
+    /** Ячейки колеса. */
+    private final List<List<Timer<T>>> wheel =
+            new ArrayList<List<Timer<T>>>(LEVELS * SLOTS);
+
+    /** Новые таймеры, еще не помещенные в колесо. */
+    private final ConcurrentLinkedQueue<Timer<T>> pendingQueue =
+            new ConcurrentLinkedQueue<Timer<T>>();
+
+    /** Номер последнего обработанного такта. */
+    private long currentTick;
+
+    /** Количество таймеров (включая еще не удаленные отмененные). */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** Количество сработавших таймеров. */
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * Конструктор.
+     * @param tickDuration длительность (ms) такта.
+     * @param startTime время (ms) начала отсчета тактов.
+     * @throws IllegalArgumentException в том случае, если длительность
+     * такта меньше 1.
+     */
+    public IrcTimingWheel(long tickDuration, long startTime)
+            throws IllegalArgumentException {
+        if (tickDuration < 1) {
+            throw new IllegalArgumentException(
+                    "IrcTimingWheel. Parameter out of range: " +
+                    tickDuration);
+        }
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            wheel.add(new ArrayList<Timer<T>>());
+        }
+    }
+
+    /**
+     * Получение длительности такта.
+     * @return длительность (ms) такта.
+     */
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * Задание таймера.
+     * @param item объект, связанный с таймером.
+     * @param deadline время (ms) срабатывания.
+     * @return таймер.
+     */
+    public Timer<T> schedule(T item, long deadline) {
+        Timer<T> timer = new Timer<T>(item, deadline);
+        size.getAndIncrement();
+        pendingQueue.offer(timer);
+        return timer;
+    }
+
+    /**
+     * Продвижение колеса до заданного времени и получение сработавших
+     * таймеров. Отмененные таймеры не возвращаются.
+     * @param currentTime текущее время (ms).
+     * @return список сработавших таймеров.
+     */
+    public List<Timer<T>> advance(long currentTime) {
+        List<Timer<T>> expiredList = new ArrayList<Timer<T>>();
+        Timer<T> timer = null;
+        while ((timer = pendingQueue.poll()) != null) {
+            insert(timer, expiredList);
+        }
+        long targetTick = (currentTime - startTime) / tickDuration;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, expiredList);
+                }
+            }
+            List<Timer<T>> slot = wheel.get((int) (currentTick & SLOT_MASK));
+            for (Timer<T> expiredTimer : slot) {
+                expire(expiredTimer, expiredList);
+            }
+            slot.clear();
+        }
+        return expiredList;
+    }
+
+    /**
+     * Перераспределение таймеров очередной ячейки уровня по ячейкам
+     * нижних уровней.
+     * @param level уровень.
+     * @param expiredList список сработавших таймеров.
+     */
+    private void cascade(int level, List<Timer<T>> expiredList) {
+        List<Timer<T>> slot = wheel.get(level * SLOTS +
+                (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+        if (slot.isEmpty()) {
+            return;
+        }
+        List<Timer<T>> timerList = new ArrayList<Timer<T>>(slot);
+        slot.clear();
+        for (Timer<T> timer : timerList) {
+            insert(timer, expiredList);
+        }
+    }
+
+    /**
+     * Помещение таймера в ячейку колеса или в список сработавших
+     * таймеров.
+     * @param timer таймер.
+     * @param expiredList список сработавших таймеров.
+     */
+    private void insert(Timer<T> timer, List<Timer<T>> expiredList) {
+        if (timer.isCancelled()) {
+            size.getAndDecrement();
+            return;
+        }
+        long deadlineTick = (timer.deadline - startTime + tickDuration - 1)
+                / tickDuration;
+        long delta = deadlineTick - currentTick;
+        if (delta <= 0) {
+            expire(timer, expiredList);
+            return;
+        }
+        if (delta >= CAPACITY) {
+            deadlineTick = currentTick + CAPACITY - 1;
+            delta = CAPACITY - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        wheel.get(level * SLOTS + (int) ((deadlineTick >>>
+                (SLOT_BITS * level)) & SLOT_MASK)).add(timer);
+    }
+
+    /**
+     * Учет срабатывания таймера.
+     * @param timer таймер.
+     * @param expiredList список сработавших таймеров.
+     */
+    private void expire(Timer<T> timer, List<Timer<T>> expiredList) {
+        size.getAndDecrement();
+        if (!timer.isCancelled()) {
+            expiredCount.getAndIncrement();
+            expiredList.add(timer);
+        }
+    }
+
+    /**
+     * Получение количества таймеров.
+     * @return количество таймеров (включая еще не удаленные
+     * отмененные).
+     */
+    public int getSize() {
+        return Math.max(0, size.get());
+    }
+
+    /**
+     * Получение количества сработавших таймеров.
+     * @return количество сработавших таймеров.
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Получение строки с показателями колеса для диагностических
+     * сообщений.
+     * @param name наименование колеса.
+     * @return строка с показателями колеса.
+     */
+    public String getMonitoringString(String name) {
+        return " " + name + ":" + getSize() + " " + name + "Expired:" +
+                getExpiredCount();
+    }
+
+    /**
+     * Добавление к задержке случайной величины (jitter), которая
+     * распределена равномерно в диапазоне от 0 до заданного процента
+     * задержки. Используется для того, чтобы таймеры, заданные
+     * одновременно, срабатывали в разное время.
+     * @param delay задержка (ms).
+     * @param percent максимальная величина в процентах от задержки.
+     * @return задержка (ms) со случайной добавкой.
+     */
+    public static long addJitter(long delay, int percent) {
+        long bound = delay / 100 * percent + delay % 100 * percent / 100;
+        if (bound <= 0) {
+            return delay;
+        }
+        return delay + ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
@@ -0,0 +1,142 @@
+package simpleircserver.tools;
+/*
+ *
+ * IrcTokenBucket
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+/**
+ * Класс, реализующий ограничение частоты событий по алгоритму "ведро
+ * с жетонами" (token bucket).
+ *
+ * <P>Ведро вмещает не более {@link #capacity} жетонов. Один жетон
+ * добавляется в ведро через каждые {@link #period} миллисекунд. Событие
+ * разрешается, если в ведре есть хотя бы один жетон, при этом один
+ * жетон извлекается из ведра. Т.о. средняя частота событий не
+ * превышает одного события за период {@link #period}, при этом
+ * допускается пачка из {@link #capacity} событий подряд.
+ * Например:
+ * <PRE>
+ * IrcTokenBucket tokenBucket = new IrcTokenBucket(10, 2000);
+ * ...
+ * if (tokenBucket.tryConsume(System.currentTimeMillis())) {
+ *      действия
+ * }
+ * </PRE>
+ * В момент создания ведро заполнено.
+ *
+ * @version 0.5.4 2015-11-24
+ * @author  Nikolay Kirdin
+ */
+public class IrcTokenBucket {
+
+    /** Максимальное количество жетонов в ведре. */
+    private final int capacity;
+
+    /** Период (ms) добавления одного жетона. */
+    private final long period;
+
+    /** Количество жетонов в ведре. */
+    private int tokens;
+
+    /** Время последнего добавления жетонов. */
+    private long refillTime;
+
+    /**
+     * Конструктор. Параметры конструктора должны быть положительными
+     * числами, в противном случае будет сгенерировано исключение
+     * {@link IllegalArgumentException}.
+     * @param capacity максимальное количество жетонов в ведре.
+     * @param period период (ms) добавления одного жетона.
+     * @throws IllegalArgumentException в том случае, если capacity или
+     * period меньше 1.
+     */
+    public IrcTokenBucket(int capacity, long period)
+            throws IllegalArgumentException {
+        if (capacity < 1 || period < 1) {
+            throw new IllegalArgumentException(
+                    "IrcTokenBucket. Parameter out of range: " +
+                    capacity + " " + period);
+        }
+        this.capacity = capacity;
+        this.period = period;
+        this.tokens = capacity;
+        this.refillTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Добавление в ведро жетонов, накопившихся к моменту currentTime.
+     * @param currentTime текущее время (ms).
+     */
+    private void refill(long currentTime) {
+        long elapsed = currentTime - refillTime;
+        if (elapsed < period) {
+            return;
+        }
+        long newTokens = elapsed / period;
+        if (tokens + newTokens >= capacity) {
+            tokens = capacity;
+            refillTime = currentTime;
+        } else {
+            tokens += (int) newTokens;
+            refillTime += newTokens * period;
+        }
+    }
+
+    /**
+     * Извлечение одного жетона из ведра.
+     * @param currentTime текущее время (ms).
+     * @return true - жетон извлечен, событие разрешено, false - ведро
+     * пустое.
+     */
+    public synchronized boolean tryConsume(long currentTime) {
+        refill(currentTime);
+        boolean result = tokens > 0;
+        if (result) {
+            tokens--;
+        }
+        return result;
+    }
+
+    /**
+     * Получение количества жетонов в ведре.
+     * @param currentTime текущее время (ms).
+     * @return количество жетонов в ведре.
+     */
+    public synchronized int getTokens(long currentTime) {
+        refill(currentTime);
+        return tokens;
+    }
+
+    /**
+     * Получение максимального количества жетонов в ведре.
+     * @return максимальное количество жетонов в ведре.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Получение периода добавления одного жетона.
+     * @return период (ms) добавления одного жетона.
+     */
+    public long getPeriod() {
+        return period;
+    }
+}
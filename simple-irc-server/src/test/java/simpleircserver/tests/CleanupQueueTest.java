@@ -0,0 +1,100 @@
+/*
+ *
+ * CleanupQueueTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import simpleircserver.base.Globals;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.talker.IrcTalker;
+import simpleircserver.talker.IrcTalkerState;
+import simpleircserver.talker.user.User;
+
+/**
+ * CleanupQueueTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class CleanupQueueTest {
+
+    @Test
+    public void cleanupQueueTest() {
+        System.out.println("--CleanupQueue-----------------------------------");
+        Queue<Connection> savedConnectionQueue =
+                Globals.connectionCleanupQueue.get();
+        Queue<IrcTalker> savedIrcTalkerQueue =
+                Globals.ircTalkerCleanupQueue.get();
+        Logger savedLogger = Globals.logger.get();
+        try {
+            Globals.logger.set(Logger.getLogger("Server"));
+            Queue<Connection> connectionQueue =
+                    new ConcurrentLinkedQueue<Connection>();
+            Queue<IrcTalker> ircTalkerQueue =
+                    new ConcurrentLinkedQueue<IrcTalker>();
+            Globals.connectionCleanupQueue.set(connectionQueue);
+            Globals.ircTalkerCleanupQueue.set(ircTalkerQueue);
+
+            Connection connection = Connection.create();
+            assertNotNull("Connection is created", connection);
+            connection.setConnectionState(ConnectionState.OPERATIONAL);
+            assertTrue("Operational connection is not queued",
+                    connectionQueue.isEmpty());
+            connection.setBroken();
+            connection.close();
+            connection.setBroken();
+            assertEquals("Broken connection is queued once", 1,
+                    connectionQueue.size());
+            assertTrue("Queued connection", connection ==
+                    connectionQueue.poll());
+            connection.setConnectionState(ConnectionState.CLOSED);
+            assertTrue("Closed connection is not queued",
+                    connectionQueue.isEmpty());
+
+            User user = User.create();
+            assertNotNull("User is created", user);
+            user.setState(IrcTalkerState.REGISTERING);
+            assertTrue("Registering user is not queued",
+                    ircTalkerQueue.isEmpty());
+            user.close();
+            user.setBroken();
+            user.close();
+            assertEquals("Closing user is queued once", 1,
+                    ircTalkerQueue.size());
+            assertTrue("Queued user", user == ircTalkerQueue.poll());
+        } finally {
+            Globals.connectionCleanupQueue.set(savedConnectionQueue);
+            Globals.ircTalkerCleanupQueue.set(savedIrcTalkerQueue);
+            Globals.logger.set(savedLogger);
+        }
+        System.out.println("**CleanupQueue*******************************OK**");
+    }
+}
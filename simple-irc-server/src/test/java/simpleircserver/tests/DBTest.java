@@ -0,0 +1,188 @@
+/*
+ *
+ * DBTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.DB;
+import simpleircserver.channel.IrcChannel;
+import simpleircserver.connection.Connection;
+import simpleircserver.parser.Reply;
+import simpleircserver.talker.server.IrcServer;
+import simpleircserver.talker.service.Service;
+import simpleircserver.talker.user.User;
+
+/**
+ * DBTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class DBTest {
+
+    @Test
+    public void dbTest() {
+        System.out.println("--DB---------------------------------------------");
+        DB db = new DB();
+        int maxClients = Constants.HARD_LIMIT + 1000;
+        int maxChannels = 20;
+        db.setLimits(maxClients, maxChannels);
+
+        User[] users = new User[maxClients];
+        Connection[] connections = new Connection[maxClients];
+        for (int i = 0; i < maxClients; i++) {
+            users[i] = User.create();
+            users[i].setNickname("Nick" + i);
+            assertEquals("User is registered", Reply.RPL_OK, db.register(users[i]));
+            connections[i] = Connection.create();
+            assertEquals("Connection is registered", Reply.RPL_OK, db.register(connections[i]));
+        }
+        User extraUser = User.create();
+        extraUser.setNickname("extra");
+        assertEquals("Limit of users", Reply.ERR_FILEERROR, db.register(extraUser));
+        assertEquals("Limit of connections", Reply.ERR_FILEERROR, db.register(Connection.create()));
+        assertEquals("Number of users", maxClients, db.getUserMapSize());
+        assertEquals("Number of connections", maxClients, db.getConnectionListSize());
+
+        assertSame("Case insensitive lookup", users[7], db.getUser("NICK7"));
+        assertTrue("User is registered", db.isRegistered(users[7]));
+        User sameNick = User.create();
+        sameNick.setNickname("nICK7");
+        assertFalse("Other user is not registered", db.isRegistered(sameNick));
+
+        assertEquals("User is unregistered", Reply.RPL_OK, db.unRegister(users[7]));
+        assertNull("User is not found", db.getUser("nick7"));
+        assertEquals("User with the same nickname", Reply.RPL_OK, db.register(sameNick));
+        assertEquals("User is unregistered", Reply.RPL_OK, db.unRegister(users[8]));
+        assertEquals("Nickname in use", Reply.ERR_NICKNAMEINUSE, db.register(users[7]));
+
+        assertEquals("Connection is unregistered", Reply.RPL_OK, db.unRegister(connections[7]));
+        assertFalse("Connection is not registered", db.isRegistered(connections[7]));
+        assertEquals("Connection is not found", Reply.ERR_NOTOK, db.unRegister(connections[7]));
+        assertEquals("Connection is registered", Reply.RPL_OK, db.register(connections[7]));
+        assertEquals("Connection is unregistered", Reply.RPL_OK, db.unRegister(connections[8]));
+        assertEquals("Connection is already registered", Reply.ERR_NOTOK, db.register(connections[7]));
+
+        for (int i = 0; i < maxChannels; i++) {
+            IrcChannel channel = IrcChannel.create("#Channel" + i, "");
+            assertEquals("Channel is registered", Reply.RPL_OK, db.register(channel));
+            assertSame("Case insensitive lookup", channel, db.getChannel("#CHANNEL" + i));
+            assertTrue("Channel is registered", db.isRegistered(channel));
+        }
+        assertEquals("Limit of channels", Reply.ERR_FILEERROR,
+                db.register(IrcChannel.create("#extra", "")));
+
+        db.setLimits(1, 1);
+        db.dropAll();
+        for (int i = 0; i < Constants.MIN_LIMIT; i++) {
+            assertEquals("Lower bound of limit", Reply.RPL_OK, db.register(users[i]));
+        }
+        assertEquals("Limit of users", Reply.ERR_FILEERROR, db.register(extraUser));
+
+        System.out.println("**DB*****************************************OK**");
+    }
+
+    @Test
+    public void dbOrderTest() throws Exception {
+        System.out.println("--DB order---------------------------------------");
+        DB db = new DB();
+        db.setLimits(100, 100);
+        String[] nicknames = {"zed", "Alpha", "mike", "BRAVO", "charlie"};
+        for (String nickname : nicknames) {
+            User user = User.create();
+            user.setNickname(nickname);
+            assertEquals("User is registered", Reply.RPL_OK, db.register(user));
+            assertEquals("Channel is registered", Reply.RPL_OK,
+                    db.register(IrcChannel.create("#" + nickname, "")));
+        }
+        List<String> sortedNicknames = Arrays.asList("Alpha", "BRAVO",
+                "charlie", "mike", "zed");
+        List<String> sortedChannels = Arrays.asList("#Alpha", "#BRAVO",
+                "#charlie", "#mike", "#zed");
+        assertEquals("Users in order of nicknames", sortedNicknames,
+                new ArrayList<String>(db.getUserNicknameSet()));
+        List<String> userList = new ArrayList<String>();
+        for (User user : db.getUserSet()) {
+            userList.add(user.getNickname());
+        }
+        assertEquals("User set in order of nicknames", sortedNicknames,
+                userList);
+        Set<String> iteratedUsers = new HashSet<String>();
+        for (Iterator<User> iterator = db.getUserSetIterator();
+                iterator.hasNext();) {
+            iteratedUsers.add(iterator.next().getNickname());
+        }
+        assertEquals("User iterator covers all users",
+                new HashSet<String>(sortedNicknames), iteratedUsers);
+        assertEquals("Channels in order of names", sortedChannels,
+                new ArrayList<String>(db.getChannelNicknameSet()));
+        List<String> channelList = new ArrayList<String>();
+        for (IrcChannel ch : db.getChannelSet()) {
+            channelList.add(ch.getNickname());
+        }
+        assertEquals("Channel set in order of names", sortedChannels,
+                channelList);
+        Set<String> iteratedChannels = new HashSet<String>();
+        for (Iterator<IrcChannel> iterator = db.getChannelSetIterator();
+                iterator.hasNext();) {
+            iteratedChannels.add(iterator.next().getNickname());
+        }
+        assertEquals("Channel iterator covers all channels",
+                new HashSet<String>(sortedChannels), iteratedChannels);
+
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+        String[] servernames = {"z.example.com", "a.example.com",
+                "m.example.com"};
+        for (String servername : servernames) {
+            IrcServer ircServer = IrcServer.create(localhost, servername, "");
+            assertEquals("Server is registered", Reply.RPL_OK,
+                    db.register(ircServer));
+            Service service = Service.create();
+            service.setNickname("svc" + servername.charAt(0));
+            assertEquals("Service is registered", Reply.RPL_OK,
+                    db.register(service));
+        }
+        assertEquals("Servers in order of registration",
+                Arrays.asList(servernames),
+                new ArrayList<String>(db.getIrcServernameSet()));
+        assertEquals("Services in order of registration",
+                Arrays.asList("svcz", "svca", "svcm"),
+                new ArrayList<String>(db.getServiceNameSet()));
+
+        System.out.println("**DB order***********************************OK**");
+    }
+}
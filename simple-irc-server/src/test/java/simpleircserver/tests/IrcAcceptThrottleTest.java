@@ -0,0 +1,130 @@
+/*
+ *
+ * IrcAcceptThrottleTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import simpleircserver.tools.IrcAcceptThrottle;
+import simpleircserver.tools.IrcAcceptThrottle.Result;
+
+/**
+ * IrcAcceptThrottleTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcAcceptThrottleTest {
+
+    @Test
+    public void ircAcceptThrottleTest() throws Exception {
+        System.out.println("--IrcAcceptThrottle------------------------------");
+        InetAddress address1 = InetAddress.getByName("192.0.2.1");
+        InetAddress address2 = InetAddress.getByName("192.0.2.2");
+        InetAddress address3 = InetAddress.getByName("192.0.2.3");
+        InetAddress otherNetwork = InetAddress.getByName("198.51.100.1");
+        InetAddress ipv6Address1 = InetAddress.getByName("2001:db8:0:1::1");
+        InetAddress ipv6Address2 = InetAddress.getByName("2001:db8:0:1::2");
+        InetAddress ipv6OtherNetwork = InetAddress.getByName("2001:db8:0:2::1");
+
+        assertEquals("Same /24", IrcAcceptThrottle.getNetworkKey(address1),
+                IrcAcceptThrottle.getNetworkKey(address2));
+        assertNotEquals("Other /24", IrcAcceptThrottle.getNetworkKey(address1),
+                IrcAcceptThrottle.getNetworkKey(otherNetwork));
+        assertEquals("Same /64", IrcAcceptThrottle.getNetworkKey(ipv6Address1),
+                IrcAcceptThrottle.getNetworkKey(ipv6Address2));
+        assertNotEquals("Other /64", IrcAcceptThrottle.getNetworkKey(
+                ipv6Address1), IrcAcceptThrottle.getNetworkKey(
+                ipv6OtherNetwork));
+        assertNotEquals("IPv4 and IPv6", IrcAcceptThrottle.getNetworkKey(
+                InetAddress.getByName("0.0.0.1")),
+                IrcAcceptThrottle.getNetworkKey(
+                InetAddress.getByName("::1")));
+
+        int addressBurst = 2;
+        long addressPeriod = 1000;
+        int networkBurst = 3;
+        long networkPeriod = 500;
+        IrcAcceptThrottle throttle = new IrcAcceptThrottle(addressBurst,
+                addressPeriod, networkBurst, networkPeriod, 100);
+        long currentTime = System.currentTimeMillis();
+
+        for (int i = 0; i < addressBurst; i++) {
+            assertEquals("Burst from address", Result.ACCEPTED,
+                    throttle.tryAccept(address1, currentTime));
+        }
+        assertEquals("Address limit", Result.ADDRESS_THROTTLED,
+                throttle.tryAccept(address1, currentTime));
+        assertEquals("Other address", Result.ACCEPTED,
+                throttle.tryAccept(address2, currentTime));
+        assertEquals("Network limit", Result.NETWORK_THROTTLED,
+                throttle.tryAccept(address3, currentTime));
+        assertEquals("Other network", Result.ACCEPTED,
+                throttle.tryAccept(otherNetwork, currentTime));
+
+        currentTime += networkPeriod;
+        assertEquals("Address token is not added", Result.ADDRESS_THROTTLED,
+                throttle.tryAccept(address1, currentTime));
+        assertEquals("Network token is added", Result.ACCEPTED,
+                throttle.tryAccept(address3, currentTime));
+        currentTime += addressPeriod;
+        assertEquals("Address token is added", Result.ACCEPTED,
+                throttle.tryAccept(address1, currentTime));
+
+        assertEquals("Accepted count", 6, throttle.getAcceptedCount());
+        assertEquals("Address throttled count", 2,
+                throttle.getAddressThrottledCount());
+        assertEquals("Network throttled count", 1,
+                throttle.getNetworkThrottledCount());
+
+        for (int i = 0; i < networkBurst; i++) {
+            assertEquals("Burst from IPv6 network", Result.ACCEPTED,
+                    throttle.tryAccept(i % 2 == 0 ? ipv6Address1 :
+                    ipv6Address2, currentTime));
+        }
+        assertEquals("IPv6 network limit", Result.NETWORK_THROTTLED,
+                throttle.tryAccept(ipv6Address2, currentTime));
+        assertEquals("Other IPv6 network", Result.ACCEPTED,
+                throttle.tryAccept(ipv6OtherNetwork, currentTime));
+
+        IrcAcceptThrottle smallThrottle = new IrcAcceptThrottle(1, 100000,
+                1000, 1, 10);
+        currentTime = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Different addresses", Result.ACCEPTED,
+                    smallThrottle.tryAccept(InetAddress.getByName(
+                    "10.0." + i + ".1"), currentTime));
+        }
+        assertTrue("Size of tables is limited",
+                smallThrottle.getTableSize() <= 20);
+        assertEquals("Eldest address is removed", Result.ACCEPTED,
+                smallThrottle.tryAccept(InetAddress.getByName("10.0.0.1"),
+                currentTime));
+
+        System.out.println("**IrcAcceptThrottle**************************OK**");
+    }
+}
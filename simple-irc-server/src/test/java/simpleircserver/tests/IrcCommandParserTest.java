@@ -0,0 +1,93 @@
+/*
+ *
+ * IrcCommandParserTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import simpleircserver.base.DB;
+import simpleircserver.base.Globals;
+import simpleircserver.parser.IrcCommandParser;
+
+/**
+ * IrcCommandParserTest
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Reply to a line with leading whitespace.
+ * @author  Nikolay Kirdin
+ */
+public class IrcCommandParserTest extends IrcCommandTest {
+
+    @Test
+    public void ircCommandParserTest() {
+        System.out.println("--IrcCommandParser-------------------------------");
+        IrcCommandParser icp = new IrcCommandParser();
+
+        DB savedDb = Globals.db.get();
+        Globals.db.set(db);
+        dropAll();
+        userInit();
+
+        assertEquals("All commands are in the dispatch table", 45, IrcCommandParser.getCommandStats().size());
+
+        icp.setRequestor(requestor[0]);
+        String prefix = Globals.thisIrcServer.get().getHostname();
+        long counter = IrcCommandParser.getCommandStats().get("ison").getCount();
+        for (String ircCommand : new String[] {"ISON", "ison", "IsOn"}) {
+            icp.setParsingString(ircCommand + " " + userNickname[1]);
+            icp.ircParse();
+            String reply = icp.getRequestor().getOutputQueue().poll().getReport();
+            //303    RPL_ISON ":*1<nick> *( " " <nick> )"
+            assertEquals("Command is dispatched: " + ircCommand,
+                    ":" + prefix + " 303 " + userNickname[0] + " :" + userNickname[1], reply);
+        }
+        assertEquals("Statistics is collected", counter + 3,
+                IrcCommandParser.getCommandStats().get("ison").getCount());
+
+        icp.setParsingString("UNKNOWN parameter");
+        icp.ircParse();
+        String reply = icp.getRequestor().getOutputQueue().poll().getReport();
+        //421    ERR_UNKNOWNCOMMAND "<command> :Unknown command"
+        assertEquals("Unknown command",
+                ":" + prefix + " 421 " + userNickname[0] + " UNKNOWN :Unknown command", reply);
+
+        for (String line : new String[] {" ISON " + userNickname[1], "\tISON " + userNickname[1], "  ", " :trailing"}) {
+            icp.setParsingString(line);
+            icp.ircParse();
+            reply = icp.getRequestor().getOutputQueue().poll().getReport();
+            //461    ERR_NEEDMOREPARAMS "<command> :Not enough parameters"
+            assertEquals("Leading whitespace, as with the regex split: [" + line + "]",
+                    ":" + prefix + " 461 " + userNickname[0] + " null :Not enough parameters", reply);
+            assertTrue("One reply", icp.getRequestor().getOutputQueue().isEmpty());
+        }
+
+        icp.setParsingString("001 " + userNickname[0] + " :Welcome");
+        icp.ircParse();
+        assertTrue("Numeric reply is ignored", icp.getRequestor().getOutputQueue().isEmpty());
+
+        dropAll();
+        Globals.db.set(savedDb);
+        System.out.println("**IrcCommandParser***************************OK**");
+    }
+}
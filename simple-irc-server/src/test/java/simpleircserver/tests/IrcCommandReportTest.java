@@ -0,0 +1,88 @@
+/*
+ *
+ * IrcCommandReportTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import simpleircserver.channel.IrcChannel;
+import simpleircserver.parser.IrcCommandReport;
+
+/**
+ * IrcCommandReportTest
+ * @version 0.5.4 2015-11-26
+ * @author  Nikolay Kirdin
+ */
+public class IrcCommandReportTest extends IrcCommandTest {
+
+    @Test
+    public void ircCommandReportTest() {
+        System.out.println("--IrcCommandReport-------------------------------");
+
+        Charset utf8 = Charset.forName("UTF-8");
+        Charset koi8r = Charset.forName("KOI8-R");
+        String message = ":nick PRIVMSG #channel :\u043f\u0440\u0438\u0432\u0435\u0442";
+        IrcCommandReport ircCommandReport = new IrcCommandReport(message, null, null);
+
+        ByteBuffer encoded1 = ircCommandReport.getEncodedReport(utf8);
+        ByteBuffer encoded2 = ircCommandReport.getEncodedReport(utf8);
+        assertTrue("Read only buffer", encoded1.isReadOnly());
+        assertEquals("UTF-8 encoding", utf8.encode(message + "\r\n"), encoded1);
+        encoded1.get(new byte[encoded1.remaining()]);
+        assertEquals("Buffers have own positions", utf8.encode(message + "\r\n"), encoded2);
+        assertEquals("KOI8-R encoding", koi8r.encode(message + "\r\n"),
+                ircCommandReport.getEncodedReport(koi8r));
+
+        ircCommandReport.setReport("PING");
+        assertEquals("Encoding is renewed", utf8.encode("PING\r\n"),
+                ircCommandReport.getEncodedReport(utf8));
+
+        dropAll();
+        userInit();
+        IrcChannel ircChannel = IrcChannel.create(channelName[0], "Topic");
+        db.register(ircChannel);
+        for (int i = 0; i < requestor.length; i++) {
+            ircChannel.add(requestor[i], null);
+            requestor[i].getOutputQueue().clear();
+        }
+
+        ircChannel.send(requestor[0], "PRIVMSG " + channelName[0] + " :Hello");
+        assertTrue("Sender does not receive message", requestor[0].getOutputQueue().isEmpty());
+        IrcCommandReport sharedReport = requestor[1].getOutputQueue().poll();
+        assertEquals("Prefix is added", ":" + userNickname[0] + " PRIVMSG " + channelName[0] + " :Hello",
+                sharedReport.getReport());
+        for (int i = 2; i < requestor.length; i++) {
+            assertSame("One message object for all members", sharedReport,
+                    requestor[i].getOutputQueue().poll());
+        }
+        dropAll();
+
+        System.out.println("**IrcCommandReport***************************OK**");
+    }
+}
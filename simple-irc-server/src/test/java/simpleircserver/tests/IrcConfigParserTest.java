@@ -41,6 +41,8 @@ import simpleircserver.base.Constants;
 import simpleircserver.base.DB;
 import simpleircserver.base.Globals;
 import simpleircserver.config.IrcConfigParser;
+import simpleircserver.config.IrcConnectionBalancing;
+import simpleircserver.config.IrcIoEngine;
 import simpleircserver.config.IrcTranscriptConfig;
 
 /**
@@ -84,12 +86,13 @@ public class IrcConfigParserTest {
                             "</ADMIN>",
                             "<SERVER debuglevel=\"" + debugLevel 
                                 + "\" timezone=\"" + tzString 
-                                + "\" motd=\"" + motdFilename +
+                                + "\" motd=\"" + motdFilename 
+                                + "\" maxclients=\"50000\" maxchannels=\"25000\" metricsport=\"9105" +
                             "\">",
                             "</SERVER>",
                             "<INTERFACE" + " iface=\"" + ipAddr + "\"" + 
                             " port=\"" + serverPort + "\" charset=\"" + 
-                            chString + "\">",
+                            chString + "\"" + " engine=\"nio\" iothreads=\"2\" balancing=\"least_loaded\" inputqueue=\"32\" inputbudget=\"4\">",
                             "</INTERFACE>",
                             "<TRANSCRIPT transcript=\"" + transcript 
                             + "\" rotate=\"" + rotate +
@@ -144,11 +147,19 @@ public class IrcConfigParserTest {
         assertEquals("DebugLevel", debugLevel, db.getIrcServerConfig().getDebugLevel());     
         assertEquals("timezone", timeZone, db.getIrcServerConfig().getTimeZone());
         assertEquals("motdFilename", motdFilename, db.getIrcServerConfig().getMotdFilename());
+        assertEquals("maxclients", 50000, db.getIrcServerConfig().getMaxClients());
+        assertEquals("maxchannels", 25000, db.getIrcServerConfig().getMaxChannels());
+        assertEquals("metricsport", 9105, db.getIrcServerConfig().getMetricsPort());
         
         assertNotNull("IrcInterfaceConfig defined", db.getIrcInterfaceConfig());
         assertEquals("InetAddress", ipAddr, db.getIrcInterfaceConfig().getInetAddress().getHostAddress()); 
         assertEquals("port", serverPort, db.getIrcInterfaceConfig().getPort());        
         assertEquals("charset", charset, db.getIrcInterfaceConfig().getCharset());
+        assertEquals("engine", IrcIoEngine.NIO, db.getIrcInterfaceConfig().getIoEngine());
+        assertEquals("iothreads", 2, db.getIrcInterfaceConfig().getIoThreads());
+        assertEquals("balancing", IrcConnectionBalancing.LEAST_LOADED, db.getIrcInterfaceConfig().getConnectionBalancing());
+        assertEquals("inputqueue", 32, db.getIrcInterfaceConfig().getInputQueueSize());
+        assertEquals("inputbudget", 4, db.getIrcInterfaceConfig().getInputBudget());
         
         assertNotNull("IrcTranscriptConfig defined", Globals.ircTranscriptConfig.get());
         assertEquals("transcript", transcript, Globals.ircTranscriptConfig.get().getTranscript());
@@ -0,0 +1,116 @@
+/*
+ *
+ * IrcHistogramTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import simpleircserver.tools.IrcHistogram;
+
+/**
+ * IrcHistogramTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcHistogramTest {
+
+    @Test
+    public void ircHistogramTest() throws InterruptedException {
+        System.out.println("--IrcHistogram-----------------------------------");
+        IrcHistogram histogram = new IrcHistogram();
+        assertEquals("Empty histogram", 0, histogram.getCount());
+        assertEquals("Empty histogram", 0, histogram.getMean());
+        assertEquals("Empty histogram", 0, histogram.getPercentile(99));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals("Count", 100, histogram.getCount());
+        assertEquals("Mean", 50, histogram.getMean());
+        assertEquals("Max", 100, histogram.getMax());
+        assertEquals("Median is in 50-51", 51, histogram.getPercentile(50));
+        assertEquals("P95 is in 92-95", 95, histogram.getPercentile(95));
+        assertEquals("P99 is in 96-99", 99, histogram.getPercentile(99));
+        assertEquals("P100 is limited by max", 100, histogram.getPercentile(100));
+        assertEquals("P1", 1, histogram.getPercentile(1));
+        long[] percentiles = histogram.getPercentiles(50, 95, 99);
+        assertEquals("Percentiles", 51, percentiles[0]);
+        assertEquals("Percentiles", 95, percentiles[1]);
+        assertEquals("Percentiles", 99, percentiles[2]);
+
+        IrcHistogram errorHistogram = new IrcHistogram();
+        for (long value = 1; value < 1000000000000L; value = value * 3 + 1) {
+            errorHistogram.reset();
+            errorHistogram.record(value);
+            errorHistogram.record(Long.MAX_VALUE / 2);
+            long estimate = errorHistogram.getPercentile(50);
+            assertTrue("Relative error " + value + " " + estimate,
+                    estimate >= value && estimate - value <=
+                    value / IrcHistogram.SUB_BUCKET_NUMBER);
+        }
+
+        histogram.record(-5);
+        assertEquals("Negative value is 0", 0, histogram.getPercentile(0));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals("Max", Long.MAX_VALUE, histogram.getMax());
+        assertTrue("Monitoring string", histogram.getMonitoringString("t")
+                .startsWith(" tCount:102 "));
+        assertTrue("Monitoring string", histogram.getMonitoringString("t")
+                .contains(" tP95:"));
+
+        histogram.reset();
+        assertEquals("Reset", 0, histogram.getCount());
+        assertEquals("Reset", 0, histogram.getMax());
+
+        int threadNumber = 4;
+        final int valueNumber = 10000;
+        Thread[] threads = new Thread[threadNumber];
+        for (int i = 0; i < threadNumber; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < valueNumber; j++) {
+                    histogram.record(j % 1000);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("Concurrent recording", threadNumber * valueNumber,
+                histogram.getCount());
+        assertEquals("Concurrent recording", 999, histogram.getMax());
+        assertEquals("Concurrent recording", 499, histogram.getMean());
+
+        Thread thread = new Thread(() -> histogram.record(1000));
+        thread.start();
+        thread.join();
+        assertEquals("Recorders of the terminated threads are kept",
+                threadNumber * valueNumber + 1, histogram.getCount());
+        assertEquals("Recorders of the terminated threads are kept", 1000,
+                histogram.getMax());
+
+        System.out.println("**IrcHistogram*******************************OK**");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ * IrcLatencyTracerTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import simpleircserver.base.Globals;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.parser.IrcIncomingMessage;
+import simpleircserver.tools.IrcLatencyTracer;
+import simpleircserver.tools.IrcLatencyTracer.Stage;
+
+/**
+ * IrcLatencyTracerTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcLatencyTracerTest {
+
+    @Test
+    public void ircLatencyTracerTest() {
+        System.out.println("--IrcLatencyTracer-------------------------------");
+        final List<String> traceList = new ArrayList<String>();
+        Logger traceLogger = Logger.getAnonymousLogger();
+        traceLogger.setUseParentHandlers(false);
+        traceLogger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                traceList.add(record.getMessage());
+            }
+            @Override
+            public void flush() {}
+            @Override
+            public void close() {}
+        });
+        try {
+            Globals.logger.set(traceLogger);
+            IrcLatencyTracer latencyTracer = new IrcLatencyTracer(2);
+
+            IrcCommandReport[] reports = new IrcCommandReport[4];
+            long[] ids = new long[4];
+            for (int i = 0; i < ids.length; i++) {
+                IrcIncomingMessage ircIncomingMessage =
+                        new IrcIncomingMessage("PING " + i, null);
+                ids[i] = ircIncomingMessage.id;
+                ircIncomingMessage.setPollNanoTime(
+                        ircIncomingMessage.readNanoTime + 1000);
+                IrcLatencyTracer.setCurrentMessage(ircIncomingMessage);
+                reports[i] = new IrcCommandReport("PONG " + i, null, null);
+                IrcLatencyTracer.setCurrentMessage(null);
+                ircIncomingMessage.setExecutedNanoTime(
+                        ircIncomingMessage.getPollNanoTime() + 3000);
+                latencyTracer.messageExecuted(ircIncomingMessage);
+                assertEquals("Message id", ids[i], reports[i].getMessageId());
+                assertEquals("Read time", ircIncomingMessage.readNanoTime,
+                        reports[i].getMessageReadNanoTime());
+            }
+            IrcCommandReport notice = new IrcCommandReport("NOTICE", null,
+                    null);
+            assertEquals("Report without message", -1, notice.getMessageId());
+
+            for (IrcCommandReport report : reports) {
+                latencyTracer.reportWritten(report,
+                        report.getCreationNanoTime() + 5000);
+            }
+            latencyTracer.reportWritten(notice,
+                    notice.getCreationNanoTime() + 5000);
+
+            assertEquals("Input queue", 4, latencyTracer.getHistogram(
+                    Stage.INPUT_QUEUE).getCount());
+            assertEquals("Input queue", 1000, latencyTracer.getHistogram(
+                    Stage.INPUT_QUEUE).getMax());
+            assertEquals("Execution", 3000, latencyTracer.getHistogram(
+                    Stage.EXECUTION).getMean());
+            assertEquals("Output queue", 5, latencyTracer.getHistogram(
+                    Stage.OUTPUT_QUEUE).getCount());
+            assertEquals("Total", 4, latencyTracer.getHistogram(
+                    Stage.TOTAL).getCount());
+
+            int sampled = 0;
+            for (long id : ids) {
+                if (id % 2 == 0) {
+                    sampled++;
+                }
+            }
+            assertEquals("Trace records", sampled * 2, traceList.size());
+            for (String trace : traceList) {
+                assertTrue("Trace " + trace, trace.matches(
+                        "Trace id:\\d*[02468]( report:\\d+)? \\w+Ns:\\d+ " +
+                        "\\w+Ns:\\d+"));
+            }
+
+            traceList.clear();
+            latencyTracer.setSampleRate(0);
+            latencyTracer.reportWritten(reports[0],
+                    reports[0].getCreationNanoTime());
+            assertTrue("Trace is disabled", traceList.isEmpty());
+            assertTrue("Monitoring string", latencyTracer.getMonitoringString(
+                    ).startsWith(" inputQueueNs:"));
+
+            latencyTracer.reset();
+            assertEquals("Reset", 0, latencyTracer.getHistogram(
+                    Stage.TOTAL).getCount());
+
+            try {
+                latencyTracer.setSampleRate(-1);
+                fail("Sample rate is out of range");
+            } catch (IllegalArgumentException e) {}
+        } finally {
+            IrcLatencyTracer.setCurrentMessage(null);
+            Globals.logger.set(Logger.getLogger("Server"));
+        }
+        System.out.println("**IrcLatencyTracer***************************OK**");
+    }
+}
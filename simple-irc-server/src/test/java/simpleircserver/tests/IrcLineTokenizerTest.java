@@ -0,0 +1,119 @@
+/*
+ *
+ * IrcLineTokenizerTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import simpleircserver.parser.IrcLineTokenizer;
+
+/**
+ * IrcLineTokenizerTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcLineTokenizerTest {
+
+    private String[] lines = {
+        "PING irc.example.org",
+        "ping",
+        "NICK nick1",
+        "USER user1 0 * :Real Name",
+        "USER user1 0 * :",
+        "PRIVMSG #channel :Hello world :-)",
+        "PRIVMSG #channel,nick2 :Hello",
+        "PRIVMSG   #channel    :  spaced trailing  ",
+        "PRIVMSG #channel a:b :c",
+        "PRIVMSG\t#channel\t:tab",
+        ":nick1 PRIVMSG #channel :Hello",
+        ":nick1!user1@host PRIVMSG #channel :Hello",
+        ":nick1   JOIN   #a,#b   key1,key2",
+        "MODE #channel +o nick2   ",
+        "JOIN #a ::colon",
+        "001 nick :Welcome",
+        "KICK #channel nick2 :",
+        "TOPIC #channel :",
+        ": PING x",
+    };
+
+    private String[] malformedLines = {
+        " PING x",
+        "\tPING x",
+        " :trailing only",
+        "   ",
+    };
+
+    @Test
+    public void ircLineTokenizerTest() {
+        System.out.println("--IrcLineTokenizer-------------------------------");
+        IrcLineTokenizer ircLineTokenizer = new IrcLineTokenizer();
+        LinkedList<String> parameterList = new LinkedList<String>();
+
+        for (String line : lines) {
+            String[] withTrailing = line.split("\\s+:", 2);
+            String[] withoutTrailing = withTrailing[0].split("\\s+");
+            int firstParameter = 0;
+            String prefix = null;
+            if (withoutTrailing[0].charAt(0) == ':') {
+                prefix = withoutTrailing[0].substring(1);
+                firstParameter++;
+            }
+            String command = withoutTrailing[firstParameter++];
+            LinkedList<String> expectedList = new LinkedList<String>(Arrays.asList(
+                    Arrays.copyOfRange(withoutTrailing, firstParameter, withoutTrailing.length)));
+            if (withTrailing.length == 2) {
+                expectedList.offer(withTrailing[1]);
+            }
+
+            parameterList.clear();
+            assertTrue("Line is parsed: " + line, ircLineTokenizer.tokenize(line, parameterList));
+            assertEquals("Prefix: " + line, prefix, ircLineTokenizer.getPrefix());
+            assertEquals("Command: " + line, command, ircLineTokenizer.getCommand());
+            assertEquals("Parameters: " + line, expectedList, parameterList);
+            assertEquals("Trailing: " + line, withTrailing.length == 2, ircLineTokenizer.hasTrailing());
+            assertEquals("Numeric reply: " + line, command.matches("\\d{3}"),
+                    IrcLineTokenizer.isNumericReply(command));
+        }
+
+        for (String line : malformedLines) {
+            parameterList.clear();
+            assertFalse("Line is malformed: " + line, ircLineTokenizer.tokenize(line, parameterList));
+        }
+
+        parameterList.clear();
+        assertTrue("Prefix only", ircLineTokenizer.tokenize(":nick1", parameterList));
+        assertEquals("Prefix only", "nick1", ircLineTokenizer.getPrefix());
+        assertEquals("No command", null, ircLineTokenizer.getCommand());
+
+        assertFalse("Not numeric reply", IrcLineTokenizer.isNumericReply("0a1"));
+        assertFalse("Not numeric reply", IrcLineTokenizer.isNumericReply("0012"));
+
+        System.out.println("**IrcLineTokenizer***************************OK**");
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ * IrcLoadShedderTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simpleircserver.parser.IrcCommandClass;
+import simpleircserver.processor.InputQueueProcessor;
+import simpleircserver.processor.OutputQueueProcessor;
+import simpleircserver.tools.IrcLoadShedder;
+import simpleircserver.tools.IrcLoadShedder.Level;
+import simpleircserver.tools.IrcLoadShedder.Reason;
+import simpleircserver.tools.IrcTokenBucket;
+
+/**
+ * IrcLoadShedderTest
+ * @version 0.5.4 2015-11-27
+ * @version 0.5.4 2015-11-27 Share is not spent on commands over the budget, processors are counted by type.
+ * @author  Nikolay Kirdin
+ */
+public class IrcLoadShedderTest {
+
+    @Test
+    public void ircLoadShedderTest() {
+        System.out.println("--IrcLoadShedder---------------------------------");
+        assertEquals("Normal", Level.NORMAL, IrcLoadShedder.getLevel(0, false));
+        assertEquals("One processor", Level.ELEVATED,
+                IrcLoadShedder.getLevel(1, false));
+        assertEquals("Memory", Level.ELEVATED, IrcLoadShedder.getLevel(0, true));
+        assertEquals("Two processors", Level.HIGH,
+                IrcLoadShedder.getLevel(2, false));
+        assertEquals("Critical", Level.CRITICAL,
+                IrcLoadShedder.getLevel(5, true));
+        assertEquals("Processors of one type", 1,
+                IrcLoadShedder.getProcessorTypeCount(Arrays.asList(
+                new InputQueueProcessor(), new InputQueueProcessor(),
+                new InputQueueProcessor())));
+        assertEquals("Processors of two types", 2,
+                IrcLoadShedder.getProcessorTypeCount(Arrays.asList(
+                new InputQueueProcessor(), new OutputQueueProcessor(),
+                new InputQueueProcessor())));
+
+        // Buckets are created later, so they are not refilled at this time.
+        long currentTime = System.currentTimeMillis();
+        IrcLoadShedder loadShedder = new IrcLoadShedder(2, 1000);
+        IrcTokenBucket shareBucket = loadShedder.createShareTokenBucket();
+
+        for (int i = 0; i < 100; i++) {
+            assertNull("Essential", loadShedder.tryAdmit(
+                    IrcCommandClass.ESSENTIAL, Level.CRITICAL,
+                    () -> shareBucket, currentTime));
+        }
+        assertEquals("Share is not used", 2, shareBucket.getTokens(currentTime));
+        assertNull("Not limited", loadShedder.tryAdmit(IrcCommandClass.BULK,
+                Level.NORMAL, () -> shareBucket, currentTime));
+        assertEquals("Bulk", Reason.BUDGET, loadShedder.tryAdmit(
+                IrcCommandClass.BULK, Level.HIGH, () -> null, currentTime));
+
+        int admitted = 0;
+        for (int i = 0; i < 60; i++) {
+            if (loadShedder.tryAdmit(IrcCommandClass.QUERY, Level.ELEVATED,
+                    () -> null, currentTime) == null) {
+                admitted++;
+            }
+        }
+        assertEquals("Query budget", IrcCommandClass.QUERY.getBudget(
+                Level.ELEVATED), admitted);
+
+        assertEquals("Bulk with share", Reason.BUDGET, loadShedder.tryAdmit(
+                IrcCommandClass.BULK, Level.HIGH, () -> shareBucket,
+                currentTime));
+        assertEquals("Share is not spent on budget", 2,
+                shareBucket.getTokens(currentTime));
+
+        assertNull("Share", loadShedder.tryAdmit(IrcCommandClass.MESSAGE,
+                Level.CRITICAL, () -> shareBucket, currentTime));
+        assertNull("Share", loadShedder.tryAdmit(IrcCommandClass.MESSAGE,
+                Level.CRITICAL, () -> shareBucket, currentTime));
+        assertEquals("Share is exhausted", Reason.FAIRNESS,
+                loadShedder.tryAdmit(IrcCommandClass.MESSAGE, Level.CRITICAL,
+                () -> shareBucket, currentTime));
+        assertNull("Other client", loadShedder.tryAdmit(
+                IrcCommandClass.MESSAGE, Level.CRITICAL,
+                loadShedder::createShareTokenBucket, currentTime));
+
+        assertEquals("Admitted", 0, loadShedder.getAdmittedCount(
+                IrcCommandClass.ESSENTIAL));
+        assertEquals("Admitted", 50, loadShedder.getAdmittedCount(
+                IrcCommandClass.QUERY));
+        assertEquals("Admitted", 3, loadShedder.getAdmittedCount(
+                IrcCommandClass.MESSAGE));
+        assertEquals("Shed", 10, loadShedder.getShedCount(
+                IrcCommandClass.QUERY, Reason.BUDGET));
+        assertEquals("Shed", 1, loadShedder.getShedCount(
+                IrcCommandClass.MESSAGE, Reason.FAIRNESS));
+        String monitoringString = loadShedder.getMonitoringString();
+        assertTrue("Monitoring string " + monitoringString,
+                monitoringString.equals(" loadLevel:NORMAL shedMessage:0/1" +
+                " shedChannel:0/0 shedQuery:10/0 shedBulk:2/0"));
+
+        try {
+            new IrcLoadShedder(0, 1000);
+            fail("Share is out of range");
+        } catch (IllegalArgumentException e) {}
+
+        System.out.println("**IrcLoadShedder*****************************OK**");
+    }
+}
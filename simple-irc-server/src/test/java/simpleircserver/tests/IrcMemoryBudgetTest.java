@@ -0,0 +1,150 @@
+/*
+ *
+ * IrcMemoryBudgetTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.DB;
+import simpleircserver.base.Globals;
+import simpleircserver.channel.IrcChannel;
+import simpleircserver.parser.Reply;
+import simpleircserver.talker.user.DriedUser;
+import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcMemoryBudget;
+import simpleircserver.tools.IrcMemoryBudget.Category;
+
+/**
+ * IrcMemoryBudgetTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcMemoryBudgetTest {
+
+    @Test
+    public void ircMemoryBudgetTest() {
+        System.out.println("--IrcMemoryBudget--------------------------------");
+        IrcMemoryBudget memoryBudget = new IrcMemoryBudget(10000, 50);
+        assertEquals("Limit", 10000, memoryBudget.getLimit());
+        assertEquals("High water", 5000, memoryBudget.getHighWater());
+
+        assertTrue("Admissible", memoryBudget.isAdmissible(
+                Category.CHANNEL, 5000));
+        assertEquals("Nothing is reserved", 0, memoryBudget.getTotalUsage());
+        assertTrue("Reserved", memoryBudget.tryReserve(Category.CHANNEL,
+                3000));
+        assertFalse("Above high water", memoryBudget.tryReserve(
+                Category.HISTORY, 3000));
+        assertEquals("History", 0, memoryBudget.getUsage(Category.HISTORY));
+        memoryBudget.reserve(Category.QUEUE, 3000);
+        assertEquals("Total", 6000, memoryBudget.getTotalUsage());
+        assertTrue("Above high water", memoryBudget.isAboveHighWater());
+        assertFalse("Not admissible", memoryBudget.isAdmissible(
+                Category.CONNECTION, 1));
+        assertEquals("Refused", 1, memoryBudget.getRefusedCount(
+                Category.CONNECTION));
+        assertEquals("Refused", 1, memoryBudget.getRefusedCount(
+                Category.HISTORY));
+
+        memoryBudget.release(Category.QUEUE, 5000);
+        assertEquals("Usage is not negative", 0, memoryBudget.getUsage(
+                Category.QUEUE));
+        assertEquals("Total", 3000, memoryBudget.getTotalUsage());
+        memoryBudget.reset(Category.CHANNEL);
+        assertEquals("Total", 0, memoryBudget.getTotalUsage());
+        assertTrue("Monitoring string", memoryBudget.getMonitoringString()
+                .contains(" memoryChannelKiB:0 "));
+        assertTrue("Monitoring string", memoryBudget.getMonitoringString()
+                .endsWith(" memoryRefused:2"));
+
+        try {
+            new IrcMemoryBudget(1000, 101);
+            fail("High water is out of range");
+        } catch (IllegalArgumentException e) {}
+
+        IrcMemoryBudget savedMemoryBudget = Globals.memoryBudget.get();
+        Logger savedLogger = Globals.logger.get();
+        try {
+            Globals.logger.set(Logger.getLogger("Server"));
+            memoryBudget = new IrcMemoryBudget(3 *
+                    Constants.HISTORY_ENTRY_MEMORY_SIZE +
+                    Constants.TALKER_MEMORY_SIZE, 100);
+            Globals.memoryBudget.set(memoryBudget);
+            DB db = new DB();
+
+            User user = User.create();
+            assertNotNull("User is created", user);
+            user.setNickname("nick");
+            assertEquals("User is registered", Reply.RPL_OK,
+                    db.register(user));
+            assertEquals("Talker", Constants.TALKER_MEMORY_SIZE,
+                    memoryBudget.getUsage(Category.TALKER));
+            assertNull("Budget is exhausted", User.create());
+            assertEquals("User is unregistered", Reply.RPL_OK,
+                    db.unRegister(user));
+            assertEquals("Talker", 0, memoryBudget.getUsage(
+                    Category.TALKER));
+
+            memoryBudget.reserve(Category.TALKER,
+                    Constants.TALKER_MEMORY_SIZE);
+            for (int i = 0; i < 5; i++) {
+                db.register(new DriedUser("nick" + i, "user", "host",
+                        "real", "server", i));
+            }
+            List<String> historyList = db.getNicknameHistoryList();
+            assertEquals("Eldest histories are removed", 3,
+                    historyList.size());
+            assertFalse("Eldest histories are removed",
+                    historyList.contains("nick0"));
+            assertTrue("Newest history is kept",
+                    historyList.contains("nick4"));
+            assertEquals("History", 3 * Constants.HISTORY_ENTRY_MEMORY_SIZE,
+                    memoryBudget.getUsage(Category.HISTORY));
+            assertNull("Budget is exhausted", IrcChannel.create("#channel",
+                    ""));
+
+            db.dropHistory();
+            assertEquals("History", 0, memoryBudget.getUsage(
+                    Category.HISTORY));
+            memoryBudget.release(Category.TALKER,
+                    Constants.TALKER_MEMORY_SIZE);
+            assertNotNull("Channel is created", IrcChannel.create(
+                    "#channel", ""));
+        } finally {
+            Globals.memoryBudget.set(savedMemoryBudget);
+            Globals.logger.set(savedLogger);
+        }
+
+        System.out.println("**IrcMemoryBudget****************************OK**");
+    }
+}
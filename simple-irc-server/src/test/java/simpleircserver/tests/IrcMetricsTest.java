@@ -0,0 +1,195 @@
+/*
+ *
+ * IrcMetricsTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import simpleircserver.base.DB;
+import simpleircserver.base.Globals;
+import simpleircserver.config.IrcServerConfig;
+import simpleircserver.processor.MetricsProcessor;
+import simpleircserver.tools.IrcHistogram;
+import simpleircserver.tools.IrcMetrics;
+
+/**
+ * IrcMetricsTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcMetricsTest {
+
+    @Test
+    public void ircMetricsTest() {
+        System.out.println("--IrcMetrics-------------------------------------");
+        IrcMetrics metrics = new IrcMetrics();
+        LongAdder counter = metrics.counter("test_total", "Test counter.");
+        counter.add(3);
+        assertTrue("Same counter", counter == metrics.counter("test_total",
+                "Test counter."));
+        metrics.gauge("test_gauge", "Test\ngauge.", () -> 7,
+                "name", "a\"b\\c");
+        IrcHistogram histogram = new IrcHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        metrics.summary("test_duration", "Test summary.", histogram,
+                "processor", "p");
+        metrics.gauge("test_broken", "Broken gauge.", () -> {
+            throw new NullPointerException();
+        });
+        assertEquals("Size", 4, metrics.size());
+
+        String exposition = metrics.getExposition();
+        assertEquals("Exposition", "# HELP test_broken Broken gauge.\n" +
+                "# TYPE test_broken gauge\n" +
+                "# HELP test_duration Test summary.\n" +
+                "# TYPE test_duration summary\n" +
+                "test_duration{processor=\"p\",quantile=\"0.5\"} 51\n" +
+                "test_duration{processor=\"p\",quantile=\"0.95\"} 95\n" +
+                "test_duration{processor=\"p\",quantile=\"0.99\"} 99\n" +
+                "test_duration_sum{processor=\"p\"} 5050\n" +
+                "test_duration_count{processor=\"p\"} 100\n" +
+                "# HELP test_gauge Test\\ngauge.\n" +
+                "# TYPE test_gauge gauge\n" +
+                "test_gauge{name=\"a\\\"b\\\\c\"} 7\n" +
+                "# HELP test_total Test counter.\n" +
+                "# TYPE test_total counter\n" +
+                "test_total 3\n", exposition);
+
+        metrics.remove("test_gauge", "name", "a\"b\\c");
+        metrics.remove("test_broken");
+        assertEquals("Removed", 2, metrics.size());
+        assertTrue("Removed", !metrics.getExposition().contains("test_gauge"));
+
+        try {
+            metrics.gauge("test_total", "Type mismatch.", () -> 0);
+            fail("Type mismatch");
+        } catch (IllegalArgumentException e) {}
+        try {
+            metrics.gauge("test-gauge", "Wrong name.", () -> 0);
+            fail("Wrong name");
+        } catch (IllegalArgumentException e) {}
+        try {
+            metrics.gauge("test_gauge", "Label without value.", () -> 0,
+                    "name");
+            fail("Label without value");
+        } catch (IllegalArgumentException e) {}
+        try {
+            metrics.summary("test_duration", "Reserved label.", histogram,
+                    "quantile", "1");
+            fail("Reserved label");
+        } catch (IllegalArgumentException e) {}
+
+        System.out.println("**IrcMetrics*********************************OK**");
+    }
+
+    @Test
+    public void metricsProcessorTest() throws IOException {
+        System.out.println("--MetricsProcessor-------------------------------");
+        DB savedDb = Globals.db.get();
+        IrcMetrics savedMetrics = Globals.metrics.get();
+        Logger savedLogger = Globals.logger.get();
+        Globals.logger.set(Logger.getLogger("Server"));
+        MetricsProcessor metricsProcessor = new MetricsProcessor();
+        try {
+            Globals.metrics.set(new IrcMetrics());
+            Globals.db.set(new DB());
+            Globals.db.get().setIrcServerConfig(new IrcServerConfig(
+                    TimeZone.getDefault(), Level.WARNING, "IrcServerMotd.txt"));
+
+            Globals.db.get().getIrcServerConfig().setMetricsPort(0);
+            assertTrue("Disabled endpoint", metricsProcessor.processorStart());
+            assertEquals("Disabled endpoint", 0,
+                    metricsProcessor.getHttpPort());
+            assertTrue("Server metrics", Globals.metrics.get()
+                    .getExposition().contains("\nirc_connections 0\n"));
+
+            int port;
+            try (ServerSocket serverSocket = new ServerSocket(0)) {
+                port = serverSocket.getLocalPort();
+            }
+            Globals.db.get().getIrcServerConfig().setMetricsPort(port);
+            assertTrue("Reconfigure", metricsProcessor.processorReconfigure());
+            assertEquals("Endpoint", port, metricsProcessor.getHttpPort());
+
+            URL url = new URL("http://127.0.0.1:" + port +
+                    MetricsProcessor.METRICS_PATH);
+            HttpURLConnection connection =
+                    (HttpURLConnection) url.openConnection();
+            assertEquals("GET", 200, connection.getResponseCode());
+            assertEquals("Content-Type", MetricsProcessor.CONTENT_TYPE,
+                    connection.getContentType());
+            String body = read(connection.getInputStream());
+            connection.disconnect();
+            assertTrue("Counter", body.contains(
+                    "# TYPE irc_messages_read_total counter\n"));
+            assertTrue("Command", body.contains(
+                    "irc_command_duration_nanoseconds_count" +
+                    "{command=\"privmsg\"}"));
+            assertTrue("Shed", body.contains("irc_commands_shed_total" +
+                    "{class=\"bulk\",reason=\"budget\"}"));
+            assertTrue("Scrape", body.contains(
+                    "\nirc_metrics_scrapes_total 1\n"));
+
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            assertEquals("POST", 405, connection.getResponseCode());
+            connection.disconnect();
+        } finally {
+            metricsProcessor.processorStop();
+            Globals.db.set(savedDb);
+            Globals.metrics.set(savedMetrics);
+            Globals.logger.set(savedLogger);
+        }
+        assertEquals("Stopped", 0, metricsProcessor.getHttpPort());
+        System.out.println("**MetricsProcessor***************************OK**");
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, length);
+        }
+        inputStream.close();
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
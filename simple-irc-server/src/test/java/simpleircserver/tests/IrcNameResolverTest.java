@@ -0,0 +1,168 @@
+/*
+ *
+ * IrcNameResolverTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import simpleircserver.tools.IrcNameResolver;
+
+/**
+ * IrcNameResolverTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcNameResolverTest {
+
+    private Map<InetAddress, String> hostMap =
+            new ConcurrentHashMap<InetAddress, String>();
+
+    private AtomicInteger lookupCount = new AtomicInteger();
+
+    private volatile CountDownLatch lookupLatch = new CountDownLatch(0);
+
+    private BlockingQueue<String> resultQueue =
+            new LinkedBlockingQueue<String>();
+
+    private String lookup(InetAddress address) {
+        lookupCount.getAndIncrement();
+        try {
+            lookupLatch.await();
+        } catch (InterruptedException e) {}
+        String hostname = hostMap.get(address);
+        return hostname != null ? hostname : address.getHostAddress();
+    }
+
+    private String resolve(IrcNameResolver resolver, InetAddress address)
+            throws InterruptedException {
+        resolver.resolve(address, hostname -> resultQueue.add(
+                hostname != null ? hostname : "null"));
+        String result = resultQueue.poll(10, TimeUnit.SECONDS);
+        return "null".equals(result) ? null : result;
+    }
+
+    @Test
+    public void ircNameResolverTest() throws Exception {
+        System.out.println("--IrcNameResolver--------------------------------");
+        InetAddress address1 = InetAddress.getByName("192.0.2.1");
+        InetAddress address2 = InetAddress.getByName("192.0.2.2");
+        InetAddress address3 = InetAddress.getByName("192.0.2.3");
+        InetAddress address4 = InetAddress.getByName("192.0.2.4");
+        hostMap.put(address1, "host1.example.com");
+        hostMap.put(address2, "host2.example.com");
+        hostMap.put(address4, "host4." + new String(new char[60]).replace(
+                '\0', 'a') + ".example.com");
+
+        AtomicLong currentTime = new AtomicLong(1000000);
+        long positiveTtl = 10000;
+        long negativeTtl = 1000;
+        IrcNameResolver resolver = new IrcNameResolver(this::lookup, 2, 10,
+                10, positiveTtl, negativeTtl);
+        resolver.setClock(currentTime::get);
+
+        assertEquals("Host is resolved", "host1.example.com",
+                resolve(resolver, address1));
+        assertEquals("Lookup is done", 1, lookupCount.get());
+        assertEquals("Host is cached", "host1.example.com",
+                resolve(resolver, address1));
+        assertEquals("Lookup is not done", 1, lookupCount.get());
+        assertEquals("Hit count", 1, resolver.getHitCount());
+        assertEquals("Miss count", 1, resolver.getMissCount());
+
+        assertNull("Host is not resolved", resolve(resolver, address3));
+        assertNull("Negative result is cached", resolve(resolver, address3));
+        assertEquals("Lookup is not done", 2, lookupCount.get());
+        assertNull("Too long hostname", resolve(resolver, address4));
+        assertEquals("Negative count", 2, resolver.getNegativeCount());
+
+        currentTime.addAndGet(negativeTtl);
+        assertEquals("Host is cached", "host1.example.com",
+                resolve(resolver, address1));
+        assertNull("Host is not resolved", resolve(resolver, address3));
+        assertEquals("Negative result is expired", 4, lookupCount.get());
+
+        currentTime.addAndGet(positiveTtl);
+        hostMap.put(address1, "host1.example.net");
+        assertEquals("Positive result is expired", "host1.example.net",
+                resolve(resolver, address1));
+        assertEquals("Lookup is done", 5, lookupCount.get());
+
+        IrcNameResolver lruResolver = new IrcNameResolver(this::lookup, 2,
+                10, 2, positiveTtl, negativeTtl);
+        resolve(lruResolver, address1);
+        resolve(lruResolver, address2);
+        resolve(lruResolver, address1);
+        resolve(lruResolver, address3);
+        assertEquals("Size of cache", 2, lruResolver.getCacheSize());
+        int count = lookupCount.get();
+        resolve(lruResolver, address1);
+        assertEquals("Recently used entry is kept", count, lookupCount.get());
+        resolve(lruResolver, address2);
+        assertEquals("Eldest entry is removed", count + 1, lookupCount.get());
+
+        resolver.clear();
+        lookupLatch = new CountDownLatch(1);
+        count = lookupCount.get();
+        int requestNumber = 5;
+        for (int i = 0; i < requestNumber; i++) {
+            resolver.resolve(address2, hostname -> resultQueue.add(hostname));
+        }
+        lookupLatch.countDown();
+        for (int i = 0; i < requestNumber; i++) {
+            assertEquals("Request is coalesced", "host2.example.com",
+                    resultQueue.poll(10, TimeUnit.SECONDS));
+        }
+        assertEquals("One lookup", count + 1, lookupCount.get());
+        assertEquals("Coalesced count", requestNumber - 1,
+                resolver.getCoalescedCount());
+
+        IrcNameResolver smallResolver = new IrcNameResolver(this::lookup,
+                1, 1, 10, positiveTtl, negativeTtl);
+        lookupLatch = new CountDownLatch(1);
+        smallResolver.resolve(address1, hostname -> resultQueue.add("1"));
+        smallResolver.resolve(address2, hostname -> resultQueue.add("2"));
+        assertNull("Request is rejected", resolve(smallResolver, address3));
+        assertEquals("Rejected count", 1, smallResolver.getRejectedCount());
+        lookupLatch.countDown();
+        assertTrue("Queued requests are done",
+                resultQueue.poll(10, TimeUnit.SECONDS) != null &&
+                resultQueue.poll(10, TimeUnit.SECONDS) != null);
+        assertTrue("Monitoring string", smallResolver.getMonitoringString(
+                ).contains("resolverRejected:1"));
+
+        System.out.println("**IrcNameResolver****************************OK**");
+    }
+}
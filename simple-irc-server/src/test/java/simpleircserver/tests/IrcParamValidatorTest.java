@@ -0,0 +1,148 @@
+/*
+ *
+ * IrcParamValidatorTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import simpleircserver.parser.commands.IrcParamRegex;
+import simpleircserver.parser.commands.IrcParamValidator;
+
+/**
+ * IrcParamValidatorTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcParamValidatorTest implements IrcParamRegex {
+
+    private String[] regexes = {nickNameRegex, channelRegex, keyRegex,
+        msgToRegex, userMaskRegex, userRegex, hostRegex, hostNameRegex,
+        shortNameRegex, servernameMaskRegex, targetMaskRegex,
+        serviceNameRegex, wordRegex, stringRegex, stringUsAsciiRegex,
+        userPassword, numberRegex, queryListRegex};
+
+    private String[] samples = {"", "1.1.1.1", "255.255.255.255",
+        "-1.1.1.1", "1.0.", "100.ff.135.9", "1:2:3:4:5:6:7:8",
+        "A:B:C:D:E:F:9:5", "a:b:c:d:e:f:9:5", "0:0:0:0:0:0:1.2.3.4",
+        "0:0:0:0:0:FFFF:1.2.3.4", "0:0:0:0:0:ffff:1.2.3.4",
+        "1:2:3:4:5:6:7", "ABCD:0:0:0:0:0:0:12345", "a", "a-", "a1",
+        "-a", "1b", "a_", "a.a", "a.a.", "ab.b.a1", "#1", "&{|}",
+        "#a:$$$$$", "&a1.a2:.a3", "#a:", "#:a", "+a", "!ABC12a",
+        "a[]`_^", "t123{|}-", "A234567890123456", "A2345678901234567",
+        "a1234567890123456", "a.*.a", "a.*", "*.a", "a.?b*.c", "*a1.b",
+        "$*.irc.com", "#irc.*.local", "*.irc.com", "user@host.dom",
+        "user%host.dom", "user%host.dom@server.dom", "user@1.2.3.4",
+        "user1.2.3.4@host", "user%1.2.3.4", "user%1.2.3.4@host",
+        "nick!user@host.dom", "nick!user@1.2.3.4", "nick!@host",
+        "!user@host", "a!b%c@d", "*!*@*", "a*!*%*@*", "a!*.b.c",
+        "a1.2.3.4", "a?1.2.3.4!b", "a!b.c.d", "a@", "a%b",
+        "*a-b?c", "?1", "*-", "a*1", "12345", "123456", "lmou", "lmx",
+        "key with space", "\u0001\u0008", "\u00ff\u0100", "a\u00e9b",
+        "a\u0100", "a\r", "a\n", "a\u0000", "pass:word"};
+
+    private String[] tokens = {"a", "Z", "b1", "x-y", "0", "12", "255",
+        "1.2.3.4", "0:0:0:0:0:FFFF:", "0:0:0:0:0:0:", "A:B:C:D:E:F:1:",
+        "F", "ff", ".", ":", "!", "%", "@", "#", "&", "$", "*", "?",
+        "[", "`", "{", "-", "_", " ", ",", "\t", "\u00e9", "\u0100",
+        "\u0000", "\r"};
+
+    @Test
+    public void ircParamValidatorTest() {
+        System.out.println("--IrcParamValidator------------------------------");
+
+        for (String regex : regexes) {
+            assertNotNull("Validator exists: " + regex,
+                    IrcParamValidator.getValidator(regex));
+        }
+        for (Pattern pattern : new Pattern[] {nickNamePattern, channelPattern,
+                keyPattern, msgToPattern, servernameMaskPattern,
+                serviceNamePattern, shortNamePattern, wordPattern,
+                stringPattern}) {
+            assertNotNull("Validator exists: " + pattern,
+                    IrcParamValidator.getValidator(pattern));
+        }
+        assertNull("No validator", IrcParamValidator.getValidator(
+                channelNicknameMaskRegex));
+        assertNull("No validator", IrcParamValidator.getValidator(
+                new String(nickNameRegex)));
+
+        List<String> stringList = new ArrayList<String>(Arrays.asList(samples));
+        Random random = new Random(20151127L);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int tokenNumber = 1 + random.nextInt(8);
+            for (int j = 0; j < tokenNumber; j++) {
+                sb.append(tokens[random.nextInt(tokens.length)]);
+            }
+            /* 
+             * Регулярное выражение servernameMaskRegex проверяет длинные 
+             * последовательности букв за экспоненциальное время.
+             */
+            if (!sb.toString().matches(".*[A-Za-z]{9}.*")) {
+                stringList.add(sb.toString());
+            }
+        }
+        String longString = String.join("", Collections.nCopies(
+                60, "0123456789"));
+        stringList.add(longString.substring(0, 50));
+        stringList.add(longString.substring(0, 51));
+        stringList.add(longString.substring(0, 100) + "@host");
+        stringList.add(longString.substring(0, 101) + "@host");
+        stringList.add(longString.substring(0, 100) + "1.2.3.4@host");
+        stringList.add(longString.substring(0, 510));
+        stringList.add(longString.substring(0, 511));
+        stringList.add("#" + longString.substring(0, 49) + ":"
+                + longString.substring(0, 49));
+        stringList.add("#" + longString.substring(0, 50));
+
+        for (String regex : regexes) {
+            Predicate<String> validator = IrcParamValidator.getValidator(regex);
+            Pattern pattern = Pattern.compile(regex);
+            for (String s : stringList) {
+                assertEquals("Validator for " + regex + " on \"" + s + "\"",
+                        pattern.matcher(s).matches(), validator.test(s));
+            }
+        }
+
+        String longMask = String.join("", Collections.nCopies(4, 
+                "abcdefghij")) + "!";
+        assertFalse("Long mask is checked in linear time", 
+                IrcParamValidator.isServernameMask(longMask));
+        assertFalse("Long mask is checked in linear time", 
+                IrcParamValidator.isTargetMask("#" + longMask));
+
+        System.out.println("**IrcParamValidator**************************OK**");
+    }
+}
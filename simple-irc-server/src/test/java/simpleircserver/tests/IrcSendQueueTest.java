@@ -0,0 +1,135 @@
+/*
+ *
+ * IrcSendQueueTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.Globals;
+import simpleircserver.config.IrcSendQueuePolicy;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.connection.IrcSendQueue;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.talker.IrcTalker;
+import simpleircserver.talker.user.User;
+import simpleircserver.tools.IrcMemoryBudget;
+import simpleircserver.tools.IrcMemoryBudget.Category;
+
+/**
+ * IrcSendQueueTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcSendQueueTest {
+
+    @Test
+    public void ircSendQueueTest() {
+        System.out.println("--IrcSendQueue-----------------------------------");
+        IrcMemoryBudget savedMemoryBudget = Globals.memoryBudget.get();
+        Logger savedLogger = Globals.logger.get();
+        try {
+            Globals.logger.set(Logger.getLogger("Server"));
+            IrcMemoryBudget memoryBudget = new IrcMemoryBudget(1000000, 100);
+            Globals.memoryBudget.set(memoryBudget);
+            IrcTalker server = Globals.thisIrcServer.get();
+            User user = User.create();
+            assertNotNull("User is created", user);
+
+            // Каждое сообщение занимает 10 байт (8 символов и CR LF).
+            IrcSendQueue queue = new IrcSendQueue(30,
+                    IrcSendQueuePolicy.DROP_OLDEST);
+            for (int i = 0; i < 3; i++) {
+                assertTrue("Offered", queue.offer(new IrcCommandReport(
+                        "message" + i, null, user)));
+            }
+            assertEquals("Bytes", 30, queue.getBytes());
+            assertEquals("Queue", 30 + 3 *
+                    Constants.SEND_QUEUE_ENTRY_MEMORY_SIZE,
+                    memoryBudget.getUsage(Category.QUEUE));
+            assertTrue("Eldest is dropped", queue.offer(new IrcCommandReport(
+                    "message3", null, user)));
+            assertEquals("Size", 3, queue.size());
+            assertEquals("Eldest is dropped", "message1",
+                    queue.peek().getReport());
+            assertEquals("Dropped", 1, queue.getDroppedCount());
+            assertFalse("Too long", queue.offer(new IrcCommandReport(
+                    "message which is longer than the queue", null, user)));
+            assertEquals("Dropped", 2, queue.getDroppedCount());
+            assertEquals("Polled", "message1", queue.poll().getReport());
+            assertEquals("Sent", 10, queue.getSentBytes());
+            assertEquals("High water", 30, queue.getHighWaterBytes());
+            queue.clear();
+            assertEquals("Bytes", 0, queue.getBytes());
+            assertEquals("Sent", 10, queue.getSentBytes());
+            assertEquals("Queue", 0, memoryBudget.getUsage(Category.QUEUE));
+
+            queue.setLimit(30, IrcSendQueuePolicy.DROP_LOW_PRIORITY);
+            queue.offer(new IrcCommandReport("server_0", null, server));
+            queue.offer(new IrcCommandReport("client_0", null, user));
+            queue.offer(new IrcCommandReport("server_1", null, server));
+            assertTrue("Client message is dropped", queue.offer(
+                    new IrcCommandReport("server_2", null, server)));
+            for (IrcCommandReport ircCommandReport : queue) {
+                assertTrue("Server messages are kept",
+                        ircCommandReport.getReport().startsWith("server"));
+            }
+            assertFalse("Only server messages", queue.offer(
+                    new IrcCommandReport("client_1", null, user)));
+            assertEquals("Size", 3, queue.size());
+            queue.clear();
+
+            Connection connection = Connection.create();
+            assertNotNull("Connection is created", connection);
+            connection.setConnectionState(ConnectionState.OPERATIONAL);
+            connection.setSendQueueLimit(30, IrcSendQueuePolicy.DISCONNECT);
+            for (int i = 0; i < 3; i++) {
+                assertTrue("Offered", connection.offerToOutputQueue(
+                        new IrcCommandReport("message" + i, null, user)));
+            }
+            assertFalse("SendQ exceeded", connection.offerToOutputQueue(
+                    new IrcCommandReport("message3", null, user)));
+            assertTrue("SendQ exceeded", connection.isSendQueueExceeded());
+            assertEquals("Broken", ConnectionState.BROKEN,
+                    connection.getConnectionState());
+            assertEquals("Only ERROR", 1, connection.getOutputQueue().size());
+            assertTrue("ERROR", connection.getOutputQueue().peek().getReport()
+                    .matches("ERROR :Closing Link: .* \\(SendQ exceeded\\)"));
+            assertFalse("Closed", connection.offerToOutputQueue(
+                    new IrcCommandReport("message4", null, user)));
+            connection.getOutputQueue().clear();
+            assertEquals("Queue", 0, memoryBudget.getUsage(Category.QUEUE));
+        } finally {
+            Globals.memoryBudget.set(savedMemoryBudget);
+            Globals.logger.set(savedLogger);
+        }
+        System.out.println("**IrcSendQueue*******************************OK**");
+    }
+}
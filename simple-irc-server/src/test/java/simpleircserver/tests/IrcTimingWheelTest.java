@@ -0,0 +1,99 @@
+/*
+ *
+ * IrcTimingWheelTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import simpleircserver.tools.IrcTimingWheel;
+import simpleircserver.tools.IrcTimingWheel.Timer;
+
+/**
+ * IrcTimingWheelTest
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class IrcTimingWheelTest {
+
+    @Test
+    public void ircTimingWheelTest() {
+        System.out.println("--IrcTimingWheel---------------------------------");
+        long startTime = 1000000;
+        long tick = 100;
+        IrcTimingWheel<Long> wheel = new IrcTimingWheel<Long>(tick,
+                startTime);
+
+        long[] delays = {0, 1, 99, 100, 150, 6400, 6450, 409600, 500000,
+                30000000, 2000000000L};
+        for (long delay : delays) {
+            wheel.schedule(delay, startTime + delay);
+        }
+        Timer<Long> cancelledTimer = wheel.schedule(-1L, startTime + 6400);
+        assertTrue("Cancelled", cancelledTimer.cancel());
+        assertEquals("Size", delays.length + 1, wheel.getSize());
+
+        long currentTime = startTime;
+        long step = tick / 2;
+        int expired = 0;
+        while (expired < delays.length) {
+            List<Timer<Long>> expiredList = wheel.advance(currentTime);
+            for (Timer<Long> timer : expiredList) {
+                assertTrue("Not cancelled", timer.getItem() >= 0);
+                assertTrue("Not early " + timer.getItem(),
+                        currentTime >= timer.getDeadline());
+                assertTrue("Not late " + timer.getItem(),
+                        currentTime < timer.getDeadline() + tick + step);
+                assertEquals("In order", delays[expired], (long)
+                        timer.getItem());
+                expired++;
+            }
+            if (currentTime > startTime + 3000000000L) {
+                fail("Timers are lost: " + expired);
+            }
+            step = expired < 9 ? tick / 2 : 1000 * tick;
+            currentTime += step;
+        }
+        assertEquals("All timers are expired", 0, wheel.getSize());
+        assertEquals("Expired", delays.length, wheel.getExpiredCount());
+        assertTrue("Monitoring string", wheel.getMonitoringString("timers")
+                .equals(" timers:0 timersExpired:" + delays.length));
+
+        for (int i = 0; i < 1000; i++) {
+            long delay = IrcTimingWheel.addJitter(1000, 10);
+            assertTrue("Jitter", delay >= 1000 && delay <= 1100);
+        }
+        assertEquals("No jitter", 5, IrcTimingWheel.addJitter(5, 10));
+
+        try {
+            new IrcTimingWheel<Long>(0, startTime);
+            fail("Tick is out of range");
+        } catch (IllegalArgumentException e) {}
+
+        System.out.println("**IrcTimingWheel*****************************OK**");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *
+ * IrcTokenBucketTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import simpleircserver.tools.IrcTokenBucket;
+
+/**
+ * IrcTokenBucketTest
+ * @version 0.5.4 2015-11-24
+ * @author  Nikolay Kirdin
+ */
+public class IrcTokenBucketTest {
+
+	@Test
+    public void ircTokenBucketTest() {
+        int capacity = 5;
+        long period = 1000;
+        System.out.println("--IrcTokenBucket---------------------------------");
+        long currentTime = System.currentTimeMillis();
+        IrcTokenBucket ircTokenBucket = new IrcTokenBucket(capacity, period);
+
+        assertEquals("Bucket is full", capacity, ircTokenBucket.getTokens(currentTime));
+        for (int i = 0; i < capacity; i++) {
+            assertTrue("Burst of " + capacity + " events", ircTokenBucket.tryConsume(currentTime));
+        }
+        assertFalse("Bucket is empty", ircTokenBucket.tryConsume(currentTime));
+
+        currentTime += period;
+        assertTrue("One token after period", ircTokenBucket.tryConsume(currentTime));
+        assertFalse("Bucket is empty", ircTokenBucket.tryConsume(currentTime));
+
+        currentTime += period / 2;
+        assertFalse("No token after half of period", ircTokenBucket.tryConsume(currentTime));
+        currentTime += period / 2;
+        assertTrue("Token after second half of period", ircTokenBucket.tryConsume(currentTime));
+
+        currentTime += 100 * period;
+        assertEquals("Bucket is not overfilled", capacity, ircTokenBucket.getTokens(currentTime));
+
+        try {
+            new IrcTokenBucket(0, period);
+            assertTrue("IllegalArgumentException expected", false);
+        } catch (IllegalArgumentException e) {}
+
+        System.out.println("**IrcTokenBucket*****************************OK**");
+    }
+}
@@ -3,14 +3,22 @@ package simpleircserver.tests;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 
 import simpleircserver.base.Constants;
 import simpleircserver.base.Globals;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionTimer;
 import simpleircserver.connection.NullConnection;
 import simpleircserver.processor.IrcServerProcessor;
+import simpleircserver.talker.IrcTalker;
+import simpleircserver.tools.IrcLatencyTracer;
+import simpleircserver.tools.IrcLoadShedder;
+import simpleircserver.tools.IrcMetrics;
+import simpleircserver.tools.IrcTimingWheel;
 
 public class ServerTestUtils {
     public static void restoreGlobals() {
@@ -84,6 +92,16 @@ public class ServerTestUtils {
         /** Номер порта по умолчанию. */
         Globals.serverPortNumber.set(Constants.SERVER_PORT_NUMBER);
 
+        /** Номер порта HTTP-сервера метрик по умолчанию. */
+        Globals.metricsPort.set(Constants.METRICS_PORT);
+
+        /** Реестр метрик сервера. */
+        Globals.metrics.set(new IrcMetrics());
+
+        /** Объект, учитывающий длительность этапов обработки сообщений. */
+        Globals.latencyTracer.set(
+                new IrcLatencyTracer(Constants.TRACE_SAMPLE_RATE));
+
         /** Объект класса {@link ServerSocket} для данного сервера. */
         Globals.serverSocket.set(null);
 
@@ -106,6 +124,13 @@ public class ServerTestUtils {
         /** Минимальный период передачи сообщения IRC PING (ms). */
         Globals.pingSendingPeriod.set(Constants.PING_SENDING_PERIOD);
 
+        /** Максимальная длительность (ms) регистрации клиента. */
+        Globals.registrationTimeout.set(Constants.REGISTRATION_TIMEOUT);
+
+        /** Колесо таймеров соединений. */
+        Globals.connectionTimers.set(new IrcTimingWheel<ConnectionTimer>(
+                Constants.TIMER_TICK_DURATION, System.currentTimeMillis()));
+
         /** Время по умолчанию для таймаутов (ms). */
         Globals.sleepTO.set(Constants.SLEEP_TO);
 
@@ -147,7 +172,20 @@ public class ServerTestUtils {
          * состояние перегруженности одного из программных процессоров.
          */
         Globals.ircServerProcessorSet.set(
-                new HashSet<IrcServerProcessor>());
+                ConcurrentHashMap.<IrcServerProcessor>newKeySet());
+        /**
+         * Ограничение исполнения команд и приема соединений в зависимости
+         * от загруженности сервера.
+         */
+        Globals.loadShedder.set(new IrcLoadShedder(
+                Constants.LOAD_SHARE_BURST, Constants.LOAD_SHARE_PERIOD));
+        /**
+         * Очереди соединений и клиентов, ожидающих завершающих действий.
+         */
+        Globals.connectionCleanupQueue.set(
+                new ConcurrentLinkedQueue<Connection>());
+        Globals.ircTalkerCleanupQueue.set(
+                new ConcurrentLinkedQueue<IrcTalker>());
         /**
          * Объект-хранилище параметров файла-протокола клиентских сообщений.
          */
@@ -0,0 +1,139 @@
+/*
+ *
+ * StateTransitionTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import simpleircserver.base.Globals;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.talker.IrcTalker;
+import simpleircserver.talker.IrcTalkerState;
+import simpleircserver.talker.user.User;
+
+/**
+ * StateTransitionTest. Проверяются таблицы разрешенных переходов и
+ * изменение состояния с помощью CAS при одновременных переходах.
+ * Производительность измеряется в StateTransitionBenchmark модуля
+ * benchmarks.
+ * @version 0.5.4 2015-11-27
+ * @author  Nikolay Kirdin
+ */
+public class StateTransitionTest {
+
+    private static final int THREADS = 4;
+
+    @Test
+    public void stateTransitionTest() throws InterruptedException {
+        System.out.println("--StateTransition--------------------------------");
+        Queue<Connection> savedConnectionQueue =
+                Globals.connectionCleanupQueue.get();
+        Queue<IrcTalker> savedIrcTalkerQueue =
+                Globals.ircTalkerCleanupQueue.get();
+        Logger savedLogger = Globals.logger.get();
+        try {
+            Globals.logger.set(Logger.getLogger("Server"));
+            Globals.connectionCleanupQueue.set(
+                    new ConcurrentLinkedQueue<Connection>());
+            Globals.ircTalkerCleanupQueue.set(
+                    new ConcurrentLinkedQueue<IrcTalker>());
+
+            assertTrue("OPERATIONAL->CLOSE", ConnectionState.OPERATIONAL
+                    .isTransitionAllowed(ConnectionState.CLOSE));
+            assertFalse("CLOSED->OPERATIONAL", ConnectionState.CLOSED
+                    .isTransitionAllowed(ConnectionState.OPERATIONAL));
+            assertFalse("BROKEN->CLOSE", ConnectionState.BROKEN
+                    .isTransitionAllowed(ConnectionState.CLOSE));
+            assertTrue("REGISTERING->OPERATIONAL", IrcTalkerState.REGISTERING
+                    .isTransitionAllowed(IrcTalkerState.OPERATIONAL));
+            assertFalse("CLOSE->BROKEN", IrcTalkerState.CLOSE
+                    .isTransitionAllowed(IrcTalkerState.BROKEN));
+
+            Connection connection = Connection.create();
+            assertNotNull("Connection is created", connection);
+            assertFalse("NEW->INITIALIZED", connection
+                    .compareAndSetConnectionState(ConnectionState.NEW,
+                    ConnectionState.INITIALIZED));
+            assertTrue("NEW->INITIALIZING", connection
+                    .compareAndSetConnectionState(ConnectionState.NEW,
+                    ConnectionState.INITIALIZING));
+            assertFalse("Unexpected state", connection
+                    .compareAndSetConnectionState(ConnectionState.NEW,
+                    ConnectionState.INITIALIZING));
+            connection.setConnectionState(ConnectionState.OPERATIONAL);
+
+            User user = User.create();
+            assertNotNull("User is created", user);
+            user.setState(IrcTalkerState.REGISTERING);
+
+            final Connection raceConnection = connection;
+            final User raceUser = user;
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final AtomicInteger winCount = new AtomicInteger();
+            Thread[] threads = new Thread[THREADS * 2];
+            for (int i = 0; i < threads.length; i++) {
+                final boolean isClose = i % 2 == 0;
+                threads[i] = new Thread(() -> {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {}
+                    if (isClose ? raceConnection.transitConnectionState(
+                            ConnectionState.CLOSE) : raceConnection
+                            .transitConnectionState(ConnectionState.BROKEN)) {
+                        winCount.getAndIncrement();
+                    }
+                    if (isClose ? raceUser.transitState(IrcTalkerState.CLOSE)
+                            : raceUser.transitState(IrcTalkerState.BROKEN)) {
+                        winCount.getAndIncrement();
+                    }
+                });
+                threads[i].start();
+            }
+            startLatch.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals("One transition per object", 2, winCount.get());
+            assertEquals("Connection is queued once", 1,
+                    Globals.connectionCleanupQueue.get().size());
+            assertEquals("User is queued once", 1,
+                    Globals.ircTalkerCleanupQueue.get().size());
+        } finally {
+            Globals.connectionCleanupQueue.set(savedConnectionQueue);
+            Globals.ircTalkerCleanupQueue.set(savedIrcTalkerQueue);
+            Globals.logger.set(savedLogger);
+        }
+        System.out.println("**StateTransition****************************OK**");
+    }
+}
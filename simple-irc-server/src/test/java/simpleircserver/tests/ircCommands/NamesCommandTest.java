@@ -294,7 +294,7 @@ public class NamesCommandTest extends IrcCommandTest {
         assertTrue("RPL_ENDOFNAMES Control check one channel. End of NAMES", reply.equals(":" + prefix + " " + response));
         responseCode = "353";
         
-        for (Iterator<User> userSetIterator = db.getUserSetIterator(); 
+        for (Iterator<User> userSetIterator = db.getUserSet().iterator(); 
                 userSetIterator.hasNext();) {
             User user = userSetIterator.next();
             if (user == db.getUser(userNickname2)) {
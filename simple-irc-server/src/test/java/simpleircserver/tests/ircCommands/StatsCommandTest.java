@@ -34,11 +34,12 @@ import simpleircserver.parser.IrcCommandParser;
 import simpleircserver.talker.IrcTalker;
 import simpleircserver.talker.user.User;
 import simpleircserver.tests.IrcCommandTest;
-import simpleircserver.tools.IrcAvgMeter;
+import simpleircserver.tools.IrcHistogram;
 
 /**
  * StatsCommandTest
  * @version 0.5.3.1 2015-11-06 
+ * @version 0.5.4 2015-11-27 RPL_STATSLINKINFO reports the output queue.
  * @author  Nikolay Kirdin
  */
 public class StatsCommandTest extends IrcCommandTest {
@@ -91,10 +92,9 @@ public class StatsCommandTest extends IrcCommandTest {
         icp.setParsingString(ircCommand + " " + queryString);
         prefix = Globals.thisIrcServer.get().getHostname();
         icp.ircParse();
-        //211    RPL_STATSLINKINFO "<linkname> <sendq> <sent messages> <sent Kbytes> <received messages> <received Kbytes> <time open>
+        //211    RPL_STATSLINKINFO "<linkname> <sendq> <sent messages> <sent Kbytes> <received messages> <received Kbytes> <time open> <sendq high-water> <sendq dropped>
         //219    RPL_ENDOFSTATS "<stats letter> :End of STATS report"
-        response = "211" + " " + userNickname[0] + " " + String.format("%d", 0)
-                + " " + String.format("%d", 0)
+        response = "211" + " " + userNickname[0] + " " + userNickname[0] 
                 + " " + String.format("%d", 0)
                 + " " + String.format("%d", 0)
                 + " " + String.format("%d", 0)
@@ -102,7 +102,11 @@ public class StatsCommandTest extends IrcCommandTest {
                 + " " + String.format("%d", 0);
         reply = icp.getRequestor().getOutputQueue().poll().getReport();
         
-        assertTrue("RPL_STATSLINKINFO", reply.equals(":" + prefix + " " + response));
+        assertTrue("RPL_STATSLINKINFO", reply.startsWith(":" + prefix + " " + response + " "));
+        String[] linkInfo = reply.split(" ");
+        assertTrue("RPL_STATSLINKINFO", linkInfo.length == 12);
+        assertTrue("Sendq high-water", Long.parseLong(linkInfo[10]) > 0);
+        assertTrue("Sendq dropped", linkInfo[11].equals("0"));
         response = "219" + " " + userNickname[0] + " " + queryString + " " + ":" + "End of STATS report";
         reply = icp.getRequestor().getOutputQueue().poll().getReport();
         
@@ -113,17 +117,17 @@ public class StatsCommandTest extends IrcCommandTest {
         icp.setParsingString(ircCommand + " " + queryString);
         prefix = Globals.thisIrcServer.get().getHostname();
         icp.ircParse();
-        //212    RPL_STATSCOMMANDS "<command> <count> <byte count> <remote count>"
+        //212    RPL_STATSCOMMANDS "<command> <count> <byte count> <remote count> <mean> <p50> <p95> <p99> <max>"
         //219    RPL_ENDOFSTATS "<stats letter> :End of STATS report"
-        LinkedHashMap<String, IrcAvgMeter> commandStats = IrcCommandParser.getCommandStats();
+        LinkedHashMap<String, IrcHistogram> commandStats = IrcCommandParser.getCommandStats();
         for (String command : commandStats.keySet()) {
-            long counter = commandStats.get(command).counter.get();
+            long counter = commandStats.get(command).getCount();
             if (command.equals("stats")) {
                 counter--;
             }
             reply = icp.getRequestor().getOutputQueue().poll().getReport();
-            response = "212" + " " + userNickname[0] + " " + command + " " + counter;
-            assertTrue("RPL_STATSCOMMANDS", reply.matches(":" + prefix + " " + response + ".*"));
+            response = "212" + " " + userNickname[0] + " " + command + " " + counter + " 0 0( \\d+){5}";
+            assertTrue("RPL_STATSCOMMANDS", reply.matches(":" + prefix + " " + response));
         }
         response = "219" + " " + userNickname[0] + " " + queryString + " " + ":" + "End of STATS report";
         
@@ -113,7 +113,7 @@ public class WhoCommandTest extends IrcCommandTest {
         operMode = false;
         String usedMask = "*";
         outputUserMap = new LinkedHashMap<String, LinkedHashSet<User>>();   
-        for (Iterator<User> userSetIterator = db.getUserSetIterator(); userSetIterator.hasNext();) {
+        for (Iterator<User> userSetIterator = db.getUserSet().iterator(); userSetIterator.hasNext();) {
             User user = userSetIterator.next();
             String token = null;   
             if (!usedMask.equals("*")) {
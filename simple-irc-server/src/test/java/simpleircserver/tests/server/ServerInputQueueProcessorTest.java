@@ -0,0 +1,301 @@
+/*
+ *
+ * ServerInputQueueProcessorTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simpleircserver.base.Constants;
+import simpleircserver.base.DB;
+import simpleircserver.base.Globals;
+import simpleircserver.channel.IrcChannel;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.parser.IrcIncomingMessage;
+import simpleircserver.parser.Reply;
+import simpleircserver.processor.InputQueueProcessor;
+import simpleircserver.processor.IrcCommandWorker;
+import simpleircserver.talker.user.User;
+import simpleircserver.tests.IrcCommandTest;
+
+/**
+ * ServerInputQueueProcessorTest
+ * @version 0.5.4 2015-11-25
+ * @version 0.5.4 2015-11-27 QUIT is raced against JOIN and KICK on one channel.
+ * @version 0.5.4 2015-11-27 NICK on the full user registry does not stop the server.
+ * @version 0.5.4 2015-11-27 Nickname is changed on the full user registry.
+ * @version 0.5.4 2015-11-27 Messages are executed without the periodic scan of connections.
+ * @version 0.5.4 2015-11-27 Only SQUIT takes all locks.
+ * @author  Nikolay Kirdin
+ */
+public class ServerInputQueueProcessorTest extends IrcCommandTest {
+
+    @Test
+    public void serverInputQueueProcessorTest() {
+        System.out.println("--InputQueueProcessor----------------------------");
+
+        assertEquals("Targets of PRIVMSG", Arrays.asList("#chan1", "nick1"),
+                IrcCommandWorker.getTargetList(":nick0 PRIVMSG #chan1,nick1 :Hello world"));
+        assertEquals("Targets of JOIN", Arrays.asList("#chan1", "#chan2", "key1"),
+                IrcCommandWorker.getTargetList("JOIN #chan1,#chan2 key1 :trailing"));
+        assertTrue("No targets", IrcCommandWorker.getTargetList("TIME").isEmpty());
+
+        DB savedDb = Globals.db.get();
+        Globals.db.set(db);
+        dropAll();
+        serverInit();
+        userInit();
+
+        InputQueueProcessor inputQueueProcessor = new InputQueueProcessor();
+        inputQueueProcessor.commandThreads.set(2);
+        // Страховочный просмотр соединений не должен успеть выполниться.
+        inputQueueProcessor.plannedDurationOfCycle.set(60000);
+        inputQueueProcessor.minimalDurationOfTimeout.set(60000);
+        try {
+            assertTrue("InputQueueProcessor is started", inputQueueProcessor.processorStart());
+            inputQueueProcessor.inputBudget.set(2);
+            inputQueueProcessor.processorReconfigure();
+
+            Connection connection = requestor[0].getConnection();
+            connection.getOutputQueue().clear();
+            connection.setConnectionState(ConnectionState.OPERATIONAL);
+            int messageNumber = 5;
+            for (int i = 0; i < messageNumber; i++) {
+                assertTrue("Message is queued", connection.offerToInputQueue(
+                        new IrcIncomingMessage("ISON " + userNickname[i % requestor.length], requestor[0])));
+            }
+            assertTrue("Processor is available", Globals.inputQueueProcessor.get() == inputQueueProcessor);
+            InputQueueProcessor.dispatch(connection);
+
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {}
+
+            assertEquals("All messages are executed", 0, connection.getInputQueueSize());
+            assertEquals("All replies are sent", messageNumber, connection.getOutputQueue().size());
+            for (int i = 0; i < messageNumber; i++) {
+                String reply = connection.getOutputQueue().poll().getReport();
+                assertTrue("Messages are executed in order of arrival",
+                        reply.endsWith(" 303 " + userNickname[0] + " :" + userNickname[i % requestor.length]));
+            }
+
+            String monitoringString = inputQueueProcessor.getMonitoringstring();
+            assertTrue("Workers are reported", monitoringString.contains(" workers:2 queue:0 utilization (%):"));
+        } finally {
+            inputQueueProcessor.processorStop();
+            dropAll();
+            Globals.db.set(savedDb);
+        }
+        assertTrue("Processor is not available", Globals.inputQueueProcessor.get() == null);
+
+        System.out.println("**InputQueueProcessor************************OK**");
+    }
+
+    @Test
+    public void serverInputQueueProcessorRaceTest() {
+        System.out.println("--InputQueueProcessor QUIT/JOIN/KICK race-------");
+
+        assertTrue("QUIT is membership-wide", IrcCommandWorker.isMembershipCommand("QUIT :bye"));
+        assertTrue("NICK is membership-wide", IrcCommandWorker.isMembershipCommand(":nick0 nick nick5"));
+        assertTrue("JOIN 0 is membership-wide", IrcCommandWorker.isMembershipCommand("JOIN 0"));
+        assertFalse("JOIN #chan is not membership-wide", IrcCommandWorker.isMembershipCommand("JOIN #chan"));
+        assertFalse("KICK is not membership-wide", IrcCommandWorker.isMembershipCommand("KICK #chan nick1"));
+        assertTrue("SQUIT takes all locks", IrcCommandWorker.isGlobalCommand("SQUIT irc.example.com :bye"));
+        assertFalse("QUIT does not take all locks", IrcCommandWorker.isGlobalCommand("QUIT :bye"));
+        assertFalse("NICK does not take all locks", IrcCommandWorker.isGlobalCommand(":squit NICK nick5"));
+
+        DB savedDb = Globals.db.get();
+        boolean savedServerDown = Globals.serverDown.get();
+        Globals.db.set(db);
+        Globals.serverDown.set(false);
+        dropAll();
+        serverInit();
+        userInit();
+
+        InputQueueProcessor inputQueueProcessor = new InputQueueProcessor();
+        inputQueueProcessor.commandThreads.set(4);
+        inputQueueProcessor.plannedDurationOfCycle.set(1);
+        inputQueueProcessor.durationOfTimeout.set(1);
+        inputQueueProcessor.minimalDurationOfTimeout.set(1);
+        String channel = "#race";
+        try {
+            assertTrue("InputQueueProcessor is started", inputQueueProcessor.processorStart());
+
+            requestor[0].getConnection().setConnectionState(ConnectionState.OPERATIONAL);
+            requestor[0].getConnection().offerToInputQueue(
+                    new IrcIncomingMessage("JOIN " + channel, requestor[0]));
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {}
+            IrcChannel ircChannel = db.getChannel(channel);
+            assertNotNull("Channel is created", ircChannel);
+            assertTrue("Channel operator", ircChannel.checkChannelOperator(requestor[0]));
+
+            int roundNumber = 50;
+            for (int round = 0; round < roundNumber; round++) {
+                for (User user : requestor) {
+                    user.setRegistered(true);
+                    user.getConnection().getOutputQueue().clear();
+                    user.getConnection().setConnectionState(ConnectionState.OPERATIONAL);
+                }
+                for (int i = 1; i < requestor.length; i++) {
+                    requestor[i].getConnection().offerToInputQueue(
+                            new IrcIncomingMessage("JOIN " + channel, requestor[i]));
+                    requestor[i].getConnection().offerToInputQueue(
+                            new IrcIncomingMessage("QUIT :round " + round, requestor[i]));
+                }
+                for (int i = 1; i < requestor.length; i++) {
+                    requestor[0].getConnection().offerToInputQueue(
+                            new IrcIncomingMessage("KICK " + channel + " " + userNickname[i], requestor[0]));
+                    requestor[0].getConnection().offerToInputQueue(
+                            new IrcIncomingMessage("JOIN " + channel, requestor[0]));
+                }
+
+                long deadline = System.currentTimeMillis() + 5000;
+                boolean drained = false;
+                while (!drained && System.currentTimeMillis() < deadline) {
+                    drained = true;
+                    for (User user : requestor) {
+                        drained &= user.getConnection().getInputQueueSize() == 0;
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {}
+                }
+                assertTrue("Messages of round " + round + " are executed", drained);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {}
+
+                assertFalse("Server is running", Globals.serverDown.get());
+                assertTrue("Channel is registered", db.getChannel(channel) == ircChannel);
+                assertTrue("Channel operator stays", ircChannel.checkMember(requestor[0]));
+                for (int i = 1; i < requestor.length; i++) {
+                    assertTrue("Quitted user is not a member", !ircChannel.checkMember(requestor[i]));
+                    assertTrue("Quitted user has no channels", requestor[i].getChannelSet().isEmpty());
+                }
+                for (User member : ircChannel.getUserSet()) {
+                    assertTrue("Membership is consistent", member.getChannelSet().contains(ircChannel));
+                }
+            }
+        } finally {
+            inputQueueProcessor.processorStop();
+            Globals.connectionCleanupQueue.get().clear();
+            dropAll();
+            Globals.db.set(savedDb);
+            Globals.serverDown.set(savedServerDown);
+        }
+
+        System.out.println("**InputQueueProcessor QUIT/JOIN/KICK race***OK**");
+    }
+
+    @Test
+    public void serverInputQueueProcessorUserLimitTest() {
+        System.out.println("--InputQueueProcessor NICK on full DB-----------");
+
+        DB savedDb = Globals.db.get();
+        boolean savedServerDown = Globals.serverDown.get();
+        int savedMaxUserMapSize = db.maxUserMapSize.get();
+        Globals.db.set(db);
+        Globals.serverDown.set(false);
+        dropAll();
+        serverInit();
+        userInit();
+
+        InputQueueProcessor inputQueueProcessor = new InputQueueProcessor();
+        inputQueueProcessor.plannedDurationOfCycle.set(1);
+        inputQueueProcessor.durationOfTimeout.set(1);
+        inputQueueProcessor.minimalDurationOfTimeout.set(1);
+        try {
+            db.maxUserMapSize.set(Constants.MIN_LIMIT);
+            for (int i = 0; db.getUserMapSize() < Constants.MIN_LIMIT; i++) {
+                User filler = User.create();
+                filler.setNickname("filler" + i);
+                filler.setIrcServer(Globals.thisIrcServer.get());
+                assertEquals("Filler is registered", Reply.RPL_OK, db.register(filler));
+            }
+
+            User user = User.create();
+            user.setIrcServer(Globals.thisIrcServer.get());
+            Connection conn = Connection.create();
+            conn.ircTalker.set(user);
+            user.setConnection(conn);
+            db.register(conn);
+            conn.setConnectionState(ConnectionState.OPERATIONAL);
+
+            assertTrue("InputQueueProcessor is started", inputQueueProcessor.processorStart());
+            conn.offerToInputQueue(new IrcIncomingMessage("NICK extra", user));
+
+            IrcCommandReport report = null;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (report == null && System.currentTimeMillis() < deadline) {
+                report = conn.getOutputQueue().poll();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {}
+            }
+            assertNotNull("Reply is sent", report);
+            assertTrue("ERR_FILEERROR", report.getReport().startsWith(
+                    ":" + Globals.thisIrcServer.get().getHostname() + " 424 "));
+            assertTrue("ERR_FILEERROR names the nickname", report.getReport().endsWith(" register on extra"));
+            assertFalse("Nickname is not registered", db.getUserNicknameSet().contains("extra"));
+            assertFalse("Server is running", Globals.serverDown.get());
+
+            User renamed = requestor[1];
+            renamed.getConnection().getOutputQueue().clear();
+            renamed.getConnection().setConnectionState(ConnectionState.OPERATIONAL);
+            renamed.getConnection().offerToInputQueue(new IrcIncomingMessage("NICK renamed", renamed));
+            report = null;
+            deadline = System.currentTimeMillis() + 5000;
+            while (report == null && System.currentTimeMillis() < deadline) {
+                report = renamed.getConnection().getOutputQueue().poll();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {}
+            }
+            assertNotNull("Reply is sent", report);
+            assertEquals("Nickname is changed on full DB", ":" + userNickname[1] + " NICK renamed",
+                    report.getReport());
+            assertTrue("New nickname is registered", db.getUser("renamed") == renamed);
+            assertNull("Old nickname is released", db.getUser(userNickname[1]));
+            assertEquals("Number of users", Constants.MIN_LIMIT, db.getUserMapSize());
+        } finally {
+            inputQueueProcessor.processorStop();
+            Globals.connectionCleanupQueue.get().clear();
+            db.maxUserMapSize.set(savedMaxUserMapSize);
+            dropAll();
+            Globals.db.set(savedDb);
+            Globals.serverDown.set(savedServerDown);
+        }
+
+        System.out.println("**InputQueueProcessor NICK on full DB*******OK**");
+    }
+}
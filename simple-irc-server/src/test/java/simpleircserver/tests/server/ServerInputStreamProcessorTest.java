@@ -169,7 +169,7 @@ public class ServerInputStreamProcessorTest {
         try {
             Thread.sleep(sleepTO.get() * 2);
         } catch (InterruptedException e) {}    
-        readString = client[0].c.inputQueue.get().message;
+        readString = client[0].c.inputQueue.peek().message;
         System.out.println(readString);
         assertTrue("Successfull reading:", testString.equals(readString));      
         
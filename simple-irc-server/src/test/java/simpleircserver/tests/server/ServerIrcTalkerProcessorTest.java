@@ -52,6 +52,7 @@ import simpleircserver.connection.NetworkConnection;
 import simpleircserver.processor.IncomingConnectionListener;
 import simpleircserver.processor.IrcTalkerProcessor;
 import simpleircserver.processor.NetworkConnectionProcessor;
+import simpleircserver.processor.OutputQueueProcessor;
 import simpleircserver.talker.user.User;
 import simpleircserver.tests.ServerTestUtils;
 
@@ -111,6 +112,7 @@ public class ServerIrcTalkerProcessorTest {
         IncomingConnectionListener incomingConnectionListener;
         NetworkConnectionProcessor networkConnectionProcessor;
         IrcTalkerProcessor ircTalkerProcessor;
+        OutputQueueProcessor outputQueueProcessor;
               
               
         try {
@@ -135,12 +137,12 @@ public class ServerIrcTalkerProcessorTest {
         networkConnectionProcessor.running.set(false);
         networkConnectionProcessor.thread.get().start();
         
-//        outputQueueProcessor = new OutputQueueProcessor();
-//        outputQueueProcessor.thread.set(new Thread(outputQueueProcessor));
-//        outputQueueProcessor.running.set(false);
-//        outputQueueProcessor.thread.get().start();
+        outputQueueProcessor = new OutputQueueProcessor();
+        outputQueueProcessor.thread.set(new Thread(outputQueueProcessor));
+        outputQueueProcessor.running.set(false);
+        outputQueueProcessor.thread.get().start();
 
-//        outputQueueProcessor.running.set(true);
+        outputQueueProcessor.running.set(true);
         incomingConnectionListener.running.set(true);
         networkConnectionProcessor.running.set(true);
         ircTalkerProcessor.running.set(true);
@@ -290,6 +292,7 @@ public class ServerIrcTalkerProcessorTest {
         incomingConnectionListener.down.set(true);
         networkConnectionProcessor.down.set(true);
         ircTalkerProcessor.down.set(true);
+        outputQueueProcessor.down.set(true);
         Globals.logger.get().log(Level.INFO, "Down");
         Globals.logger.get().log(Level.FINEST, "**IrcTalkerProcessor*************************OK**"); 
 
@@ -22,12 +22,14 @@
 
 package simpleircserver.tests.server;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.Socket;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
@@ -41,6 +43,7 @@ import simpleircserver.base.Constants;
 import simpleircserver.base.DB;
 import simpleircserver.base.Globals;
 import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
 import simpleircserver.connection.NetworkConnection;
 import simpleircserver.processor.IncomingConnectionListener;
 import simpleircserver.tests.IrcCommandTest;
@@ -109,12 +112,16 @@ public class ServerListenerTest {
         Globals.logger.get().log(Level.FINEST, "--Listener---------------------------------------");
         
         
+        int acceptAddressBurst = Globals.acceptAddressBurst.get();
+        Globals.acceptAddressBurst.set(1);
         incomingConnectionListener.running.set(true);
         incomingConnectionListener.thread.get().start();
         try {
             Thread.sleep(sleepTO.get() * 2);
         } catch (InterruptedException e) {}
+        Globals.acceptAddressBurst.set(acceptAddressBurst);
 
+        long setupCount = NetworkConnection.setupTimeHistogram.getCount();
         client[0] = new Client();
         socket = new Socket(Globals.thisIrcServer.get().getNetworkId(), Globals.serverPortNumber.get());
         client[0].s = socket;
@@ -137,6 +144,20 @@ public class ServerListenerTest {
         }
         assertTrue("Successfull connection registration", connection != null);
         assertTrue("Successfull user creation", connection.ircTalker.get().getConnection() == connection);
+        assertEquals("Connection is OPERATIONAL", ConnectionState.OPERATIONAL, connection.getConnectionState());
+        client[0].br = new BufferedReader(new InputStreamReader(client[0].s.getInputStream()));
+        assertTrue("Greeting received", client[0].br.readLine().endsWith(" 020 * :Please wait while we process your connection."));
+        assertEquals("Setup time is recorded", setupCount + 1, NetworkConnection.setupTimeHistogram.getCount());
+
+        Socket throttledSocket = new Socket(Globals.thisIrcServer.get().getNetworkId(), Globals.serverPortNumber.get());
+        BufferedReader throttledBr = new BufferedReader(new InputStreamReader(throttledSocket.getInputStream()));
+        assertEquals("Connection is throttled", "ERROR :Closing Link: " + throttledSocket.getLocalAddress().getHostAddress() 
+                + " (Connection rate exceeded)", throttledBr.readLine());
+        assertEquals("Connection is closed", null, throttledBr.readLine());
+        throttledSocket.close();
+        assertEquals("Accept counter", 1, incomingConnectionListener.acceptCount.get());
+        assertEquals("Throttle counter", 1, incomingConnectionListener.throttledCount.get());
+        assertEquals("Reject counter", 0, incomingConnectionListener.rejectedCount.get());
 
         incomingConnectionListener.down.set(true);
         Globals.logger.get().log(Level.FINEST, "**Listener***********************************OK**");
@@ -0,0 +1,212 @@
+/*
+ *
+ * ServerNioNetworkProcessorTest
+ * is part of Simple Irc Server
+ *
+ *
+ * Copyright (С) 2012, 2015, Nikolay Kirdin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License Version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License Version 3 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License Version 3 along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package simpleircserver.tests.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpleircserver.ParameterInitialization;
+import simpleircserver.base.Constants;
+import simpleircserver.base.DB;
+import simpleircserver.base.Globals;
+import simpleircserver.connection.Connection;
+import simpleircserver.connection.ConnectionState;
+import simpleircserver.connection.NioConnection;
+import simpleircserver.parser.IrcCommandReport;
+import simpleircserver.processor.NioNetworkProcessor;
+import simpleircserver.tests.ServerTestUtils;
+
+/**
+ * ServerNioNetworkProcessorTest
+ * @version 0.5.4 2015-11-20
+ * @version 0.5.4 2015-11-27 Pending output of the deleted connection is written before the channel is closed.
+ * @author  Nikolay Kirdin
+ */
+public class ServerNioNetworkProcessorTest {
+
+	private AtomicLong sleepTO;
+	private Socket socket;
+
+	@Before
+	public void setUp() throws Exception {
+        if (Globals.serverSocket.get() != null) Globals.serverSocket.get().close();
+        ServerTestUtils.restoreGlobals();
+        String configFilePath = ServerTestUtils.buildResourceFilePath(Constants.CONFIG_FILE_PATH);
+
+        String logFilePath = ServerTestUtils.buildResourceFilePath(Constants.LOG_FILE_PATH);
+        Globals.configFilename.set(configFilePath);
+
+        Globals.logFileHandlerFileName.set(logFilePath);
+
+        ParameterInitialization.configSetup();
+        assertTrue("Normal Initialisation", ParameterInitialization.networkComponentsSetup());
+        ParameterInitialization.loggerSetup();
+
+		Globals.logFileHandler.get().setLevel(Level.ALL);
+		Globals.logger.get().setLevel(Level.ALL);
+		ParameterInitialization.loggerLevelSetup();
+		Globals.serverDown.set(false);
+	    sleepTO = new AtomicLong(100);
+	}
+
+	@Test
+    public void serverNioNetworkProcessorTest() throws IOException {
+        System.out.println("--NioNetworkProcessor----------------------------");
+
+        DB db = Globals.db.get();
+        NioNetworkProcessor nioNetworkProcessor = new NioNetworkProcessor();
+        nioNetworkProcessor.ioThreads.set(2);
+        int portNumber = Globals.serverPortNumber.get() + 1;
+        nioNetworkProcessor.setServerPortNumber(portNumber);
+        nioNetworkProcessor.thread.set(new Thread(nioNetworkProcessor));
+        nioNetworkProcessor.running.set(true);
+        nioNetworkProcessor.thread.get().start();
+
+        try {
+            Thread.sleep(sleepTO.get() * 5);
+        } catch (InterruptedException e) {}
+
+        Globals.logger.get().log(Level.FINEST, "--NioNetworkProcessor-Accept--------------------");
+        socket = new Socket(Globals.thisIrcServer.get().getNetworkId(), portNumber);
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+        String readString = br.readLine();
+        assertTrue("Greeting received", readString.contains(" 020 * :Please wait"));
+
+        try {
+            Thread.sleep(sleepTO.get() * 2);
+        } catch (InterruptedException e) {}
+
+        NioConnection connection = null;
+        List<Connection> connectionList = db.getConnectionList();
+        for (Connection conn: connectionList) {
+            if (conn instanceof NioConnection && ((NioConnection) conn).getSocket().getRemoteSocketAddress().equals(socket.getLocalSocketAddress())) {
+                connection = (NioConnection) conn;
+                break;
+            }
+        }
+        assertNotNull("NioConnection is created", connection);
+        assertEquals("Connection is OPERATIONAL", ConnectionState.OPERATIONAL, connection.getConnectionState());
+        assertTrue("New user is created and stored in DB", db.getUserSet().contains(connection.ircTalker.get()));
+
+        Globals.logger.get().log(Level.FINEST, "--NioNetworkProcessor-Read----------------------");
+        String testString = "Test String.";
+        bw.write(testString + "\r\n" + testString + " 2\r\n");
+        bw.flush();
+
+        try {
+            Thread.sleep(sleepTO.get() * 2);
+        } catch (InterruptedException e) {}
+        assertEquals("Both lines are read", 2, connection.getInputQueueSize());
+        assertEquals("Successfull reading", testString, connection.pollInputQueue().message);
+        assertEquals("Successfull reading", testString + " 2", connection.pollInputQueue().message);
+
+        Globals.logger.get().log(Level.FINEST, "--NioNetworkProcessor-Write---------------------");
+        connection.ircTalker.get().offerToOutputQueue(new IrcCommandReport(testString,
+                connection.ircTalker.get(), Globals.thisIrcServer.get()));
+        readString = br.readLine();
+        assertTrue("Successfull writing", readString.endsWith(testString));
+
+        Globals.logger.get().log(Level.FINEST, "--NioNetworkProcessor-Shards--------------------");
+        Socket socket2 = new Socket();
+        socket2.setReceiveBufferSize(4096);
+        socket2.connect(new InetSocketAddress(Globals.thisIrcServer.get().getNetworkId(), portNumber));
+        BufferedReader br2 = new BufferedReader(new InputStreamReader(socket2.getInputStream()));
+        readString = br2.readLine();
+        assertTrue("Greeting received", readString.contains(" 020 * :Please wait"));
+        
+        try {
+            Thread.sleep(sleepTO.get() * 2);
+        } catch (InterruptedException e) {}
+        assertTrue("Connections are distributed between shards", 
+                nioNetworkProcessor.getMonitoringstring().endsWith("shards:2 connections:1/1"));
+
+        Globals.logger.get().log(Level.FINEST, "--NioNetworkProcessor-Linger--------------------");
+        NioConnection connection2 = null;
+        for (Connection conn: db.getConnectionList()) {
+            if (conn instanceof NioConnection && ((NioConnection) conn).getSocket().getRemoteSocketAddress().equals(socket2.getLocalSocketAddress())) {
+                connection2 = (NioConnection) conn;
+                break;
+            }
+        }
+        assertNotNull("Second NioConnection is created", connection2);
+        connection2.socketChannel.setOption(StandardSocketOptions.SO_SNDBUF, 4096);
+        char[] filler = new char[200];
+        Arrays.fill(filler, 'x');
+        int lineNumber = 1500;
+        for (int i = 0; i < lineNumber; i++) {
+            connection2.ircTalker.get().offerToOutputQueue(new IrcCommandReport(i + " " + new String(filler),
+                    connection2.ircTalker.get(), Globals.thisIrcServer.get()));
+        }
+        try {
+            Thread.sleep(sleepTO.get() * 2);
+        } catch (InterruptedException e) {}
+        assertTrue("Output is pending", connection2.hasPendingOutput() || !connection2.getOutputQueue().isEmpty());
+        connection2.delete();
+        connection2.setConnectionState(ConnectionState.CLOSED);
+        assertTrue("Channel is closed after output", connection2.isCloseRequested());
+
+        socket2.setSoTimeout(5000);
+        int receivedNumber = 0;
+        String lastString = null;
+        while ((readString = br2.readLine()) != null) {
+            lastString = readString;
+            receivedNumber++;
+        }
+        assertEquals("All lines are written before closing", lineNumber, receivedNumber);
+        assertTrue("Last line is written", lastString.startsWith((lineNumber - 1) + " x"));
+        socket2.close();
+        
+        Globals.logger.get().log(Level.FINEST, "--NioNetworkProcessor-Close---------------------");
+        socket.close();
+
+        try {
+            Thread.sleep(sleepTO.get() * 2);
+        } catch (InterruptedException e) {}
+
+        assertEquals("Connection is CLOSE", ConnectionState.CLOSE, connection.getConnectionState());
+
+        nioNetworkProcessor.processorStop();
+        Globals.logger.get().log(Level.FINEST, "**NioNetworkProcessor************************OK**");
+
+        System.out.println("**NioNetworkProcessor************************OK**");
+    }
+}
@@ -161,6 +161,23 @@ public class ServerOutputQueueProcessorTest {
         } catch (InterruptedException e) {}    
         readString = client[0].br.readLine();
         assertTrue("Successfull reading:", testString.equals(readString));      
+        assertTrue("Connection is removed from ready queue", 
+                !Globals.outputReadyQueue.get().contains(client[0].c));
+        
+        Globals.logger.get().log(Level.FINEST, "--OutputQueueProcessor--Coalescing---------------");
+        for (int i = 0; i < 3; i++) {
+            client[0].c.ircTalker.get().offerToOutputQueue(new IrcCommandReport(testString + i, client[0].c.ircTalker.get(), Globals.thisIrcServer.get()));
+        }
+        assertTrue("Connection is placed into ready queue once", 
+                Globals.outputReadyQueue.get().contains(client[0].c));
+        try {
+            Thread.sleep(sleepTO.get() * 2);
+        } catch (InterruptedException e) {}    
+        for (int i = 0; i < 3; i++) {
+            readString = client[0].br.readLine();
+            assertTrue("Successfull reading:", (testString + i).equals(readString));
+        }
+        assertTrue("Output queue is empty", client[0].c.getOutputQueue().isEmpty());
         
         client[0].br.close(); 
         